@@ -62,6 +62,7 @@ public abstract class AddOrUpdateIndexerCli extends BaseIndexCli {
     protected OptionSpec<IndexerDefinition.BatchIndexingState> batchIdxStateOption;
     protected OptionSpec<String> defaultBatchIndexCliArgumentsOption;
     protected OptionSpec<String> batchIndexCliArgumentsOption;
+    protected OptionSpec<Integer> threadCountOption;
 
     @Override
     protected OptionParser setupOptionParser() {
@@ -134,6 +135,12 @@ public abstract class AddOrUpdateIndexerCli extends BaseIndexCli {
                                 + " a running solr cluster (i.e. --reducers 0)")
                 .withOptionalArg().ofType(String.class).describedAs("file-with-arguments");
 
+        threadCountOption = parser
+                .acceptsAll(Lists.newArrayList("t", "threads"),
+                        "Number of threads with which the events of this indexer are processed. Use 0 to fall back"
+                                + " to the hbaseindexer.indexer.threads setting of the indexer server")
+                .withRequiredArg().ofType(Integer.class).describedAs("count");
+
         return parser;
     }
 
@@ -165,6 +172,14 @@ public abstract class AddOrUpdateIndexerCli extends BaseIndexCli {
         if (batchIdxState != null)
             builder.batchIndexingState(batchIdxState);
 
+        Integer threadCount = threadCountOption.value(options);
+        if (threadCount != null) {
+            if (threadCount < 0) {
+                throw new CliException("Number of threads should be >= 0: " + threadCount);
+            }
+            builder.threadCount(threadCount);
+        }
+
         // connection type is a hardcoded setting
         builder.connectionType("solr");
 
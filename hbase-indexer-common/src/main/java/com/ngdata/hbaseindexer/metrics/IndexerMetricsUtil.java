@@ -18,6 +18,7 @@ package com.ngdata.hbaseindexer.metrics;
 import java.util.SortedMap;
 
 import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Gauge;
 import com.yammer.metrics.core.Metric;
 import com.yammer.metrics.core.MetricName;
 import com.yammer.metrics.core.MetricPredicate;
@@ -36,6 +37,15 @@ public class IndexerMetricsUtil {
         }
     }
 
+    /**
+     * Registers a gauge for an indexer. A gauge that is still registered under the same name, by an indexer that
+     * was replaced by a new one without removing its metrics, is replaced as well.
+     */
+    public static void registerGauge(MetricName metricName, Gauge<?> gauge) {
+        Metrics.defaultRegistry().removeMetric(metricName);
+        Metrics.newGauge(metricName, gauge);
+    }
+
     /**
      * MetricPredicate that matches all HBase Indexer metrics. An indexer name
      * can optionally be given to only map metrics for a given indexer.
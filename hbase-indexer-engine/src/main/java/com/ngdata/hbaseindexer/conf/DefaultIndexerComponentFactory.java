@@ -36,6 +36,7 @@ import java.util.Map;
 import com.google.common.collect.Maps;
 import com.ngdata.hbaseindexer.conf.FieldDefinition.ValueSource;
 import com.ngdata.hbaseindexer.conf.IndexerConf.MappingType;
+import com.ngdata.hbaseindexer.conf.IndexerConf.RowReadConsistency;
 import com.ngdata.hbaseindexer.conf.IndexerConf.RowReadMode;
 import com.ngdata.hbaseindexer.indexer.ResultToSolrMapperFactory;
 import com.ngdata.hbaseindexer.parse.DefaultResultToSolrMapper;
@@ -85,6 +86,11 @@ public class DefaultIndexerComponentFactory implements IndexerComponentFactory {
         builder.table(getAttribute(indexEl, "table", true));
         builder.mappingType(getEnumAttribute(MappingType.class, indexEl, "mapping-type", null));
         builder.rowReadMode(getEnumAttribute(RowReadMode.class, indexEl, "read-row", null));
+        builder.rowReadConsistency(getEnumAttribute(RowReadConsistency.class, indexEl, "read-row-consistency", null));
+        builder.readRowAsync(Boolean.parseBoolean(getAttribute(indexEl, "read-row-async", false)));
+        builder.maxOutstandingReads(getIntegerAttribute(indexEl, "max-outstanding-reads", null));
+        builder.rowCacheSize(getLongAttribute(indexEl, "row-cache-size", null));
+        builder.rowCacheExpirySeconds(getLongAttribute(indexEl, "row-cache-expiry-seconds", null));
         builder.uniqueyKeyField(getAttribute(indexEl, "unique-key-field", false));
         builder.rowField(getAttribute(indexEl, "row-field", false));
         builder.columnFamilyField(getAttribute(indexEl, "column-family-field", false));
@@ -188,6 +194,32 @@ public class DefaultIndexerComponentFactory implements IndexerComponentFactory {
         return element.getAttribute(name);
     }
 
+    private Integer getIntegerAttribute(Element element, String attribute, Integer defaultValue) {
+        if (!element.hasAttribute(attribute)) {
+            return defaultValue;
+        }
+        String value = element.getAttribute(attribute);
+        try {
+            return Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw new IndexerConfException("Illegal value in attribute " + attribute + " on element "
+                    + element.getLocalName() + ": '" + value);
+        }
+    }
+
+    private Long getLongAttribute(Element element, String attribute, Long defaultValue) {
+        if (!element.hasAttribute(attribute)) {
+            return defaultValue;
+        }
+        String value = element.getAttribute(attribute);
+        try {
+            return Long.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw new IndexerConfException("Illegal value in attribute " + attribute + " on element "
+                    + element.getLocalName() + ": '" + value);
+        }
+    }
+
     private <T extends Enum> T getEnumAttribute(Class<T> enumClass, Element element, String attribute, T defaultValue) {
         if (!element.hasAttribute(attribute)) {
             return defaultValue;
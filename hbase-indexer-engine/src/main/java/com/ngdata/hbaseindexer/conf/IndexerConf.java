@@ -18,7 +18,10 @@ package com.ngdata.hbaseindexer.conf;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
+import com.ngdata.hbaseindexer.parse.DefaultResultToSolrMapper;
 import com.ngdata.hbaseindexer.parse.ResultToSolrMapper;
 
 import com.ngdata.hbaseindexer.conf.FieldDefinition.ValueSource;
@@ -38,6 +41,11 @@ public class IndexerConf {
     private boolean tableNameIsRegex;
     private MappingType mappingType;
     private RowReadMode rowReadMode;
+    private RowReadConsistency rowReadConsistency;
+    private boolean readRowAsync;
+    private int maxOutstandingReads;
+    private long rowCacheSize;
+    private long rowCacheExpirySeconds;
     private String uniqueKeyField;
     private String rowField;
     private String columnFamilyField;
@@ -62,6 +70,19 @@ public class IndexerConf {
          */
         DYNAMIC,
 
+        /**
+         * Like {@link #DYNAMIC}, but only read the columns needed for indexing that the mutation event does not
+         * include, and merge them with the cells of the event. If the event contains deletes, the row is read as
+         * with {@link #DYNAMIC}.
+         * <p>
+         * As the columns of the event are not read back, the values of the event are indexed even if the row was
+         * updated again since. When an older event is delivered again after a newer one of the same row was indexed,
+         * e.g. when replication retries a batch, the document gets the older values of these columns until the row
+         * is updated again. Use {@link #DYNAMIC} for indexers that can't accept this, or
+         * {@link RowReadConsistency#TIMELINE}, with which the columns of the event are read as well.
+         */
+        MERGE,
+
         /**
          * Never re-read a row to be indexed after a mutation event.
          */
@@ -69,7 +90,30 @@ public class IndexerConf {
     }
 
     public static final MappingType DEFAULT_MAPPING_TYPE = MappingType.ROW;
+    /**
+     * Consistency with which rows are re-read. This setting is only applicable for row-based indexing.
+     */
+    public enum RowReadConsistency {
+
+        /**
+         * Read rows from the primary region.
+         */
+        STRONG,
+
+        /**
+         * Read rows from a region replica if the primary region doesn't answer in time (as configured with
+         * hbase.client.primaryCallTimeout.get). If the data of the replica is older than the mutation event, the row
+         * is read from the primary region after all. To be able to tell, rows are read including the columns of the
+         * event, also with {@link RowReadMode#MERGE}.
+         */
+        TIMELINE
+    }
+
     public static final RowReadMode DEFAULT_ROW_READ_MODE = RowReadMode.DYNAMIC;
+    public static final RowReadConsistency DEFAULT_ROW_READ_CONSISTENCY = RowReadConsistency.STRONG;
+    public static final int DEFAULT_MAX_OUTSTANDING_READS = 100;
+    public static final long DEFAULT_ROW_CACHE_SIZE = 0;
+    public static final long DEFAULT_ROW_CACHE_EXPIRY_SECONDS = 300;
     public static final String DEFAULT_UNIQUE_KEY_FIELD = "id";
     public static final Class<? extends UniqueKeyFormatter> DEFAULT_UNIQUE_KEY_FORMATTER = StringUniqueKeyFormatter.class;
     public static final ValueSource DEFAULT_VALUE_SOURCE = ValueSource.VALUE;
@@ -126,6 +170,45 @@ public class IndexerConf {
         return rowReadMode;
     }
 
+    public RowReadConsistency getRowReadConsistency() {
+        return rowReadConsistency;
+    }
+
+    /**
+     * Determine if rows are re-read asynchronously, so that the reads of part of the rows can proceed while the
+     * updates for others are written to Solr. Only applicable for row-based indexing.
+     */
+    public boolean isReadRowAsync() {
+        return readRowAsync;
+    }
+
+    /**
+     * Get the maximum number of row reads that can be outstanding at the same time for this indexer, when rows are
+     * re-read asynchronously.
+     */
+    public int getMaxOutstandingReads() {
+        return maxOutstandingReads;
+    }
+
+    /**
+     * Get the maximum size, in bytes, of the cache of recently indexed rows that is used to avoid re-reading rows.
+     * Zero if rows are not cached. Only applicable for row-based indexing, and only safe when the indexer runs in
+     * a single indexer process, as the cache doesn't see the updates that are indexed by other processes.
+     */
+    public long getRowCacheSize() {
+        return rowCacheSize;
+    }
+
+    /**
+     * Get the number of seconds after which a row that was cached is removed from the cache again, so that it is
+     * read from HBase the next time it is indexed, even if it has been kept up to date by later events in the
+     * meantime. This limits how long a stale state of the row can be indexed. Zero if rows are never removed
+     * because of their age.
+     */
+    public long getRowCacheExpirySeconds() {
+        return rowCacheExpirySeconds;
+    }
+
     public String getUniqueKeyField() {
         return uniqueKeyField;
     }
@@ -170,6 +253,42 @@ public class IndexerConf {
         return extractDefinitions;
     }
     
+    /**
+     * Returns the column families that are read by the field and document extract definitions, or null if the
+     * column families that are relevant to this indexer can't be derived from the configuration (e.g. when a custom
+     * mapper is used). In that case all column families should be considered relevant.
+     */
+    public Set<String> getColumnFamilies() {
+        if (mapperClass != null && !mapperClass.equals(DefaultResultToSolrMapper.class)) {
+            return null;
+        }
+        Set<String> columnFamilies = new TreeSet<String>();
+        if (fieldDefinitions != null) {
+            for (FieldDefinition fieldDefinition : fieldDefinitions) {
+                if (!addColumnFamily(fieldDefinition.getValueExpression(), columnFamilies)) {
+                    return null;
+                }
+            }
+        }
+        if (extractDefinitions != null) {
+            for (DocumentExtractDefinition extractDefinition : extractDefinitions) {
+                if (!addColumnFamily(extractDefinition.getValueExpression(), columnFamilies)) {
+                    return null;
+                }
+            }
+        }
+        return columnFamilies.isEmpty() ? null : columnFamilies;
+    }
+
+    private static boolean addColumnFamily(String valueExpression, Set<String> columnFamilies) {
+        int colonIdx = valueExpression == null ? -1 : valueExpression.indexOf(':');
+        if (colonIdx <= 0) {
+            return false;
+        }
+        columnFamilies.add(valueExpression.substring(0, colonIdx));
+        return true;
+    }
+
     /**
      * Get the map of global configuration parameters for this indexer.
      */
@@ -184,6 +303,26 @@ public class IndexerConf {
     void setRowReadMode(RowReadMode rowReadMode) {
         this.rowReadMode = rowReadMode;
     }
+
+    void setRowReadConsistency(RowReadConsistency rowReadConsistency) {
+        this.rowReadConsistency = rowReadConsistency;
+    }
+
+    void setReadRowAsync(boolean readRowAsync) {
+        this.readRowAsync = readRowAsync;
+    }
+
+    void setMaxOutstandingReads(int maxOutstandingReads) {
+        this.maxOutstandingReads = maxOutstandingReads;
+    }
+
+    void setRowCacheSize(long rowCacheSize) {
+        this.rowCacheSize = rowCacheSize;
+    }
+
+    void setRowCacheExpirySeconds(long rowCacheExpirySeconds) {
+        this.rowCacheExpirySeconds = rowCacheExpirySeconds;
+    }
     
     void setMapperClass(Class<? extends ResultToSolrMapper> mapperClass) {
         this.mapperClass = mapperClass;
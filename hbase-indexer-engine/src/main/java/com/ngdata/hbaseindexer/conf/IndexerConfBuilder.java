@@ -24,6 +24,7 @@ import com.ngdata.hbaseindexer.conf.FieldDefinition.ValueSource;
 import com.ngdata.hbaseindexer.parse.ResultToSolrMapper;
 import com.ngdata.hbaseindexer.uniquekey.UniqueKeyFormatter;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
@@ -38,6 +39,11 @@ public class IndexerConfBuilder {
     private Class<? extends ResultToSolrMapper> mapperClass;
     private Class<? extends UniqueKeyFormatter> uniqueKeyFormatterClass;
     private IndexerConf.RowReadMode rowReadMode = IndexerConf.RowReadMode.DYNAMIC;
+    private IndexerConf.RowReadConsistency rowReadConsistency;
+    private boolean readRowAsync;
+    private Integer maxOutstandingReads;
+    private Long rowCacheSize;
+    private Long rowCacheExpirySeconds;
     private IndexerConf.MappingType mappingType = IndexerConf.MappingType.ROW;
     private List<FieldDefinition> fieldDefinitions = Lists.newArrayList();
     private List<DocumentExtractDefinition> documentExtractDefinitions = Lists.newArrayList();
@@ -64,6 +70,11 @@ public class IndexerConfBuilder {
         this.mapperClass = indexerConf.getMapperClass();
         this.uniqueKeyFormatterClass = indexerConf.getUniqueKeyFormatterClass();
         this.rowReadMode = indexerConf.getRowReadMode();
+        this.rowReadConsistency = indexerConf.getRowReadConsistency();
+        this.readRowAsync = indexerConf.isReadRowAsync();
+        this.maxOutstandingReads = indexerConf.getMaxOutstandingReads();
+        this.rowCacheSize = indexerConf.getRowCacheSize();
+        this.rowCacheExpirySeconds = indexerConf.getRowCacheExpirySeconds();
         this.mappingType = indexerConf.getMappingType();
         this.fieldDefinitions = Lists.newArrayList(indexerConf.getFieldDefinitions());
         this.documentExtractDefinitions = Lists.newArrayList(indexerConf.getDocumentExtractDefinitions());
@@ -85,6 +96,31 @@ public class IndexerConfBuilder {
         return this;
     }
 
+    public IndexerConfBuilder rowReadConsistency(IndexerConf.RowReadConsistency rowReadConsistency) {
+        this.rowReadConsistency = rowReadConsistency;
+        return this;
+    }
+
+    public IndexerConfBuilder readRowAsync(boolean readRowAsync) {
+        this.readRowAsync = readRowAsync;
+        return this;
+    }
+
+    public IndexerConfBuilder maxOutstandingReads(Integer maxOutstandingReads) {
+        this.maxOutstandingReads = maxOutstandingReads;
+        return this;
+    }
+
+    public IndexerConfBuilder rowCacheSize(Long rowCacheSize) {
+        this.rowCacheSize = rowCacheSize;
+        return this;
+    }
+
+    public IndexerConfBuilder rowCacheExpirySeconds(Long rowCacheExpirySeconds) {
+        this.rowCacheExpirySeconds = rowCacheExpirySeconds;
+        return this;
+    }
+
     public IndexerConfBuilder uniqueyKeyField(String uniqueKeyField) {
         this.uniqueKeyField = uniqueKeyField;
         return this;
@@ -138,9 +174,20 @@ public class IndexerConfBuilder {
 
     public IndexerConf build() {
         checkNotNull(table, "table name");
+        checkArgument(maxOutstandingReads == null || maxOutstandingReads > 0, "max outstanding reads must be > 0");
+        checkArgument(rowCacheSize == null || rowCacheSize >= 0, "row cache size must be >= 0");
+        checkArgument(rowCacheExpirySeconds == null || rowCacheExpirySeconds >= 0, "row cache expiry must be >= 0");
         IndexerConf conf = new IndexerConf(table);
         conf.setMappingType(mappingType != null ? mappingType : IndexerConf.DEFAULT_MAPPING_TYPE);
         conf.setRowReadMode(rowReadMode != null ? rowReadMode : IndexerConf.DEFAULT_ROW_READ_MODE);
+        conf.setRowReadConsistency(rowReadConsistency != null ?
+                rowReadConsistency : IndexerConf.DEFAULT_ROW_READ_CONSISTENCY);
+        conf.setReadRowAsync(readRowAsync);
+        conf.setMaxOutstandingReads(maxOutstandingReads != null ?
+                maxOutstandingReads : IndexerConf.DEFAULT_MAX_OUTSTANDING_READS);
+        conf.setRowCacheSize(rowCacheSize != null ? rowCacheSize : IndexerConf.DEFAULT_ROW_CACHE_SIZE);
+        conf.setRowCacheExpirySeconds(rowCacheExpirySeconds != null ?
+                rowCacheExpirySeconds : IndexerConf.DEFAULT_ROW_CACHE_EXPIRY_SECONDS);
         conf.setUniqueKeyField(uniqueKeyField != null ? uniqueKeyField : IndexerConf.DEFAULT_UNIQUE_KEY_FIELD);
         conf.setRowField(rowField);
         conf.setColumnFamilyField(columnFamilyField);
@@ -60,6 +60,15 @@ public class XmlIndexerConfWriter {
                 conf.getMappingType().toString().toLowerCase());
         if (conf.getRowReadMode() != null) indexerEl.setAttribute("read-row",
                 conf.getRowReadMode().toString().toLowerCase());
+        if (conf.getRowReadConsistency() != null) indexerEl.setAttribute("read-row-consistency",
+                conf.getRowReadConsistency().toString().toLowerCase());
+        if (conf.isReadRowAsync()) indexerEl.setAttribute("read-row-async", "true");
+        if (conf.getMaxOutstandingReads() != IndexerConf.DEFAULT_MAX_OUTSTANDING_READS) indexerEl.setAttribute(
+                "max-outstanding-reads", String.valueOf(conf.getMaxOutstandingReads()));
+        if (conf.getRowCacheSize() != IndexerConf.DEFAULT_ROW_CACHE_SIZE) indexerEl.setAttribute("row-cache-size",
+                String.valueOf(conf.getRowCacheSize()));
+        if (conf.getRowCacheExpirySeconds() != IndexerConf.DEFAULT_ROW_CACHE_EXPIRY_SECONDS) indexerEl.setAttribute(
+                "row-cache-expiry-seconds", String.valueOf(conf.getRowCacheExpirySeconds()));
         if (conf.getUniqueKeyField() != null) indexerEl.setAttribute("unique-key-field", conf.getUniqueKeyField());
         if (conf.getRowField() != null) indexerEl.setAttribute("row-field", conf.getRowField());
         if (conf.getColumnFamilyField() != null) indexerEl.setAttribute("column-family-field", conf.getColumnFamilyField());
@@ -23,8 +23,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
+import com.google.common.collect.Lists;
 import com.yammer.metrics.Metrics;
 import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.Timer;
+import com.yammer.metrics.core.TimerContext;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.solr.client.solrj.SolrClient;
@@ -60,6 +63,7 @@ public class DirectSolrClassicInputDocumentWriter implements SolrInputDocumentWr
     private Meter solrDeleteErrorMeter;
     private Meter documentAddErrorMeter;
     private Meter documentDeleteErrorMeter;
+    private List<Timer> shardRequestTimers;
 
     public DirectSolrClassicInputDocumentWriter(String indexName, List<SolrClient> solrServers) {
         this.solrServers = solrServers;
@@ -76,6 +80,12 @@ public class DirectSolrClassicInputDocumentWriter implements SolrInputDocumentWr
                 "Documents not added to Solr due to document errors", TimeUnit.SECONDS);
         documentDeleteErrorMeter = Metrics.newMeter(metricName(getClass(), "Document delete errors", indexName),
                 "Documents not deleted from Solr due to document errors", TimeUnit.SECONDS);
+        shardRequestTimers = Lists.newArrayListWithCapacity(solrServers.size());
+        for (int shard = 0; shard < solrServers.size(); shard++) {
+            shardRequestTimers.add(Metrics.newTimer(
+                    metricName(getClass(), "Solr request time shard " + shard, indexName),
+                    TimeUnit.MILLISECONDS, TimeUnit.SECONDS));
+        }
 
     }
 
@@ -100,6 +110,7 @@ public class DirectSolrClassicInputDocumentWriter implements SolrInputDocumentWr
     @Override
     public void add(int shard, Map<String, SolrInputDocument> inputDocumentMap) throws SolrServerException, IOException {
         Collection<SolrInputDocument> inputDocuments = inputDocumentMap.values();
+        TimerContext timerContext = shardRequestTimers.get(shard).time();
         try {
             solrServers.get(shard).add(inputDocuments);
             indexAddMeter.mark(inputDocuments.size());
@@ -113,6 +124,8 @@ public class DirectSolrClassicInputDocumentWriter implements SolrInputDocumentWr
         } catch (SolrServerException sse) {
             solrAddErrorMeter.mark(inputDocuments.size());
             throw sse;
+        } finally {
+            timerContext.stop();
         }
     }
 
@@ -138,6 +151,7 @@ public class DirectSolrClassicInputDocumentWriter implements SolrInputDocumentWr
      */
     @Override
     public void deleteById(int shard, List<String> idsToDelete) throws SolrServerException, IOException {
+        TimerContext timerContext = shardRequestTimers.get(shard).time();
         try {
             solrServers.get(shard).deleteById(idsToDelete);
             indexDeleteMeter.mark(idsToDelete.size());
@@ -151,6 +165,8 @@ public class DirectSolrClassicInputDocumentWriter implements SolrInputDocumentWr
         } catch (SolrServerException sse) {
             solrDeleteErrorMeter.mark(idsToDelete.size());
             throw sse;
+        } finally {
+            timerContext.stop();
         }
     }
 
@@ -175,8 +191,13 @@ public class DirectSolrClassicInputDocumentWriter implements SolrInputDocumentWr
     @Override
     public void deleteByQuery(String deleteQuery) throws SolrServerException, IOException {
         try {
-            for (SolrClient server : solrServers) {
-                server.deleteByQuery(deleteQuery);
+            for (int shard = 0; shard < solrServers.size(); shard++) {
+                TimerContext timerContext = shardRequestTimers.get(shard).time();
+                try {
+                    solrServers.get(shard).deleteByQuery(deleteQuery);
+                } finally {
+                    timerContext.stop();
+                }
             }
         } catch (SolrException e) {
             if (isDocumentIssue(e)) {
@@ -25,6 +25,8 @@ import java.util.concurrent.TimeUnit;
 
 import com.yammer.metrics.Metrics;
 import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.Timer;
+import com.yammer.metrics.core.TimerContext;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.solr.client.solrj.SolrClient;
@@ -60,6 +62,7 @@ public class DirectSolrInputDocumentWriter implements SolrInputDocumentWriter {
     private Meter solrDeleteErrorMeter;
     private Meter documentAddErrorMeter;
     private Meter documentDeleteErrorMeter;
+    private Timer solrRequestTimer;
 
     public DirectSolrInputDocumentWriter(String indexName, SolrClient solrServer) {
         this.solrServer = solrServer;
@@ -76,6 +79,8 @@ public class DirectSolrInputDocumentWriter implements SolrInputDocumentWriter {
                 "Documents not added to Solr due to document errors", TimeUnit.SECONDS);
         documentDeleteErrorMeter = Metrics.newMeter(metricName(getClass(), "Document delete errors", indexName),
                 "Documents not deleted from Solr due to document errors", TimeUnit.SECONDS);
+        solrRequestTimer = Metrics.newTimer(metricName(getClass(), "Solr request time", indexName),
+                TimeUnit.MILLISECONDS, TimeUnit.SECONDS);
 
     }
 
@@ -100,6 +105,7 @@ public class DirectSolrInputDocumentWriter implements SolrInputDocumentWriter {
     @Override
     public void add(int shard, Map<String, SolrInputDocument> inputDocumentMap) throws SolrServerException, IOException {
         Collection<SolrInputDocument> inputDocuments = inputDocumentMap.values();
+        TimerContext timerContext = solrRequestTimer.time();
         try {
             solrServer.add(inputDocuments);
             indexAddMeter.mark(inputDocuments.size());
@@ -113,6 +119,8 @@ public class DirectSolrInputDocumentWriter implements SolrInputDocumentWriter {
         } catch (SolrServerException sse) {
             solrAddErrorMeter.mark(inputDocuments.size());
             throw sse;
+        } finally {
+            timerContext.stop();
         }
     }
 
@@ -138,6 +146,7 @@ public class DirectSolrInputDocumentWriter implements SolrInputDocumentWriter {
      */
     @Override
     public void deleteById(int shard, List<String> idsToDelete) throws SolrServerException, IOException {
+        TimerContext timerContext = solrRequestTimer.time();
         try {
             solrServer.deleteById(idsToDelete);
             indexDeleteMeter.mark(idsToDelete.size());
@@ -151,6 +160,8 @@ public class DirectSolrInputDocumentWriter implements SolrInputDocumentWriter {
         } catch (SolrServerException sse) {
             solrDeleteErrorMeter.mark(idsToDelete.size());
             throw sse;
+        } finally {
+            timerContext.stop();
         }
     }
 
@@ -174,6 +185,7 @@ public class DirectSolrInputDocumentWriter implements SolrInputDocumentWriter {
      */
     @Override
     public void deleteByQuery(String deleteQuery) throws SolrServerException, IOException {
+        TimerContext timerContext = solrRequestTimer.time();
         try {
             solrServer.deleteByQuery(deleteQuery);
         } catch (SolrException e) {
@@ -186,6 +198,8 @@ public class DirectSolrInputDocumentWriter implements SolrInputDocumentWriter {
         } catch (SolrServerException sse) {
             solrDeleteErrorMeter.mark(1);
             throw sse;
+        } finally {
+            timerContext.stop();
         }
     }
     
@@ -24,6 +24,7 @@ import com.google.common.collect.Multimap;
 import com.google.common.collect.Multimaps;
 import com.ngdata.hbaseindexer.ConfigureUtil;
 import com.ngdata.hbaseindexer.conf.IndexerConf;
+import com.ngdata.hbaseindexer.conf.IndexerConf.RowReadConsistency;
 import com.ngdata.hbaseindexer.conf.IndexerConf.RowReadMode;
 import com.ngdata.hbaseindexer.metrics.IndexerMetricsUtil;
 import com.ngdata.hbaseindexer.parse.ResultToSolrMapper;
@@ -32,6 +33,9 @@ import com.ngdata.hbaseindexer.uniquekey.UniqueKeyFormatter;
 import com.ngdata.hbaseindexer.uniquekey.UniqueTableKeyFormatter;
 import com.ngdata.sep.util.io.Closer;
 import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Histogram;
+import com.yammer.metrics.core.Meter;
 import com.yammer.metrics.core.Timer;
 import com.yammer.metrics.core.TimerContext;
 import org.apache.commons.logging.Log;
@@ -39,8 +43,12 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.CellUtil;
 import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValueUtil;
 import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.AsyncConnection;
+import org.apache.hadoop.hbase.client.AsyncTable;
 import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.Consistency;
 import org.apache.hadoop.hbase.client.Get;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.Table;
@@ -50,12 +58,20 @@ import org.apache.solr.common.SolrInputDocument;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NavigableSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 import static com.ngdata.hbaseindexer.metrics.IndexerMetricsUtil.metricName;
 
@@ -74,18 +90,33 @@ public abstract class Indexer {
     private SolrInputDocumentWriter solrWriter;
     protected ResultToSolrMapper mapper;
     protected UniqueKeyFormatter uniqueKeyFormatter;
-    private Timer indexingTimer;
-
+    protected Timer indexingTimer;
 
     /**
      * Instantiate an indexer based on the given {@link IndexerConf}.
      */
     public static Indexer createIndexer(String indexerName, IndexerConf conf, String tableName, ResultToSolrMapper mapper,
                                         Connection tablePool, Sharder sharder, SolrInputDocumentWriter solrWriter) {
+        return createIndexer(indexerName, conf, tableName, mapper, tablePool, null, sharder, solrWriter);
+    }
+
+    /**
+     * Instantiate an indexer based on the given {@link IndexerConf}.
+     *
+     * @param asyncConnection connection used to read rows asynchronously when the configuration asks for it, can be
+     *                        null, in which case rows are always read synchronously
+     */
+    public static Indexer createIndexer(String indexerName, IndexerConf conf, String tableName, ResultToSolrMapper mapper,
+                                        Connection tablePool, AsyncConnection asyncConnection, Sharder sharder,
+                                        SolrInputDocumentWriter solrWriter) {
         switch (conf.getMappingType()) {
             case COLUMN:
                 return new ColumnBasedIndexer(indexerName, conf, tableName, mapper, sharder, solrWriter);
             case ROW:
+                if (conf.isReadRowAsync() && asyncConnection != null) {
+                    return new AsyncRowBasedIndexer(indexerName, conf, tableName, mapper, tablePool, asyncConnection,
+                            sharder, solrWriter);
+                }
                 return new RowBasedIndexer(indexerName, conf, tableName, mapper, tablePool, sharder, solrWriter);
             default:
                 throw new IllegalStateException("Can't determine the type of indexing to use for mapping type "
@@ -145,6 +176,13 @@ public abstract class Indexer {
         } finally {
             timerContext.stop();
         }
+        writeUpdates(updateCollector);
+    }
+
+    /**
+     * Write the updates collected for a list of {@code RowData}s to Solr.
+     */
+    void writeUpdates(SolrUpdateCollector updateCollector) throws IOException, SolrServerException, SharderException {
         if (log.isDebugEnabled()) {
             log.debug(String.format("Indexer %s will send to Solr %s adds and %s deletes", getName(),
                     updateCollector.getDocumentsToAdd().size(), updateCollector.getIdsToDelete().size()));
@@ -214,15 +252,29 @@ public abstract class Indexer {
     }
 
     public void stop() {
+        stop(true);
+    }
+
+    /**
+     * @param shutdownMetrics false if another indexer with the same name takes over from this one, it then keeps
+     *                        using the same metrics
+     */
+    public void stop(boolean shutdownMetrics) {
         Closer.close(mapper);
         Closer.close(uniqueKeyFormatter);
-        IndexerMetricsUtil.shutdownMetrics(indexerName);
+        if (shutdownMetrics) {
+            IndexerMetricsUtil.shutdownMetrics(indexerName);
+        }
     }
 
     static class RowBasedIndexer extends Indexer {
 
         private Connection tablePool;
-        private Timer rowReadTimer;
+        private RowCache rowCache;
+        protected Timer rowReadTimer;
+        protected Histogram rowReadCount;
+        private Meter replicaReadMeter;
+        private Meter staleReadMeter;
 
         public RowBasedIndexer(String indexerName, IndexerConf conf, String tableName, ResultToSolrMapper mapper,
                                Connection tablePool,
@@ -231,76 +283,344 @@ public abstract class Indexer {
             this.tablePool = tablePool;
             rowReadTimer = Metrics.newTimer(metricName(getClass(), "Row read timer", indexerName), TimeUnit.MILLISECONDS,
                     TimeUnit.SECONDS);
+            rowReadCount = Metrics.newHistogram(metricName(getClass(), "Rows read per batch", indexerName), true);
+            replicaReadMeter = Metrics.newMeter(metricName(getClass(), "Replica row reads", indexerName),
+                    "Rows read from a region replica", TimeUnit.SECONDS);
+            staleReadMeter = Metrics.newMeter(metricName(getClass(), "Stale row reads", indexerName),
+                    "Rows read from a region replica that were older than the event, read again from the primary",
+                    TimeUnit.SECONDS);
+            if (conf.getRowCacheSize() > 0 && conf.getRowReadMode() != RowReadMode.NEVER) {
+                rowCache = new RowCache(indexerName, mapper, conf.getRowCacheSize(),
+                        conf.getRowCacheExpirySeconds());
+            }
+        }
+
+        @Override
+        public void stop(boolean shutdownMetrics) {
+            if (rowCache != null) {
+                rowCache.invalidateAll();
+            }
+            super.stop(shutdownMetrics);
+        }
+
+        /**
+         * Applies the events to the cached state of their rows, in the order they happened. Only the most recent
+         * event of each row is indexed, but the cached state needs the changes of all of them.
+         */
+        void updateRowCache(List<RowData> rowDataList) {
+            if (rowCache != null) {
+                for (RowData rowData : rowDataList) {
+                    rowCache.apply(rowData);
+                }
+            }
         }
 
-        private Result readRow(RowData rowData) throws IOException {
+        /**
+         * Reads the rows at the given positions from HBase, with a single multi-get per table, and puts them in the
+         * results at the same positions. The HBase client sends the gets of a multi-get to each region server at once.
+         */
+        private void readRows(List<RowData> rowDataList, List<Integer> positions, List<Result> results)
+                throws IOException {
+            Map<TableName, List<Integer>> positionsByTable = groupByTable(rowDataList, positions);
+
+            long startedAt = System.nanoTime();
             TimerContext timerContext = rowReadTimer.time();
             try {
-                Table table = tablePool.getTable(TableName.valueOf(rowData.getTable()));
-                try {
-                    Get get = mapper.getGet(rowData.getRow());
-                    return table.get(get);
-                } finally {
-                    table.close();
+                for (Map.Entry<TableName, List<Integer>> entry : positionsByTable.entrySet()) {
+                    List<Integer> tablePositions = entry.getValue();
+                    List<Get> gets = Lists.newArrayListWithCapacity(tablePositions.size());
+                    for (int position : tablePositions) {
+                        gets.add(createGet(rowDataList.get(position), results.get(position)));
+                    }
+                    Result[] tableResults;
+                    Table table = tablePool.getTable(entry.getKey());
+                    try {
+                        tableResults = get(table, gets);
+                        // Read the rows of which a replica returned outdated data again from the primary
+                        List<Integer> staleIndexes = Lists.newArrayList();
+                        for (int i = 0; i < tableResults.length; i++) {
+                            if (!isUpToDate(rowDataList.get(tablePositions.get(i)), tableResults[i])) {
+                                staleIndexes.add(i);
+                            }
+                        }
+                        if (!staleIndexes.isEmpty()) {
+                            List<Get> primaryGets = Lists.newArrayListWithCapacity(staleIndexes.size());
+                            for (int index : staleIndexes) {
+                                primaryGets.add(createPrimaryGet(gets.get(index)));
+                            }
+                            Result[] primaryResults = get(table, primaryGets);
+                            for (int i = 0; i < primaryResults.length; i++) {
+                                tableResults[staleIndexes.get(i)] = primaryResults[i];
+                            }
+                        }
+                    } finally {
+                        table.close();
+                    }
+                    for (int i = 0; i < tableResults.length; i++) {
+                        int position = tablePositions.get(i);
+                        results.set(position, combineResults(rowDataList.get(position), results.get(position),
+                                tableResults[i]));
+                    }
                 }
             } finally {
                 timerContext.stop();
             }
+            rowReadCount.update(positions.size());
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("Indexer %s read %d rows in %d ms", getName(), positions.size(),
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt)));
+            }
         }
 
-        @Override
-        protected void calculateIndexUpdates(List<RowData> rowDataList, SolrUpdateCollector updateCollector) throws IOException {
+        private static Result[] get(Table table, List<Get> gets) throws IOException {
+            return gets.size() == 1 ? new Result[] { table.get(gets.get(0)) } : table.get(gets);
+        }
 
-            Map<String, RowData> idToRowData = calculateUniqueEvents(rowDataList);
+        /**
+         * Checks whether the result of a get can be used to index the given event. The result of a get with
+         * {@link Consistency#TIMELINE} can come from a region replica that lags behind the primary region. It can only
+         * be used if the replica has caught up with the event: it should have the columns of the event, with at least
+         * the timestamps of the event. As the effect of deletes can't be checked, a replica can't be used for events
+         * containing deletes.
+         */
+        boolean isUpToDate(RowData rowData, Result result) {
+            if (!result.isStale()) {
+                return true;
+            }
+            boolean checked = false;
+            for (Cell cell : rowData.getKeyValues()) {
+                if (CellUtil.isDelete(cell)) {
+                    staleReadMeter.mark();
+                    return false;
+                }
+                Cell replicaCell = result.getColumnLatestCell(cell.getFamilyArray(), cell.getFamilyOffset(),
+                        cell.getFamilyLength(), cell.getQualifierArray(), cell.getQualifierOffset(),
+                        cell.getQualifierLength());
+                if (replicaCell == null) {
+                    // Not read, or not written yet on the replica, which can't be told apart
+                    continue;
+                }
+                if (replicaCell.getTimestamp() < cell.getTimestamp()) {
+                    staleReadMeter.mark();
+                    return false;
+                }
+                checked = true;
+            }
+            if (!checked) {
+                staleReadMeter.mark();
+                return false;
+            }
+            replicaReadMeter.mark();
+            return true;
+        }
 
-            for (RowData rowData : idToRowData.values()) {
-                String tableName = new String(rowData.getTable(), Charsets.UTF_8);
+        /**
+         * Creates a get that reads the same as the given one, from the primary region.
+         */
+        static Get createPrimaryGet(Get get) {
+            Get primaryGet = new Get(get);
+            primaryGet.setConsistency(Consistency.STRONG);
+            return primaryGet;
+        }
 
+        /**
+         * Groups the given positions by the table of the row at that position. Indexers can receive the rows of
+         * several tables.
+         */
+        Map<TableName, List<Integer>> groupByTable(List<RowData> rowDataList, List<Integer> positions) {
+            Map<TableName, List<Integer>> positionsByTable = Maps.newLinkedHashMap();
+            for (int position : positions) {
+                TableName table = TableName.valueOf(rowDataList.get(position).getTable());
+                List<Integer> tablePositions = positionsByTable.get(table);
+                if (tablePositions == null) {
+                    tablePositions = Lists.newArrayList();
+                    positionsByTable.put(table, tablePositions);
+                }
+                tablePositions.add(position);
+            }
+            return positionsByTable;
+        }
+
+        /**
+         * Creates the results of the given rows from the data in their events, and adds the positions of the rows
+         * that need to be read from HBase to {@code positionsToRead}.
+         */
+        List<Result> toResults(List<RowData> rowDataList, List<Integer> positionsToRead) {
+            List<Result> results = Lists.newArrayListWithCapacity(rowDataList.size());
+            for (RowData rowData : rowDataList) {
                 Result result = rowData.toResult();
-                if (conf.getRowReadMode() == RowReadMode.DYNAMIC) {
+                if (conf.getRowReadMode() != RowReadMode.NEVER) {
                     if (!mapper.containsRequiredData(result)) {
-                        result = readRow(rowData);
+                        Result cached = rowCache != null ? rowCache.get(rowData) : null;
+                        if (cached != null && mapper.containsRequiredData(cached)) {
+                            result = cached;
+                        } else {
+                            positionsToRead.add(results.size());
+                        }
                     }
                 }
+                results.add(result);
+            }
+            return results;
+        }
 
-                boolean rowDeleted = result.isEmpty();
+        /**
+         * Creates the get to read a row that is missing data in its event. With {@link RowReadMode#MERGE}, the
+         * columns that are in the event are left out, unless the row may be read from a region replica: those columns
+         * are needed to tell whether the replica caught up with the event, see {@link #isUpToDate}. Leaving them out
+         * means a replayed event is indexed with its own, possibly outdated, values, see {@link RowReadMode#MERGE}.
+         *
+         * @param eventResult the result created from the event, see {@link RowData#toResult()}
+         */
+        Get createGet(RowData rowData, Result eventResult) {
+            Get get = createColumnsGet(rowData, eventResult);
+            if (conf.getRowReadConsistency() == RowReadConsistency.TIMELINE) {
+                get.setConsistency(Consistency.TIMELINE);
+            }
+            return get;
+        }
 
-                String documentId;
-                if (uniqueKeyFormatter instanceof UniqueTableKeyFormatter) {
-                    documentId = ((UniqueTableKeyFormatter) uniqueKeyFormatter).formatRow(rowData.getRow(),
-                            rowData.getTable());
-                } else {
-                    documentId = uniqueKeyFormatter.formatRow(rowData.getRow());
-                }
+        private Get createColumnsGet(RowData rowData, Result eventResult) {
+            Get get = mapper.getGet(rowData.getRow());
+            if (conf.getRowReadMode() != RowReadMode.MERGE || containsDeletes(rowData)
+                    || conf.getRowReadConsistency() == RowReadConsistency.TIMELINE) {
+                return get;
+            }
 
-                if (rowDeleted) {
-                    // Delete row from Solr as well
-                    updateCollector.deleteById(documentId);
-                    if (log.isDebugEnabled()) {
-                        log.debug("Row " + Bytes.toString(rowData.getRow()) + ": deleted from Solr");
+            Get missingColumnsGet = new Get(get);
+            Iterator<Entry<byte[], NavigableSet<byte[]>>> families =
+                    missingColumnsGet.getFamilyMap().entrySet().iterator();
+            while (families.hasNext()) {
+                Entry<byte[], NavigableSet<byte[]>> family = families.next();
+                if (family.getValue() == null || family.getValue().isEmpty()) {
+                    // Whole family is needed, the event can't tell whether it contains all of it
+                    continue;
+                }
+                Iterator<byte[]> qualifiers = family.getValue().iterator();
+                while (qualifiers.hasNext()) {
+                    if (eventResult.containsColumn(family.getKey(), qualifiers.next())) {
+                        qualifiers.remove();
                     }
-                } else {
-                    IdAddingSolrUpdateWriter idAddingUpdateWriter = new IdAddingSolrUpdateWriter(
-                            conf.getUniqueKeyField(),
-                            documentId,
-                            conf.getTableNameField(),
-                            tableName,
-                            updateCollector);
-                    mapper.map(result, idAddingUpdateWriter);
+                }
+                if (family.getValue().isEmpty()) {
+                    // An empty set of qualifiers would read the whole family
+                    families.remove();
                 }
             }
+            // If the event has all the columns, the mapper needs something else from the row
+            return missingColumnsGet.hasFamilies() ? missingColumnsGet : get;
+        }
+
+        /**
+         * Combines the result created from the event with the result read from HBase. With
+         * {@link RowReadMode#MERGE}, the cells of both are merged, otherwise the read result is used as is.
+         */
+        Result combineResults(RowData rowData, Result eventResult, Result readResult) {
+            if (conf.getRowReadMode() != RowReadMode.MERGE || containsDeletes(rowData)) {
+                return readResult;
+            }
+
+            return mergeResults(eventResult, readResult);
+        }
+
+        /**
+         * Merges the cells of two results into one, keeping the most recent version of each column.
+         */
+        static Result mergeResults(Result first, Result second) {
+            List<Cell> cells = Lists.newArrayListWithCapacity(first.size() + second.size());
+            if (!first.isEmpty()) {
+                Collections.addAll(cells, first.rawCells());
+            }
+            if (!second.isEmpty()) {
+                Collections.addAll(cells, second.rawCells());
+            }
+            // A Result requires sorted cells, and the most recent version of a column sorts first
+            Collections.sort(cells, KeyValue.COMPARATOR);
+            List<Cell> mergedCells = Lists.newArrayListWithCapacity(cells.size());
+            Cell previous = null;
+            for (Cell cell : cells) {
+                if (previous == null || !CellUtil.matchingColumn(previous, cell)) {
+                    mergedCells.add(cell);
+                }
+                previous = cell;
+            }
+            return Result.create(mergedCells);
+        }
+
+        private boolean containsDeletes(RowData rowData) {
+            for (Cell cell : rowData.getKeyValues()) {
+                if (CellUtil.isDelete(cell)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        protected void calculateIndexUpdates(List<RowData> rowDataList, SolrUpdateCollector updateCollector) throws IOException {
+
+            updateRowCache(rowDataList);
+            Map<String, RowData> idToRowData = calculateUniqueEvents(rowDataList);
+            List<RowData> uniqueRowDataList = Lists.newArrayList(idToRowData.values());
+
+            // Collect the rows that need to be read first, so they can be read at once
+            List<Integer> positionsToRead = Lists.newArrayList();
+            List<Result> results = toResults(uniqueRowDataList, positionsToRead);
+            if (!positionsToRead.isEmpty()) {
+                readRows(uniqueRowDataList, positionsToRead, results);
+            }
+
+            for (int i = 0; i < uniqueRowDataList.size(); i++) {
+                mapRow(uniqueRowDataList.get(i), results.get(i), updateCollector);
+            }
+        }
+
+        /**
+         * Calculate the updates for a single row, based on its current contents.
+         */
+        void mapRow(RowData rowData, Result result, SolrUpdateCollector updateCollector) {
+            String tableName = new String(rowData.getTable(), Charsets.UTF_8);
+
+            boolean rowDeleted = result.isEmpty();
+
+            String documentId;
+            if (uniqueKeyFormatter instanceof UniqueTableKeyFormatter) {
+                documentId = ((UniqueTableKeyFormatter) uniqueKeyFormatter).formatRow(rowData.getRow(),
+                        rowData.getTable());
+            } else {
+                documentId = uniqueKeyFormatter.formatRow(rowData.getRow());
+            }
+
+            if (rowDeleted) {
+                // Delete row from Solr as well
+                updateCollector.deleteById(documentId);
+                if (log.isDebugEnabled()) {
+                    log.debug("Row " + Bytes.toString(rowData.getRow()) + ": deleted from Solr");
+                }
+            } else {
+                IdAddingSolrUpdateWriter idAddingUpdateWriter = new IdAddingSolrUpdateWriter(
+                        conf.getUniqueKeyField(),
+                        documentId,
+                        conf.getTableNameField(),
+                        tableName,
+                        updateCollector);
+                mapper.map(result, idAddingUpdateWriter);
+            }
+            if (rowCache != null) {
+                rowCache.put(rowData, result);
+            }
         }
 
         /**
          * Calculate a map of Solr document ids to relevant RowData, only taking the most recent event for each document id..
          */
-        private Map<String, RowData> calculateUniqueEvents(List<RowData> rowDataList) {
+        Map<String, RowData> calculateUniqueEvents(List<RowData> rowDataList) {
             Map<String, RowData> idToEvent = Maps.newHashMap();
             for (RowData rowData : rowDataList) {
                 // Check if the event contains changes to relevant key values
                 boolean relevant = false;
                 for (Cell kv : rowData.getKeyValues()) {
-                    if (mapper.isRelevantKV((KeyValue)kv) || CellUtil.isDelete(kv)) {
+                    if (mapper.isRelevantKV(KeyValueUtil.ensureKeyValue(kv)) || CellUtil.isDelete(kv)) {
                         relevant = true;
                         break;
                     }
@@ -322,6 +642,217 @@ public abstract class Indexer {
 
     }
 
+    /**
+     * Row-based indexer that reads rows with the asynchronous HBase client.
+     * <p>
+     * The rows of a batch are handled in chunks of rows to read: while the updates of one chunk are calculated and
+     * written to Solr, the rows of the next chunk are already being read. If none of the rows need to be read, the
+     * batch is written to Solr at once. The number of reads that can be outstanding at the same time is limited per
+     * indexer, across all threads using it. The updates of all chunks are written to Solr before
+     * {@link #indexRowData(List)} returns, so a batch is still only acknowledged once it is fully indexed.
+     */
+    static class AsyncRowBasedIndexer extends RowBasedIndexer {
+
+        private final AsyncConnection asyncConnection;
+        private final int maxOutstandingReads;
+        private final Semaphore outstandingReads;
+        private final int chunkSize;
+
+        public AsyncRowBasedIndexer(String indexerName, IndexerConf conf, String tableName, ResultToSolrMapper mapper,
+                                    Connection tablePool, AsyncConnection asyncConnection,
+                                    Sharder sharder, SolrInputDocumentWriter solrWriter) {
+            super(indexerName, conf, tableName, mapper, tablePool, sharder, solrWriter);
+            this.asyncConnection = asyncConnection;
+            this.maxOutstandingReads = conf.getMaxOutstandingReads();
+            this.outstandingReads = new Semaphore(maxOutstandingReads);
+            // Leave room for the reads of the next chunk while the current one is being read
+            this.chunkSize = Math.max(1, maxOutstandingReads / 2);
+            IndexerMetricsUtil.registerGauge(metricName(getClass(), "Outstanding row reads", indexerName),
+                    new Gauge<Integer>() {
+                        @Override
+                        public Integer value() {
+                            return getOutstandingReads();
+                        }
+                    });
+        }
+
+        /**
+         * Returns the number of row reads that are outstanding, or waiting for a read from the primary region.
+         */
+        int getOutstandingReads() {
+            return maxOutstandingReads - outstandingReads.availablePermits();
+        }
+
+        @Override
+        public void indexRowData(List<RowData> rowDataList) throws IOException, SolrServerException, SharderException {
+            updateRowCache(rowDataList);
+            List<RowData> uniqueRowDataList = Lists.newArrayList(calculateUniqueEvents(rowDataList).values());
+            if (uniqueRowDataList.isEmpty()) {
+                return;
+            }
+
+            List<Integer> positionsToRead = Lists.newArrayList();
+            List<Result> results = toResults(uniqueRowDataList, positionsToRead);
+            if (positionsToRead.isEmpty()) {
+                // Nothing to read, so all rows are indexed with a single write
+                SolrUpdateCollector updateCollector = new SolrUpdateCollector(uniqueRowDataList.size());
+                mapRows(uniqueRowDataList, results, updateCollector);
+                writeUpdates(updateCollector);
+                return;
+            }
+
+            // Every chunk reads the same number of rows, rows that don't need to be read go with the read before them
+            List<List<Integer>> chunks = Lists.partition(positionsToRead, chunkSize);
+            PendingReads next = startReads(uniqueRowDataList, results, chunks, 0);
+            for (int i = 0; i < chunks.size(); i++) {
+                PendingReads current = next;
+                next = i + 1 < chunks.size() ? startReads(uniqueRowDataList, results, chunks, i + 1) : null;
+
+                List<Result> chunkResults = current.await();
+                SolrUpdateCollector updateCollector = new SolrUpdateCollector(current.rowDataList.size());
+                mapRows(current.rowDataList, chunkResults, updateCollector);
+                writeUpdates(updateCollector);
+            }
+        }
+
+        private void mapRows(List<RowData> rowDataList, List<Result> results, SolrUpdateCollector updateCollector) {
+            TimerContext timerContext = indexingTimer.time();
+            try {
+                for (int i = 0; i < rowDataList.size(); i++) {
+                    mapRow(rowDataList.get(i), results.get(i), updateCollector);
+                }
+            } finally {
+                timerContext.stop();
+            }
+        }
+
+        /**
+         * Starts reading the rows of a chunk from HBase, waiting until the reads fit within the maximum number of
+         * outstanding reads. A chunk consists of the rows from its first read up to the first read of the next chunk,
+         * the first chunk also includes the rows before its first read.
+         *
+         * @param results the results of all rows, the results of the rows that are read are replaced once read
+         * @param chunks  the positions of the rows to read, per chunk
+         */
+        private PendingReads startReads(List<RowData> rowDataList, final List<Result> results,
+                                        List<List<Integer>> chunks, int chunk) throws IOException {
+            List<Integer> positionsToRead = chunks.get(chunk);
+            int start = chunk == 0 ? 0 : positionsToRead.get(0);
+            int end = chunk + 1 < chunks.size() ? chunks.get(chunk + 1).get(0) : rowDataList.size();
+
+            try {
+                outstandingReads.acquire(positionsToRead.size());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to read rows");
+            }
+
+            final TimerContext timerContext = rowReadTimer.time();
+            List<CompletableFuture<Result>> futures = Lists.newArrayListWithCapacity(positionsToRead.size());
+            // The permits of the reads that were started are released when they complete
+            int unusedPermits = positionsToRead.size();
+            try {
+                Map<TableName, List<Integer>> positionsByTable = groupByTable(rowDataList, positionsToRead);
+                for (Map.Entry<TableName, List<Integer>> entry : positionsByTable.entrySet()) {
+                    List<Integer> tablePositions = entry.getValue();
+                    List<Get> gets = Lists.newArrayListWithCapacity(tablePositions.size());
+                    for (int position : tablePositions) {
+                        gets.add(createGet(rowDataList.get(position), results.get(position)));
+                    }
+                    AsyncTable<?> table = asyncConnection.getTable(entry.getKey());
+                    List<CompletableFuture<Result>> tableResults = table.get(gets);
+                    for (int i = 0; i < tableResults.size(); i++) {
+                        final int position = tablePositions.get(i);
+                        final RowData rowData = rowDataList.get(position);
+                        final Result eventResult = results.get(position);
+                        CompletableFuture<Result> read = tableResults.get(i);
+                        if (conf.getRowReadConsistency() == RowReadConsistency.TIMELINE) {
+                            read = readFromPrimaryIfStale(table, rowData, gets.get(i), read);
+                        }
+                        futures.add(read.whenComplete(new BiConsumer<Result, Throwable>() {
+                            @Override
+                            public void accept(Result result, Throwable throwable) {
+                                outstandingReads.release();
+                                if (result != null) {
+                                    results.set(position, combineResults(rowData, eventResult, result));
+                                }
+                            }
+                        }));
+                        unusedPermits--;
+                    }
+                }
+            } finally {
+                if (unusedPermits > 0) {
+                    // Creating or starting the reads failed, the reads that did start still release their permits
+                    outstandingReads.release(unusedPermits);
+                    timerContext.stop();
+                }
+            }
+            rowReadCount.update(positionsToRead.size());
+
+            CompletableFuture<Void> allRead = CompletableFuture.allOf(
+                    futures.toArray(new CompletableFuture[futures.size()]));
+            allRead.whenComplete(new BiConsumer<Void, Throwable>() {
+                @Override
+                public void accept(Void aVoid, Throwable throwable) {
+                    timerContext.stop();
+                }
+            });
+            return new PendingReads(rowDataList.subList(start, end), results.subList(start, end), allRead);
+        }
+
+        /**
+         * Reads a row again from the primary region if the region replica that returned it is behind the event. The
+         * read from the primary region uses the permit of the original read, which is only released once the
+         * returned future completes.
+         */
+        private CompletableFuture<Result> readFromPrimaryIfStale(final AsyncTable<?> table, final RowData rowData,
+                                                                 final Get get, CompletableFuture<Result> read) {
+            return read.thenCompose(new java.util.function.Function<Result, CompletionStage<Result>>() {
+                @Override
+                public CompletionStage<Result> apply(Result result) {
+                    if (isUpToDate(rowData, result)) {
+                        return CompletableFuture.completedFuture(result);
+                    }
+                    return table.get(createPrimaryGet(get));
+                }
+            });
+        }
+
+        /**
+         * The rows of a chunk, of which some are still being read.
+         */
+        private static class PendingReads {
+            private final List<RowData> rowDataList;
+            private final List<Result> results;
+            private final CompletableFuture<Void> allRead;
+
+            PendingReads(List<RowData> rowDataList, List<Result> results, CompletableFuture<Void> allRead) {
+                this.rowDataList = rowDataList;
+                this.results = results;
+                this.allRead = allRead;
+            }
+
+            /**
+             * Waits until all rows are read, and returns the results, at the same positions as the rows.
+             */
+            List<Result> await() throws IOException {
+                try {
+                    allRead.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while reading rows");
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException)e.getCause();
+                    }
+                    throw new IOException("Error reading rows", e.getCause());
+                }
+                return results;
+            }
+        }
+    }
+
     static class ColumnBasedIndexer extends Indexer {
 
         public ColumnBasedIndexer(String indexerName, IndexerConf conf, String tableName, ResultToSolrMapper mapper,
@@ -433,7 +964,7 @@ public abstract class Indexer {
             Map<String, KeyValue> idToKeyValue = Maps.newHashMap();
             for (RowData rowData : rowDataList) {
                 for (Cell cell : rowData.getKeyValues()) {
-                    KeyValue kv = (KeyValue) cell;
+                    KeyValue kv = KeyValueUtil.ensureKeyValue(cell);
                     if (mapper.isRelevantKV(kv)) {
                         String id;
                         if (uniqueKeyFormatter instanceof UniqueTableKeyFormatter) {
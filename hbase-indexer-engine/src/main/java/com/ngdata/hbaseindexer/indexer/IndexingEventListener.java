@@ -32,8 +32,10 @@ import com.ngdata.sep.EventListener;
 import com.ngdata.sep.SepEvent;
 import com.yammer.metrics.Metrics;
 import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.Timer;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.util.Bytes;
 
 /**
@@ -47,6 +49,7 @@ public class IndexingEventListener implements EventListener {
     private final Indexer indexer;
     private final Meter incomingEventsMeter;
     private final Meter applicableEventsMeter;
+    private final Timer endToEndTimer;
     private Predicate<SepEvent> tableEqualityPredicate;
     
     /**
@@ -62,6 +65,8 @@ public class IndexingEventListener implements EventListener {
                 "Rate of incoming SEP events", TimeUnit.SECONDS);
         applicableEventsMeter = Metrics.newMeter(metricName(getClass(), "Applicable events", indexer.getName()),
                 "Rate of incoming SEP events that are considered applicable", TimeUnit.SECONDS);
+        endToEndTimer = Metrics.newTimer(metricName(getClass(), "End-to-end latency", indexer.getName()),
+                TimeUnit.MILLISECONDS, TimeUnit.SECONDS);
 
         if (targetTableIsRegex) {
             final Pattern tableNamePattern = Pattern.compile(targetTableNameExpression);
@@ -96,12 +101,32 @@ public class IndexingEventListener implements EventListener {
             applicableEventsMeter.mark(events.size());
             
             indexer.indexRowData(Lists.transform(events, SepEventToRowDataFunction.INSTANCE));
+            reportEndToEndLatency(events);
            
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
     
+    /**
+     * Report the time between the write of each event in HBase, and the moment its update was acknowledged by Solr.
+     */
+    private void reportEndToEndLatency(List<SepEvent> events) {
+        long now = System.currentTimeMillis();
+        for (SepEvent event : events) {
+            if (event.getKeyValues() == null) {
+                continue;
+            }
+            long writeTimestamp = 0;
+            for (Cell cell : event.getKeyValues()) {
+                writeTimestamp = Math.max(writeTimestamp, cell.getTimestamp());
+            }
+            if (writeTimestamp > 0) {
+                endToEndTimer.update(Math.max(0, now - writeTimestamp), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
     /**
      * Converts SEP events to lists of KeyValues.
      */
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.hbaseindexer.indexer;
+
+import com.ngdata.hbaseindexer.parse.ResultToSolrMapper;
+import com.ngdata.sep.CellFilter;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.KeyValue;
+
+/**
+ * SEP {@code CellFilter} that only lets through the cells that are relevant to a {@link ResultToSolrMapper}, so
+ * that the cells the mapper doesn't use are dropped as soon as they are received by the SEP consumer.
+ * <p>
+ * This applies the same relevance check that the {@link Indexer} does on the events it receives, and therefore
+ * doesn't change which documents get indexed. The check runs on the threads that receive replication requests, with
+ * mappers that keep state per thread (such as morphline mappers) this creates that state for each of them.
+ */
+public class MapperCellFilter implements CellFilter {
+
+    private final ResultToSolrMapper mapper;
+
+    public MapperCellFilter(ResultToSolrMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    @Override
+    public boolean isRelevant(byte[] tableName, Cell cell) {
+        return mapper.isRelevantKV(cell instanceof KeyValue ? (KeyValue)cell : toCoordinates(cell));
+    }
+
+    /**
+     * Creates a key value with the coordinates of a cell but without its value, for checking the relevance of a
+     * cell without copying all of it on the threads that receive replication requests.
+     */
+    static KeyValue toCoordinates(Cell cell) {
+        return new KeyValue(cell.getRowArray(), cell.getRowOffset(), cell.getRowLength(),
+                cell.getFamilyArray(), cell.getFamilyOffset(), cell.getFamilyLength(),
+                cell.getQualifierArray(), cell.getQualifierOffset(), cell.getQualifierLength(),
+                cell.getTimestamp(), KeyValue.Type.codeToType(cell.getTypeByte()), null, 0, 0);
+    }
+}
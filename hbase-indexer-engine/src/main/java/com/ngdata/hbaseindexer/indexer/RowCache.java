@@ -0,0 +1,276 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.hbaseindexer.indexer;
+
+import static com.ngdata.hbaseindexer.metrics.IndexerMetricsUtil.metricName;
+import static com.ngdata.hbaseindexer.metrics.IndexerMetricsUtil.registerGauge;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.Lists;
+import com.ngdata.hbaseindexer.parse.ResultToSolrMapper;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Meter;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.client.Result;
+
+/**
+ * Cache of the state of recently indexed rows, so that rows that are updated often can be indexed without reading
+ * them from HBase.
+ * <p>
+ * Only the cells the mapper uses are cached, copied out of the buffers they were received in. An entry is created
+ * from a complete result that was mapped, and kept up to date by applying the cells of later events on top of it. Of
+ * each column, the most recent version is kept, so events or reads that arrive out of order never replace newer
+ * data. As the effect of a delete can't be applied reliably, events containing deletes remove the row from the cache.
+ * <p>
+ * The cache is bounded by the (approximate) size of the cached cells in bytes, the least recently used rows are
+ * evicted first. Optionally, rows expire a fixed time after they were read from HBase, whether or not events have
+ * been applied to them since, so that a row that stays in the cache is still read again every so often.
+ * <p>
+ * The cache only sees the events that are delivered to this process. HBase replication ships each batch to a
+ * randomly chosen sink, so when an indexer runs on more than one node, updates of a cached row can be indexed on
+ * another node, after which this cache holds, and indexes, a stale state of the row. Row caching should therefore
+ * only be enabled for indexers that run in a single indexer process.
+ */
+class RowCache {
+
+    private final ResultToSolrMapper mapper;
+    private final Cache<RowKey, CachedRow> cache;
+    private final Ticker ticker;
+    private final long expiryNanos;
+    private final AtomicLong cachedBytes = new AtomicLong();
+    private final Meter hitMeter;
+    private final Meter missMeter;
+
+    /**
+     * @param expirySeconds number of seconds after which a row that was read from HBase expires, 0 for never
+     */
+    RowCache(String indexerName, ResultToSolrMapper mapper, long maxBytes, long expirySeconds) {
+        this(indexerName, mapper, maxBytes, expirySeconds, Ticker.systemTicker());
+    }
+
+    RowCache(String indexerName, ResultToSolrMapper mapper, long maxBytes, long expirySeconds, Ticker ticker) {
+        this.mapper = mapper;
+        this.ticker = ticker;
+        this.expiryNanos = TimeUnit.SECONDS.toNanos(expirySeconds);
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .ticker(ticker);
+        if (expirySeconds > 0) {
+            // Removes rows that haven't been updated since they expired, the others are checked in get
+            builder.expireAfterWrite(expirySeconds, TimeUnit.SECONDS);
+        }
+        this.cache = builder
+                .weigher(new Weigher<RowKey, CachedRow>() {
+                    @Override
+                    public int weigh(RowKey key, CachedRow value) {
+                        return RowCache.weigh(key, value.state);
+                    }
+                })
+                .removalListener(new RemovalListener<RowKey, CachedRow>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<RowKey, CachedRow> notification) {
+                        cachedBytes.addAndGet(-weigh(notification.getKey(), notification.getValue().state));
+                    }
+                })
+                .build();
+
+        hitMeter = Metrics.newMeter(metricName(getClass(), "Row cache hits", indexerName),
+                "Rows indexed without reading them", TimeUnit.SECONDS);
+        missMeter = Metrics.newMeter(metricName(getClass(), "Row cache misses", indexerName),
+                "Rows that had to be read", TimeUnit.SECONDS);
+        registerGauge(metricName(getClass(), "Row cache hit ratio", indexerName), new Gauge<Double>() {
+            @Override
+            public Double value() {
+                long lookups = hitMeter.count() + missMeter.count();
+                return lookups > 0 ? (double)hitMeter.count() / lookups : 0.0;
+            }
+        });
+        registerGauge(metricName(getClass(), "Row cache bytes", indexerName), new Gauge<Long>() {
+            @Override
+            public Long value() {
+                return cachedBytes.get();
+            }
+        });
+        registerGauge(metricName(getClass(), "Row cache rows", indexerName), new Gauge<Long>() {
+            @Override
+            public Long value() {
+                return cache.size();
+            }
+        });
+    }
+
+    /**
+     * Returns the cached state of a row, with the events applied so far, or null if the row isn't cached.
+     */
+    Result get(RowData rowData) {
+        RowKey key = new RowKey(rowData.getTable(), rowData.getRow());
+        CachedRow cached = cache.getIfPresent(key);
+        if (cached != null && isExpired(cached)) {
+            cache.invalidate(key);
+            cached = null;
+        }
+        if (cached != null) {
+            hitMeter.mark();
+            return cached.state;
+        } else {
+            missMeter.mark();
+            return null;
+        }
+    }
+
+    private boolean isExpired(CachedRow cached) {
+        return expiryNanos > 0 && ticker.read() - cached.readTime >= expiryNanos;
+    }
+
+    /**
+     * Applies the cells of an event to the cached state of its row, if the row is cached.
+     */
+    void apply(RowData rowData) {
+        RowKey key = new RowKey(rowData.getTable(), rowData.getRow());
+        if (containsDeletes(rowData.getKeyValues())) {
+            cache.invalidate(key);
+            return;
+        }
+        CachedRow cached = cache.getIfPresent(key);
+        if (cached != null) {
+            // Still expires based on when the row was read
+            store(key, merge(cached.state, rowData.getKeyValues()), cached.readTime);
+        }
+    }
+
+    /**
+     * Caches the complete state of a row that was mapped, or removes the row if it no longer exists.
+     */
+    void put(RowData rowData, Result result) {
+        RowKey key = new RowKey(rowData.getTable(), rowData.getRow());
+        if (result.isEmpty()) {
+            cache.invalidate(key);
+            return;
+        }
+        CachedRow cached = cache.getIfPresent(key);
+        Result state = merge(cached != null ? cached.state : Result.EMPTY_RESULT, Arrays.asList(result.rawCells()));
+        if (state.isEmpty()) {
+            // The mapper doesn't use any of the cells, an empty state would be mistaken for a deleted row
+            cache.invalidate(key);
+        } else {
+            store(key, state, ticker.read());
+        }
+    }
+
+    private void store(RowKey key, Result state, long readTime) {
+        // The weight of a replaced or evicted state is subtracted by the removal listener
+        cachedBytes.addAndGet(weigh(key, state));
+        cache.put(key, new CachedRow(state, readTime));
+    }
+
+    void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Merges the cells the mapper uses into the given state, keeping the most recent version of each column.
+     */
+    private Result merge(Result state, List<Cell> cells) {
+        List<Cell> relevantCells = Lists.newArrayListWithCapacity(cells.size());
+        for (Cell cell : cells) {
+            KeyValue kv = KeyValueUtil.ensureKeyValue(cell);
+            if (mapper.isRelevantKV(kv)) {
+                // The cells of events and reads are views on (much larger) RPC buffers, which the cache shouldn't
+                // keep from being collected, so cache a copy unless ensureKeyValue made one already
+                relevantCells.add(kv == cell ? KeyValueUtil.copyToNewKeyValue(cell) : kv);
+            }
+        }
+        if (relevantCells.isEmpty()) {
+            return state;
+        }
+        return Indexer.RowBasedIndexer.mergeResults(state, Result.create(relevantCells));
+    }
+
+    private static boolean containsDeletes(List<Cell> cells) {
+        for (Cell cell : cells) {
+            if (CellUtil.isDelete(cell)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int weigh(RowKey key, Result value) {
+        long bytes = key.table.length + key.row.length;
+        if (!value.isEmpty()) {
+            for (Cell cell : value.rawCells()) {
+                bytes += KeyValueUtil.length(cell);
+            }
+        }
+        return (int)Math.min(bytes, Integer.MAX_VALUE);
+    }
+
+    /**
+     * The cached state of a row, and when (according to the ticker) it was last read from HBase.
+     */
+    private static class CachedRow {
+        private final Result state;
+        private final long readTime;
+
+        CachedRow(Result state, long readTime) {
+            this.state = state;
+            this.readTime = readTime;
+        }
+    }
+
+    private static class RowKey {
+        private final byte[] table;
+        private final byte[] row;
+        private final int hashCode;
+
+        RowKey(byte[] table, byte[] row) {
+            this.table = table;
+            this.row = row;
+            this.hashCode = 31 * Arrays.hashCode(table) + Arrays.hashCode(row);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof RowKey)) {
+                return false;
+            }
+            RowKey other = (RowKey)obj;
+            return Arrays.equals(row, other.row) && Arrays.equals(table, other.table);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -16,7 +16,9 @@
 package com.ngdata.hbaseindexer.conf;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
@@ -58,6 +60,11 @@ public class DefaultIndexerComponentFactoryTest {
         assertEquals("table1", conf.getTable());
         assertEquals(IndexerConf.MappingType.COLUMN, conf.getMappingType());
         assertEquals(IndexerConf.RowReadMode.NEVER, conf.getRowReadMode());
+        assertEquals(IndexerConf.RowReadConsistency.TIMELINE, conf.getRowReadConsistency());
+        assertTrue(conf.isReadRowAsync());
+        assertEquals(50, conf.getMaxOutstandingReads());
+        assertEquals(1048576L, conf.getRowCacheSize());
+        assertEquals(60L, conf.getRowCacheExpirySeconds());
         assertEquals("custom-id", conf.getUniqueKeyField());
         assertEquals("custom-row", conf.getRowField());
         assertEquals("custom-family", conf.getColumnFamilyField());
@@ -90,6 +97,11 @@ public class DefaultIndexerComponentFactoryTest {
         assertEquals("table1", conf.getTable());
         assertEquals(IndexerConf.DEFAULT_MAPPING_TYPE, conf.getMappingType());
         assertEquals(IndexerConf.DEFAULT_ROW_READ_MODE, conf.getRowReadMode());
+        assertEquals(IndexerConf.DEFAULT_ROW_READ_CONSISTENCY, conf.getRowReadConsistency());
+        assertFalse(conf.isReadRowAsync());
+        assertEquals(IndexerConf.DEFAULT_MAX_OUTSTANDING_READS, conf.getMaxOutstandingReads());
+        assertEquals(IndexerConf.DEFAULT_ROW_CACHE_SIZE, conf.getRowCacheSize());
+        assertEquals(IndexerConf.DEFAULT_ROW_CACHE_EXPIRY_SECONDS, conf.getRowCacheExpirySeconds());
         assertEquals(IndexerConf.DEFAULT_UNIQUE_KEY_FIELD, conf.getUniqueKeyField());
         assertNull(conf.getRowField());
         assertNull(conf.getColumnFamilyField());
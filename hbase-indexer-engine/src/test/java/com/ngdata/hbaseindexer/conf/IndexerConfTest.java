@@ -16,10 +16,13 @@
 
 package com.ngdata.hbaseindexer.conf;
 
+import com.google.common.collect.Sets;
+import com.ngdata.hbaseindexer.conf.FieldDefinition.ValueSource;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class IndexerConfTest {
@@ -53,4 +56,30 @@ public class IndexerConfTest {
     public void testTableNameIsRegex_Regex() {
         assertTrue(new IndexerConf("regex:my.*Name").tableNameIsRegex());
     }
+
+    @Test
+    public void testGetColumnFamilies() {
+        IndexerConf conf = new IndexerConfBuilder()
+                .table("myTableName")
+                .addFieldDefinition("field1", "cfA:qualifier", ValueSource.VALUE, null, null)
+                .addFieldDefinition("field2", "cfB:prefix*", ValueSource.QUALIFIER, null, null)
+                .addDocumentExtractDefinition("doc", "cfA:doc", ValueSource.VALUE, null, null)
+                .build();
+        assertEquals(Sets.newHashSet("cfA", "cfB"), conf.getColumnFamilies());
+    }
+
+    @Test
+    public void testGetColumnFamilies_NoDefinitions() {
+        assertNull(new IndexerConfBuilder().table("myTableName").build().getColumnFamilies());
+    }
+
+    @Test
+    public void testGetColumnFamilies_CustomMapper() {
+        IndexerConf conf = new IndexerConfBuilder()
+                .table("myTableName")
+                .mapperClass(TestResultToSolrMapper.class)
+                .addFieldDefinition("field1", "cfA:qualifier", ValueSource.VALUE, null, null)
+                .build();
+        assertNull(conf.getColumnFamilies());
+    }
 }
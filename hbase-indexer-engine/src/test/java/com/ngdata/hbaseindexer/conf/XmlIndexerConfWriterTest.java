@@ -38,6 +38,11 @@ public class XmlIndexerConfWriterTest {
                 .table("regex:my.*table")
                 .mappingType(IndexerConf.MappingType.COLUMN)
                 .rowReadMode(IndexerConf.RowReadMode.DYNAMIC)
+                .rowReadConsistency(IndexerConf.RowReadConsistency.TIMELINE)
+                .readRowAsync(true)
+                .maxOutstandingReads(20)
+                .rowCacheSize(1024L * 1024)
+                .rowCacheExpirySeconds(60L)
                 .uniqueyKeyField("keyfield")
                 .rowField("rf")
                 .columnFamilyField("cf-field")
@@ -55,6 +60,11 @@ public class XmlIndexerConfWriterTest {
         Assert.assertEquals(true, conf2.tableNameIsRegex());
         Assert.assertEquals(conf.getMappingType(),conf2.getMappingType());
         Assert.assertEquals(conf.getRowReadMode(),conf2.getRowReadMode());
+        Assert.assertEquals(conf.getRowReadConsistency(),conf2.getRowReadConsistency());
+        Assert.assertEquals(conf.isReadRowAsync(),conf2.isReadRowAsync());
+        Assert.assertEquals(conf.getMaxOutstandingReads(),conf2.getMaxOutstandingReads());
+        Assert.assertEquals(conf.getRowCacheSize(),conf2.getRowCacheSize());
+        Assert.assertEquals(conf.getRowCacheExpirySeconds(),conf2.getRowCacheExpirySeconds());
         Assert.assertEquals(conf.getUniqueKeyField(),conf2.getUniqueKeyField());
         Assert.assertEquals(conf.getRowField(),conf2.getRowField());
         Assert.assertEquals(conf.getColumnFamilyField(),conf2.getColumnFamilyField());
@@ -23,9 +23,12 @@ import com.google.common.collect.Sets;
 import com.ngdata.hbaseindexer.conf.IndexerConf;
 import com.ngdata.hbaseindexer.conf.IndexerConf.RowReadMode;
 import com.ngdata.hbaseindexer.conf.IndexerConfBuilder;
+import com.ngdata.hbaseindexer.metrics.IndexerMetricsUtil;
 import com.ngdata.hbaseindexer.parse.ResultToSolrMapper;
 import com.ngdata.hbaseindexer.parse.SolrUpdateWriter;
 import com.ngdata.sep.SepEvent;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Timer;
 
 import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.CellUtil;
@@ -49,7 +52,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import static com.ngdata.hbaseindexer.metrics.IndexerMetricsUtil.metricName;
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.anyMap;
 import static org.mockito.Mockito.atLeastOnce;
@@ -270,6 +275,29 @@ public class IndexingEventListenerTest {
         assertEquals(Sets.newHashSet("row1-messages-msg1","row1-messages-msg2"), documentIds);
     }
 
+    @Test
+    public void testEndToEndLatency() throws Exception {
+        IndexerConf conf = new IndexerConfBuilder().table(TABLE_A).build();
+        when(tableA.get(any(Get.class))).thenReturn(new Result());
+        ResultToSolrMapper mapper = mock(ResultToSolrMapper.class);
+        when(mapper.isRelevantKV(any(KeyValue.class))).thenReturn(true);
+        Indexer indexer = Indexer.createIndexer("end-to-end", conf, "record", mapper, tablePool, null,
+                solrDocumentWriter);
+        IndexingEventListener indexingEventListener = new IndexingEventListener(indexer, TABLE_A, false);
+
+        long writeTimestamp = System.currentTimeMillis() - 5000;
+        List<Cell> kvs = Lists.newArrayList((Cell)new KeyValue(Bytes.toBytes("row1"), Bytes.toBytes("cf"),
+                Bytes.toBytes("qual"), writeTimestamp, Bytes.toBytes("value")));
+        SepEvent event = new SepEvent(Bytes.toBytes(TABLE_A), Bytes.toBytes("row1"), kvs, null);
+        indexingEventListener.processEvents(Collections.singletonList(event));
+
+        Timer endToEndTimer = (Timer)Metrics.defaultRegistry().allMetrics().get(
+                metricName(IndexingEventListener.class, "End-to-end latency", "end-to-end"));
+        assertEquals(1, endToEndTimer.count());
+        assertTrue(endToEndTimer.max() >= 5000);
+        IndexerMetricsUtil.shutdownMetrics("end-to-end");
+    }
+
     @Test
     public void testMultitableEvents() throws Exception {
         final String tablePrefix = "_multitable_";
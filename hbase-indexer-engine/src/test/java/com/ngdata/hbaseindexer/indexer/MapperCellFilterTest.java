@@ -0,0 +1,86 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.hbaseindexer.indexer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+
+import com.google.common.collect.Lists;
+import com.ngdata.hbaseindexer.conf.DocumentExtractDefinition;
+import com.ngdata.hbaseindexer.conf.FieldDefinition;
+import com.ngdata.hbaseindexer.conf.FieldDefinition.ValueSource;
+import com.ngdata.hbaseindexer.parse.DefaultResultToSolrMapper;
+import org.apache.hadoop.hbase.ByteBufferKeyValue;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MapperCellFilterTest {
+
+    private static final byte[] TABLE = Bytes.toBytes("table");
+    private static final byte[] ROW = Bytes.toBytes("row");
+
+    private MapperCellFilter cellFilter;
+
+    @Before
+    public void setUp() {
+        DefaultResultToSolrMapper mapper = new DefaultResultToSolrMapper("index-name", Lists.newArrayList(
+                new FieldDefinition("fieldA", "cfA:qualifierA", ValueSource.VALUE, "string"),
+                new FieldDefinition("fieldB", "cfB:prefix*", ValueSource.VALUE, "string")),
+                Collections.<DocumentExtractDefinition>emptyList());
+        cellFilter = new MapperCellFilter(mapper);
+    }
+
+    @Test
+    public void testIsRelevant_MappedQualifier() {
+        assertTrue(cellFilter.isRelevant(TABLE, cell("cfA", "qualifierA")));
+        assertFalse(cellFilter.isRelevant(TABLE, cell("cfA", "qualifierB")));
+    }
+
+    @Test
+    public void testIsRelevant_MappedPrefix() {
+        assertTrue(cellFilter.isRelevant(TABLE, cell("cfB", "prefix_1")));
+        assertFalse(cellFilter.isRelevant(TABLE, cell("cfB", "other")));
+    }
+
+    @Test
+    public void testIsRelevant_UnmappedFamily() {
+        assertFalse(cellFilter.isRelevant(TABLE, cell("cfC", "qualifierA")));
+    }
+
+    @Test
+    public void testIsRelevant_CellThatIsNotAKeyValue() {
+        KeyValue kv = cell("cfA", "qualifierA");
+        Cell cell = new ByteBufferKeyValue(ByteBuffer.wrap(kv.getBuffer()), kv.getOffset(), kv.getLength());
+        assertTrue(cellFilter.isRelevant(TABLE, cell));
+
+        KeyValue coordinates = MapperCellFilter.toCoordinates(cell);
+        assertTrue(CellUtil.matchingColumn(coordinates, kv));
+        assertTrue(CellUtil.matchingRows(coordinates, kv));
+        assertEquals(0, coordinates.getValueLength());
+    }
+
+    private static KeyValue cell(String family, String qualifier) {
+        return new KeyValue(ROW, Bytes.toBytes(family), Bytes.toBytes(qualifier), 1L, Bytes.toBytes("value"));
+    }
+}
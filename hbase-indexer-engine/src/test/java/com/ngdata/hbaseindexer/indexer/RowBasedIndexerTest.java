@@ -16,31 +16,59 @@
 package com.ngdata.hbaseindexer.indexer;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.ngdata.hbaseindexer.conf.IndexerConf;
 import com.ngdata.hbaseindexer.conf.IndexerConf.MappingType;
+import com.ngdata.hbaseindexer.conf.IndexerConf.RowReadConsistency;
+import com.ngdata.hbaseindexer.conf.IndexerConf.RowReadMode;
 import com.ngdata.hbaseindexer.conf.IndexerConfBuilder;
+import com.ngdata.hbaseindexer.indexer.Indexer.AsyncRowBasedIndexer;
 import com.ngdata.hbaseindexer.indexer.Indexer.RowBasedIndexer;
 import com.ngdata.hbaseindexer.parse.ResultToSolrMapper;
+import com.ngdata.hbaseindexer.parse.SolrUpdateWriter;
 import com.ngdata.sep.SepEvent;
 
 import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.KeyValue.Type;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.AsyncConnection;
+import org.apache.hadoop.hbase.client.AsyncTable;
 import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.Consistency;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Table;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.solr.common.SolrInputDocument;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 public class RowBasedIndexerTest {
     
@@ -165,4 +193,358 @@ public class RowBasedIndexerTest {
         assertTrue(updateCollector.getDocumentsToAdd().isEmpty());
     }
 
+    @Test
+    public void testCalculateIndexUpdates_ReadRowsWithSingleMultiGet() throws IOException {
+        Table table = mock(Table.class);
+        when(tablePool.getTable(TableName.valueOf(TABLE_NAME))).thenReturn(table);
+        KeyValue storedKeyValue = new KeyValue(Bytes.toBytes("row1"), Bytes.toBytes("_cf_"), Bytes.toBytes("_qual_"),
+                Bytes.toBytes("value"));
+        when(table.get(anyListOf(Get.class))).thenReturn(new Result[] {
+                Result.create(Lists.<Cell>newArrayList(storedKeyValue)), Result.create(Lists.<Cell>newArrayList()) });
+        RowBasedIndexer indexer = new RowBasedIndexer("row-based", indexerConf, TABLE_NAME,
+                IndexingEventListenerTest.createHbaseToSolrMapper(false), tablePool, null, solrWriter);
+
+        RowData rowData1 = createEventRowData("row1", new KeyValue(Bytes.toBytes("row1"), Bytes.toBytes("_cf_"),
+                Bytes.toBytes("_qual_"), Bytes.toBytes("value")));
+        RowData rowData2 = createEventRowData("row2", new KeyValue(Bytes.toBytes("row2"), Bytes.toBytes("_cf_"),
+                Bytes.toBytes("_qual_"), Bytes.toBytes("value")));
+        indexer.calculateIndexUpdates(ImmutableList.of(rowData1, rowData2), updateCollector);
+
+        ArgumentCaptor<List> getsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(table, times(1)).get(getsCaptor.capture());
+        assertEquals(2, getsCaptor.getValue().size());
+        // The results are mapped to the rows they were read for, no matter the order of the gets
+        List<Get> gets = getsCaptor.getValue();
+        String firstRow = Bytes.toString(gets.get(0).getRow());
+        assertEquals(1, updateCollector.getDocumentsToAdd().size());
+        assertTrue(updateCollector.getDocumentsToAdd().containsKey(firstRow));
+        assertEquals(Lists.newArrayList(firstRow.equals("row1") ? "row2" : "row1"), updateCollector.getIdsToDelete());
+    }
+
+    @Test
+    public void testCalculateIndexUpdates_MergeReadsOnlyMissingColumns() throws IOException {
+        Table table = mock(Table.class);
+        when(tablePool.getTable(TableName.valueOf(TABLE_NAME))).thenReturn(table);
+        when(table.get(any(Get.class))).thenReturn(Result.create(Lists.<Cell>newArrayList(
+                new KeyValue(Bytes.toBytes("row1"), Bytes.toBytes("_cf_"), Bytes.toBytes("_qual2_"),
+                        Bytes.toBytes("stored2")))));
+        final List<Result> mappedResults = Lists.newArrayList();
+        ResultToSolrMapper mapper = new ResultToSolrMapper() {
+            @Override
+            public boolean isRelevantKV(KeyValue kv) {
+                return true;
+            }
+
+            @Override
+            public Get getGet(byte[] row) {
+                return new Get(row).addColumn(Bytes.toBytes("_cf_"), Bytes.toBytes("_qual1_"))
+                        .addColumn(Bytes.toBytes("_cf_"), Bytes.toBytes("_qual2_"));
+            }
+
+            @Override
+            public void map(Result result, SolrUpdateWriter solrUpdateWriter) {
+                mappedResults.add(result);
+                solrUpdateWriter.add(new SolrInputDocument());
+            }
+
+            @Override
+            public boolean containsRequiredData(Result result) {
+                return false;
+            }
+        };
+        IndexerConf conf = new IndexerConfBuilder().table(TABLE_NAME).mappingType(MappingType.ROW)
+                .rowReadMode(RowReadMode.MERGE).build();
+        RowBasedIndexer indexer = new RowBasedIndexer("row-based", conf, TABLE_NAME, mapper, tablePool, null,
+                solrWriter);
+
+        RowData rowData = createEventRowData("row1", new KeyValue(Bytes.toBytes("row1"), Bytes.toBytes("_cf_"),
+                Bytes.toBytes("_qual1_"), Bytes.toBytes("value1")));
+        indexer.calculateIndexUpdates(ImmutableList.of(rowData), updateCollector);
+
+        ArgumentCaptor<Get> getCaptor = ArgumentCaptor.forClass(Get.class);
+        verify(table).get(getCaptor.capture());
+        NavigableSet<byte[]> qualifiers = getCaptor.getValue().getFamilyMap().get(Bytes.toBytes("_cf_"));
+        assertEquals(1, qualifiers.size());
+        assertEquals("_qual2_", Bytes.toString(qualifiers.first()));
+
+        assertEquals(1, mappedResults.size());
+        Result merged = mappedResults.get(0);
+        assertEquals(2, merged.size());
+        assertEquals("value1", Bytes.toString(merged.getValue(Bytes.toBytes("_cf_"), Bytes.toBytes("_qual1_"))));
+        assertEquals("stored2", Bytes.toString(merged.getValue(Bytes.toBytes("_cf_"), Bytes.toBytes("_qual2_"))));
+    }
+
+    @Test
+    public void testCalculateIndexUpdates_RowCacheAvoidsRead() throws IOException {
+        Table table = mock(Table.class);
+        when(tablePool.getTable(TableName.valueOf(TABLE_NAME))).thenReturn(table);
+        when(table.get(any(Get.class))).thenReturn(Result.create(Lists.<Cell>newArrayList(
+                new KeyValue(Bytes.toBytes("row1"), Bytes.toBytes("_cf_"), Bytes.toBytes("_qual_"), 1L,
+                        Bytes.toBytes("value")))));
+        IndexerConf conf = new IndexerConfBuilder().table(TABLE_NAME).mappingType(MappingType.ROW)
+                .rowCacheSize(1024L * 1024).build();
+        // The cached state is complete as soon as it has a cell
+        ResultToSolrMapper mapper = new ResultToSolrMapper() {
+            @Override
+            public boolean isRelevantKV(KeyValue kv) {
+                return true;
+            }
+
+            @Override
+            public Get getGet(byte[] row) {
+                return new Get(row);
+            }
+
+            @Override
+            public void map(Result result, SolrUpdateWriter solrUpdateWriter) {
+                solrUpdateWriter.add(new SolrInputDocument());
+            }
+
+            @Override
+            public boolean containsRequiredData(Result result) {
+                return result.size() > 1 || result.containsColumn(Bytes.toBytes("_cf_"), Bytes.toBytes("_qual_"));
+            }
+        };
+        RowBasedIndexer indexer = new RowBasedIndexer("row-based-cache", conf, TABLE_NAME, mapper, tablePool, null,
+                solrWriter);
+
+        indexer.calculateIndexUpdates(ImmutableList.of(createEventRowData("row1", new KeyValue(Bytes.toBytes("row1"),
+                Bytes.toBytes("_cf_"), Bytes.toBytes("_other_"), 2L, Bytes.toBytes("value")))), updateCollector);
+        indexer.calculateIndexUpdates(ImmutableList.of(createEventRowData("row1", new KeyValue(Bytes.toBytes("row1"),
+                Bytes.toBytes("_cf_"), Bytes.toBytes("_other_"), 3L, Bytes.toBytes("value")))), updateCollector);
+
+        verify(table, times(1)).get(any(Get.class));
+        assertEquals(1, updateCollector.getDocumentsToAdd().size());
+    }
+
+    @Test
+    public void testCalculateIndexUpdates_TimelineReadFallsBackToPrimaryWhenStale() throws IOException {
+        Table table = mock(Table.class);
+        when(tablePool.getTable(TableName.valueOf(TABLE_NAME))).thenReturn(table);
+        Result replicaResult = Result.create(Lists.<Cell>newArrayList(new KeyValue(Bytes.toBytes("row1"),
+                Bytes.toBytes("_cf_"), Bytes.toBytes("_qual_"), 1L, Bytes.toBytes("old"))), null, true);
+        Result primaryResult = Result.create(Lists.<Cell>newArrayList(new KeyValue(Bytes.toBytes("row1"),
+                Bytes.toBytes("_cf_"), Bytes.toBytes("_qual_"), 2L, Bytes.toBytes("new"))));
+        when(table.get(any(Get.class))).thenReturn(replicaResult, primaryResult);
+        IndexerConf conf = new IndexerConfBuilder().table(TABLE_NAME).mappingType(MappingType.ROW)
+                .rowReadConsistency(RowReadConsistency.TIMELINE).build();
+        RowBasedIndexer indexer = new RowBasedIndexer("row-based-timeline", conf, TABLE_NAME,
+                IndexingEventListenerTest.createHbaseToSolrMapper(false), tablePool, null, solrWriter);
+
+        RowData rowData = createEventRowData("row1", new KeyValue(Bytes.toBytes("row1"), Bytes.toBytes("_cf_"),
+                Bytes.toBytes("_qual_"), 2L, Bytes.toBytes("new")));
+        assertTrue(indexer.isUpToDate(rowData, primaryResult));
+        assertFalse(indexer.isUpToDate(rowData, replicaResult));
+        indexer.calculateIndexUpdates(ImmutableList.of(rowData), updateCollector);
+
+        ArgumentCaptor<Get> getCaptor = ArgumentCaptor.forClass(Get.class);
+        verify(table, times(2)).get(getCaptor.capture());
+        assertEquals(Consistency.TIMELINE, getCaptor.getAllValues().get(0).getConsistency());
+        assertEquals(Consistency.STRONG, getCaptor.getAllValues().get(1).getConsistency());
+        assertEquals(1, updateCollector.getDocumentsToAdd().size());
+    }
+
+    @Test
+    public void testCalculateIndexUpdates_MergeWithTimelineReadsColumnsOfEvent() throws IOException {
+        Table table = mock(Table.class);
+        when(tablePool.getTable(TableName.valueOf(TABLE_NAME))).thenReturn(table);
+        // The replica caught up with the event
+        when(table.get(any(Get.class))).thenReturn(Result.create(Lists.<Cell>newArrayList(
+                new KeyValue(Bytes.toBytes("row1"), Bytes.toBytes("_cf_"), Bytes.toBytes("_qual1_"), 2L,
+                        Bytes.toBytes("value1")),
+                new KeyValue(Bytes.toBytes("row1"), Bytes.toBytes("_cf_"), Bytes.toBytes("_qual2_"), 1L,
+                        Bytes.toBytes("stored2"))), null, true));
+        final List<Result> mappedResults = Lists.newArrayList();
+        ResultToSolrMapper mapper = new ResultToSolrMapper() {
+            @Override
+            public boolean isRelevantKV(KeyValue kv) {
+                return true;
+            }
+
+            @Override
+            public Get getGet(byte[] row) {
+                return new Get(row).addColumn(Bytes.toBytes("_cf_"), Bytes.toBytes("_qual1_"))
+                        .addColumn(Bytes.toBytes("_cf_"), Bytes.toBytes("_qual2_"));
+            }
+
+            @Override
+            public void map(Result result, SolrUpdateWriter solrUpdateWriter) {
+                mappedResults.add(result);
+                solrUpdateWriter.add(new SolrInputDocument());
+            }
+
+            @Override
+            public boolean containsRequiredData(Result result) {
+                return false;
+            }
+        };
+        IndexerConf conf = new IndexerConfBuilder().table(TABLE_NAME).mappingType(MappingType.ROW)
+                .rowReadMode(RowReadMode.MERGE).rowReadConsistency(RowReadConsistency.TIMELINE).build();
+        RowBasedIndexer indexer = new RowBasedIndexer("row-based-merge-timeline", conf, TABLE_NAME, mapper,
+                tablePool, null, solrWriter);
+
+        RowData rowData = createEventRowData("row1", new KeyValue(Bytes.toBytes("row1"), Bytes.toBytes("_cf_"),
+                Bytes.toBytes("_qual1_"), 2L, Bytes.toBytes("value1")));
+        indexer.calculateIndexUpdates(ImmutableList.of(rowData), updateCollector);
+
+        // The column of the event is needed to tell that the replica is up to date, so no read from the primary
+        ArgumentCaptor<Get> getCaptor = ArgumentCaptor.forClass(Get.class);
+        verify(table).get(getCaptor.capture());
+        assertEquals(Consistency.TIMELINE, getCaptor.getValue().getConsistency());
+        assertEquals(2, getCaptor.getValue().getFamilyMap().get(Bytes.toBytes("_cf_")).size());
+
+        assertEquals(1, mappedResults.size());
+        Result merged = mappedResults.get(0);
+        assertEquals(2, merged.size());
+        assertEquals("value1", Bytes.toString(merged.getValue(Bytes.toBytes("_cf_"), Bytes.toBytes("_qual1_"))));
+        assertEquals("stored2", Bytes.toString(merged.getValue(Bytes.toBytes("_cf_"), Bytes.toBytes("_qual2_"))));
+    }
+
+    @Test
+    public void testIndexRowData_AsyncReadsInChunks() throws Exception {
+        AsyncConnection asyncConnection = mock(AsyncConnection.class);
+        AsyncTable table = mock(AsyncTable.class);
+        doReturn(table).when(asyncConnection).getTable(TableName.valueOf(TABLE_NAME));
+        when(table.get(anyListOf(Get.class))).thenAnswer(new Answer<List<CompletableFuture<Result>>>() {
+            @Override
+            public List<CompletableFuture<Result>> answer(InvocationOnMock invocation) {
+                List<Get> gets = (List<Get>)invocation.getArguments()[0];
+                List<CompletableFuture<Result>> results = Lists.newArrayList();
+                for (Get get : gets) {
+                    results.add(CompletableFuture.completedFuture(Result.create(Lists.<Cell>newArrayList(
+                            new KeyValue(get.getRow(), Bytes.toBytes("_cf_"), Bytes.toBytes("_qual_"),
+                                    Bytes.toBytes("value"))))));
+                }
+                return results;
+            }
+        });
+        IndexerConf conf = new IndexerConfBuilder().table(TABLE_NAME).mappingType(MappingType.ROW)
+                .readRowAsync(true).maxOutstandingReads(2).build();
+        Indexer indexer = Indexer.createIndexer("row-based-async", conf, TABLE_NAME,
+                IndexingEventListenerTest.createHbaseToSolrMapper(false), tablePool, asyncConnection, null, solrWriter);
+        assertTrue(indexer instanceof AsyncRowBasedIndexer);
+
+        List<RowData> rowDataList = Lists.newArrayList();
+        for (int i = 0; i < 3; i++) {
+            String row = "row" + i;
+            rowDataList.add(createEventRowData(row, new KeyValue(Bytes.toBytes(row), Bytes.toBytes("_cf_"),
+                    Bytes.toBytes("_qual_"), Bytes.toBytes("value"))));
+        }
+        indexer.indexRowData(rowDataList);
+
+        // Two outstanding reads means chunks of one row, each chunk is written separately
+        verify(table, times(3)).get(anyListOf(Get.class));
+        ArgumentCaptor<Map> addsCaptor = ArgumentCaptor.forClass(Map.class);
+        verify(solrWriter, times(3)).add(eq(-1), addsCaptor.capture());
+        Set<Object> documentIds = Sets.newHashSet();
+        for (Map adds : addsCaptor.getAllValues()) {
+            assertEquals(1, adds.size());
+            documentIds.addAll(adds.keySet());
+        }
+        assertEquals(Sets.<Object>newHashSet("row0", "row1", "row2"), documentIds);
+    }
+
+    @Test
+    public void testIndexRowData_AsyncNothingToRead() throws Exception {
+        AsyncConnection asyncConnection = mock(AsyncConnection.class);
+        IndexerConf conf = new IndexerConfBuilder().table(TABLE_NAME).mappingType(MappingType.ROW)
+                .readRowAsync(true).maxOutstandingReads(2).build();
+        Indexer indexer = Indexer.createIndexer("row-based-async", conf, TABLE_NAME,
+                IndexingEventListenerTest.createHbaseToSolrMapper(true), tablePool, asyncConnection, null, solrWriter);
+
+        List<RowData> rowDataList = Lists.newArrayList();
+        for (int i = 0; i < 3; i++) {
+            String row = "row" + i;
+            rowDataList.add(createEventRowData(row, new KeyValue(Bytes.toBytes(row), Bytes.toBytes("_cf_"),
+                    Bytes.toBytes("_qual_"), Bytes.toBytes("value"))));
+        }
+        indexer.indexRowData(rowDataList);
+
+        // The events contain all data, so the rows are not split in chunks
+        verifyZeroInteractions(asyncConnection);
+        ArgumentCaptor<Map> addsCaptor = ArgumentCaptor.forClass(Map.class);
+        verify(solrWriter, times(1)).add(eq(-1), addsCaptor.capture());
+        assertEquals(Sets.<Object>newHashSet("row0", "row1", "row2"), addsCaptor.getValue().keySet());
+    }
+
+    @Test
+    public void testIndexRowData_AsyncReadFailure() throws Exception {
+        AsyncConnection asyncConnection = mock(AsyncConnection.class);
+        AsyncTable table = mock(AsyncTable.class);
+        doReturn(table).when(asyncConnection).getTable(TableName.valueOf(TABLE_NAME));
+        CompletableFuture<Result> failedRead = new CompletableFuture<Result>();
+        failedRead.completeExceptionally(new IOException("region server gone"));
+        when(table.get(anyListOf(Get.class))).thenReturn(Lists.newArrayList(failedRead));
+        IndexerConf conf = new IndexerConfBuilder().table(TABLE_NAME).mappingType(MappingType.ROW)
+                .readRowAsync(true).build();
+        Indexer indexer = Indexer.createIndexer("row-based-async", conf, TABLE_NAME,
+                IndexingEventListenerTest.createHbaseToSolrMapper(false), tablePool, asyncConnection, null, solrWriter);
+
+        try {
+            indexer.indexRowData(ImmutableList.of(createEventRowData("row1", new KeyValue(Bytes.toBytes("row1"),
+                    Bytes.toBytes("_cf_"), Bytes.toBytes("_qual_"), Bytes.toBytes("value")))));
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertEquals("region server gone", e.getMessage());
+        }
+        verifyZeroInteractions(solrWriter);
+    }
+
+    @Test
+    public void testIndexRowData_AsyncReadNotStarted() throws Exception {
+        AsyncConnection asyncConnection = mock(AsyncConnection.class);
+        when(asyncConnection.getTable(TableName.valueOf(TABLE_NAME))).thenThrow(new IllegalStateException("closed"));
+        IndexerConf conf = new IndexerConfBuilder().table(TABLE_NAME).mappingType(MappingType.ROW)
+                .readRowAsync(true).build();
+        AsyncRowBasedIndexer indexer = (AsyncRowBasedIndexer)Indexer.createIndexer("row-based-async", conf,
+                TABLE_NAME, IndexingEventListenerTest.createHbaseToSolrMapper(false), tablePool, asyncConnection, null,
+                solrWriter);
+
+        try {
+            indexer.indexRowData(ImmutableList.of(createEventRowData("row1", new KeyValue(Bytes.toBytes("row1"),
+                    Bytes.toBytes("_cf_"), Bytes.toBytes("_qual_"), Bytes.toBytes("value")))));
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertEquals("closed", e.getMessage());
+        }
+        // The permits of the reads that were never started are given back
+        assertEquals(0, indexer.getOutstandingReads());
+    }
+
+    @Test
+    public void testIndexRowData_AsyncPrimaryReadHoldsPermit() throws Exception {
+        AsyncConnection asyncConnection = mock(AsyncConnection.class);
+        AsyncTable table = mock(AsyncTable.class);
+        doReturn(table).when(asyncConnection).getTable(TableName.valueOf(TABLE_NAME));
+        Result replicaResult = Result.create(Lists.<Cell>newArrayList(new KeyValue(Bytes.toBytes("row1"),
+                Bytes.toBytes("_cf_"), Bytes.toBytes("_qual_"), 1L, Bytes.toBytes("old"))), null, true);
+        when(table.get(anyListOf(Get.class))).thenReturn(
+                Lists.newArrayList(CompletableFuture.completedFuture(replicaResult)));
+        IndexerConf conf = new IndexerConfBuilder().table(TABLE_NAME).mappingType(MappingType.ROW)
+                .readRowAsync(true).rowReadConsistency(RowReadConsistency.TIMELINE).build();
+        final AsyncRowBasedIndexer indexer = (AsyncRowBasedIndexer)Indexer.createIndexer("row-based-async", conf,
+                TABLE_NAME, IndexingEventListenerTest.createHbaseToSolrMapper(false), tablePool, asyncConnection, null,
+                solrWriter);
+        final List<Integer> outstandingReads = Lists.newArrayList();
+        when(table.get(any(Get.class))).thenAnswer(new Answer<CompletableFuture<Result>>() {
+            @Override
+            public CompletableFuture<Result> answer(InvocationOnMock invocation) {
+                outstandingReads.add(indexer.getOutstandingReads());
+                Get get = (Get)invocation.getArguments()[0];
+                assertEquals(Consistency.STRONG, get.getConsistency());
+                return CompletableFuture.completedFuture(Result.create(Lists.<Cell>newArrayList(
+                        new KeyValue(get.getRow(), Bytes.toBytes("_cf_"), Bytes.toBytes("_qual_"), 2L,
+                                Bytes.toBytes("new")))));
+            }
+        });
+
+        indexer.indexRowData(ImmutableList.of(createEventRowData("row1", new KeyValue(Bytes.toBytes("row1"),
+                Bytes.toBytes("_cf_"), Bytes.toBytes("_qual_"), 2L, Bytes.toBytes("new")))));
+
+        // The read from the primary region counts as outstanding until it completes
+        assertEquals(Lists.newArrayList(1), outstandingReads);
+        assertEquals(0, indexer.getOutstandingReads());
+        verify(solrWriter).add(eq(-1), any(Map.class));
+    }
+
 }
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.hbaseindexer.indexer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.Lists;
+import com.ngdata.hbaseindexer.metrics.IndexerMetricsUtil;
+import com.ngdata.hbaseindexer.parse.ResultToSolrMapper;
+import com.ngdata.hbaseindexer.parse.SolrUpdateWriter;
+import com.ngdata.sep.SepEvent;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValue.Type;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RowCacheTest {
+
+    private static final String INDEXER_NAME = "row-cache-test";
+    private static final byte[] TABLE = Bytes.toBytes("table");
+    private static final byte[] CF = Bytes.toBytes("cf");
+    private static final byte[] OTHER_CF = Bytes.toBytes("other");
+    private static final byte[] QUAL1 = Bytes.toBytes("qual1");
+    private static final byte[] QUAL2 = Bytes.toBytes("qual2");
+
+    private ResultToSolrMapper mapper;
+    private RowCache rowCache;
+
+    @Before
+    public void setUp() {
+        mapper = new ResultToSolrMapper() {
+            @Override
+            public boolean isRelevantKV(KeyValue kv) {
+                return CellUtil.matchingFamily(kv, CF);
+            }
+
+            @Override
+            public Get getGet(byte[] row) {
+                return new Get(row).addFamily(CF);
+            }
+
+            @Override
+            public void map(Result result, SolrUpdateWriter solrUpdateWriter) {
+            }
+
+            @Override
+            public boolean containsRequiredData(Result result) {
+                return result.containsColumn(CF, QUAL1) && result.containsColumn(CF, QUAL2);
+            }
+        };
+        rowCache = new RowCache(INDEXER_NAME, mapper, 1024 * 1024, 0);
+    }
+
+    @After
+    public void tearDown() {
+        IndexerMetricsUtil.shutdownMetrics(INDEXER_NAME);
+    }
+
+    private RowData rowData(String row, Cell... cells) {
+        return new SepEventRowData(new SepEvent(TABLE, Bytes.toBytes(row), Lists.newArrayList(cells), null));
+    }
+
+    private Result result(Cell... cells) {
+        return Result.create(Lists.newArrayList(cells));
+    }
+
+    @Test
+    public void testPut_OnlyRelevantCellsCached() {
+        RowData rowData = rowData("row1");
+        rowCache.put(rowData, result(new KeyValue(Bytes.toBytes("row1"), CF, QUAL1, 1L, Bytes.toBytes("a")),
+                new KeyValue(Bytes.toBytes("row1"), OTHER_CF, QUAL1, 1L, Bytes.toBytes("b"))));
+
+        Result cached = rowCache.get(rowData);
+        assertEquals(1, cached.size());
+        assertEquals("a", Bytes.toString(cached.getValue(CF, QUAL1)));
+    }
+
+    @Test
+    public void testPut_CellsCopiedOutOfBuffer() {
+        // A cell that is a view on a larger buffer, as the cells of events and reads received over RPC are
+        KeyValue cell = new KeyValue(Bytes.toBytes("row1"), CF, QUAL1, 1L, Bytes.toBytes("a"));
+        byte[] buffer = new byte[cell.getLength() + 1000];
+        System.arraycopy(cell.getBuffer(), cell.getOffset(), buffer, 500, cell.getLength());
+        KeyValue bufferedCell = new KeyValue(buffer, 500, cell.getLength());
+
+        rowCache.put(rowData("row1"), result(bufferedCell));
+
+        Cell cached = rowCache.get(rowData("row1")).rawCells()[0];
+        assertEquals(cell.getLength(), cached.getRowArray().length);
+        assertEquals("a", Bytes.toString(CellUtil.cloneValue(cached)));
+    }
+
+    @Test
+    public void testGet_NotCached() {
+        assertNull(rowCache.get(rowData("row1")));
+    }
+
+    @Test
+    public void testApply_NewerCellsReplaceCachedCells() {
+        rowCache.put(rowData("row1"), result(new KeyValue(Bytes.toBytes("row1"), CF, QUAL1, 1L, Bytes.toBytes("a")),
+                new KeyValue(Bytes.toBytes("row1"), CF, QUAL2, 1L, Bytes.toBytes("b"))));
+
+        rowCache.apply(rowData("row1", new KeyValue(Bytes.toBytes("row1"), CF, QUAL1, 2L, Bytes.toBytes("a2"))));
+
+        Result cached = rowCache.get(rowData("row1"));
+        assertEquals(2, cached.size());
+        assertEquals("a2", Bytes.toString(cached.getValue(CF, QUAL1)));
+        assertEquals("b", Bytes.toString(cached.getValue(CF, QUAL2)));
+    }
+
+    @Test
+    public void testApply_OutOfOrderCellsIgnored() {
+        rowCache.put(rowData("row1"), result(new KeyValue(Bytes.toBytes("row1"), CF, QUAL1, 5L, Bytes.toBytes("a"))));
+
+        rowCache.apply(rowData("row1", new KeyValue(Bytes.toBytes("row1"), CF, QUAL1, 3L, Bytes.toBytes("old"))));
+
+        Result cached = rowCache.get(rowData("row1"));
+        assertEquals(1, cached.size());
+        assertEquals("a", Bytes.toString(cached.getValue(CF, QUAL1)));
+    }
+
+    @Test
+    public void testGet_UpdatesIndexedElsewhereNotSeen() {
+        rowCache.put(rowData("row1"), result(new KeyValue(Bytes.toBytes("row1"), CF, QUAL1, 1L, Bytes.toBytes("a"))));
+
+        // The row is updated to "a2" by an event that is delivered to another indexer process, this is the reason
+        // the row cache may only be used with a single indexer process
+        Result cached = rowCache.get(rowData("row1"));
+        assertEquals("a", Bytes.toString(cached.getValue(CF, QUAL1)));
+    }
+
+    @Test
+    public void testApply_NotCached() {
+        rowCache.apply(rowData("row1", new KeyValue(Bytes.toBytes("row1"), CF, QUAL1, 1L, Bytes.toBytes("a"))));
+
+        // An event alone doesn't tell what the rest of the row looks like
+        assertNull(rowCache.get(rowData("row1")));
+    }
+
+    @Test
+    public void testApply_DeleteInvalidates() {
+        rowCache.put(rowData("row1"), result(new KeyValue(Bytes.toBytes("row1"), CF, QUAL1, 1L, Bytes.toBytes("a"))));
+
+        rowCache.apply(rowData("row1", new KeyValue(Bytes.toBytes("row1"), CF, QUAL1, 2L, Type.DeleteColumn)));
+
+        assertNull(rowCache.get(rowData("row1")));
+    }
+
+    @Test
+    public void testPut_EmptyResultInvalidates() {
+        rowCache.put(rowData("row1"), result(new KeyValue(Bytes.toBytes("row1"), CF, QUAL1, 1L, Bytes.toBytes("a"))));
+
+        rowCache.put(rowData("row1"), Result.create(Lists.<Cell>newArrayList()));
+
+        assertNull(rowCache.get(rowData("row1")));
+    }
+
+    @Test
+    public void testPut_BoundedByBytes() {
+        ResultToSolrMapper mapper = IndexingEventListenerTest.createHbaseToSolrMapper(true);
+        RowCache smallCache = new RowCache(INDEXER_NAME, mapper, 1024, 0);
+        for (int i = 0; i < 100; i++) {
+            String row = "row" + i;
+            smallCache.put(rowData(row), result(new KeyValue(Bytes.toBytes(row), CF, QUAL1, 1L, new byte[100])));
+        }
+
+        assertNull(smallCache.get(rowData("row0")));
+        assertEquals(1, smallCache.get(rowData("row99")).size());
+    }
+
+    @Test
+    public void testGet_Expired() {
+        final AtomicLong now = new AtomicLong();
+        Ticker ticker = new Ticker() {
+            @Override
+            public long read() {
+                return now.get();
+            }
+        };
+        RowCache expiringCache = new RowCache(INDEXER_NAME, mapper, 1024 * 1024, 60, ticker);
+        byte[] row = Bytes.toBytes("row1");
+        expiringCache.put(rowData("row1"), result(new KeyValue(row, CF, QUAL1, 1L, Bytes.toBytes("a"))));
+
+        // Applying events keeps the row up to date, but doesn't postpone its expiry
+        now.set(TimeUnit.SECONDS.toNanos(50));
+        expiringCache.apply(rowData("row1", new KeyValue(row, CF, QUAL2, 2L, Bytes.toBytes("b"))));
+        assertEquals(2, expiringCache.get(rowData("row1")).size());
+
+        now.set(TimeUnit.SECONDS.toNanos(60));
+        assertNull(expiringCache.get(rowData("row1")));
+
+        // Reading the row again starts a new period
+        expiringCache.put(rowData("row1"), result(new KeyValue(row, CF, QUAL1, 3L, Bytes.toBytes("c"))));
+        now.set(TimeUnit.SECONDS.toNanos(119));
+        assertEquals(1, expiringCache.get(rowData("row1")).size());
+    }
+}
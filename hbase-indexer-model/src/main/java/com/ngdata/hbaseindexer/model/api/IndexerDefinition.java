@@ -54,6 +54,7 @@ public class IndexerDefinition {
     private BatchBuildInfo lastBatchBuildInfo;
     private BatchBuildInfo activeBatchBuildInfo;
     private long subscriptionTimestamp;
+    private int threadCount;
     private int occVersion = 0; // not -1 by default, since otherwise users might unintentionally disable OCC
 
     /**
@@ -73,6 +74,7 @@ public class IndexerDefinition {
                       BatchBuildInfo lastBatchBuildInfo,
                       BatchBuildInfo activeBatchBuildInfo,
                       long subscriptionTimestamp,
+                      int threadCount,
                       int occVersion) {
         IndexerNameValidator.validate(name);
         this.name = name;
@@ -89,6 +91,7 @@ public class IndexerDefinition {
         this.lastBatchBuildInfo = lastBatchBuildInfo;
         this.activeBatchBuildInfo = activeBatchBuildInfo;
         this.subscriptionTimestamp = subscriptionTimestamp;
+        this.threadCount = threadCount;
         this.occVersion = occVersion;
     }
 
@@ -226,6 +229,15 @@ public class IndexerDefinition {
         return subscriptionTimestamp;
     }
 
+    /**
+     * The number of threads with which the events of this indexer are processed.
+     *
+     * <p>When 0, the global default of the indexer server (hbaseindexer.indexer.threads) is used.</p>
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
     public String getIndexerComponentFactory() {
         return indexerComponentFactory;
     }
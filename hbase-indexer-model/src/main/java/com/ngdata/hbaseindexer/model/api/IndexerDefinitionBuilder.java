@@ -39,6 +39,7 @@ public class IndexerDefinitionBuilder {
     private BatchBuildInfo lastBatchBuildInfo;
     private BatchBuildInfo activeBatchBuildInfo;
     private long subscriptionTimestamp;
+    private int threadCount;
     private int occVersion = -1;
 
     public IndexerDefinitionBuilder startFrom(IndexerDefinition existingDefinition) {
@@ -56,6 +57,7 @@ public class IndexerDefinitionBuilder {
         this.lastBatchBuildInfo = existingDefinition.getLastBatchBuildInfo();
         this.activeBatchBuildInfo = existingDefinition.getActiveBatchBuildInfo();
         this.subscriptionTimestamp = existingDefinition.getSubscriptionTimestamp();
+        this.threadCount = existingDefinition.getThreadCount();
         this.occVersion = existingDefinition.getOccVersion();
         return this;
     }
@@ -164,6 +166,14 @@ public class IndexerDefinitionBuilder {
         return this;
     }
 
+    /**
+     * @see IndexerDefinition#threadCount
+     */
+    public IndexerDefinitionBuilder threadCount(int threadCount) {
+        this.threadCount = threadCount;
+        return this;
+    }
+
     /**
      * @see IndexerDefinition#indexerComponentFactory
      */
@@ -185,9 +195,11 @@ public class IndexerDefinitionBuilder {
         Preconditions.checkNotNull(lifecycleState, "lifecycleState");
         Preconditions.checkNotNull(batchIndexingState, "batchIndexingState");
         Preconditions.checkNotNull(incrementalIndexingState, "incrementalIndexingState");
+        Preconditions.checkArgument(threadCount >= 0, "threadCount must be >= 0");
 
         return new IndexerDefinition(name, lifecycleState, batchIndexingState, incrementalIndexingState, subscriptionId,
                 configuration, indexerComponentFactory, connectionType, connectionParams, defaultBatchIndexCliArguments,
-                batchIndexCliArguments, lastBatchBuildInfo, activeBatchBuildInfo, subscriptionTimestamp, occVersion);
+                batchIndexCliArguments, lastBatchBuildInfo, activeBatchBuildInfo, subscriptionTimestamp, threadCount,
+                occVersion);
     }
 }
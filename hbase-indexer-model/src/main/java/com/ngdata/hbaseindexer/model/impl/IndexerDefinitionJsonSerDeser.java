@@ -68,6 +68,7 @@ public class IndexerDefinitionJsonSerDeser {
 
         String queueSubscriptionId = JsonUtil.getString(node, "subscriptionId", null);
         long subscriptionTimestamp = JsonUtil.getLong(node, "subscriptionTimestamp", 0L);
+        int threadCount = JsonUtil.getInt(node, "threadCount", 0);
 
         String indexerComponentFactory = JsonUtil.getString(node, "indexerComponentFactory", null);
 
@@ -106,6 +107,7 @@ public class IndexerDefinitionJsonSerDeser {
         indexerDefinitionBuilder.batchIndexingState(batchIndexingState);
         indexerDefinitionBuilder.subscriptionId(queueSubscriptionId);
         indexerDefinitionBuilder.subscriptionTimestamp(subscriptionTimestamp);
+        indexerDefinitionBuilder.threadCount(threadCount);
         indexerDefinitionBuilder.configuration(configuration);
         indexerDefinitionBuilder.indexerComponentFactory(indexerComponentFactory);
         indexerDefinitionBuilder.connectionType(connectionType);
@@ -205,6 +207,9 @@ public class IndexerDefinitionJsonSerDeser {
 
         node.put("subscriptionTimestamp", indexer.getSubscriptionTimestamp());
 
+        if (indexer.getThreadCount() > 0)
+            node.put("threadCount", indexer.getThreadCount());
+
         if (indexer.getIndexerComponentFactory() != null) {
             node.put("indexerComponentFactory", indexer.getIndexerComponentFactory());
         }
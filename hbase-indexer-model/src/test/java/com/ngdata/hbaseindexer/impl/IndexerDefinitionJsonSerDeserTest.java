@@ -44,6 +44,7 @@ public class IndexerDefinitionJsonSerDeserTest {
 
         assertEquals(indexer, indexer2);
         assertEquals("index1", indexer.getName());
+        assertEquals(0, indexer2.getThreadCount());
     }
 
     @Test
@@ -59,6 +60,7 @@ public class IndexerDefinitionJsonSerDeserTest {
                 .connectionParams(ImmutableMap.of("p1", "v1", "p2", "v2"))
                 .subscriptionId("my-subscription")
                 .subscriptionTimestamp(5L)
+                .threadCount(4)
                 .defaultBatchIndexCliArguments(new String[]{"arg1", "arg2"})
                 .batchIndexCliArguments(new String[]{"arg3"})
                 .activeBatchBuildInfo(
@@ -83,6 +85,7 @@ public class IndexerDefinitionJsonSerDeserTest {
         assertEquals("v2", indexer.getConnectionParams().get("p2"));
         assertEquals("my-subscription", indexer2.getSubscriptionId());
         assertEquals(5L, indexer2.getSubscriptionTimestamp());
+        assertEquals(4, indexer2.getThreadCount());
         assertArrayEquals(new String[]{"arg1", "arg2"}, indexer2.getDefaultBatchIndexCliArguments());
         assertArrayEquals(new String[]{"arg3"}, indexer2.getBatchIndexCliArguments());
 
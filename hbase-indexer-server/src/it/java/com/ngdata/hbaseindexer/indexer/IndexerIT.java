@@ -571,7 +571,9 @@ public class IndexerIT {
                 .build();
         indexerModel.updateIndexer(indexerDef, lock);
         indexerModel.unlockIndexer(lock);
-        waitOnEventsProcessed(1);
+        // wait for 2 events because the IndexerMaster unassigns the subscription (= second event), the
+        // IndexerSupervisor only counts an event once it is done acting on it
+        waitOnEventsProcessed(2);
 
         // Verify master removed the SEP subscription and unassigned the subscription ID
         SepTestUtil.waitOnReplicationPeerStopped(peerId("indexer1"));
@@ -589,7 +591,8 @@ public class IndexerIT {
                 .build();
         indexerModel.updateIndexer(indexerDef, lock);
         indexerModel.unlockIndexer(lock);
-        waitOnEventsProcessed(1);
+        // wait for 2 events because the IndexerMaster assigns the subscription (= second event)
+        waitOnEventsProcessed(2);
 
         // Verify master registered the SEP subscription and assigned the subscription ID
         SepTestUtil.waitOnReplicationPeerReady(peerId("indexer1"));
@@ -646,7 +649,8 @@ public class IndexerIT {
                 .build();
         indexerModel.updateIndexer(indexerDef, lock);
         indexerModel.unlockIndexer(lock);
-        waitOnEventsProcessed(1);
+        // wait for 2 events because the IndexerMaster then deletes the indexer (= second event)
+        waitOnEventsProcessed(2);
 
         // Check index was removed
         try {
@@ -1011,7 +1015,8 @@ public class IndexerIT {
         String lock = main.getIndexerModel().lockIndexer(indexerDefinition.getName());
         main.getIndexerModel().updateIndexer(indexerDefinitionBuilder.build(), lock);
         main.getIndexerModel().unlockIndexer(lock);
-        waitOnEventsProcessed(1);
+        // the IndexerMaster unassigns the subscription (= second event)
+        waitOnEventsProcessed(2);
 
         checkLifecycleEvents(0, 1, 0, 0, indexerLifecycleListener);
         Mockito.reset(indexerLifecycleListener);
@@ -1035,7 +1040,8 @@ public class IndexerIT {
         lock = main.getIndexerModel().lockIndexer(indexerDefinition.getName());
         main.getIndexerModel().updateIndexer(indexerDefinitionBuilder.build(), lock);
         main.getIndexerModel().unlockIndexer(lock);
-        waitOnEventsProcessed(1);
+        // the IndexerMaster then deletes the indexer (= second event)
+        waitOnEventsProcessed(2);
 
         checkLifecycleEvents(0, 0, 1, 0, indexerLifecycleListener);
     }
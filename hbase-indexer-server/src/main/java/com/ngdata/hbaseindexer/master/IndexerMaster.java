@@ -21,14 +21,18 @@ import static com.ngdata.hbaseindexer.model.api.IndexerModelEventType.INDEXER_UP
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -36,12 +40,14 @@ import javax.annotation.PreDestroy;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.base.Optional;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.ngdata.hbaseindexer.ConfKeys;
 import com.ngdata.hbaseindexer.SolrConnectionParams;
 import com.ngdata.hbaseindexer.conf.IndexerComponentFactory;
@@ -70,6 +76,10 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Admin;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.ConnectionFactory;
 import org.apache.hadoop.mapred.JobClient;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.RunningJob;
@@ -103,6 +113,10 @@ public class IndexerMaster {
 
     private JobClient jobClient;
 
+    private Connection hbaseConnection;
+
+    private ScheduledExecutorService subscriptionRefresher;
+
     private final Log log = LogFactory.getLog(getClass());
 
     private SepModel sepModel;
@@ -165,6 +179,7 @@ public class IndexerMaster {
         }
 
         Closer.close(jobClient);
+        Closer.close(hbaseConnection);
     }
 
     public int getEventCount() {
@@ -178,6 +193,13 @@ public class IndexerMaster {
         return jobClient;
     }
 
+    private synchronized Connection getHBaseConnection() throws IOException {
+        if (hbaseConnection == null) {
+            hbaseConnection = ConnectionFactory.createConnection(hbaseConf);
+        }
+        return hbaseConnection;
+    }
+
     private class MyLeaderElectionCallback implements LeaderElectionCallback {
         @Override
         public void activateAsLeader() throws Exception {
@@ -196,6 +218,8 @@ public class IndexerMaster {
                 eventWorker.putEvent(new IndexerModelEvent(INDEXER_UPDATED, index.getName()));
             }
 
+            startSubscriptionRefresher();
+
             log.info("Startup as indexer master successful.");
         }
 
@@ -205,6 +229,8 @@ public class IndexerMaster {
 
             indexerModel.unregisterListener(listener);
 
+            stopSubscriptionRefresher();
+
             // Argument false for shutdown: we do not interrupt the event worker thread: if there
             // was something running there that is blocked until the ZK connection comes back up
             // we want it to finish (e.g. a lock taken that should be released again)
@@ -214,6 +240,105 @@ public class IndexerMaster {
         }
     }
 
+    /**
+     * Periodically limits the subscriptions of indexers with a regex table name to the tables that currently
+     * match the regex, so that tables which are created later on get replicated as well. Only needed when
+     * {@link #isRegexTableScopingEnabled() regex table scoping} is enabled.
+     */
+    private synchronized void startSubscriptionRefresher() {
+        long interval = hbaseConf.getLong("hbaseindexer.master.subscription.refresh.interval", 60000L);
+        if (!isRegexTableScopingEnabled() || interval <= 0 || subscriptionRefresher != null) {
+            return;
+        }
+        subscriptionRefresher = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("IndexerMasterSubscriptionRefresher").setDaemon(true).build());
+        subscriptionRefresher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                for (IndexerDefinition indexer : indexerModel.getIndexers()) {
+                    if (needsSubscriptionRefresh(indexer) && hasRegexTable(indexer)) {
+                        refreshSubscription(indexer.getName());
+                    }
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void stopSubscriptionRefresher() {
+        if (subscriptionRefresher != null) {
+            subscriptionRefresher.shutdownNow();
+            subscriptionRefresher = null;
+        }
+    }
+
+    private boolean hasRegexTable(IndexerDefinition indexer) {
+        try {
+            return createIndexerConf(indexer).tableNameIsRegex();
+        } catch (Throwable t) {
+            log.error("Error reading the configuration of indexer " + indexer.getName(), t);
+            return false;
+        }
+    }
+
+    private IndexerConf createIndexerConf(IndexerDefinition indexer) throws Exception {
+        IndexerComponentFactory factory = IndexerComponentFactoryUtil.getComponentFactory(indexer.getIndexerComponentFactory(), new ByteArrayInputStream(indexer.getConfiguration()), indexer.getConnectionParams());
+        return factory.createIndexerConf();
+    }
+
+    /**
+     * Returns true if the subscriptions of indexers with a regex table name are limited to the tables that match
+     * the regex. As these are only resolved every refresh interval, changes to a matching table that was created
+     * since the last refresh are not replicated to the indexer until the next refresh. Disabled by default, such
+     * subscriptions then receive the changes to all tables.
+     */
+    private boolean isRegexTableScopingEnabled() {
+        return hbaseConf.getBoolean("hbaseindexer.master.subscription.scope.regex", false);
+    }
+
+    /**
+     * Determines the tables and column families of which an indexer needs to receive the changes, so that HBase
+     * doesn't replicate changes that the indexer would ignore anyway. A regex table name is resolved to the tables
+     * that currently match it if {@link #isRegexTableScopingEnabled() enabled}, otherwise null is returned, meaning
+     * all tables.
+     */
+    private Map<String, List<String>> getReplicationScope(IndexerConf indexerConf) throws IOException {
+        List<String> tableNames = Lists.newArrayList();
+        if (indexerConf.tableNameIsRegex()) {
+            if (!isRegexTableScopingEnabled()) {
+                return null;
+            }
+            Pattern tableNamePattern = Pattern.compile(indexerConf.getTable());
+            Admin admin = getHBaseConnection().getAdmin();
+            try {
+                for (TableName tableName : admin.listTableNames()) {
+                    if (tableNamePattern.matcher(tableName.getNameAsString()).matches()) {
+                        tableNames.add(tableName.getNameAsString());
+                    }
+                }
+            } finally {
+                Closer.close(admin);
+            }
+        } else {
+            tableNames.add(indexerConf.getTable());
+        }
+
+        // An empty list of column families means all column families
+        Set<String> columnFamilies = indexerConf.getColumnFamilies();
+        List<String> columnFamilyList = columnFamilies != null
+                ? Lists.newArrayList(columnFamilies) : Collections.<String>emptyList();
+        Map<String, List<String>> scope = Maps.newHashMap();
+        for (String tableName : tableNames) {
+            scope.put(tableName, columnFamilyList);
+        }
+        return scope;
+    }
+
+    private boolean needsSubscriptionRefresh(IndexerDefinition indexer) {
+        return !indexer.getLifecycleState().isDeleteState() &&
+                indexer.getIncrementalIndexingState() != IncrementalIndexingState.DO_NOT_SUBSCRIBE
+                && indexer.getSubscriptionId() != null;
+    }
+
     private boolean needsSubscriptionIdAssigned(IndexerDefinition indexer) {
         return !indexer.getLifecycleState().isDeleteState() &&
                 indexer.getIncrementalIndexingState() != IncrementalIndexingState.DO_NOT_SUBSCRIBE
@@ -244,14 +369,8 @@ public class IndexerMaster {
                     // created it).
                     String subscriptionId = subscriptionId(indexer.getName());
 
-                    IndexerComponentFactory factory = IndexerComponentFactoryUtil.getComponentFactory(indexer.getIndexerComponentFactory(), new ByteArrayInputStream(indexer.getConfiguration()), indexer.getConnectionParams());
-                    IndexerConf indexerConf = factory.createIndexerConf();
-                    if (indexerConf.tableNameIsRegex()) {
-                        // TODO: perf enhancement: consider fetching all hbase table names and here only pass in the table names that match the regex?
-                        sepModel.addSubscription(subscriptionId);
-                    } else {                     
-                        sepModel.addSubscription(subscriptionId, indexerConf.getTable());
-                    }
+                    IndexerConf indexerConf = createIndexerConf(indexer);
+                    sepModel.addSubscription(subscriptionId, getReplicationScope(indexerConf));
 
                     indexer = new IndexerDefinitionBuilder().startFrom(indexer).subscriptionId(subscriptionId).build();
                     indexerModel.updateIndexerInternal(indexer);
@@ -265,6 +384,31 @@ public class IndexerMaster {
         }
     }
 
+    /**
+     * Updates the tables and column families of an existing subscription, for when the indexer configuration
+     * changed or when tables matching its regex table name were created or dropped.
+     */
+    private void refreshSubscription(String indexerName) {
+        try {
+            String lock = indexerModel.lockIndexer(indexerName);
+            try {
+                // Read current situation of record and assure it is still actual
+                IndexerDefinition indexer = indexerModel.getFreshIndexer(indexerName);
+                if (needsSubscriptionRefresh(indexer)) {
+                    IndexerConf indexerConf = createIndexerConf(indexer);
+                    if (sepModel.updateSubscription(indexer.getSubscriptionId(), getReplicationScope(indexerConf))) {
+                        log.info("Updated the tables and column families of subscription '"
+                                + indexer.getSubscriptionId() + "' of indexer '" + indexerName + "'");
+                    }
+                }
+            } finally {
+                indexerModel.unlockIndexer(lock);
+            }
+        } catch (Throwable t) {
+            log.error("Error trying to update the subscription of indexer " + indexerName, t);
+        }
+    }
+
     private void unassignSubscription(String indexerName) {
         try {
             String lock = indexerModel.lockIndexer(indexerName);
@@ -594,6 +738,8 @@ public class IndexerMaster {
                                     for (IndexerLifecycleListener lifecycleListener : lifecycleListeners) {
                                         lifecycleListener.onSubscribe(indexer);
                                     }
+                                } else if (needsSubscriptionRefresh(indexer)) {
+                                    refreshSubscription(indexer.getName());
                                 }
 
                                 if (needsSubscriptionIdUnassigned(indexer)) {
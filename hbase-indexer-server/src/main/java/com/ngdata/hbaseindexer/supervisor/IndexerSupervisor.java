@@ -18,9 +18,8 @@ package com.ngdata.hbaseindexer.supervisor;
 import static com.ngdata.hbaseindexer.indexer.SolrClientFactory.createCloudSolrClient;
 import static com.ngdata.hbaseindexer.indexer.SolrClientFactory.createHttpSolrClients;
 import static com.ngdata.hbaseindexer.indexer.SolrClientFactory.createSharder;
-import static com.ngdata.hbaseindexer.model.api.IndexerModelEventType.INDEXER_ADDED;
+import static com.ngdata.hbaseindexer.metrics.IndexerMetricsUtil.metricName;
 import static com.ngdata.hbaseindexer.model.api.IndexerModelEventType.INDEXER_DELETED;
-import static com.ngdata.hbaseindexer.model.api.IndexerModelEventType.INDEXER_UPDATED;
 import static com.ngdata.hbaseindexer.util.solr.SolrConnectionParamUtil.getSolrMaxConnectionsPerRoute;
 import static com.ngdata.hbaseindexer.util.solr.SolrConnectionParamUtil.getSolrMaxConnectionsTotal;
 
@@ -28,18 +27,25 @@ import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import com.google.common.base.Objects;
-import com.google.common.collect.Maps;
+import com.google.common.collect.Lists;
 import com.ngdata.hbaseindexer.HBaseIndexerConfiguration;
 import com.ngdata.hbaseindexer.conf.IndexerComponentFactory;
 import com.ngdata.hbaseindexer.conf.IndexerComponentFactoryUtil;
@@ -48,25 +54,35 @@ import com.ngdata.hbaseindexer.indexer.DirectSolrClassicInputDocumentWriter;
 import com.ngdata.hbaseindexer.indexer.DirectSolrInputDocumentWriter;
 import com.ngdata.hbaseindexer.indexer.Indexer;
 import com.ngdata.hbaseindexer.indexer.IndexingEventListener;
+import com.ngdata.hbaseindexer.indexer.MapperCellFilter;
 import com.ngdata.hbaseindexer.indexer.Sharder;
+import com.ngdata.hbaseindexer.indexer.SharderException;
 import com.ngdata.hbaseindexer.indexer.SolrInputDocumentWriter;
 import com.ngdata.hbaseindexer.model.api.IndexerDefinition;
 import com.ngdata.hbaseindexer.model.api.IndexerDefinition.IncrementalIndexingState;
 import com.ngdata.hbaseindexer.model.api.IndexerModel;
 import com.ngdata.hbaseindexer.model.api.IndexerModelEvent;
+import com.ngdata.hbaseindexer.model.api.IndexerModelEventType;
 import com.ngdata.hbaseindexer.model.api.IndexerModelListener;
 import com.ngdata.hbaseindexer.model.api.IndexerNotFoundException;
 import com.ngdata.hbaseindexer.model.api.IndexerProcessRegistry;
 import com.ngdata.hbaseindexer.parse.ResultToSolrMapper;
 import com.ngdata.hbaseindexer.util.solr.SolrConnectionParamUtil;
+import com.ngdata.sep.CellFilter;
 import com.ngdata.sep.impl.SepConsumer;
+import com.ngdata.sep.impl.SepConsumerHost;
 import com.ngdata.sep.impl.TableNamePredicates;
+import com.ngdata.sep.util.concurrent.SequentialExecutor;
 import com.ngdata.sep.util.io.Closer;
 import com.ngdata.sep.util.zookeeper.ZooKeeperItf;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Gauge;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.client.AsyncConnection;
 import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.ConnectionFactory;
 import org.apache.http.client.HttpClient;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.conn.PoolingClientConnectionManager;
@@ -86,17 +102,19 @@ public class IndexerSupervisor {
 
     private final IndexerModelListener listener = new MyListener();
 
-    private final Map<String, IndexerHandle> indexers = new HashMap<String, IndexerHandle>();
+    private final Map<String, IndexerHandle> indexers = new ConcurrentHashMap<String, IndexerHandle>();
 
-    private final Object indexersLock = new Object();
-
-    private final BlockingQueue<IndexerModelEvent> eventQueue = new LinkedBlockingQueue<IndexerModelEvent>();
-
-    private EventWorker eventWorker;
+    /**
+     * The lifecycle actions of the indexers, see {@link IndexerActor}.
+     */
+    private final ConcurrentMap<String, IndexerActor> actors = new ConcurrentHashMap<String, IndexerActor>();
 
-    private Thread eventWorkerThread;
+    /**
+     * Provides the threads on which the lifecycle actions of the indexers run.
+     */
+    private ExecutorService lifecyclePool;
 
-    private HttpClient httpClient;
+    private volatile boolean stopping = false;
 
     private final IndexerRegistry indexerRegistry;
 
@@ -108,6 +126,16 @@ public class IndexerSupervisor {
 
     private final Configuration hbaseConf;
 
+    /**
+     * Shared by the indexers that can be hosted together, only created if the consumer host is enabled.
+     */
+    private SepConsumerHost consumerHost;
+
+    /**
+     * Shared by the indexers that read rows asynchronously, only created once such an indexer is started.
+     */
+    private AsyncConnection asyncConnection;
+
     private final Log log = LogFactory.getLog(getClass());
 
     /**
@@ -123,46 +151,88 @@ public class IndexerSupervisor {
         this.hostName = hostName;
         this.indexerRegistry = indexerRegistry;
         this.indexerProcessRegistry = indexerProcessRegistry;
-        this.indexerProcessIds = Maps.newHashMap();
+        this.indexerProcessIds = new ConcurrentHashMap<String, String>();
         this.htablePool = htablePool;
         this.hbaseConf = hbaseConf;
     }
 
     @PostConstruct
     public void init() {
-        eventWorker = new EventWorker();
-        eventWorkerThread = new Thread(eventWorker, "IndexerWorkerEventWorker");
-        eventWorkerThread.start();
-
-        synchronized (indexersLock) {
-            Collection<IndexerDefinition> indexerDefs = indexerModel.getIndexers(listener);
+        final AtomicInteger threadNumber = new AtomicInteger();
+        lifecyclePool = Executors.newFixedThreadPool(hbaseConf.getInt("hbaseindexer.supervisor.threads", 10),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "IndexerSupervisor-" + threadNumber.getAndIncrement());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
 
-            for (IndexerDefinition indexerDef : indexerDefs) {
-                if (shouldRunIndexer(indexerDef)) {
-                    startIndexer(indexerDef);
-                }
+        // The indexers are started concurrently, events that arrive in the meantime are coalesced with the start
+        Collection<IndexerDefinition> indexerDefs = indexerModel.getIndexers(listener);
+        for (IndexerDefinition indexerDef : indexerDefs) {
+            if (shouldRunIndexer(indexerDef)) {
+                requestSync(indexerDef.getName(), null);
             }
         }
     }
 
     @PreDestroy
     public void stop() {
-        eventWorker.stop();
-        eventWorkerThread.interrupt();
+        stopping = true;
+        // Let the lifecycle actions that are running finish, the ones that are queued are skipped
+        lifecyclePool.shutdown();
         try {
-            eventWorkerThread.join();
+            lifecyclePool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
         } catch (InterruptedException e) {
-            log.info("Interrupted while joining eventWorkerThread.");
+            log.info("Interrupted while waiting for the indexer lifecycle actions.");
         }
 
-        for (IndexerHandle handle : indexers.values()) {
+        // Stop the indexers concurrently, as the SEP consumers each wait for the events they are processing
+        List<Thread> stopThreads = Lists.newArrayList();
+        for (final IndexerHandle handle : indexers.values()) {
+            Thread thread = new Thread("IndexerSupervisor-stop-" + handle.indexerDef.getName()) {
+                @Override
+                public void run() {
+                    try {
+                        handle.stop();
+                    } catch (InterruptedException e) {
+                        // Continue the stop procedure
+                    }
+                }
+            };
+            thread.start();
+            stopThreads.add(thread);
+        }
+        for (Thread thread : stopThreads) {
             try {
-                handle.stop();
+                thread.join();
             } catch (InterruptedException e) {
                 // Continue the stop procedure
             }
         }
 
+        synchronized (this) {
+            Closer.close(consumerHost);
+            consumerHost = null;
+            Closer.close(asyncConnection);
+            asyncConnection = null;
+        }
+    }
+
+    private synchronized AsyncConnection getAsyncConnection() throws IOException {
+        if (asyncConnection == null) {
+            try {
+                asyncConnection = ConnectionFactory.createAsyncConnection(hbaseConf).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while connecting to HBase");
+            } catch (ExecutionException e) {
+                throw new IOException("Error creating asynchronous HBase connection", e.getCause());
+            }
+        }
+        return asyncConnection;
     }
 
     public int getEventCount() {
@@ -174,12 +244,15 @@ public class IndexerSupervisor {
     }
 
     public Indexer getIndexer(String name) {
-        return indexers.get(name).indexer;
+        return indexers.get(name).components.indexer;
     }
 
-    private void startIndexer(IndexerDefinition indexerDef) {
+    /**
+     * @param requestTime when the indexer was asked to start, to measure how long it takes before it is ready
+     */
+    private void startIndexer(IndexerDefinition indexerDef, long requestTime) {
         IndexerHandle handle = null;
-        SolrClient solr = null;
+        IndexerComponents components = null;
 
 
         String indexerProcessId = null;
@@ -194,57 +267,36 @@ public class IndexerSupervisor {
             indexerProcessId = indexerProcessRegistry.registerIndexerProcess(indexerDef.getName(), hostName);
             indexerProcessIds.put(indexerDef.getName(), indexerProcessId);
 
-            // Create and register the indexer
-            IndexerComponentFactory factory = IndexerComponentFactoryUtil.getComponentFactory(indexerDef.getIndexerComponentFactory(), new ByteArrayInputStream(indexerDef.getConfiguration()), indexerDef.getConnectionParams());
-            IndexerConf indexerConf = factory.createIndexerConf();
-
-            ResultToSolrMapper mapper = factory.createMapper(indexerDef.getName());
-
-            Sharder sharder = null;
-            SolrInputDocumentWriter solrWriter;
-            PoolingClientConnectionManager connectionManager = null;
-
-            if (indexerDef.getConnectionType() == null || indexerDef.getConnectionType().equals("solr")) {
-                Map<String, String> connectionParams = indexerDef.getConnectionParams();
-                String solrMode = SolrConnectionParamUtil.getSolrMode(connectionParams);
-                if (solrMode.equals("cloud")) {
-                    int zkSessionTimeout = HBaseIndexerConfiguration.getSessionTimeout(hbaseConf);
-                    solrWriter = new DirectSolrInputDocumentWriter(indexerDef.getName(), createCloudSolrClient(connectionParams, indexerConf.getUniqueKeyField(), zkSessionTimeout));
-                } else if (solrMode.equals("classic")) {
-                    connectionManager = new PoolingClientConnectionManager();
-                    connectionManager.setDefaultMaxPerRoute(getSolrMaxConnectionsPerRoute(connectionParams));
-                    connectionManager.setMaxTotal(getSolrMaxConnectionsTotal(connectionParams));
-
-                    httpClient = new DefaultHttpClient(connectionManager);
-                    List<SolrClient> solrServers = createHttpSolrClients(connectionParams, httpClient);
-                    solrWriter = new DirectSolrClassicInputDocumentWriter(indexerDef.getName(), solrServers);
-                    sharder = createSharder(connectionParams, solrServers.size());
-                } else {
-                    throw new RuntimeException("Only 'cloud' and 'classic' are valid values for solr.mode, but got " + solrMode);
-                }
-            } else {
-                throw new RuntimeException(
-                        "Invalid connection type: " + indexerDef.getConnectionType() + ". Only 'solr' is supported");
+            components = createIndexerComponents(indexerDef);
+            IndexerConf indexerConf = components.indexerConf;
+
+            int threads = indexerDef.getThreadCount() > 0 ? indexerDef.getThreadCount()
+                    : hbaseConf.getInt("hbaseindexer.indexer.threads", 10);
+            SepConsumerHost host = getConsumerHost();
+            SepConsumer sepConsumer = null;
+            // An indexer with its own thread count doesn't share the threads of the host
+            if (host != null && indexerDef.getThreadCount() == 0 && !indexerConf.tableNameIsRegex()) {
+                // Null if the table is already used by another hosted indexer
+                sepConsumer = host.tryCreateConsumer(indexerDef.getSubscriptionId(),
+                        indexerDef.getSubscriptionTimestamp(), components.eventListener, null, components.cellFilter,
+                        indexerConf.getTable());
+            }
+            if (sepConsumer == null) {
+                sepConsumer = new SepConsumer(indexerDef.getSubscriptionId(),
+                        indexerDef.getSubscriptionTimestamp(), components.eventListener, threads, hostName,
+                        zk, hbaseConf, null, 
+                        TableNamePredicates.getTableNamePredicate(indexerConf.getTable(), indexerConf.tableNameIsRegex()),
+                        components.cellFilter);
             }
 
-            Indexer indexer = Indexer.createIndexer(indexerDef.getName(), indexerConf, indexerConf.getTable(),
-                    mapper, htablePool, sharder, solrWriter);
-            IndexingEventListener eventListener = new IndexingEventListener(
-                    indexer, indexerConf.getTable(), indexerConf.tableNameIsRegex());
-
-            int threads = hbaseConf.getInt("hbaseindexer.indexer.threads", 10);
-            SepConsumer sepConsumer = new SepConsumer(indexerDef.getSubscriptionId(),
-                    indexerDef.getSubscriptionTimestamp(), eventListener, threads, hostName,
-                    zk, hbaseConf, null, 
-                    TableNamePredicates.getTableNamePredicate(indexerConf.getTable(), indexerConf.tableNameIsRegex()));
-
-            handle = new IndexerHandle(indexerDef, indexer, sepConsumer, solr, connectionManager);
+            handle = new IndexerHandle(indexerDef, components, sepConsumer);
             handle.start();
 
             indexers.put(indexerDef.getName(), handle);
-            indexerRegistry.register(indexerDef.getName(), indexer);
+            indexerRegistry.register(indexerDef.getName(), components.indexer);
+            reportReady(indexerDef.getName(), requestTime);
 
-            log.info("Started indexer for " + indexerDef.getName());
+            log.info("Started indexer for " + indexerDef.getName() + ", ready after " + handle.timeToReady + " ms");
         } catch (Throwable t) {
             if (t instanceof InterruptedException) {
                 Thread.currentThread().interrupt();
@@ -271,14 +323,83 @@ public class IndexerSupervisor {
                     log.error("Problem stopping consumers for failed-to-start indexer '" +
                             indexerDef.getName() + "'", t2);
                 }
-            } else {
+            } else if (components != null) {
                 // Might be the handle was not yet created, but the solr connection was
-                Closer.close(solr);
+                components.close(true);
+            }
+        }
+    }
+
+    /**
+     * Creates the indexer and everything around it that follows from the configuration and connection parameters of
+     * the indexer definition.
+     */
+    private IndexerComponents createIndexerComponents(IndexerDefinition indexerDef)
+            throws SharderException, IOException {
+        IndexerComponentFactory factory = IndexerComponentFactoryUtil.getComponentFactory(indexerDef.getIndexerComponentFactory(), new ByteArrayInputStream(indexerDef.getConfiguration()), indexerDef.getConnectionParams());
+        IndexerConf indexerConf = factory.createIndexerConf();
+
+        ResultToSolrMapper mapper = factory.createMapper(indexerDef.getName());
+
+        Sharder sharder = null;
+        SolrInputDocumentWriter solrWriter;
+        PoolingClientConnectionManager connectionManager = null;
+
+        if (indexerDef.getConnectionType() == null || indexerDef.getConnectionType().equals("solr")) {
+            Map<String, String> connectionParams = indexerDef.getConnectionParams();
+            String solrMode = SolrConnectionParamUtil.getSolrMode(connectionParams);
+            if (solrMode.equals("cloud")) {
+                int zkSessionTimeout = HBaseIndexerConfiguration.getSessionTimeout(hbaseConf);
+                solrWriter = new DirectSolrInputDocumentWriter(indexerDef.getName(), createCloudSolrClient(connectionParams, indexerConf.getUniqueKeyField(), zkSessionTimeout));
+            } else if (solrMode.equals("classic")) {
+                connectionManager = new PoolingClientConnectionManager();
+                connectionManager.setDefaultMaxPerRoute(getSolrMaxConnectionsPerRoute(connectionParams));
+                connectionManager.setMaxTotal(getSolrMaxConnectionsTotal(connectionParams));
+
+                HttpClient httpClient = new DefaultHttpClient(connectionManager);
+                List<SolrClient> solrServers = createHttpSolrClients(connectionParams, httpClient);
+                solrWriter = new DirectSolrClassicInputDocumentWriter(indexerDef.getName(), solrServers);
+                sharder = createSharder(connectionParams, solrServers.size());
+            } else {
+                throw new RuntimeException("Only 'cloud' and 'classic' are valid values for solr.mode, but got " + solrMode);
             }
+        } else {
+            throw new RuntimeException(
+                    "Invalid connection type: " + indexerDef.getConnectionType() + ". Only 'solr' is supported");
+        }
+
+        AsyncConnection asyncConnection = indexerConf.isReadRowAsync() ? getAsyncConnection() : null;
+        Indexer indexer = Indexer.createIndexer(indexerDef.getName(), indexerConf, indexerConf.getTable(),
+                mapper, htablePool, asyncConnection, sharder, solrWriter);
+        IndexingEventListener eventListener = new IndexingEventListener(
+                indexer, indexerConf.getTable(), indexerConf.tableNameIsRegex());
+
+        // Drop the cells that the mapper doesn't use before they are queued for indexing
+        CellFilter cellFilter = null;
+        if (hbaseConf.getBoolean("hbaseindexer.consumer.cellfilter.enabled", false)) {
+            cellFilter = new MapperCellFilter(mapper);
+        }
+
+        return new IndexerComponents(indexerConf, indexer, eventListener, cellFilter, solrWriter, connectionManager);
+    }
+
+    /**
+     * Returns the host that runs the SEP consumers of indexers that have a non-regex table name, creating it if
+     * needed, or null if indexers should each get their own SEP consumer. Hosting many indexers in one consumer
+     * host saves a region server, an RPC server and a set of worker threads per indexer.
+     */
+    private synchronized SepConsumerHost getConsumerHost() throws IOException {
+        if (consumerHost == null && hbaseConf.getBoolean("hbaseindexer.consumer.host.enabled", false)) {
+            int threads = hbaseConf.getInt("hbaseindexer.consumer.host.threads",
+                    hbaseConf.getInt("hbaseindexer.indexer.threads", 10));
+            SepConsumerHost host = new SepConsumerHost(hostName, zk, hbaseConf, threads);
+            host.start();
+            consumerHost = host;
         }
+        return consumerHost;
     }
 
-    private void restartIndexer(IndexerDefinition indexerDef) {
+    private void restartIndexer(IndexerDefinition indexerDef, long requestTime) {
 
         IndexerHandle handle = indexers.get(indexerDef.getName());
 
@@ -286,19 +407,82 @@ public class IndexerSupervisor {
             return;
         }
 
-        boolean relevantChanges = !Arrays.equals(handle.indexerDef.getConfiguration(), indexerDef.getConfiguration()) ||
-                Objects.equal(handle.indexerDef.getConnectionType(), indexerDef.getConnectionType())
-                || !Objects.equal(handle.indexerDef.getConnectionParams(), indexerDef.getConnectionParams());
+        if (!hasRelevantChanges(handle.indexerDef, indexerDef)) {
+            return;
+        }
 
-        if (!relevantChanges) {
+        if (canSwap(handle.indexerDef, indexerDef) && swapIndexer(handle, indexerDef, requestTime)) {
             return;
         }
 
         if (stopIndexer(indexerDef.getName())) {
-            startIndexer(indexerDef);
+            startIndexer(indexerDef, requestTime);
         }
     }
 
+    /**
+     * Returns true if a running indexer needs to be swapped or restarted to follow a change of its definition.
+     */
+    static boolean hasRelevantChanges(IndexerDefinition oldIndexerDef, IndexerDefinition indexerDef) {
+        return !Arrays.equals(oldIndexerDef.getConfiguration(), indexerDef.getConfiguration())
+                || !Objects.equal(oldIndexerDef.getConnectionType(), indexerDef.getConnectionType())
+                || !Objects.equal(oldIndexerDef.getConnectionParams(), indexerDef.getConnectionParams())
+                || !Objects.equal(oldIndexerDef.getSubscriptionId(), indexerDef.getSubscriptionId())
+                || oldIndexerDef.getSubscriptionTimestamp() != indexerDef.getSubscriptionTimestamp()
+                || oldIndexerDef.getThreadCount() != indexerDef.getThreadCount();
+    }
+
+    /**
+     * Returns true if a change of the definition of a running indexer can be applied without restarting its SEP
+     * consumer, i.e. when it doesn't change which events the consumer should receive or how many threads process
+     * them. This is only a first check, see {@link #swapIndexer}.
+     */
+    static boolean canSwap(IndexerDefinition oldIndexerDef, IndexerDefinition indexerDef) {
+        return Objects.equal(oldIndexerDef.getSubscriptionId(), indexerDef.getSubscriptionId())
+                && oldIndexerDef.getSubscriptionTimestamp() == indexerDef.getSubscriptionTimestamp()
+                && oldIndexerDef.getThreadCount() == indexerDef.getThreadCount();
+    }
+
+    /**
+     * Replaces the indexer behind the running SEP consumer of an indexer, so that HBase replication to the consumer
+     * isn't interrupted. This is possible when only the mapping or the Solr connection changed, see
+     * {@link #canSwap}, and the indexer still indexes the same table(s).
+     *
+     * @return false if the indexer should be restarted instead
+     */
+    private boolean swapIndexer(IndexerHandle handle, IndexerDefinition indexerDef, long requestTime) {
+        IndexerComponents components;
+        try {
+            components = createIndexerComponents(indexerDef);
+        } catch (Throwable t) {
+            // Restarting will fail as well, but reports the problem on the indexer process
+            log.error("Problem creating the new indexer for " + indexerDef.getName() + ", restarting it", t);
+            return false;
+        }
+
+        IndexerConf oldIndexerConf = handle.components.indexerConf;
+        if (!Objects.equal(oldIndexerConf.getTable(), components.indexerConf.getTable())
+                || oldIndexerConf.tableNameIsRegex() != components.indexerConf.tableNameIsRegex()) {
+            // The consumer only receives the events of the old table(s)
+            components.close(false);
+            return false;
+        }
+
+        try {
+            handle.swap(indexerDef, components);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            components.close(false);
+            return true;
+        }
+        indexerRegistry.register(indexerDef.getName(), components.indexer);
+        reportReady(indexerDef.getName(), requestTime);
+
+        log.info("Swapped indexer for " + indexerDef.getName() + " without restarting its SEP consumer, ready after "
+                + handle.timeToReady + " ms");
+        return true;
+    }
+
     private boolean stopIndexer(String indexerName) {
         indexerRegistry.unregister(indexerName);
 
@@ -333,13 +517,202 @@ public class IndexerSupervisor {
     private class MyListener implements IndexerModelListener {
         @Override
         public void process(IndexerModelEvent event) {
+            // Because the actions we take in response to events might take some time, we
+            // let the events process by other threads, so that other watchers do not
+            // have to wait too long.
+            requestSync(event.getIndexerName(), event.getType());
+        }
+    }
+
+    private void requestSync(String indexerName, IndexerModelEventType eventType) {
+        while (!getActor(indexerName).request(eventType)) {
+            // The actor was retired in the meantime, the next one picks up the request
+        }
+    }
+
+    private IndexerActor getActor(final String indexerName) {
+        IndexerActor actor = actors.get(indexerName);
+        if (actor == null) {
+            actor = new IndexerActor(indexerName, lifecyclePool, eventCount) {
+                @Override
+                protected boolean sync(boolean deleted, long requestTime) {
+                    return syncIndexer(indexerName, deleted, requestTime);
+                }
+
+                @Override
+                protected boolean isStopping() {
+                    return stopping;
+                }
+
+                @Override
+                protected void retire() {
+                    actors.remove(indexerName, this);
+                }
+            };
+            IndexerActor existingActor = actors.putIfAbsent(indexerName, actor);
+            if (existingActor != null) {
+                actor = existingActor;
+            }
+        }
+        return actor;
+    }
+
+    /**
+     * Brings an indexer in line with its latest definition: starts, restarts (or swaps) or stops it.
+     *
+     * @param deleted true if the indexer was deleted since the previous sync, it is then stopped even if it has been
+     *                added again in the meantime
+     * @return true if the indexer no longer exists and isn't running
+     */
+    private boolean syncIndexer(String indexerName, boolean deleted, long requestTime) {
+        if (deleted) {
+            stopIndexer(indexerName);
+        }
+        IndexerDefinition indexerDef;
+        try {
+            indexerDef = indexerModel.getIndexer(indexerName);
+        } catch (IndexerNotFoundException e) {
+            indexerDef = null;
+        }
+        if (indexerDef != null && shouldRunIndexer(indexerDef)) {
+            if (indexers.containsKey(indexerName)) {
+                restartIndexer(indexerDef, requestTime);
+            } else {
+                startIndexer(indexerDef, requestTime);
+            }
+        } else if (!deleted) {
+            stopIndexer(indexerName);
+        }
+        return indexerDef == null && !indexers.containsKey(indexerName);
+    }
+
+    private void reportReady(final String indexerName, long requestTime) {
+        IndexerHandle handle = indexers.get(indexerName);
+        handle.timeToReady = System.currentTimeMillis() - requestTime;
+        // Registered again after each start, as the metrics of an indexer are removed when it stops
+        Metrics.newGauge(metricName(getClass(), "Time to ready", indexerName), new Gauge<Long>() {
+            @Override
+            public Long value() {
+                IndexerHandle handle = indexers.get(indexerName);
+                return handle != null ? handle.timeToReady : 0L;
+            }
+        });
+    }
+
+    /**
+     * Runs the lifecycle actions of one indexer, one at a time, on the shared lifecycle pool, so that different
+     * indexers are started, restarted and stopped concurrently.
+     * <p>
+     * Events that arrive while an action is queued are coalesced into it: as each action brings the indexer in line
+     * with its latest definition, there is no point in handling a series of updates one by one.
+     * <p>
+     * Once an action finds that the indexer no longer exists, and no other action is pending, the actor is retired:
+     * it refuses further requests, so that they go to a new actor.
+     */
+    abstract static class IndexerActor implements Runnable {
+        private final Log log = LogFactory.getLog(IndexerSupervisor.class);
+        private final String indexerName;
+        private final SequentialExecutor executor;
+        private final AtomicInteger eventCount;
+        private boolean scheduled = false;
+        private boolean deleted = false;
+        private int pendingEvents = 0;
+        private long requestTime;
+        private boolean retired = false;
+
+        /**
+         * @param lifecyclePool provides the threads on which the actions run
+         * @param eventCount    the number of events handled by the actions is added to this
+         */
+        IndexerActor(String indexerName, Executor lifecyclePool, AtomicInteger eventCount) {
+            this.indexerName = indexerName;
+            this.eventCount = eventCount;
+            // At most one action is queued while another one runs
+            this.executor = new SequentialExecutor(lifecyclePool, 2);
+        }
+
+        /**
+         * Brings the indexer in line with its latest definition.
+         *
+         * @param deleted true if the indexer was deleted since the previous action
+         * @return true if the indexer no longer exists, so that the actor can be retired
+         */
+        protected abstract boolean sync(boolean deleted, long requestTime);
+
+        /**
+         * Returns true if the supervisor is stopping, in which case actions are skipped.
+         */
+        protected abstract boolean isStopping();
+
+        /**
+         * Called when the actor is retired, to forget about it.
+         */
+        protected abstract void retire();
+
+        /**
+         * @param eventType type of the model event that triggered the request, null if the request doesn't come
+         *                  from an event
+         * @return false if the actor has been retired, the request should then be made to a new actor
+         */
+        public synchronized boolean request(IndexerModelEventType eventType) {
+            if (retired) {
+                return false;
+            }
+            if (eventType != null) {
+                pendingEvents++;
+                deleted |= eventType == INDEXER_DELETED;
+            }
+            if (scheduled) {
+                return true;
+            }
+            scheduled = true;
+            requestTime = System.currentTimeMillis();
             try {
-                // Because the actions we take in response to events might take some time, we
-                // let the events process by another thread, so that other watchers do not
-                // have to wait too long.
-                eventQueue.put(event);
-            } catch (InterruptedException e) {
-                log.info("IndexerSupervisor.IndexerModelListener interrupted.");
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                scheduled = false;
+                if (!isStopping()) {
+                    log.error("Could not schedule the lifecycle action of indexer " + indexerName, e);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            boolean deleted;
+            int events;
+            long requestTime;
+            synchronized (this) {
+                // Events that arrive from now on need another action
+                scheduled = false;
+                deleted = this.deleted;
+                this.deleted = false;
+                events = pendingEvents;
+                pendingEvents = 0;
+                requestTime = this.requestTime;
+            }
+            try {
+                if (!isStopping()) {
+                    if (events > 1) {
+                        log.debug("Coalesced " + events + " events for indexer " + indexerName);
+                    }
+                    if (sync(deleted, requestTime)) {
+                        retireIfIdle();
+                    }
+                }
+            } catch (Throwable t) {
+                log.error("Error processing indexer model events for indexer " + indexerName, t);
+            } finally {
+                eventCount.addAndGet(events);
+            }
+        }
+
+        private synchronized void retireIfIdle() {
+            // Requests that arrived during the action still need this actor
+            if (!scheduled && pendingEvents == 0) {
+                retired = true;
+                retire();
             }
         }
     }
@@ -351,83 +724,70 @@ public class IndexerSupervisor {
     }
 
     private class IndexerHandle {
-        private final IndexerDefinition indexerDef;
-        private final Indexer indexer;
+        private volatile IndexerDefinition indexerDef;
+        private volatile IndexerComponents components;
         private final SepConsumer sepConsumer;
-        private final SolrClient solrServer;
-        private final PoolingClientConnectionManager connectionManager;
+        /** Milliseconds between the request to (re)start the indexer and it being ready to consume. */
+        private volatile long timeToReady;
 
-        public IndexerHandle(IndexerDefinition indexerDef, Indexer indexer, SepConsumer sepEventSlave,
-                             SolrClient solrServer, PoolingClientConnectionManager connectionManager) {
+        public IndexerHandle(IndexerDefinition indexerDef, IndexerComponents components, SepConsumer sepEventSlave) {
             this.indexerDef = indexerDef;
-            this.indexer = indexer;
+            this.components = components;
             this.sepConsumer = sepEventSlave;
-            this.solrServer = solrServer;
-            this.connectionManager = connectionManager;
         }
 
         public void start() throws InterruptedException, KeeperException, IOException {
             sepConsumer.start();
         }
 
+        /**
+         * Hands the events to a new indexer, from the next replication batch on, and closes the old one.
+         */
+        public void swap(IndexerDefinition indexerDef, IndexerComponents components) throws InterruptedException {
+            sepConsumer.swapEventListener(components.eventListener, components.cellFilter);
+            IndexerComponents oldComponents = this.components;
+            this.indexerDef = indexerDef;
+            this.components = components;
+            // The new indexer has the same name, and took over the metrics
+            oldComponents.close(false);
+        }
+
         public void stop() throws InterruptedException {
             Closer.close(sepConsumer);
-            Closer.close(solrServer);
-            Closer.close(indexer);
-            Closer.close(connectionManager);
+            components.close(true);
         }
     }
 
-    private class EventWorker implements Runnable {
-        private volatile boolean stop = false;
+    /**
+     * The indexer and everything around it that can be replaced while the SEP consumer keeps running.
+     */
+    private static class IndexerComponents {
+        private final IndexerConf indexerConf;
+        private final Indexer indexer;
+        private final IndexingEventListener eventListener;
+        private final CellFilter cellFilter;
+        private final SolrInputDocumentWriter solrWriter;
+        private final PoolingClientConnectionManager connectionManager;
 
-        public void stop() {
-            stop = true;
+        public IndexerComponents(IndexerConf indexerConf, Indexer indexer, IndexingEventListener eventListener,
+                                 CellFilter cellFilter, SolrInputDocumentWriter solrWriter,
+                                 PoolingClientConnectionManager connectionManager) {
+            this.indexerConf = indexerConf;
+            this.indexer = indexer;
+            this.eventListener = eventListener;
+            this.cellFilter = cellFilter;
+            this.solrWriter = solrWriter;
+            this.connectionManager = connectionManager;
         }
 
-        @Override
-        public void run() {
-            while (!stop) { // We need the stop flag because some code (HBase client code) eats interrupted flags
-                if (Thread.interrupted()) {
-                    return;
-                }
-
-                try {
-                    int queueSize = eventQueue.size();
-                    if (queueSize >= 10) {
-                        log.warn("EventWorker queue getting large, size = " + queueSize);
-                    }
-
-                    IndexerModelEvent event = eventQueue.take();
-                    log.debug("Took event from queue: " + event.toString());
-                    if (event.getType() == INDEXER_ADDED || event.getType() == INDEXER_UPDATED) {
-                        try {
-                            IndexerDefinition indexerDef = indexerModel.getIndexer(event.getIndexerName());
-                            if (shouldRunIndexer(indexerDef)) {
-                                if (indexers.containsKey(indexerDef.getName())) {
-                                    restartIndexer(indexerDef);
-                                } else {
-                                    startIndexer(indexerDef);
-                                }
-                            } else {
-                                stopIndexer(indexerDef.getName());
-                            }
-                        } catch (IndexerNotFoundException e) {
-                            stopIndexer(event.getIndexerName());
-                        } catch (Throwable t) {
-                            log.error("Error in IndexerWorker's IndexerModelListener.", t);
-                        }
-                    } else if (event.getType() == INDEXER_DELETED) {
-                        stopIndexer(event.getIndexerName());
-                    }
-                    eventCount.incrementAndGet();
-                } catch (InterruptedException e) {
-                    log.info("IndexerWorker.EventWorker interrupted.");
-                    return;
-                } catch (Throwable t) {
-                    log.error("Error processing indexer model event in IndexerWorker.", t);
-                }
+        public void close(boolean shutdownMetrics) {
+            try {
+                indexer.stop(shutdownMetrics);
+            } catch (Throwable t) {
+                LogFactory.getLog(IndexerSupervisor.class).error("Error stopping indexer", t);
             }
+            Closer.close(solrWriter);
+            Closer.close(connectionManager);
         }
     }
 }
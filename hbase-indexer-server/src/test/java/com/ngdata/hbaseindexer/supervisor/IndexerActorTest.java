@@ -0,0 +1,246 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.hbaseindexer.supervisor;
+
+import static com.ngdata.hbaseindexer.model.api.IndexerModelEventType.INDEXER_ADDED;
+import static com.ngdata.hbaseindexer.model.api.IndexerModelEventType.INDEXER_DELETED;
+import static com.ngdata.hbaseindexer.model.api.IndexerModelEventType.INDEXER_UPDATED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IndexerActorTest {
+
+    private ExecutorService pool;
+    private AtomicInteger eventCount;
+    private TestActor actor;
+
+    @Before
+    public void setUp() {
+        pool = Executors.newCachedThreadPool();
+        eventCount = new AtomicInteger();
+        actor = new TestActor();
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    private void waitOnEventCount(int expected) throws InterruptedException {
+        long waitUntil = System.currentTimeMillis() + 10000L;
+        while (eventCount.get() < expected && System.currentTimeMillis() < waitUntil) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, eventCount.get());
+    }
+
+    @Test
+    public void testEventsCoalesced() throws Exception {
+        actor.blockNextSync();
+        actor.request(INDEXER_ADDED);
+        assertTrue(actor.syncStarted.await(10, TimeUnit.SECONDS));
+
+        // While the first action runs, the events pile up behind a single queued action
+        actor.request(INDEXER_UPDATED);
+        actor.request(INDEXER_UPDATED);
+        actor.request(INDEXER_UPDATED);
+        actor.unblock();
+
+        waitOnEventCount(4);
+        assertEquals(2, actor.syncs.size());
+    }
+
+    @Test
+    public void testDeleteNotLostWhenCoalesced() throws Exception {
+        actor.blockNextSync();
+        actor.request(INDEXER_ADDED);
+        assertTrue(actor.syncStarted.await(10, TimeUnit.SECONDS));
+
+        actor.request(INDEXER_DELETED);
+        actor.request(INDEXER_ADDED);
+        actor.unblock();
+
+        waitOnEventCount(3);
+        assertEquals(2, actor.syncs.size());
+        assertFalse(actor.syncs.get(0));
+        assertTrue(actor.syncs.get(1));
+    }
+
+    @Test
+    public void testActionsRunOneAtATime() throws Exception {
+        final int threadCount = 8;
+        final int requestsPerThread = 100;
+        final AtomicInteger requestCount = new AtomicInteger();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final AtomicInteger requestsSeenByLastSync = new AtomicInteger();
+        final IndexerSupervisor.IndexerActor countingActor =
+                new IndexerSupervisor.IndexerActor("indexer1", pool, eventCount) {
+            @Override
+            protected boolean sync(boolean deleted, long requestTime) {
+                int nowRunning = running.incrementAndGet();
+                synchronized (maxRunning) {
+                    maxRunning.set(Math.max(maxRunning.get(), nowRunning));
+                }
+                requestsSeenByLastSync.set(requestCount.get());
+                Thread.yield();
+                running.decrementAndGet();
+                return false;
+            }
+
+            @Override
+            protected boolean isStopping() {
+                return false;
+            }
+
+            @Override
+            protected void retire() {
+            }
+        };
+
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < requestsPerThread; j++) {
+                        requestCount.incrementAndGet();
+                        countingActor.request(INDEXER_UPDATED);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        waitOnEventCount(threadCount * requestsPerThread);
+        assertEquals(1, maxRunning.get());
+        // The last request is handled by an action that started after it was made
+        assertEquals(threadCount * requestsPerThread, requestsSeenByLastSync.get());
+    }
+
+    @Test
+    public void testRequestWithoutEvent() throws Exception {
+        actor.request(null);
+        actor.request(INDEXER_ADDED);
+
+        waitOnEventCount(1);
+        Thread.sleep(100);
+        assertEquals(1, eventCount.get());
+    }
+
+    @Test
+    public void testSkippedWhenStopping() throws Exception {
+        actor.stopping = true;
+        actor.request(INDEXER_UPDATED);
+
+        // The event still counts as handled
+        waitOnEventCount(1);
+        assertTrue(actor.syncs.isEmpty());
+    }
+
+    @Test
+    public void testRetiredOnceIndexerIsGone() throws Exception {
+        actor.gone = true;
+        assertTrue(actor.request(INDEXER_DELETED));
+
+        waitOnEventCount(1);
+        assertTrue(actor.retired);
+        // Further requests go to a new actor
+        assertFalse(actor.request(INDEXER_ADDED));
+        assertEquals(1, actor.syncs.size());
+    }
+
+    @Test
+    public void testNotRetiredWhileRequestsArePending() throws Exception {
+        actor.gone = true;
+        actor.blockNextSync();
+        actor.request(INDEXER_DELETED);
+        assertTrue(actor.syncStarted.await(10, TimeUnit.SECONDS));
+
+        // Arrives during the action that finds the indexer gone
+        assertTrue(actor.request(INDEXER_ADDED));
+        actor.gone = false;
+        actor.unblock();
+
+        waitOnEventCount(2);
+        assertEquals(2, actor.syncs.size());
+        assertFalse(actor.retired);
+        assertTrue(actor.request(INDEXER_UPDATED));
+    }
+
+    private class TestActor extends IndexerSupervisor.IndexerActor {
+        private final List<Boolean> syncs = new CopyOnWriteArrayList<Boolean>();
+        private final CountDownLatch syncStarted = new CountDownLatch(1);
+        private volatile CountDownLatch blocker;
+        private volatile boolean stopping;
+        private volatile boolean gone;
+        private volatile boolean retired;
+
+        TestActor() {
+            super("indexer1", pool, eventCount);
+        }
+
+        void blockNextSync() {
+            blocker = new CountDownLatch(1);
+        }
+
+        void unblock() {
+            blocker.countDown();
+        }
+
+        @Override
+        protected boolean sync(boolean deleted, long requestTime) {
+            boolean gone = this.gone;
+            syncs.add(deleted);
+            syncStarted.countDown();
+            CountDownLatch blocker = this.blocker;
+            if (blocker != null) {
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return gone;
+        }
+
+        @Override
+        protected boolean isStopping() {
+            return stopping;
+        }
+
+        @Override
+        protected void retire() {
+            retired = true;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.hbaseindexer.supervisor;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableMap;
+import com.ngdata.hbaseindexer.model.api.IndexerDefinition;
+import com.ngdata.hbaseindexer.model.api.IndexerDefinitionBuilder;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+public class IndexerSupervisorTest {
+
+    private final IndexerDefinition indexerDef = new IndexerDefinitionBuilder()
+            .name("indexer1")
+            .configuration(Bytes.toBytes("<indexer table='table1'/>"))
+            .connectionType("solr")
+            .connectionParams(ImmutableMap.of("solr.zk", "localhost:2181/solr", "solr.collection", "collection1"))
+            .subscriptionId("Indexer_indexer1")
+            .subscriptionTimestamp(1000L)
+            .occVersion(1)
+            .build();
+
+    private IndexerDefinitionBuilder update() {
+        return new IndexerDefinitionBuilder().startFrom(indexerDef).occVersion(2);
+    }
+
+    @Test
+    public void testNoRelevantChanges() {
+        IndexerDefinition updatedDef = update()
+                .batchIndexCliArguments(new String[] {"--reducers", "0"})
+                .build();
+
+        assertFalse(IndexerSupervisor.hasRelevantChanges(indexerDef, updatedDef));
+    }
+
+    @Test
+    public void testConfigurationChangeIsSwapped() {
+        IndexerDefinition updatedDef = update()
+                .configuration(Bytes.toBytes("<indexer table='table1' read-row='never'/>"))
+                .build();
+
+        assertTrue(IndexerSupervisor.hasRelevantChanges(indexerDef, updatedDef));
+        assertTrue(IndexerSupervisor.canSwap(indexerDef, updatedDef));
+    }
+
+    @Test
+    public void testConnectionChangeIsSwapped() {
+        IndexerDefinition updatedDef = update()
+                .connectionParams(ImmutableMap.of("solr.zk", "localhost:2181/solr", "solr.collection", "collection2"))
+                .build();
+
+        assertTrue(IndexerSupervisor.hasRelevantChanges(indexerDef, updatedDef));
+        assertTrue(IndexerSupervisor.canSwap(indexerDef, updatedDef));
+    }
+
+    @Test
+    public void testSubscriptionIdChangeIsRestarted() {
+        IndexerDefinition updatedDef = update()
+                .subscriptionId("Indexer_indexer1_2")
+                .build();
+
+        assertTrue(IndexerSupervisor.hasRelevantChanges(indexerDef, updatedDef));
+        assertFalse(IndexerSupervisor.canSwap(indexerDef, updatedDef));
+    }
+
+    @Test
+    public void testSubscriptionTimestampChangeIsRestarted() {
+        IndexerDefinition updatedDef = update()
+                .subscriptionTimestamp(2000L)
+                .build();
+
+        assertTrue(IndexerSupervisor.hasRelevantChanges(indexerDef, updatedDef));
+        assertFalse(IndexerSupervisor.canSwap(indexerDef, updatedDef));
+    }
+
+    @Test
+    public void testThreadCountChangeIsRestarted() {
+        IndexerDefinition updatedDef = update()
+                .threadCount(4)
+                .build();
+
+        assertTrue(IndexerSupervisor.hasRelevantChanges(indexerDef, updatedDef));
+        assertFalse(IndexerSupervisor.canSwap(indexerDef, updatedDef));
+    }
+}
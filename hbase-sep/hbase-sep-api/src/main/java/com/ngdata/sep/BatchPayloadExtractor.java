@@ -0,0 +1,54 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.sep;
+
+import org.apache.hadoop.hbase.Cell;
+
+/**
+ * Used to extract payloads when constructing {@link SepEvent}s, a replication batch at a time.
+ * <p>
+ * All mutations of a replication batch apply to the same table, so the table only needs to be resolved once per
+ * batch, through {@link #forTable(byte[])}, after which the cells of the batch are handed to the returned
+ * {@link TablePayloadExtractor} as they are, without converting them to {@code KeyValue}s first.
+ * <p>
+ * A {@link PayloadExtractor} that also implements this interface is used through this interface by the SEP.
+ * Implementations must be thread-safe, as batches are received concurrently.
+ */
+public interface BatchPayloadExtractor {
+
+    /**
+     * Resolve the payload extraction for the cells of a table.
+     *
+     * @param tableName table to which the cells of the batch are being applied
+     * @return the extractor for the cells of the table, or null if the table never holds payload data
+     */
+    TablePayloadExtractor forTable(byte[] tableName);
+
+    /**
+     * Extracts payloads from the cells of a single table.
+     */
+    interface TablePayloadExtractor {
+
+        /**
+         * Extract the payload data from a cell.
+         *
+         * @param cell contains a (partial) row mutation which may include payload data
+         * @return the extracted payload data, or null if no payload data is included in the supplied {@code Cell}
+         */
+        byte[] extractPayload(Cell cell);
+    }
+
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.sep;
+
+import org.apache.hadoop.hbase.Cell;
+
+/**
+ * Used to drop cells that are of no interest to an {@link EventListener} when constructing {@link SepEvent}s.
+ * <p>
+ * Cells that are not relevant are left out of the events, and events that are left without any cells are not
+ * delivered at all. Delete markers are always kept, they are not passed to the filter.
+ * <p>
+ * The filter is called from the threads that receive replication requests, so it must be thread-safe and cheap.
+ */
+public interface CellFilter {
+
+    /**
+     * Determine whether a cell should be included in the SEP event for its row.
+     * <p>
+     * Implementations should only look at the coordinates of the cell (family and qualifier), not at its value.
+     *
+     * @param tableName table to which the {@code Cell} is being applied
+     * @param cell a put cell of a (partial) row mutation
+     * @return true if the cell should be delivered to the event listener
+     */
+    boolean isRelevant(byte[] tableName, Cell cell);
+
+}
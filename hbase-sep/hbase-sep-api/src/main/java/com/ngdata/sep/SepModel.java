@@ -18,6 +18,8 @@ package com.ngdata.sep;
 import org.apache.zookeeper.KeeperException;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Defines methods for adding and removing subscriptions on the Side-Effect Processor (SEP).
@@ -42,6 +44,38 @@ public interface SepModel {
      */
     boolean addSubscriptionSilent(String name, String... tableNames) throws InterruptedException, KeeperException, IOException;
 
+    /**
+     * Adds a subscription that only receives the changes to the given column families of the given tables.
+     *
+     * @param tableColumnFamilies the column families to subscribe to, per table name. An empty list of column
+     *                            families means all column families of that table. Tables that are not in the map
+     *                            are not replicated at all, so an empty map results in a subscription that receives
+     *                            nothing until it is updated.
+     *                            Null means all column families of all tables.
+     * @throws IllegalStateException if a subscription by that name already exists.
+     */
+    void addSubscription(String name, Map<String, List<String>> tableColumnFamilies)
+            throws InterruptedException, KeeperException, IOException;
+
+    /**
+     * Adds a subscription that only receives the changes to the given column families of the given tables, doesn't
+     * fail if a subscription by that name exists.
+     *
+     * @see #addSubscription(String, Map)
+     */
+    boolean addSubscriptionSilent(String name, Map<String, List<String>> tableColumnFamilies)
+            throws InterruptedException, KeeperException, IOException;
+
+    /**
+     * Changes the tables and column families that an existing subscription receives changes for, see
+     * {@link #addSubscription(String, Map)}. Passing null makes the subscription receive the changes to all tables
+     * again.
+     *
+     * @return false if the subscription was already limited to exactly these tables and column families
+     * @throws IllegalStateException if no subscription by that name exists.
+     */
+    boolean updateSubscription(String name, Map<String, List<String>> tableColumnFamilies) throws IOException;
+
     /**
      * Removes a subscription.
      * 
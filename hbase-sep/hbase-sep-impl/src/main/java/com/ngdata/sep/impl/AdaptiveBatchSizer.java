@@ -0,0 +1,134 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.sep.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Chooses the number of events to put in a batch for each partition of a {@link SepEventExecutor}, based on how
+ * long earlier batches of that partition took to be processed by the {@code EventListener} and how large their
+ * events were.
+ * <p>
+ * For each partition, an exponentially weighted moving average is kept of the processing time per event and of the
+ * size per event. The batch size is then chosen so that a batch is expected to take about the target latency and to
+ * hold about the target number of bytes, whichever gives the smallest batch, within the configured bounds. To avoid
+ * overshooting on a single fast batch, the batch size at most doubles after each batch, while it can shrink
+ * immediately.
+ * <p>
+ * Instances are shared by all {@link SepEventExecutor}s of a {@link SepConsumer}, so that what has been learned is
+ * kept over replication batches. Batch sizes are read by the thread that schedules events, and updated by the
+ * threads that process them.
+ */
+public class AdaptiveBatchSizer {
+
+    /** Weight of the most recent batch in the moving averages. */
+    private static final double ALPHA = 0.3;
+
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final long targetLatencyNanos;
+    private final long targetBytes;
+    private final SepMetrics sepMetrics;
+    private final AtomicIntegerArray batchSizes;
+    private final double[] nanosPerEvent;
+    private final double[] bytesPerEvent;
+
+    /**
+     * @param numPartitions number of partitions (threads) for which a batch size is maintained
+     * @param minBatchSize smallest batch size that will be chosen, this is also the initial batch size
+     * @param maxBatchSize largest batch size that will be chosen
+     * @param targetLatencyMillis time in which the listener should ideally process a batch
+     * @param targetBytes number of cell bytes a batch should ideally hold
+     * @param sepMetrics metrics to which the chosen batch size is reported, can be null
+     */
+    public AdaptiveBatchSizer(int numPartitions, int minBatchSize, int maxBatchSize, long targetLatencyMillis,
+            long targetBytes, SepMetrics sepMetrics) {
+        Preconditions.checkArgument(numPartitions > 0, "Number of partitions must be > 0");
+        Preconditions.checkArgument(minBatchSize > 0, "Minimum batch size must be > 0");
+        Preconditions.checkArgument(maxBatchSize >= minBatchSize, "Maximum batch size must be >= minimum batch size");
+        Preconditions.checkArgument(targetLatencyMillis > 0, "Target latency must be > 0");
+        Preconditions.checkArgument(targetBytes > 0, "Target bytes must be > 0");
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMillis);
+        this.targetBytes = targetBytes;
+        this.sepMetrics = sepMetrics;
+        this.batchSizes = new AtomicIntegerArray(numPartitions);
+        this.nanosPerEvent = new double[numPartitions];
+        this.bytesPerEvent = new double[numPartitions];
+        for (int i = 0; i < numPartitions; i++) {
+            batchSizes.set(i, minBatchSize);
+        }
+        reportAverageBatchSize();
+    }
+
+    /**
+     * Returns the batch size currently chosen for a partition.
+     */
+    public int getBatchSize(int partition) {
+        return batchSizes.get(partition);
+    }
+
+    /**
+     * Returns the batch size averaged over all partitions.
+     */
+    public int getAverageBatchSize() {
+        long total = 0;
+        for (int i = 0; i < batchSizes.length(); i++) {
+            total += batchSizes.get(i);
+        }
+        return (int)(total / batchSizes.length());
+    }
+
+    /**
+     * Report that a batch has been processed, and adjust the batch size of its partition accordingly.
+     *
+     * @param partition partition on which the batch was processed
+     * @param numEvents number of events in the batch
+     * @param numBytes total size of the cells of the events in the batch
+     * @param durationNanos time the listener took to process the batch
+     */
+    public synchronized void reportBatch(int partition, int numEvents, long numBytes, long durationNanos) {
+        if (numEvents == 0) {
+            return;
+        }
+        nanosPerEvent[partition] = average(nanosPerEvent[partition], (double)durationNanos / numEvents);
+        bytesPerEvent[partition] = average(bytesPerEvent[partition], (double)numBytes / numEvents);
+
+        double latencyBound = targetLatencyNanos / Math.max(nanosPerEvent[partition], 1d);
+        double bytesBound = targetBytes / Math.max(bytesPerEvent[partition], 1d);
+        long desired = (long)Math.min(latencyBound, bytesBound);
+        long growthBound = 2L * batchSizes.get(partition);
+        int batchSize = (int)Math.max(minBatchSize, Math.min(maxBatchSize, Math.min(desired, growthBound)));
+
+        if (batchSizes.getAndSet(partition, batchSize) != batchSize) {
+            reportAverageBatchSize();
+        }
+    }
+
+    private static double average(double current, double sample) {
+        return current == 0d ? sample : ALPHA * sample + (1 - ALPHA) * current;
+    }
+
+    private void reportAverageBatchSize() {
+        if (sepMetrics != null) {
+            sepMetrics.reportBatchSize(getAverageBatchSize());
+        }
+    }
+}
@@ -15,8 +15,12 @@
  */
 package com.ngdata.sep.impl;
 
+import java.util.Arrays;
+
 import com.google.common.base.Preconditions;
+import com.ngdata.sep.BatchPayloadExtractor;
 import com.ngdata.sep.PayloadExtractor;
+import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.CellUtil;
 import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.util.Bytes;
@@ -26,12 +30,23 @@ import org.apache.hadoop.hbase.util.Bytes;
  * <p>
  * Payload data can be included in a row mutation event to allow specific processing to occur as a result of the
  * mutation.
+ * <p>
+ * When used as a {@link BatchPayloadExtractor}, the table is only compared once per replication batch. The payload
+ * cells are then located by comparing the family of each cell, and looking up its qualifier in a sorted index of the
+ * payload qualifiers, directly on the backing arrays of the cell.
  */
-public class BasePayloadExtractor implements PayloadExtractor {
+public class BasePayloadExtractor implements PayloadExtractor, BatchPayloadExtractor {
 
     private final byte[] tableName;
     private final byte[] columnFamily;
-    private final byte[] columnQualifier;
+    /** Payload qualifiers, sorted for binary search. */
+    private final byte[][] columnQualifiers;
+    private final TablePayloadExtractor tablePayloadExtractor = new TablePayloadExtractor() {
+        @Override
+        public byte[] extractPayload(Cell cell) {
+            return isPayloadColumn(cell) ? CellUtil.cloneValue(cell) : null;
+        }
+    };
 
     /**
      * Construct with the table and column information from which payload data should be extracted.
@@ -41,13 +56,29 @@ public class BasePayloadExtractor implements PayloadExtractor {
      * @param columnQualifier column qualifier of the cell from which the payload data will be extracted
      */
     public BasePayloadExtractor(byte[] tableName, byte[] columnFamily, byte[] columnQualifier) {
+        this(tableName, columnFamily, new byte[][] { columnQualifier });
+    }
+
+    /**
+     * Construct with the table and column information from which payload data should be extracted.
+     * 
+     * @param tableName name of the table on which mutation events will include payload data
+     * @param columnFamily column family that will include payload data
+     * @param columnQualifiers column qualifiers of the cells from which the payload data will be extracted
+     */
+    public BasePayloadExtractor(byte[] tableName, byte[] columnFamily, byte[]... columnQualifiers) {
         Preconditions.checkNotNull(tableName, "tableName cannot be null");
         Preconditions.checkNotNull(columnFamily, "columnFamily cannot be null");
-        Preconditions.checkNotNull(columnQualifier, "columnQualifier cannot be null");
+        Preconditions.checkNotNull(columnQualifiers, "columnQualifiers cannot be null");
+        Preconditions.checkArgument(columnQualifiers.length > 0, "At least one columnQualifier is required");
+        for (byte[] columnQualifier : columnQualifiers) {
+            Preconditions.checkNotNull(columnQualifier, "columnQualifier cannot be null");
+        }
 
         this.tableName = tableName;
         this.columnFamily = columnFamily;
-        this.columnQualifier = columnQualifier;
+        this.columnQualifiers = columnQualifiers.clone();
+        Arrays.sort(this.columnQualifiers, Bytes.BYTES_COMPARATOR);
     }
 
     /**
@@ -62,12 +93,39 @@ public class BasePayloadExtractor implements PayloadExtractor {
      */
     @Override
     public byte[] extractPayload(byte[] tableName, KeyValue keyValue) {
-        if (Bytes.equals(this.tableName, tableName) && CellUtil.matchingColumn(keyValue, columnFamily, columnQualifier)) {
-            return CellUtil.cloneValue(keyValue);
-        } else {
-            return null;
+        TablePayloadExtractor extractor = forTable(tableName);
+        return extractor != null ? extractor.extractPayload(keyValue) : null;
+    }
+
+    /**
+     * Returns the extractor for the configured table, or null for any other table.
+     */
+    @Override
+    public TablePayloadExtractor forTable(byte[] tableName) {
+        return Bytes.equals(this.tableName, tableName) ? tablePayloadExtractor : null;
+    }
+
+    private boolean isPayloadColumn(Cell cell) {
+        if (!Bytes.equals(columnFamily, 0, columnFamily.length,
+                cell.getFamilyArray(), cell.getFamilyOffset(), cell.getFamilyLength())) {
+            return false;
+        }
+        int low = 0;
+        int high = columnQualifiers.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            byte[] columnQualifier = columnQualifiers[mid];
+            int cmp = Bytes.compareTo(columnQualifier, 0, columnQualifier.length,
+                    cell.getQualifierArray(), cell.getQualifierOffset(), cell.getQualifierLength());
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
         }
-        
+        return false;
     }
 
 }
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.sep.impl;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.ngdata.sep.SepEvent;
+import org.apache.hadoop.hbase.Cell;
+
+/**
+ * Tracks the event-time watermark of a {@link SepConsumer}: the write timestamp before which all received events
+ * have been processed.
+ * <p>
+ * The timestamp of the most recent event that was processed says little about freshness: replication batches from
+ * different region servers, or batches that are processed concurrently, complete out of order, so an old event can
+ * still be in flight when a newer one has been processed. Instead, the oldest write timestamp of every piece of work
+ * that is in flight is registered, both per replication batch and per batch handed to a partition (thread). The
+ * watermark is the oldest of these. When nothing is in flight, all received events have been processed: the lag of
+ * the events in flight is then 0, but the {@link #getStaleness(long) staleness} keeps growing, so that a source that
+ * stalled doesn't look fresh.
+ * <p>
+ * Instances are thread-safe.
+ */
+public class EventTimeWatermark {
+
+    /** Oldest timestamps of the replication batches in flight, with their number. */
+    private final TreeMap<Long, Integer> inFlight = new TreeMap<Long, Integer>();
+    private final List<TreeMap<Long, Integer>> partitionsInFlight;
+    private long highestProcessedTimestamp = 0;
+
+    /**
+     * @param numPartitions number of partitions over which the events are processed
+     * @param sepMetrics metrics to which the watermark and lag are exposed, can be null
+     */
+    public EventTimeWatermark(int numPartitions, SepMetrics sepMetrics) {
+        Preconditions.checkArgument(numPartitions > 0, "Number of partitions must be > 0");
+        partitionsInFlight = Lists.newArrayListWithCapacity(numPartitions);
+        for (int i = 0; i < numPartitions; i++) {
+            partitionsInFlight.add(new TreeMap<Long, Integer>());
+        }
+        if (sepMetrics != null) {
+            sepMetrics.registerWatermark(this);
+        }
+    }
+
+    /**
+     * Register that a replication batch, of which the oldest event has the given timestamp, is being processed.
+     * Should be followed by a call to {@link #endBatch(long, long)}.
+     */
+    public synchronized void beginBatch(long oldestTimestamp) {
+        add(inFlight, oldestTimestamp);
+    }
+
+    /**
+     * Register that a replication batch is no longer being processed, either because all of its events were
+     * processed or because it failed (in which case it will be received again).
+     *
+     * @param oldestTimestamp the timestamp passed to {@link #beginBatch(long)}
+     * @param newestTimestamp the timestamp of the most recent event of the batch
+     */
+    public synchronized void endBatch(long oldestTimestamp, long newestTimestamp) {
+        remove(inFlight, oldestTimestamp);
+        highestProcessedTimestamp = Math.max(highestProcessedTimestamp, newestTimestamp);
+    }
+
+    /**
+     * Register that a batch of events, of which the oldest has the given timestamp, was handed to a partition.
+     * Should be followed by a call to {@link #endPartitionBatch(int, long)}.
+     */
+    public synchronized void beginPartitionBatch(int partition, long oldestTimestamp) {
+        add(partitionsInFlight.get(partition), oldestTimestamp);
+    }
+
+    /**
+     * Register that a batch of events handed to a partition is done.
+     */
+    public synchronized void endPartitionBatch(int partition, long oldestTimestamp) {
+        remove(partitionsInFlight.get(partition), oldestTimestamp);
+    }
+
+    /**
+     * Returns the watermark: all events with an older write timestamp have been processed. If nothing is in
+     * flight, this is the timestamp of the most recent event processed so far.
+     */
+    public synchronized long getWatermark() {
+        long watermark = inFlight.isEmpty() ? highestProcessedTimestamp : inFlight.firstKey();
+        for (TreeMap<Long, Integer> partitionInFlight : partitionsInFlight) {
+            if (!partitionInFlight.isEmpty()) {
+                watermark = Math.min(watermark, partitionInFlight.firstKey());
+            }
+        }
+        return watermark;
+    }
+
+    /**
+     * Returns how far (in milliseconds) processing lags behind the writes in HBase, in terms of the write timestamp
+     * of the oldest event that is in flight. Returns 0 if nothing is in flight.
+     */
+    public synchronized long getLag(long now) {
+        return isIdle() ? 0 : Math.max(0, now - getWatermark());
+    }
+
+    /**
+     * Returns how far (in milliseconds) processing lags behind the writes in HBase, like {@link #getLag(long)}, but
+     * when nothing is in flight, this is the time since the write timestamp of the most recent event processed. This
+     * can't tell an idle table from a replication source that stopped shipping events. Returns -1 if nothing was
+     * processed yet.
+     */
+    public synchronized long getStaleness(long now) {
+        if (isIdle()) {
+            return highestProcessedTimestamp > 0 ? Math.max(0, now - highestProcessedTimestamp) : -1;
+        }
+        return getLag(now);
+    }
+
+    /**
+     * Returns the highest lag of the individual partitions, see {@link #getPartitionLag(int, long)}.
+     */
+    public synchronized long getMaxPartitionLag(long now) {
+        long maxLag = 0;
+        for (int i = 0; i < partitionsInFlight.size(); i++) {
+            maxLag = Math.max(maxLag, getPartitionLag(i, now));
+        }
+        return maxLag;
+    }
+
+    /**
+     * Returns the lag of a single partition, see {@link #getLag(long)}.
+     */
+    public synchronized long getPartitionLag(int partition, long now) {
+        if (partition >= partitionsInFlight.size()) {
+            // The partition was removed, see setNumPartitions
+            return 0;
+        }
+        TreeMap<Long, Integer> partitionInFlight = partitionsInFlight.get(partition);
+        return partitionInFlight.isEmpty() ? 0 : Math.max(0, now - partitionInFlight.firstKey());
+    }
+
+    public synchronized int getNumPartitions() {
+        return partitionsInFlight.size();
+    }
+
+    /**
+     * Changes the number of partitions, which is only allowed while no batches are in flight on any partition.
+     */
+    public synchronized void setNumPartitions(int numPartitions) {
+        Preconditions.checkArgument(numPartitions > 0, "Number of partitions must be > 0");
+        for (TreeMap<Long, Integer> partitionInFlight : partitionsInFlight) {
+            Preconditions.checkState(partitionInFlight.isEmpty(), "Partitions still have batches in flight");
+        }
+        while (partitionsInFlight.size() > numPartitions) {
+            partitionsInFlight.remove(partitionsInFlight.size() - 1);
+        }
+        while (partitionsInFlight.size() < numPartitions) {
+            partitionsInFlight.add(new TreeMap<Long, Integer>());
+        }
+    }
+
+    private boolean isIdle() {
+        if (!inFlight.isEmpty()) {
+            return false;
+        }
+        for (TreeMap<Long, Integer> partitionInFlight : partitionsInFlight) {
+            if (!partitionInFlight.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the oldest write timestamp of the cells of the given events, or {@link Long#MAX_VALUE} if there are
+     * no cells.
+     */
+    public static long getOldestTimestamp(List<SepEvent> events) {
+        long oldest = Long.MAX_VALUE;
+        for (SepEvent event : events) {
+            oldest = Math.min(oldest, getOldestTimestamp(event));
+        }
+        return oldest;
+    }
+
+    static long getOldestTimestamp(SepEvent event) {
+        long oldest = Long.MAX_VALUE;
+        for (Cell cell : event.getKeyValues()) {
+            oldest = Math.min(oldest, cell.getTimestamp());
+        }
+        return oldest;
+    }
+
+    private static void add(Map<Long, Integer> timestamps, long timestamp) {
+        Integer count = timestamps.get(timestamp);
+        timestamps.put(timestamp, count == null ? 1 : count + 1);
+    }
+
+    private static void remove(Map<Long, Integer> timestamps, long timestamp) {
+        Integer count = timestamps.get(timestamp);
+        if (count == null) {
+            throw new IllegalStateException("No work in flight with timestamp " + timestamp);
+        }
+        if (count == 1) {
+            timestamps.remove(timestamp);
+        } else {
+            timestamps.put(timestamp, count - 1);
+        }
+    }
+}
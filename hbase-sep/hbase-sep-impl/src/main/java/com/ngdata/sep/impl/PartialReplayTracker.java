@@ -0,0 +1,166 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.sep.impl;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.ngdata.sep.SepEvent;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.TableName;
+
+/**
+ * Remembers which events of a failed replication batch have already been processed, so that they can be skipped
+ * when HBase ships the same batch again.
+ * <p>
+ * When a batch fails, HBase retries it as a whole, also the partitions (threads) whose events were processed
+ * successfully. The events of a failed batch are therefore identified by a fingerprint of their contents (rows and
+ * cells, including their values), together with which of them were processed. A later batch with the same
+ * fingerprint is considered to be a retry of the failed batch. The fingerprint is only computed for batches that
+ * failed and while there are failed batches to match, so this costs nothing as long as batches succeed.
+ * <p>
+ * Only a bounded number of failed batches is remembered. If a batch is re-shipped differently, e.g. because the
+ * source region server restarted, it doesn't match and is processed completely, as it would have been without this
+ * tracker.
+ */
+final class PartialReplayTracker {
+
+    private final Map<HashCode, BitSet> failedBatches;
+
+    /**
+     * @param maxFailedBatches maximum number of failed batches that are remembered
+     */
+    PartialReplayTracker(final int maxFailedBatches) {
+        Preconditions.checkArgument(maxFailedBatches > 0, "Maximum number of failed batches must be > 0");
+        this.failedBatches = new LinkedHashMap<HashCode, BitSet>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<HashCode, BitSet> eldest) {
+                return size() > maxFailedBatches;
+            }
+        };
+    }
+
+    /**
+     * Returns true if there are failed batches for which a retry can be recognized.
+     */
+    synchronized boolean hasFailedBatches() {
+        return !failedBatches.isEmpty();
+    }
+
+    /**
+     * Returns which events of a batch with the given fingerprint were already processed when it failed before, and
+     * forgets about that failure. Returns null if no batch with this fingerprint failed.
+     */
+    synchronized BitSet takeProcessedEvents(HashCode fingerprint) {
+        return failedBatches.remove(fingerprint);
+    }
+
+    /**
+     * Remember which events of a batch were processed.
+     *
+     * @param fingerprint fingerprint of all events of the batch, see {@link #fingerprint(TableName, List)}
+     * @param processedEvents indexes of the events (in the list from which the fingerprint was computed) that have
+     *                        been processed
+     */
+    synchronized void recordFailure(HashCode fingerprint, BitSet processedEvents) {
+        failedBatches.put(fingerprint, processedEvents);
+    }
+
+    /**
+     * Computes the fingerprint of the events of a replication batch.
+     */
+    static HashCode fingerprint(TableName tableName, List<SepEvent> events) {
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        hasher.putBytes(tableName.getName());
+        hasher.putInt(events.size());
+        for (SepEvent event : events) {
+            hasher.putBytes(event.getRow());
+            hasher.putInt(event.getKeyValues().size());
+            for (Cell cell : event.getKeyValues()) {
+                hasher.putBytes(cell.getFamilyArray(), cell.getFamilyOffset(), cell.getFamilyLength());
+                hasher.putBytes(cell.getQualifierArray(), cell.getQualifierOffset(), cell.getQualifierLength());
+                hasher.putLong(cell.getTimestamp());
+                hasher.putByte(cell.getTypeByte());
+                hasher.putBytes(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength());
+            }
+        }
+        return hasher.hash();
+    }
+
+    /**
+     * Determines which events have been processed, based on the outcome of the futures of the batches they were
+     * scheduled in.
+     * <p>
+     * An event only counts as processed if no earlier event of the same row failed. Otherwise the retry would only
+     * apply the older, failed event of the row, after a newer one was already applied.
+     *
+     * @param events all events of the replication batch
+     * @param futures futures of the batches, as returned by {@link SepEventExecutor#flush()}
+     * @param batchEvents events of each batch, as returned by {@link SepEventExecutor#getBatchEvents()}
+     * @param processedEvents the indexes of processed events are added to this set
+     */
+    static void addProcessedEvents(List<SepEvent> events, List<Future<?>> futures,
+            List<List<SepEvent>> batchEvents, BitSet processedEvents) {
+        Set<SepEvent> successfulEvents = Collections.newSetFromMap(new IdentityHashMap<SepEvent, Boolean>());
+        for (int i = 0; i < futures.size(); i++) {
+            if (isSuccessful(futures.get(i))) {
+                successfulEvents.addAll(batchEvents.get(i));
+            }
+        }
+        Set<SepEventExecutor.RowKey> failedRows = new HashSet<SepEventExecutor.RowKey>();
+        for (int i = 0; i < events.size(); i++) {
+            if (processedEvents.get(i)) {
+                // Processed in an earlier attempt of the batch
+                continue;
+            }
+            SepEvent event = events.get(i);
+            SepEventExecutor.RowKey rowKey = new SepEventExecutor.RowKey(event.getTable(), event.getRow());
+            if (successfulEvents.contains(event) && !failedRows.contains(rowKey)) {
+                processedEvents.set(i);
+            } else {
+                failedRows.add(rowKey);
+            }
+        }
+    }
+
+    private static boolean isSuccessful(Future<?> future) {
+        if (!future.isDone() || future.isCancelled()) {
+            return false;
+        }
+        try {
+            future.get();
+            return true;
+        } catch (ExecutionException e) {
+            return false;
+        } catch (InterruptedException e) {
+            // Can't happen for a future that is done
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.sep.impl;
+
+import com.google.common.base.Preconditions;
+import com.ngdata.sep.BatchPayloadExtractor;
+import com.ngdata.sep.PayloadExtractor;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.KeyValueUtil;
+
+/**
+ * Makes a {@link PayloadExtractor} usable as a {@link BatchPayloadExtractor}.
+ * <p>
+ * The wrapped extractor is still called for every cell, with the table name of the batch and the cell converted to a
+ * {@code KeyValue} (which is a copy unless the cell already is a {@code KeyValue}).
+ */
+public final class PayloadExtractorAdapter implements BatchPayloadExtractor {
+
+    private final PayloadExtractor payloadExtractor;
+
+    private PayloadExtractorAdapter(PayloadExtractor payloadExtractor) {
+        this.payloadExtractor = payloadExtractor;
+    }
+
+    /**
+     * Returns the given extractor itself if it already implements {@link BatchPayloadExtractor}, otherwise an
+     * adapter for it.
+     *
+     * @param payloadExtractor the extractor to adapt, can be null
+     * @return the batch extractor, or null if the given extractor is null
+     */
+    public static BatchPayloadExtractor adapt(PayloadExtractor payloadExtractor) {
+        if (payloadExtractor == null) {
+            return null;
+        }
+        if (payloadExtractor instanceof BatchPayloadExtractor) {
+            return (BatchPayloadExtractor)payloadExtractor;
+        }
+        return new PayloadExtractorAdapter(payloadExtractor);
+    }
+
+    @Override
+    public TablePayloadExtractor forTable(final byte[] tableName) {
+        Preconditions.checkNotNull(tableName, "tableName cannot be null");
+        return new TablePayloadExtractor() {
+            @Override
+            public byte[] extractPayload(Cell cell) {
+                return payloadExtractor.extractPayload(tableName, KeyValueUtil.ensureKeyValue(cell));
+            }
+        };
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.sep.impl;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Bounded window of replication batches that are being processed concurrently by a {@link SepConsumer}.
+ * <p>
+ * Every call to {@code replicateBatch} opens the window before scheduling its events, and releases it once its own
+ * events have been processed, after which the batch is acknowledged to HBase. At most {@code size} batches can be
+ * open at the same time, further batches wait in {@link #open()}.
+ * <p>
+ * The acknowledgements are not ordered: a replication source only ships its next batch once the previous one was
+ * acknowledged, so the batches in the window come from different sources (region servers or WAL groups), and
+ * making one wait for another would only let a slow source hold back the others.
+ */
+final class ReplicationBatchWindow {
+
+    private final int size;
+    private int inFlightCount = 0;
+
+    ReplicationBatchWindow(int size) {
+        Preconditions.checkArgument(size > 0, "Window size must be > 0");
+        this.size = size;
+    }
+
+    /**
+     * Open the window for a new replication batch, waiting until there is room.
+     */
+    synchronized void open() throws InterruptedException {
+        while (inFlightCount >= size) {
+            wait();
+        }
+        inFlightCount++;
+    }
+
+    /**
+     * Release the room taken by a batch that was processed, whether it succeeded or failed.
+     */
+    synchronized void release() {
+        Preconditions.checkState(inFlightCount > 0, "No batch in flight");
+        inFlightCount--;
+        notifyAll();
+    }
+
+    /**
+     * Returns the maximum number of batches that can be in flight.
+     */
+    int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of batches that are currently in flight.
+     */
+    synchronized int getInFlightCount() {
+        return inFlightCount;
+    }
+}
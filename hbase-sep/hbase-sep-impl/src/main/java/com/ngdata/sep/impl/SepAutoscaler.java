@@ -0,0 +1,165 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.sep.impl;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Periodically grows or shrinks the number of partitions (worker threads) of a {@link SepConsumer}.
+ * <p>
+ * A partition is added when processing lags behind the writes in HBase by more than the target lag, and the
+ * existing partitions can't keep up: they are busy most of the time, or batches are queueing up. A partition is
+ * removed when the lag is well below the target, the partitions are mostly idle and nothing is queued. After a
+ * resize, no decision is taken during one interval, so that the effect of the resize can be measured first.
+ * <p>
+ * Resizing is done through {@link SepConsumer#resize(int)}, which drains the partitions before the events are spread
+ * over the new ones, so that the events of a row are still processed in order.
+ */
+class SepAutoscaler {
+
+    /** Utilization of the partitions above which they are considered unable to keep up. */
+    static final double HIGH_UTILIZATION = 0.75;
+
+    /** Utilization of the partitions below which they are considered mostly idle. */
+    static final double LOW_UTILIZATION = 0.25;
+
+    private final SepConsumer consumer;
+    private final int minPartitions;
+    private final int maxPartitions;
+    private final long targetLagMillis;
+    private final long intervalMillis;
+    private final SepMetrics sepMetrics;
+    private final Log log = LogFactory.getLog(getClass());
+    private ScheduledExecutorService scheduler;
+    private long lastBusyTime;
+    private long lastSampleNanos;
+    private boolean coolingDown;
+
+    /**
+     * @param minPartitions minimum number of partitions
+     * @param maxPartitions maximum number of partitions
+     * @param targetLagMillis event-time lag above which partitions are added
+     * @param intervalMillis how often the number of partitions is evaluated
+     */
+    SepAutoscaler(SepConsumer consumer, int minPartitions, int maxPartitions, long targetLagMillis,
+            long intervalMillis, SepMetrics sepMetrics) {
+        Preconditions.checkArgument(minPartitions > 0, "Minimum number of partitions must be > 0");
+        Preconditions.checkArgument(maxPartitions >= minPartitions,
+                "Maximum number of partitions must be >= minimum number of partitions");
+        Preconditions.checkArgument(targetLagMillis > 0, "Target lag must be > 0");
+        Preconditions.checkArgument(intervalMillis > 0, "Interval must be > 0");
+        this.consumer = consumer;
+        this.minPartitions = minPartitions;
+        this.maxPartitions = maxPartitions;
+        this.targetLagMillis = targetLagMillis;
+        this.intervalMillis = intervalMillis;
+        this.sepMetrics = sepMetrics;
+    }
+
+    synchronized void start() {
+        lastBusyTime = sepMetrics.getBusyTime();
+        lastSampleNanos = System.nanoTime();
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "sep-autoscaler-" + consumer.getSubscriptionId());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    evaluate();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Throwable t) {
+                    log.error("Error evaluating the number of partitions of " + consumer.getSubscriptionId(), t);
+                }
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops evaluating the number of partitions, waiting for a resize that is going on.
+     */
+    void stop() throws InterruptedException {
+        ScheduledExecutorService scheduler;
+        synchronized (this) {
+            scheduler = this.scheduler;
+            this.scheduler = null;
+        }
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void evaluate() throws InterruptedException {
+        long busyTime = sepMetrics.getBusyTime();
+        long now = System.nanoTime();
+        int partitions = consumer.getPartitionCount();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(now - lastSampleNanos);
+        double utilization = elapsedMillis > 0 ? (double)(busyTime - lastBusyTime) / (elapsedMillis * partitions) : 0;
+        lastBusyTime = busyTime;
+        lastSampleNanos = now;
+        if (coolingDown) {
+            coolingDown = false;
+            return;
+        }
+
+        long lagMillis = consumer.getWatermark().getLag(System.currentTimeMillis());
+        long queueDepth = consumer.getQueueDepth();
+        int newPartitions = computePartitionCount(partitions, lagMillis, queueDepth, utilization);
+        if (newPartitions != partitions) {
+            log.info("Resizing " + consumer.getSubscriptionId() + " from " + partitions + " to " + newPartitions
+                    + " partitions, lag " + lagMillis + " ms, queue depth " + queueDepth + ", utilization "
+                    + String.format("%.2f", utilization));
+            consumer.resize(newPartitions);
+            // Only measure how the new partitions perform
+            lastBusyTime = sepMetrics.getBusyTime();
+            lastSampleNanos = System.nanoTime();
+            coolingDown = true;
+        }
+    }
+
+    /**
+     * Decides on the number of partitions.
+     *
+     * @param partitions the current number of partitions
+     * @param lagMillis the event-time lag, see {@link EventTimeWatermark#getLag(long)}
+     * @param queueDepth the number of batches waiting in the queues of the partitions
+     * @param utilization the fraction of time the partitions were busy processing events
+     */
+    int computePartitionCount(int partitions, long lagMillis, long queueDepth, double utilization) {
+        int newPartitions = partitions;
+        if (lagMillis > targetLagMillis && (utilization > HIGH_UTILIZATION || queueDepth > partitions)) {
+            // Grow faster when there are many partitions already, one partition more hardly makes a difference then
+            newPartitions = partitions + Math.max(1, partitions / 4);
+        } else if (lagMillis < targetLagMillis / 4 && utilization < LOW_UTILIZATION && queueDepth == 0) {
+            newPartitions = partitions - 1;
+        }
+        return Math.max(minPartitions, Math.min(maxPartitions, newPartitions));
+    }
+}
@@ -70,7 +70,7 @@ final class SepConnection extends ReplicationSlaveConnection {
   @Override
   protected void replicateBatch(List<? extends Row> actions, Object[] results, TableName tableName) 
       throws IOException, InterruptedException {
-    params.getSepConsumer().replicateBatch(actions, results, tableName);
+    params.replicateBatch(actions, results, tableName);
   }
   
   
@@ -15,22 +15,38 @@
  */
 package com.ngdata.sep.impl;
 
+import java.io.IOException;
+import java.util.List;
+
 import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Row;
 
 import com.google.common.base.Predicate; 
 
-/** Parameters to be passed to a {@link SepConnection} */
+/**
+ * Parameters to be passed to a {@link SepConnection}: either a single {@link SepConsumer} that receives all
+ * batches, or a {@link SepConsumerHost} that routes batches to the consumers it hosts.
+ */
 final class SepConnectionParams { 
   
   private final Predicate<TableName> tableNamePredicate;
   private final long subscriptionTimestamp;
   private final SepConsumer sepConsumer;
+  private final SepConsumerHost sepConsumerHost;
   
   public SepConnectionParams(Predicate<TableName> tableNamePredicate, long subscriptionTimestamp,
         SepConsumer sepConsumer) {
     this.tableNamePredicate = tableNamePredicate;
     this.subscriptionTimestamp = subscriptionTimestamp;
     this.sepConsumer = sepConsumer;
+    this.sepConsumerHost = null;
+  }
+
+  public SepConnectionParams(SepConsumerHost sepConsumerHost) {
+    this.tableNamePredicate = null;
+    this.subscriptionTimestamp = 0;
+    this.sepConsumer = null;
+    this.sepConsumerHost = sepConsumerHost;
   }
 
   public Predicate<TableName> getTableNamePredicate() {
@@ -44,5 +60,27 @@ final class SepConnectionParams {
   public SepConsumer getSepConsumer() {
     return sepConsumer;
   }
+
+  /**
+   * Returns true if a WAL entry for the given table, written at the given time, should not be replicated.
+   */
+  public boolean isFiltered(TableName table, long writeTime) {
+    if (sepConsumerHost != null) {
+      return sepConsumerHost.isFiltered(table, writeTime);
+    }
+    if (!tableNamePredicate.apply(table)) {
+      return true;
+    }
+    return writeTime < subscriptionTimestamp;
+  }
+
+  public void replicateBatch(List<? extends Row> actions, Object[] results, TableName tableName)
+      throws IOException {
+    if (sepConsumerHost != null) {
+      sepConsumerHost.replicateBatch(actions, results, tableName);
+    } else {
+      sepConsumer.replicateBatch(actions, results, tableName);
+    }
+  }
   
-}
\ No newline at end of file
+}
@@ -15,36 +15,35 @@
  */
 package com.ngdata.sep.impl;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.StringWriter;
-import java.nio.ByteBuffer;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.hbase.Cell;
-import org.apache.hadoop.hbase.CellScanner;
-import org.apache.hadoop.hbase.CellUtil;
 import org.apache.hadoop.hbase.HBaseConfiguration;
 import org.apache.hadoop.hbase.HConstants;
-import org.apache.hadoop.hbase.KeyValue;
-import org.apache.hadoop.hbase.KeyValueUtil;
 import org.apache.hadoop.hbase.ServerName;
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.ClusterConnection;
-import org.apache.hadoop.hbase.client.Mutation;
 import org.apache.hadoop.hbase.client.Row;
 import org.apache.hadoop.hbase.regionserver.HRegionServer;
 import org.apache.hadoop.hbase.replication.regionserver.WALEntrySinkFilter;
 import org.apache.hadoop.hbase.security.User;
-import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.zookeeper.ZKUtil;
 import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
 import org.apache.zookeeper.CreateMode;
@@ -52,14 +51,16 @@ import org.apache.zookeeper.KeeperException;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
-import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
-import com.google.common.collect.Multimap;
+import com.google.common.hash.HashCode;
+import com.ngdata.sep.CellFilter;
 import com.ngdata.sep.EventListener;
 import com.ngdata.sep.PayloadExtractor;
 import com.ngdata.sep.SepEvent;
 import com.ngdata.sep.SepModel;
+import com.ngdata.sep.util.concurrent.RingBufferExecutor;
+import com.ngdata.sep.util.concurrent.SequentialExecutor;
+import com.ngdata.sep.util.concurrent.VirtualThreads;
 import com.ngdata.sep.util.concurrent.WaitPolicy;
 import com.ngdata.sep.util.zookeeper.ZooKeeperItf;
 
@@ -76,23 +77,204 @@ import com.ngdata.sep.util.zookeeper.ZooKeeperItf;
 public class SepConsumer {
     private final String subscriptionId;
     private final long subscriptionTimestamp;
-    private final EventListener listener;
+    private volatile EventListener listener;
     private final ZooKeeperItf zk;
     private final Configuration hbaseConf;
     private final HRegionServer regionServer;
     private final ServerName serverName;
     private final SepMetrics sepMetrics;
     private final PayloadExtractor payloadExtractor;
+    private volatile SepEventFactory eventFactory;
     private String zkNodePath;
-    private final List<ThreadPoolExecutor> executors;
+    private volatile List<ExecutorService> executors;
     private final Predicate<TableName> tableNamePredicate;
+    private final ReplicationBatchWindow batchWindow;
+    private final SepConsumerHost host;
+    private final boolean coalesceRows;
+    private volatile AdaptiveBatchSizer batchSizer;
+    private final SepMemoryBudget memoryBudget;
+    private volatile SkewAwarePartitioner partitioner;
+    private final long maxBatchBytes;
+    private final PartialReplayTracker replayTracker;
+    private final SepSpool spool;
+    private final EventTimeWatermark watermark;
+    private final SepAutoscaler autoscaler;
+    /**
+     * Held for reading while events are processed, and for writing while the partitions are resized or the listener
+     * is swapped.
+     */
+    private final ReadWriteLock partitionsLock = new ReentrantReadWriteLock(true);
     private boolean running = false;
     private final Log log = LogFactory.getLog(getClass());
+    private static final Log LOG = LogFactory.getLog(SepConsumer.class);
     private static final AtomicBoolean AT_MOST_ONCE = new AtomicBoolean(true);
 
     private static final String MASTERLESS_ROOT_ZK_PATH = "/ngdata/sep/hbase-masterless";
     private static final String MASTERLESS_ZK_DIR_SUFFIX = "hbaseindexer.masterless.zkDirSuffix";
 
+    /**
+     * Configuration key for choosing how SEP events are handed to the worker threads, see {@link DispatcherType}.
+     */
+    public static final String DISPATCHER_CONF_KEY = "hbasesep.consumer.dispatcher";
+
+    /** Configuration key for the number of slots in each worker's ring buffer (ringbuffer dispatcher only). */
+    public static final String RING_BUFFER_SIZE_CONF_KEY = "hbasesep.consumer.ringbuffer.size";
+
+    /**
+     * Configuration key for the number of partitions with the virtual dispatcher. Defaults to the thread count
+     * given to the consumer.
+     */
+    public static final String VIRTUAL_PARTITIONS_CONF_KEY = "hbasesep.consumer.virtual.partitions";
+
+    /**
+     * Configuration key for the number of batches that can be queued for each partition, this applies to the
+     * threadpool (default 100) and virtual dispatchers.
+     */
+    public static final String PARTITION_QUEUE_SIZE_CONF_KEY = "hbasesep.consumer.partition.queue.size";
+
+    /**
+     * Configuration key for the number of replication batches, from different replication sources, that may be
+     * processed concurrently, see {@link ReplicationBatchWindow}. The consumer then accepts that many batches at the
+     * same time. A value of 0 (the default) leaves the number of concurrent batches to the configured number of
+     * replication handlers.
+     */
+    public static final String PIPELINE_WINDOW_CONF_KEY = "hbasesep.consumer.pipeline.window";
+
+    /**
+     * Configuration key for merging the events of a replication batch that apply to the same row into a single
+     * event before they are dispatched, see {@link SepEventExecutor}. Disabled by default.
+     */
+    public static final String COALESCE_ROWS_CONF_KEY = "hbasesep.consumer.coalesce.rows";
+
+    /**
+     * Configuration key for letting the number of events per listener batch adapt to how fast batches are
+     * processed, see {@link AdaptiveBatchSizer}. When disabled (the default), batches hold at most
+     * {@value #DEFAULT_BATCH_SIZE} events.
+     */
+    public static final String ADAPTIVE_BATCH_SIZE_CONF_KEY = "hbasesep.consumer.batchsize.adaptive";
+
+    /** Configuration key for the smallest batch size the adaptive batch sizing will choose. */
+    public static final String MIN_BATCH_SIZE_CONF_KEY = "hbasesep.consumer.batchsize.min";
+
+    /** Configuration key for the largest batch size the adaptive batch sizing will choose. */
+    public static final String MAX_BATCH_SIZE_CONF_KEY = "hbasesep.consumer.batchsize.max";
+
+    /** Configuration key for the time in which the adaptive batch sizing aims to have a batch processed. */
+    public static final String TARGET_BATCH_LATENCY_CONF_KEY = "hbasesep.consumer.batchsize.target.latency.ms";
+
+    /** Configuration key for the number of cell bytes the adaptive batch sizing aims to put in a batch. */
+    public static final String TARGET_BATCH_BYTES_CONF_KEY = "hbasesep.consumer.batchsize.target.bytes";
+
+    /**
+     * Configuration key for the maximum number of cell bytes in a listener batch. A batch is handed to the listener
+     * as soon as either its number of events or its number of bytes reaches its maximum. A value of 0 (the default)
+     * means batches are only limited by their number of events.
+     */
+    public static final String MAX_BATCH_BYTES_CONF_KEY = "hbasesep.consumer.batch.max.bytes";
+
+    /**
+     * Configuration key for the maximum number of cell bytes of received events that this consumer holds on to
+     * before they have been processed, see {@link SepMemoryBudget}. A value of 0 (the default) means no limit. The
+     * replication batches that are being scheduled are not included, only the events queued for the listener.
+     */
+    public static final String MEMORY_BUDGET_CONF_KEY = "hbasesep.consumer.memory.budget.bytes";
+
+    /**
+     * Configuration key for letting a {@link SkewAwarePartitioner} spread the events over the worker threads based
+     * on their load and on which rows are hot, instead of on the hash of the row key only. Disabled by default.
+     */
+    public static final String SKEW_AWARE_PARTITIONING_CONF_KEY = "hbasesep.consumer.partitioning.skewaware";
+
+    /**
+     * Configuration key for the share of the events that a single worker thread is expected to handle, above which
+     * a row is considered hot by the skew-aware partitioning (default 0.5).
+     */
+    public static final String HOT_ROW_RATIO_CONF_KEY = "hbasesep.consumer.partitioning.hot.ratio";
+
+    /**
+     * Configuration key for skipping the events of a retried replication batch that were already processed when the
+     * batch failed before, see {@link PartialReplayTracker}. Disabled by default.
+     */
+    public static final String PARTIAL_REPLAY_CONF_KEY = "hbasesep.consumer.replay.partial";
+
+    /**
+     * Configuration key for the directory of a local {@link SepSpool}. When set, received replication batches are
+     * appended to a spool in a subdirectory for the subscription and acknowledged to HBase right away, and are
+     * processed from the spool by a separate thread. Not set by default, in which case batches are only
+     * acknowledged once they have been processed.
+     */
+    public static final String SPOOL_DIR_CONF_KEY = "hbasesep.consumer.spool.dir";
+
+    /**
+     * Configuration key for the size of the segment files of the local spool (default 64 MB).
+     */
+    public static final String SPOOL_SEGMENT_SIZE_CONF_KEY = "hbasesep.consumer.spool.segment.bytes";
+
+    /**
+     * Configuration key for the maximum number of unprocessed bytes in the local spool (default 1 GB, 0 for no
+     * limit). Beyond this, received replication batches are refused, so HBase keeps them and retries them later.
+     */
+    public static final String SPOOL_MAX_SIZE_CONF_KEY = "hbasesep.consumer.spool.max.bytes";
+
+    /**
+     * Configuration key for letting a {@link SepAutoscaler} grow or shrink the number of worker threads at runtime,
+     * based on the event-time lag, the queue depth and the utilization of the threads. Disabled by default. Only
+     * applies to consumers that have their own worker threads, not to those hosted by a {@link SepConsumerHost}.
+     */
+    public static final String AUTOSCALE_CONF_KEY = "hbasesep.consumer.autoscale";
+
+    /** Configuration key for the minimum number of worker threads when autoscaling (default 1). */
+    public static final String AUTOSCALE_MIN_THREADS_CONF_KEY = "hbasesep.consumer.autoscale.threads.min";
+
+    /**
+     * Configuration key for the maximum number of worker threads when autoscaling, defaults to four times the
+     * thread count given to the consumer.
+     */
+    public static final String AUTOSCALE_MAX_THREADS_CONF_KEY = "hbasesep.consumer.autoscale.threads.max";
+
+    /**
+     * Configuration key for the event-time lag (in milliseconds) above which the autoscaler adds threads
+     * (default 60000).
+     */
+    public static final String AUTOSCALE_TARGET_LAG_CONF_KEY = "hbasesep.consumer.autoscale.target.lag.ms";
+
+    /**
+     * Configuration key for the interval (in milliseconds) at which the autoscaler evaluates the thread count
+     * (default 30000).
+     */
+    public static final String AUTOSCALE_INTERVAL_CONF_KEY = "hbasesep.consumer.autoscale.interval.ms";
+
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
+    /** Maximum number of failed replication batches that are remembered for partial replay. */
+    private static final int MAX_FAILED_BATCHES = 16;
+
+    private static final String REPLICATION_HANDLER_COUNT = "hbase.regionserver.replication.handler.count";
+
+    /**
+     * The ways in which batches of SEP events can be dispatched to the worker threads.
+     */
+    public enum DispatcherType {
+        /** A single-threaded {@code ThreadPoolExecutor} with a bounded queue per worker (the default). */
+        THREADPOOL,
+
+        /**
+         * A {@link RingBufferExecutor} per worker, avoiding lock contention between submitting threads. Whether this
+         * pays off depends on the number of concurrent replication calls and worker threads, so measure it against
+         * {@link #THREADPOOL} for the expected load before switching (the SepDispatcherThroughput test class does
+         * this).
+         */
+        RINGBUFFER,
+
+        /**
+         * A {@link SequentialExecutor} per partition, all running on virtual threads when the JVM supports them
+         * (JDK 21+). As partitions don't own a thread, there can be many more of them than worker threads, see
+         * {@link #VIRTUAL_PARTITIONS_CONF_KEY}. On older JVMs, the partitions share a pool with the configured
+         * number of platform threads.
+         */
+        VIRTUAL
+    }
+
     /**
      * @param subscriptionTimestamp timestamp of when the index subscription became active (or more accurately, not
      *                              inactive)
@@ -119,6 +301,23 @@ public class SepConsumer {
     public SepConsumer(String subscriptionId, long subscriptionTimestamp, EventListener listener, int threadCnt,
             String hostName, ZooKeeperItf zk, Configuration hbaseConf, PayloadExtractor payloadExtractor, 
             Predicate<TableName> tableNamePredicate) throws IOException, InterruptedException {
+        this(subscriptionId, subscriptionTimestamp, listener, threadCnt, hostName, zk, hbaseConf, payloadExtractor,
+                tableNamePredicate, null);
+    }
+
+    /**
+     * @param subscriptionTimestamp timestamp of when the index subscription became active (or more accurately, not
+     *                              inactive)
+     * @param listener              listeners that will process the events
+     * @param threadCnt             number of worker threads that will handle incoming SEP events
+     * @param hostName              hostname to bind to
+     * @param payloadExtractor      extracts payloads to include in SepEvents
+     * @param cellFilter            drops the cells that are not relevant to the listener as soon as they are
+     *                              received, can be null
+     */
+    public SepConsumer(String subscriptionId, long subscriptionTimestamp, EventListener listener, int threadCnt,
+            String hostName, ZooKeeperItf zk, Configuration hbaseConf, PayloadExtractor payloadExtractor,
+            Predicate<TableName> tableNamePredicate, CellFilter cellFilter) throws IOException, InterruptedException {
         Preconditions.checkArgument(threadCnt > 0, "Thread count must be > 0");
         this.subscriptionId = SepModelImpl.toInternalSubscriptionName(subscriptionId);
         this.subscriptionTimestamp = subscriptionTimestamp;
@@ -127,12 +326,133 @@ public class SepConsumer {
         this.hbaseConf = hbaseConf;
         this.sepMetrics = new SepMetrics(subscriptionId);
         this.payloadExtractor = payloadExtractor;
-        this.executors = Lists.newArrayListWithCapacity(threadCnt);
+        this.eventFactory = new SepEventFactory(payloadExtractor, cellFilter);
         if (tableNamePredicate == null) {
             tableNamePredicate = TableNamePredicates.getAlwaysMatchingTableNamePredicate();
         }
         this.tableNamePredicate = tableNamePredicate;
+        this.batchWindow = createBatchWindow(hbaseConf);
+        this.coalesceRows = hbaseConf.getBoolean(COALESCE_ROWS_CONF_KEY, false);
+        this.maxBatchBytes = hbaseConf.getLong(MAX_BATCH_BYTES_CONF_KEY, 0);
+        this.memoryBudget = createMemoryBudget(hbaseConf, sepMetrics);
+
+        this.host = null;
+        this.regionServer = createRegionServer(subscriptionId, hostName, hbaseConf,
+                batchWindow != null ? batchWindow.getSize() : 0);
+        this.serverName = regionServer.getServerName();
+        this.executors = createExecutors(hbaseConf, this.subscriptionId, threadCnt);
+        this.batchSizer = createBatchSizer(hbaseConf, executors.size(), sepMetrics);
+        this.partitioner = createPartitioner(hbaseConf, executors.size(), sepMetrics);
+        this.replayTracker = createReplayTracker(hbaseConf);
+        this.watermark = new EventTimeWatermark(executors.size(), sepMetrics);
+        this.spool = createSpool(hbaseConf, this.subscriptionId, sepMetrics);
+        this.autoscaler = createAutoscaler(hbaseConf, threadCnt);
+        sepMetrics.reportPartitionCount(executors.size());
+    }
+
+    /**
+     * Creates a consumer that is hosted by a {@link SepConsumerHost}, and therefore uses the region server and the
+     * worker threads of that host.
+     */
+    SepConsumer(String subscriptionId, long subscriptionTimestamp, EventListener listener, ZooKeeperItf zk,
+            Configuration hbaseConf, PayloadExtractor payloadExtractor, CellFilter cellFilter,
+            Predicate<TableName> tableNamePredicate, SepConsumerHost host) throws IOException {
+        this.subscriptionId = SepModelImpl.toInternalSubscriptionName(subscriptionId);
+        this.subscriptionTimestamp = subscriptionTimestamp;
+        this.listener = listener;
+        this.zk = zk;
+        this.hbaseConf = hbaseConf;
+        this.sepMetrics = new SepMetrics(subscriptionId);
+        this.payloadExtractor = payloadExtractor;
+        this.eventFactory = new SepEventFactory(payloadExtractor, cellFilter);
+        this.tableNamePredicate = tableNamePredicate;
+        this.host = host;
+        this.regionServer = null;
+        this.serverName = host.getServerName();
+        this.executors = host.getExecutors();
+        this.batchWindow = createBatchWindow(hbaseConf);
+        this.coalesceRows = hbaseConf.getBoolean(COALESCE_ROWS_CONF_KEY, false);
+        this.batchSizer = createBatchSizer(hbaseConf, executors.size(), sepMetrics);
+        this.maxBatchBytes = hbaseConf.getLong(MAX_BATCH_BYTES_CONF_KEY, 0);
+        this.memoryBudget = createMemoryBudget(hbaseConf, sepMetrics);
+        this.partitioner = createPartitioner(hbaseConf, executors.size(), sepMetrics);
+        this.replayTracker = createReplayTracker(hbaseConf);
+        this.watermark = new EventTimeWatermark(executors.size(), sepMetrics);
+        this.spool = createSpool(hbaseConf, this.subscriptionId, sepMetrics);
+        // The worker threads belong to the host
+        this.autoscaler = null;
+        sepMetrics.reportPartitionCount(executors.size());
+    }
+
+    private static ReplicationBatchWindow createBatchWindow(Configuration hbaseConf) {
+        int pipelineWindow = hbaseConf.getInt(PIPELINE_WINDOW_CONF_KEY, 0);
+        return pipelineWindow > 0 ? new ReplicationBatchWindow(pipelineWindow) : null;
+    }
+
+    private static AdaptiveBatchSizer createBatchSizer(Configuration hbaseConf, int threadCnt, SepMetrics sepMetrics) {
+        if (!hbaseConf.getBoolean(ADAPTIVE_BATCH_SIZE_CONF_KEY, false)) {
+            sepMetrics.reportBatchSize(DEFAULT_BATCH_SIZE);
+            return null;
+        }
+        return new AdaptiveBatchSizer(threadCnt, hbaseConf.getInt(MIN_BATCH_SIZE_CONF_KEY, 10),
+                hbaseConf.getInt(MAX_BATCH_SIZE_CONF_KEY, 1000),
+                hbaseConf.getLong(TARGET_BATCH_LATENCY_CONF_KEY, 500),
+                hbaseConf.getLong(TARGET_BATCH_BYTES_CONF_KEY, 8 * 1024 * 1024), sepMetrics);
+    }
+
+    private static SepMemoryBudget createMemoryBudget(Configuration hbaseConf, SepMetrics sepMetrics) {
+        long memoryBudgetBytes = hbaseConf.getLong(MEMORY_BUDGET_CONF_KEY, 0);
+        return new SepMemoryBudget(memoryBudgetBytes > 0 ? memoryBudgetBytes : Long.MAX_VALUE, sepMetrics);
+    }
+
+    private static SkewAwarePartitioner createPartitioner(Configuration hbaseConf, int threadCnt,
+            SepMetrics sepMetrics) {
+        if (!hbaseConf.getBoolean(SKEW_AWARE_PARTITIONING_CONF_KEY, false)) {
+            return null;
+        }
+        return new SkewAwarePartitioner(threadCnt, hbaseConf.getFloat(HOT_ROW_RATIO_CONF_KEY, 0.5f), sepMetrics);
+    }
+
+    private static PartialReplayTracker createReplayTracker(Configuration hbaseConf) {
+        if (!hbaseConf.getBoolean(PARTIAL_REPLAY_CONF_KEY, false)) {
+            return null;
+        }
+        return new PartialReplayTracker(MAX_FAILED_BATCHES);
+    }
+
+    private static SepSpool createSpool(Configuration hbaseConf, String subscriptionId, SepMetrics sepMetrics)
+            throws IOException {
+        String spoolDir = hbaseConf.get(SPOOL_DIR_CONF_KEY);
+        if (spoolDir == null || spoolDir.trim().isEmpty()) {
+            return null;
+        }
+        return new SepSpool(new File(spoolDir.trim(), subscriptionId),
+                hbaseConf.getLong(SPOOL_SEGMENT_SIZE_CONF_KEY, 64 * 1024 * 1024),
+                hbaseConf.getLong(SPOOL_MAX_SIZE_CONF_KEY, 1024 * 1024 * 1024), sepMetrics);
+    }
+
+    private SepAutoscaler createAutoscaler(Configuration hbaseConf, int threadCnt) {
+        if (!hbaseConf.getBoolean(AUTOSCALE_CONF_KEY, false)) {
+            return null;
+        }
+        if (!isResizable()) {
+            log.warn("Not autoscaling " + subscriptionId + ", the number of partitions is fixed by "
+                    + VIRTUAL_PARTITIONS_CONF_KEY);
+            return null;
+        }
+        int minThreads = hbaseConf.getInt(AUTOSCALE_MIN_THREADS_CONF_KEY, 1);
+        int maxThreads = hbaseConf.getInt(AUTOSCALE_MAX_THREADS_CONF_KEY, 4 * threadCnt);
+        return new SepAutoscaler(this, minThreads, maxThreads,
+                hbaseConf.getLong(AUTOSCALE_TARGET_LAG_CONF_KEY, 60000),
+                hbaseConf.getLong(AUTOSCALE_INTERVAL_CONF_KEY, 30000), sepMetrics);
+    }
 
+    /**
+     * Creates the masterless region server to which the HBase regionservers replicate, it passes the received
+     * batches to the {@link SepConnectionParams} that are registered under the given connection id.
+     */
+    static HRegionServer createRegionServer(String connectionId, String hostName, Configuration hbaseConf,
+            int pipelineWindow) throws IOException {
         Configuration masterlessConf = HBaseConfiguration.create();
         masterlessConf.addResource("hbase-indexer-site-masterless-defaults.xml");
         masterlessConf.addResource("hbase-indexer-site.xml"); // allow custom overrides, also see HBaseIndexerConfiguration.addHbaseIndexerResources
@@ -147,9 +467,14 @@ public class SepConsumer {
             masterlessZkPath = MASTERLESS_ROOT_ZK_PATH + masterlessZkDirSuffix.trim();
         }
         masterlessConf.set(HConstants.ZOOKEEPER_ZNODE_PARENT, masterlessZkPath);
-        log.info("Creating masterless RegionServer using " + HConstants.ZOOKEEPER_ZNODE_PARENT + ":" + masterlessZkPath);
+        LOG.info("Creating masterless RegionServer using " + HConstants.ZOOKEEPER_ZNODE_PARENT + ":" + masterlessZkPath);
         
         masterlessConf.setInt(HConstants.REGIONSERVER_PORT, 0); // let the system pick up an ephemeral port
+
+        // Batches can only overlap if the region server has enough handlers to accept them concurrently
+        if (pipelineWindow > masterlessConf.getInt(REPLICATION_HANDLER_COUNT, 1)) {
+            masterlessConf.setInt(REPLICATION_HANDLER_COUNT, pipelineWindow);
+        }
         
         // copy zk client port to enable testing on non-standard ports
         String zkClientPort = hbaseConf.get(HConstants.ZOOKEEPER_CLIENT_PORT);
@@ -158,7 +483,7 @@ public class SepConsumer {
         }
         
         // hacky way to pass non-primitive params to SepConnection, also see start() and stop()
-        masterlessConf.set(SepConnection.SUBSCRIPTION_ID_PARAM_NAME, subscriptionId);
+        masterlessConf.set(SepConnection.SUBSCRIPTION_ID_PARAM_NAME, connectionId);
   
         // HBASE-19804 setMiniClusterMode(true) hack to allow multiple HRegionServer per JVM even in non-unit tests
         DefaultMetricsSystem.setMiniClusterMode(true);
@@ -166,8 +491,7 @@ public class SepConsumer {
         if (AT_MOST_ONCE.getAndSet(false)) {
             dumpConfiguration("Creating masterless RegionServer using", masterlessConf);
         }
-        this.regionServer = new HRegionServer(masterlessConf);        
-        this.serverName = regionServer.getServerName();
+        HRegionServer regionServer = new HRegionServer(masterlessConf);        
 
         // login the zookeeper client principal (if using security)
         ZKUtil.loginClient(hbaseConf, "hbase.zookeeper.client.keytab.file",
@@ -177,19 +501,10 @@ public class SepConsumer {
         User.login(hbaseConf, "hbase.regionserver.keytab.file",
                 "hbase.regionserver.kerberos.principal", hostName);
 
-        for (int i = 0; i < threadCnt; i++) {
-            ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS,
-                    new ArrayBlockingQueue<Runnable>(100));
-            executor.setRejectedExecutionHandler(new WaitPolicy());
-            executors.add(executor);
-        }
+        return regionServer;
     }
 
-    public void start() throws InterruptedException, KeeperException {
-        // hacky way to pass non-primitive params to SepConnection
-        SepConnection.PARAMS_MAP.put(subscriptionId, 
-            new SepConnectionParams(tableNamePredicate, subscriptionTimestamp, this));
-        
+    static void startRegionServer(final HRegionServer regionServer) {
         Thread thread = new Thread() {            
             @Override
             public void run() {
@@ -199,6 +514,99 @@ public class SepConsumer {
         thread.setDaemon(true);
         thread.start();
         regionServer.waitForServerOnline();
+    }
+
+    /**
+     * Creates the single-threaded executors that process the events of each partition.
+     *
+     * @param name used in the logs and thread names
+     */
+    static List<ExecutorService> createExecutors(Configuration hbaseConf, String name, int threadCnt) {
+        DispatcherType dispatcherType = DispatcherType.valueOf(
+                hbaseConf.get(DISPATCHER_CONF_KEY, DispatcherType.THREADPOOL.name()).trim().toUpperCase());
+        if (dispatcherType == DispatcherType.VIRTUAL) {
+            return createSequentialExecutors(hbaseConf, name, threadCnt);
+        }
+        LOG.info("Using " + dispatcherType + " dispatcher with " + threadCnt + " threads for " + name);
+        List<ExecutorService> executors = Lists.newArrayListWithCapacity(threadCnt);
+        for (int i = 0; i < threadCnt; i++) {
+            executors.add(createExecutor(hbaseConf, dispatcherType, name, i));
+        }
+        return executors;
+    }
+
+    private static List<ExecutorService> createSequentialExecutors(Configuration hbaseConf, final String name,
+            int threadCnt) {
+        int partitions = hbaseConf.getInt(VIRTUAL_PARTITIONS_CONF_KEY, threadCnt);
+        Preconditions.checkArgument(partitions > 0, "Number of partitions must be > 0");
+        ExecutorService threads = VirtualThreads.newVirtualThreadPerTaskExecutor("sep-" + name + "-");
+        if (threads != null) {
+            LOG.info("Using VIRTUAL dispatcher with " + partitions + " partitions on virtual threads for " + name);
+        } else {
+            LOG.warn("Virtual threads are not available in this JVM, using VIRTUAL dispatcher with " + partitions
+                    + " partitions on " + threadCnt + " platform threads for " + name);
+            final AtomicInteger threadNumber = new AtomicInteger();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threadCnt, threadCnt, 10, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "sep-" + name + "-" + threadNumber.getAndIncrement());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            // Threads go away when the consumer is idle or stopped
+            pool.allowCoreThreadTimeOut(true);
+            threads = pool;
+        }
+        int queueSize = hbaseConf.getInt(PARTITION_QUEUE_SIZE_CONF_KEY, 100);
+        List<ExecutorService> executors = Lists.newArrayListWithCapacity(partitions);
+        for (int i = 0; i < partitions; i++) {
+            executors.add(new SequentialExecutor(threads, queueSize));
+        }
+        return executors;
+    }
+
+    private static ExecutorService createExecutor(Configuration hbaseConf, DispatcherType dispatcherType,
+            final String name, final int partition) {
+        switch (dispatcherType) {
+            case THREADPOOL:
+                ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS,
+                        new ArrayBlockingQueue<Runnable>(hbaseConf.getInt(PARTITION_QUEUE_SIZE_CONF_KEY, 100)));
+                executor.setRejectedExecutionHandler(new WaitPolicy());
+                return executor;
+            case RINGBUFFER:
+                return new RingBufferExecutor(hbaseConf.getInt(RING_BUFFER_SIZE_CONF_KEY, 128), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "sep-" + name + "-" + partition);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            default:
+                throw new IllegalStateException("Unknown dispatcher type " + dispatcherType);
+        }
+    }
+
+    public void start() throws InterruptedException, KeeperException {
+        if (spool != null) {
+            spool.start(new SepSpool.Handler() {
+                @Override
+                public void process(TableName tableName, List<SepEvent> events, long timestamp) throws IOException {
+                    processEvents(tableName, events, timestamp);
+                }
+            });
+        }
+
+        if (host != null) {
+            host.startRouting(this);
+        } else {
+            // hacky way to pass non-primitive params to SepConnection
+            SepConnection.PARAMS_MAP.put(subscriptionId, 
+                new SepConnectionParams(tableNamePredicate, subscriptionTimestamp, this));
+            startRegionServer(regionServer);
+        }
 
         // Publish our existence in ZooKeeper
         zkNodePath = hbaseConf.get(SepModel.ZK_ROOT_NODE_CONF_KEY, SepModel.DEFAULT_ZK_ROOT_NODE)
@@ -206,16 +614,32 @@ public class SepConsumer {
         log.debug("Publishing our existence in zk at zkNodePathForSlave:" + zkNodePath);
         zk.create(zkNodePath, null, CreateMode.EPHEMERAL);
 
+        if (autoscaler != null) {
+            autoscaler.start();
+        }
+
         this.running = true;
     }
 
     public void stop() {
+        if (autoscaler != null) {
+            try {
+                // Make sure no resize is going on while the worker threads are shut down
+                autoscaler.stop();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
         if (running) {
             running = false;
-            if (regionServer != null) {
-                regionServer.stop("Stopping masterless regionserver for subscriptionId:" + subscriptionId);
+            if (host != null) {
+                host.stopRouting(this);
+            } else {
+                if (regionServer != null) {
+                    regionServer.stop("Stopping masterless regionserver for subscriptionId:" + subscriptionId);
+                }
+                SepConnection.PARAMS_MAP.remove(subscriptionId);
             }
-            SepConnection.PARAMS_MAP.remove(subscriptionId);
             try {
                 // This ZK node will likely already be gone if the index has been removed
                 // from ZK, but we'll try to remove it here to be sure
@@ -227,10 +651,122 @@ public class SepConsumer {
                 }
             }
         }
+        if (spool != null) {
+            try {
+                // Waits for the batch that is being drained, before the worker threads are shut down
+                spool.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
         sepMetrics.shutdown();
-        for (ThreadPoolExecutor executor : executors) {
-            executor.shutdown();
+        if (host == null) {
+            for (ExecutorService executor : executors) {
+                executor.shutdown();
+            }
+        } else {
+            host.release(this);
+        }
+    }
+
+    String getSubscriptionId() {
+        return subscriptionId;
+    }
+
+    /**
+     * Returns the number of partitions over which the events are processed, i.e. the number of worker threads
+     * unless the VIRTUAL dispatcher is used.
+     */
+    public int getPartitionCount() {
+        return executors.size();
+    }
+
+    /**
+     * Returns the number of batches of events that are waiting in the queues of the partitions.
+     */
+    long getQueueDepth() {
+        long queueDepth = 0;
+        for (ExecutorService executor : executors) {
+            if (executor instanceof ThreadPoolExecutor) {
+                queueDepth += ((ThreadPoolExecutor)executor).getQueue().size();
+            } else if (executor instanceof RingBufferExecutor) {
+                queueDepth += ((RingBufferExecutor)executor).getQueueSize();
+            } else if (executor instanceof SequentialExecutor) {
+                queueDepth += ((SequentialExecutor)executor).getPendingTaskCount();
+            }
         }
+        return queueDepth;
+    }
+
+    EventTimeWatermark getWatermark() {
+        return watermark;
+    }
+
+    /**
+     * Returns true if the number of partitions can be changed with {@link #resize(int)}.
+     */
+    public boolean isResizable() {
+        return host == null && hbaseConf.get(VIRTUAL_PARTITIONS_CONF_KEY) == null;
+    }
+
+    /**
+     * Changes the number of worker threads. This waits until the replication batches that are being processed are
+     * done, and holds back new ones until the new threads are in place: as no events are in flight on the old
+     * partitions when the events are spread over the new ones, the events of a row are still processed in order.
+     * Can only be used on consumers that have their own worker threads, and not with a fixed number of
+     * {@link #VIRTUAL_PARTITIONS_CONF_KEY virtual partitions}.
+     */
+    public void resize(int threadCnt) throws InterruptedException {
+        Preconditions.checkArgument(threadCnt > 0, "Thread count must be > 0");
+        Preconditions.checkState(isResizable(), "The partitions of this consumer can't be resized");
+        partitionsLock.writeLock().lockInterruptibly();
+        try {
+            List<ExecutorService> oldExecutors = executors;
+            if (threadCnt == oldExecutors.size()) {
+                return;
+            }
+            List<ExecutorService> newExecutors = createExecutors(hbaseConf, subscriptionId, threadCnt);
+            executors = newExecutors;
+            batchSizer = createBatchSizer(hbaseConf, newExecutors.size(), sepMetrics);
+            partitioner = createPartitioner(hbaseConf, newExecutors.size(), sepMetrics);
+            watermark.setNumPartitions(newExecutors.size());
+            sepMetrics.reportPartitionCount(newExecutors.size());
+            // Nothing is in flight, so the old threads just go away
+            for (ExecutorService executor : oldExecutors) {
+                executor.shutdown();
+            }
+            log.info("Resized from " + oldExecutors.size() + " to " + newExecutors.size() + " partitions for "
+                    + subscriptionId);
+        } finally {
+            partitionsLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the listener that processes the events, and the cell filter that is applied to them, while the
+     * consumer keeps running. The swap happens at a replication batch boundary: this waits until the batches that
+     * are being processed are done, holding back new ones, and the batches that follow are handed to the new
+     * listener only. The registration with HBase replication is not affected.
+     * <p>
+     * When a {@link #SPOOL_DIR_CONF_KEY spool} is used, the events that were spooled before the swap were filtered by
+     * the old cell filter.
+     *
+     * @param cellFilter drops the cells that are not relevant to the new listener, can be null
+     */
+    public void swapEventListener(EventListener listener, CellFilter cellFilter) throws InterruptedException {
+        Preconditions.checkNotNull(listener, "listener");
+        partitionsLock.writeLock().lockInterruptibly();
+        try {
+            this.listener = listener;
+            this.eventFactory = new SepEventFactory(payloadExtractor, cellFilter);
+            log.info("Swapped the event listener of " + subscriptionId);
+        } finally {
+            partitionsLock.writeLock().unlock();
+        }
+    }
+
+    long getSubscriptionTimestamp() {
+        return subscriptionTimestamp;
     }
 
     void replicateBatch(List<? extends Row> actions, Object[] results, TableName tableName) 
@@ -239,55 +775,124 @@ public class SepConsumer {
           log.debug("replicateBatch() received " + actions.size() + " events from table " + tableName + " for subscriptionId "
               + subscriptionId);
         }
-    
-        // TODO Recording of last processed timestamp won't work if two batches of log entries are sent out of order
-        long lastProcessedTimestamp = -1;
-        
-        SepEventExecutor eventExecutor = new SepEventExecutor(listener, executors, 100, sepMetrics);
-        
-        for (Row row : actions) {
-            if (!(row instanceof Mutation)) {
-                throw new RuntimeException("Unreachable code for row class: " + row.getClass().getName());
+
+        if (spool != null) {
+            // The batch is acknowledged as soon as it is safely in the spool, it is processed by the drain thread
+            List<SepEvent> events = Lists.newArrayListWithCapacity(actions.size());
+            long lastProcessedTimestamp = eventFactory.createEvents(actions, tableName, events);
+            spool.append(tableName, events, lastProcessedTimestamp);
+            return;
+        }
+
+        if (batchWindow == null) {
+            processBatch(actions, tableName);
+            return;
+        }
+
+        try {
+            batchWindow.open();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for room in the replication batch window", e);
+        }
+        try {
+            processBatch(actions, tableName);
+        } finally {
+            batchWindow.release();
+        }
+    }
+
+    private void processBatch(List<? extends Row> actions, TableName tableName) throws IOException {
+        // The events should be created with the cell filter that belongs to the listener that processes them
+        partitionsLock.readLock().lock();
+        try {
+            List<SepEvent> events = Lists.newArrayListWithCapacity(actions.size());
+            long lastProcessedTimestamp = eventFactory.createEvents(actions, tableName, events);
+            processEvents(tableName, events, lastProcessedTimestamp);
+        } finally {
+            partitionsLock.readLock().unlock();
+        }
+    }
+
+    private void processEvents(TableName tableName, List<SepEvent> events, long lastProcessedTimestamp)
+            throws IOException {
+        // If this is the retry of a batch that failed before, skip the events that were processed back then
+        HashCode fingerprint = null;
+        BitSet processedEvents = null;
+        if (replayTracker != null && replayTracker.hasFailedBatches()) {
+            fingerprint = PartialReplayTracker.fingerprint(tableName, events);
+            processedEvents = replayTracker.takeProcessedEvents(fingerprint);
+            if (processedEvents != null) {
+                log.info("Skipping " + processedEvents.cardinality() + " of " + events.size()
+                        + " events of retried batch from table " + tableName + ", they were already processed");
+                sepMetrics.reportSkippedReplayedEvents(processedEvents.cardinality());
             }
-            // Actually, ReplicationSink only feeds us Put and Delete objects anyway
-            Mutation mutation = (Mutation) row;
-            
-            final Multimap<ByteBuffer, Cell> keyValuesPerRowKey = ArrayListMultimap.create();
-            final Map<ByteBuffer, byte[]> payloadPerRowKey = Maps.newHashMap();
-            
-            CellScanner cells = mutation.cellScanner();
-            while (cells.advance()) {
-                Cell cell = cells.current();
-                lastProcessedTimestamp = Math.max(lastProcessedTimestamp, cell.getTimestamp());
-                ByteBuffer rowKey = ByteBuffer.wrap(cell.getRowArray(), cell.getRowOffset(), cell.getRowLength());
-                byte[] payload;
-                KeyValue kv = KeyValueUtil.ensureKeyValue(cell);
-                if (payloadExtractor != null && (payload = payloadExtractor.extractPayload(tableName.toBytes(), kv)) != null) {
-                    if (payloadPerRowKey.containsKey(rowKey)) {
-                        log.error("Multiple payloads encountered for row " + Bytes.toStringBinary(rowKey)
-                                + ", choosing " + Bytes.toStringBinary(payloadPerRowKey.get(rowKey)));
-                    } else {
-                        payloadPerRowKey.put(rowKey, payload);
-                    }
+        }
+
+        // The event-time watermark keeps track of the oldest event in flight, as batches can complete out of order
+        long oldestTimestamp = EventTimeWatermark.getOldestTimestamp(events);
+        boolean trackWatermark = oldestTimestamp != Long.MAX_VALUE;
+        if (trackWatermark) {
+            watermark.beginBatch(oldestTimestamp);
+        }
+        boolean success = false;
+        partitionsLock.readLock().lock();
+        try {
+            scheduleAndWait(tableName, events, fingerprint, processedEvents);
+            success = true;
+        } finally {
+            partitionsLock.readLock().unlock();
+            if (trackWatermark) {
+                watermark.endBatch(oldestTimestamp, success ? lastProcessedTimestamp : 0);
+            }
+        }
+
+        if (lastProcessedTimestamp > 0) {
+            sepMetrics.reportSepTimestamp(lastProcessedTimestamp);
+        }
+    }
+
+    private void scheduleAndWait(TableName tableName, List<SepEvent> events, HashCode fingerprint,
+            BitSet processedEvents) throws IOException {
+        SepEventExecutor eventExecutor;
+        AdaptiveBatchSizer batchSizer = this.batchSizer;
+        if (batchSizer != null) {
+            eventExecutor = new SepEventExecutor(listener, executors, batchSizer, sepMetrics, coalesceRows);
+        } else {
+            eventExecutor = new SepEventExecutor(listener, executors, DEFAULT_BATCH_SIZE, sepMetrics, coalesceRows);
+        }
+        eventExecutor.setMaxBatchBytes(maxBatchBytes);
+        eventExecutor.setMemoryBudget(memoryBudget);
+        eventExecutor.setPartitioner(partitioner);
+        eventExecutor.setWatermark(watermark);
+        List<Future<?>> futures;
+        try {
+            for (int i = 0; i < events.size(); i++) {
+                if (processedEvents == null || !processedEvents.get(i)) {
+                    eventExecutor.scheduleSepEvent(events.get(i));
                 }
-                keyValuesPerRowKey.put(rowKey, kv);
             }
-            for (final ByteBuffer rowKeyBuffer : keyValuesPerRowKey.keySet()) {
-                final List<Cell> keyValues = (List<Cell>) keyValuesPerRowKey.get(rowKeyBuffer);
-      
-                final SepEvent sepEvent = new SepEvent(tableName.toBytes(), CellUtil.cloneRow(keyValues.get(0)), keyValues,
-                        payloadPerRowKey.get(rowKeyBuffer));
-                eventExecutor.scheduleSepEvent(sepEvent);
+            futures = eventExecutor.flush();
+        } catch (RuntimeException e) {
+            // The batch will be retried, the events that never got started up shouldn't keep their budget and rows
+            eventExecutor.discardBuffered();
+            throw e;
+        }
+        try {
+            waitOnSepEventCompletion(futures);
+        } catch (IOException | RuntimeException e) {
+            if (replayTracker != null) {
+                if (fingerprint == null) {
+                    fingerprint = PartialReplayTracker.fingerprint(tableName, events);
+                }
+                BitSet allProcessedEvents = processedEvents != null ? processedEvents : new BitSet(events.size());
+                PartialReplayTracker.addProcessedEvents(events, futures, eventExecutor.getBatchEvents(),
+                        allProcessedEvents);
+                replayTracker.recordFailure(fingerprint, allProcessedEvents);
             }
-          }
-    
-          List<Future<?>> futures = eventExecutor.flush();
-          waitOnSepEventCompletion(futures);
-    
-          if (lastProcessedTimestamp > 0) {
-              sepMetrics.reportSepTimestamp(lastProcessedTimestamp);
-          }
-    } 
+            throw e;
+        }
+    }
 
     private void waitOnSepEventCompletion(List<Future<?>> futures) throws IOException {
         // We should wait for all operations to finish before returning, because otherwise HBase might
@@ -316,9 +921,9 @@ public class SepConsumer {
         }
     }
 
-    private void dumpConfiguration(String msgPrefix, Configuration conf) throws IOException {
+    private static void dumpConfiguration(String msgPrefix, Configuration conf) throws IOException {
         StringWriter strWriter = new StringWriter();
         Configuration.dumpConfiguration(conf, strWriter);
-        log.info(msgPrefix + " " + conf + " with properties: " + strWriter.toString());
+        LOG.info(msgPrefix + " " + conf + " with properties: " + strWriter.toString());
     }
 }
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.sep.impl;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicates;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.ngdata.sep.CellFilter;
+import com.ngdata.sep.EventListener;
+import com.ngdata.sep.PayloadExtractor;
+import com.ngdata.sep.util.zookeeper.ZooKeeperItf;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Row;
+import org.apache.hadoop.hbase.regionserver.HRegionServer;
+
+/**
+ * Runs a single masterless region server and a single set of worker threads for many SEP subscriptions.
+ * <p>
+ * A standalone {@link SepConsumer} starts its own region server, RPC server and worker threads. When many
+ * subscriptions are consumed on the same node, this host can be used instead: the consumers created through
+ * {@link #createConsumer} publish the host's region server in ZooKeeper for their subscription, and the events of
+ * all of them are processed by the worker threads of the host.
+ * <p>
+ * A replication request does not tell for which subscription (replication peer) it was sent, so the host routes
+ * batches based on their table. Therefore every hosted subscription must be limited to an explicit set of tables
+ * (see {@link com.ngdata.sep.SepModel#addSubscription(String, String...)}), and a table can only belong to one
+ * hosted subscription at a time. Subscriptions that don't meet these requirements should use a standalone
+ * {@link SepConsumer}, see {@link #canHost(String...)}.
+ */
+public class SepConsumerHost {
+
+    private static final AtomicInteger HOST_COUNTER = new AtomicInteger();
+
+    private final String connectionId;
+    private final ZooKeeperItf zk;
+    private final Configuration hbaseConf;
+    private final HRegionServer regionServer;
+    private final ServerName serverName;
+    private final List<ExecutorService> executors;
+    /** Tables of all consumers created by this host, started or not. */
+    private final Map<TableName, SepConsumer> reservedTables = Maps.newHashMap();
+    /** Tables of the consumers that are started, these are the tables to which batches are routed. */
+    private final Map<TableName, SepConsumer> routedTables = new ConcurrentHashMap<TableName, SepConsumer>();
+    private boolean running = false;
+    private final Log log = LogFactory.getLog(getClass());
+
+    /**
+     * @param hostName  hostname to bind to, this is published in ZooKeeper for every hosted subscription
+     * @param threadCnt number of worker threads shared by all hosted subscriptions
+     */
+    public SepConsumerHost(String hostName, ZooKeeperItf zk, Configuration hbaseConf, int threadCnt)
+            throws IOException {
+        Preconditions.checkArgument(threadCnt > 0, "Thread count must be > 0");
+        this.connectionId = "SepConsumerHost-" + HOST_COUNTER.incrementAndGet();
+        this.zk = zk;
+        this.hbaseConf = hbaseConf;
+        this.regionServer = SepConsumer.createRegionServer(connectionId, hostName, hbaseConf,
+                hbaseConf.getInt(SepConsumer.PIPELINE_WINDOW_CONF_KEY, 0));
+        this.serverName = regionServer.getServerName();
+        this.executors = SepConsumer.createExecutors(hbaseConf, connectionId, threadCnt);
+    }
+
+    /**
+     * Creates a host that serves the hosted subscriptions with the given region server and worker threads.
+     */
+    SepConsumerHost(ZooKeeperItf zk, Configuration hbaseConf, HRegionServer regionServer,
+            List<ExecutorService> executors) {
+        this.connectionId = "SepConsumerHost-" + HOST_COUNTER.incrementAndGet();
+        this.zk = zk;
+        this.hbaseConf = hbaseConf;
+        this.regionServer = regionServer;
+        this.serverName = regionServer.getServerName();
+        this.executors = executors;
+    }
+
+    public synchronized void start() {
+        Preconditions.checkState(!running, "This host has already been started");
+        // hacky way to pass non-primitive params to SepConnection
+        SepConnection.PARAMS_MAP.put(connectionId, new SepConnectionParams(this));
+        SepConsumer.startRegionServer(regionServer);
+        running = true;
+    }
+
+    public synchronized void stop() {
+        if (running) {
+            running = false;
+            regionServer.stop("Stopping masterless regionserver for " + connectionId);
+            SepConnection.PARAMS_MAP.remove(connectionId);
+        }
+        for (ExecutorService executor : executors) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Checks whether a subscription limited to the given tables can be added to this host, i.e. whether none of the
+     * tables belongs to an already hosted subscription.
+     */
+    public synchronized boolean canHost(String... tableNames) {
+        if (tableNames.length == 0) {
+            return false;
+        }
+        for (String tableName : tableNames) {
+            if (reservedTables.containsKey(TableName.valueOf(tableName))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates a consumer for a subscription, which will be served by this host once it is started. Stopping the
+     * consumer removes it from this host again.
+     *
+     * @param subscriptionTimestamp timestamp of when the subscription became active
+     * @param listener              listener that will process the events
+     * @param payloadExtractor      extracts payloads to include in SepEvents, can be null
+     * @param cellFilter            drops the cells that are not relevant to the listener, can be null
+     * @param tableNames            the tables to which the subscription is limited
+     * @throws IllegalArgumentException if the subscription can't be hosted, see {@link #canHost(String...)}
+     */
+    public SepConsumer createConsumer(String subscriptionId, long subscriptionTimestamp,
+            EventListener listener, PayloadExtractor payloadExtractor, CellFilter cellFilter, String... tableNames)
+            throws IOException {
+        SepConsumer consumer = tryCreateConsumer(subscriptionId, subscriptionTimestamp, listener, payloadExtractor,
+                cellFilter, tableNames);
+        Preconditions.checkArgument(consumer != null, "Subscription " + subscriptionId
+                + " should be limited to tables that aren't used by another hosted subscription");
+        return consumer;
+    }
+
+    /**
+     * Creates a consumer for a subscription like {@link #createConsumer}, but returns null instead of failing if the
+     * subscription can't be hosted. Checking and reserving the tables is atomic, so unlike calling
+     * {@link #canHost(String...)} first, this can't fail because another subscription took one of the tables in
+     * between.
+     */
+    public synchronized SepConsumer tryCreateConsumer(String subscriptionId, long subscriptionTimestamp,
+            EventListener listener, PayloadExtractor payloadExtractor, CellFilter cellFilter, String... tableNames)
+            throws IOException {
+        if (!canHost(tableNames)) {
+            return null;
+        }
+        List<TableName> tables = Lists.newArrayList();
+        for (String tableName : tableNames) {
+            tables.add(TableName.valueOf(tableName));
+        }
+        SepConsumer consumer = new SepConsumer(subscriptionId, subscriptionTimestamp, listener, zk, hbaseConf,
+                payloadExtractor, cellFilter, Predicates.in(tables), this);
+        for (TableName table : tables) {
+            reservedTables.put(table, consumer);
+        }
+        log.info("Hosting subscription " + subscriptionId + " for tables " + tables + " on " + serverName);
+        return consumer;
+    }
+
+    /**
+     * Returns the number of consumers that have been created by this host and not yet stopped.
+     */
+    public synchronized int getConsumerCount() {
+        return Sets.newHashSet(reservedTables.values()).size();
+    }
+
+    ServerName getServerName() {
+        return serverName;
+    }
+
+    List<ExecutorService> getExecutors() {
+        return executors;
+    }
+
+    synchronized void startRouting(SepConsumer consumer) {
+        Preconditions.checkState(running, "The SepConsumerHost should be started before its consumers");
+        for (Map.Entry<TableName, SepConsumer> entry : reservedTables.entrySet()) {
+            if (entry.getValue() == consumer) {
+                routedTables.put(entry.getKey(), consumer);
+            }
+        }
+    }
+
+    synchronized void stopRouting(SepConsumer consumer) {
+        routedTables.values().removeAll(Collections.singleton(consumer));
+    }
+
+    synchronized void release(SepConsumer consumer) {
+        stopRouting(consumer);
+        reservedTables.values().removeAll(Collections.singleton(consumer));
+    }
+
+    /**
+     * Returns true if a WAL entry should not be replicated. Entries for tables that are not hosted (anymore) are
+     * not filtered, but rejected by {@link #replicateBatch}, so that they will be retried on another consumer.
+     */
+    boolean isFiltered(TableName table, long writeTime) {
+        SepConsumer consumer = routedTables.get(table);
+        return consumer != null && writeTime < consumer.getSubscriptionTimestamp();
+    }
+
+    void replicateBatch(List<? extends Row> actions, Object[] results, TableName tableName) throws IOException {
+        SepConsumer consumer = routedTables.get(tableName);
+        if (consumer == null) {
+            throw new IOException("No subscription for table " + tableName + " is hosted on " + serverName);
+        }
+        consumer.replicateBatch(actions, results, tableName);
+    }
+}
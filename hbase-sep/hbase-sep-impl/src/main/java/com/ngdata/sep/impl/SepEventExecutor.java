@@ -15,12 +15,16 @@
  */
 package com.ngdata.sep.impl;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hashing;
@@ -28,13 +32,34 @@ import com.ngdata.sep.EventListener;
 import com.ngdata.sep.SepEvent;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.KeyValueUtil;
 
 /**
  * Executes SepEvents in batches over multiple threads. All events for the same row will be executed by the same thread,
  * and will be batched in the order that they were received in.
  * <p>
  * As SepEvents are executed in batches, after scheduling they will be buffered until their batch size is reached or the
- * {@code flush} method is called.
+ * {@code flush} method is called. The batch size is either fixed, or chosen per thread by an
+ * {@link AdaptiveBatchSizer} based on how long earlier batches took to be processed. A batch can also be closed
+ * early when the cell bytes of its events reach a maximum.
+ * <p>
+ * When a {@link SepMemoryBudget} is set, the cell bytes of each event are reserved in it when the event is
+ * scheduled, and given back once its batch has been processed. If the budget is exhausted, all buffered batches
+ * are started up, and scheduling blocks until enough bytes have been given back.
+ * <p>
+ * By default, the partition (thread) of an event is chosen based on the hash of its row key. When a
+ * {@link SkewAwarePartitioner} is set, it chooses the partitions instead, based on their load and on which rows are
+ * hot, while still keeping the events of a row on a single partition.
+ * <p>
+ * When an {@link EventTimeWatermark} is set, the oldest write timestamp of each batch is registered in it for as
+ * long as the batch is in flight.
+ * <p>
+ * Optionally, events can be coalesced per row: an event for a (table, row) that is still buffered is then merged with
+ * the buffered event for that row instead of being added as a separate event. The merged event holds the cells of
+ * both events in the order in which they were scheduled, and the first non-null payload. Coalescing only applies to
+ * events that are buffered at the same time, once a batch has been handed to its thread, later events for the same
+ * row start a new event.
  * <p>
  * Note that although this class uses multiple threads, its use is not thread-safe. Events should only be scheduled from
  * within a single thread.
@@ -45,28 +70,115 @@ public class SepEventExecutor {
     private EventListener eventListener;
     private int numThreads;
     private int batchSize;
+    private AdaptiveBatchSizer batchSizer;
+    private long maxBatchBytes = 0;
+    private SepMemoryBudget memoryBudget;
+    private SkewAwarePartitioner partitioner;
+    private EventTimeWatermark watermark;
+    private long[] bufferedBytes;
+    private long[] bufferedOldestTimestamps;
     private SepMetrics sepMetrics;
-    private List<ThreadPoolExecutor> executors;
+    private List<? extends ExecutorService> executors;
     private Multimap<Integer, SepEvent> eventBuffers;
+    private Map<Integer, Map<RowKey, CoalescedRow>> coalescedRows;
     private List<Future<?>> futures;
+    private List<List<SepEvent>> batchEvents;
+    private Multimap<Integer, SepEvent> scheduledEvents;
     private HashFunction hashFunction = Hashing.murmur3_32();
     private boolean stopped = false;
 
-    public SepEventExecutor(EventListener eventListener, List<ThreadPoolExecutor> executors, int batchSize, SepMetrics sepMetrics) {
+    /**
+     * @param executors one single-threaded executor per partition, e.g. a {@code ThreadPoolExecutor} or a
+     *                  {@link com.ngdata.sep.util.concurrent.RingBufferExecutor}
+     */
+    public SepEventExecutor(EventListener eventListener, List<? extends ExecutorService> executors, int batchSize,
+            SepMetrics sepMetrics) {
+        this(eventListener, executors, batchSize, sepMetrics, false);
+    }
+
+    /**
+     * @param executors one single-threaded executor per partition, e.g. a {@code ThreadPoolExecutor} or a
+     *                  {@link com.ngdata.sep.util.concurrent.RingBufferExecutor}
+     * @param coalesceRows if true, buffered events for the same (table, row) are merged into a single event
+     */
+    public SepEventExecutor(EventListener eventListener, List<? extends ExecutorService> executors, int batchSize,
+            SepMetrics sepMetrics, boolean coalesceRows) {
+        this(eventListener, executors, batchSize, null, sepMetrics, coalesceRows);
+    }
+
+    /**
+     * @param executors one single-threaded executor per partition, e.g. a {@code ThreadPoolExecutor} or a
+     *                  {@link com.ngdata.sep.util.concurrent.RingBufferExecutor}
+     * @param batchSizer chooses the batch size of each partition, it should have been created for as many
+     *                   partitions as there are executors
+     * @param coalesceRows if true, buffered events for the same (table, row) are merged into a single event
+     */
+    public SepEventExecutor(EventListener eventListener, List<? extends ExecutorService> executors,
+            AdaptiveBatchSizer batchSizer, SepMetrics sepMetrics, boolean coalesceRows) {
+        this(eventListener, executors, batchSizer.getAverageBatchSize(), batchSizer, sepMetrics, coalesceRows);
+    }
+
+    private SepEventExecutor(EventListener eventListener, List<? extends ExecutorService> executors, int batchSize,
+            AdaptiveBatchSizer batchSizer, SepMetrics sepMetrics, boolean coalesceRows) {
         this.eventListener = eventListener;
         this.executors = executors;
         this.numThreads = executors.size();
         this.batchSize = batchSize;
+        this.batchSizer = batchSizer;
         this.sepMetrics = sepMetrics;
         eventBuffers = ArrayListMultimap.create(numThreads, batchSize);
         futures = Lists.newArrayList();
+        batchEvents = Lists.newArrayList();
+        bufferedBytes = new long[numThreads];
+        bufferedOldestTimestamps = new long[numThreads];
+        Arrays.fill(bufferedOldestTimestamps, Long.MAX_VALUE);
+        if (coalesceRows) {
+            coalescedRows = Maps.newHashMap();
+            scheduledEvents = ArrayListMultimap.create(numThreads, batchSize);
+        }
+    }
+
+    /**
+     * Close batches once the cell bytes of their events reach the given number of bytes. Should be called before
+     * any events are scheduled.
+     *
+     * @param maxBatchBytes maximum number of bytes in a batch, 0 for no maximum
+     */
+    public void setMaxBatchBytes(long maxBatchBytes) {
+        this.maxBatchBytes = maxBatchBytes;
+    }
+
+    /**
+     * Account the cell bytes of scheduled events in the given budget. Should be called before any events are
+     * scheduled.
+     */
+    public void setMemoryBudget(SepMemoryBudget memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Let the given partitioner choose the partition of each event, instead of the hash of its row key. It should
+     * have been created for as many partitions as there are executors. Should be called before any events are
+     * scheduled.
+     */
+    public void setPartitioner(SkewAwarePartitioner partitioner) {
+        this.partitioner = partitioner;
+    }
+
+    /**
+     * Register the batches handed to each partition in the given watermark, until they have been processed. It
+     * should have been created for as many partitions as there are executors. Should be called before any events
+     * are scheduled.
+     */
+    public void setWatermark(EventTimeWatermark watermark) {
+        this.watermark = watermark;
     }
 
     /**
      * Schedule a {@link SepEvent} for execution.
      * <p>
      * The event will be buffered until it can be executed within a batch of the configured batch size, or until the
-     * {@link #flush()} method is called.
+     * {@link #flush()} method is called. If a memory budget is set, this blocks until the event fits in it.
      * 
      * @param sepEvent event to be scheduled
      */
@@ -76,33 +188,181 @@ public class SepEventExecutor {
             throw new IllegalStateException("This executor is stopped");
         }
 
+        long eventBytes = getCellBytes(sepEvent);
+        if (memoryBudget != null) {
+            reserve(eventBytes);
+        }
+
         // We don't want messages of the same row to be processed concurrently, therefore choose
-        // a thread based on the hash of the row key
-        int partition = (hashFunction.hashBytes(sepEvent.getRow()).asInt() & Integer.MAX_VALUE) % numThreads;
+        // a thread based on the hash of the row key, or let the partitioner keep the row on the same thread
+        int partition;
+        if (partitioner != null) {
+            partition = partitioner.acquire(sepEvent.getTable(), sepEvent.getRow());
+        } else {
+            partition = (hashFunction.hashBytes(sepEvent.getRow()).asInt() & Integer.MAX_VALUE) % numThreads;
+        }
         List<SepEvent> eventBuffer = (List<SepEvent>)eventBuffers.get(partition);
-        eventBuffer.add(sepEvent);
-        if (eventBuffer.size() == batchSize) {
-            scheduleEventBatch(partition, Lists.newArrayList(eventBuffer));
-            eventBuffers.removeAll(partition);
+        bufferedBytes[partition] += eventBytes;
+        if (watermark != null) {
+            bufferedOldestTimestamps[partition] = Math.min(bufferedOldestTimestamps[partition],
+                    EventTimeWatermark.getOldestTimestamp(sepEvent));
+        }
+        if (scheduledEvents != null) {
+            scheduledEvents.put(partition, sepEvent);
+        }
+        if (coalescedRows == null || !coalesce(partition, eventBuffer, sepEvent)) {
+            eventBuffer.add(sepEvent);
+        } else if (partitioner != null) {
+            // The row is already in flight through the buffered event it was merged into
+            partitioner.release(sepEvent.getTable(), sepEvent.getRow());
+        }
+        if (eventBuffer.size() >= getBatchSize(partition)
+                || (maxBatchBytes > 0 && bufferedBytes[partition] >= maxBatchBytes)) {
+            schedulePartition(partition);
+        }
+    }
+
+    private void reserve(long eventBytes) {
+        if (memoryBudget.tryAcquire(eventBytes)) {
+            return;
+        }
+        // The budget might be held by our own buffered events, so these need to be started up before waiting
+        scheduleBufferedBatches();
+        try {
+            memoryBudget.acquire(eventBytes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for SEP events to be processed", e);
+        }
+    }
+
+    /**
+     * Merges the given event into the buffered event for the same row, if there is one. Otherwise, registers the
+     * position at which the event will be added to the buffer.
+     *
+     * @return true if the event was merged into an already buffered event
+     */
+    private boolean coalesce(int partition, List<SepEvent> eventBuffer, SepEvent sepEvent) {
+        Map<RowKey, CoalescedRow> rows = coalescedRows.get(partition);
+        if (rows == null) {
+            rows = Maps.newHashMap();
+            coalescedRows.put(partition, rows);
+        }
+        RowKey rowKey = new RowKey(sepEvent.getTable(), sepEvent.getRow());
+        CoalescedRow coalescedRow = rows.get(rowKey);
+        if (coalescedRow == null) {
+            rows.put(rowKey, new CoalescedRow(eventBuffer.size()));
+            return false;
+        }
+
+        SepEvent bufferedEvent = eventBuffer.get(coalescedRow.position);
+        if (coalescedRow.cells == null) {
+            // First merge for this row, copy the cells so that the original event is left untouched
+            coalescedRow.cells = Lists.newArrayList(bufferedEvent.getKeyValues());
+        }
+        coalescedRow.cells.addAll(sepEvent.getKeyValues());
+        byte[] payload = bufferedEvent.getPayload() != null ? bufferedEvent.getPayload() : sepEvent.getPayload();
+        eventBuffer.set(coalescedRow.position, new SepEvent(bufferedEvent.getTable(), bufferedEvent.getRow(),
+                coalescedRow.cells, payload));
+        return true;
+    }
+
+    private int getBatchSize(int partition) {
+        return batchSizer != null ? batchSizer.getBatchSize(partition) : batchSize;
+    }
+
+    private void schedulePartition(int partition) {
+        List<SepEvent> events = Lists.newArrayList(eventBuffers.get(partition));
+        // The events as they were scheduled, before any of them were merged
+        List<SepEvent> originalEvents = scheduledEvents != null
+                ? Lists.newArrayList(scheduledEvents.get(partition)) : events;
+        long batchBytes = bufferedBytes[partition];
+        long oldestTimestamp = bufferedOldestTimestamps[partition];
+        // Cleared first, if the batch can't be submitted it is released right away rather than discarded later
+        clearPartition(partition);
+        if (!events.isEmpty()) {
+            scheduleEventBatch(partition, events, originalEvents, batchBytes, oldestTimestamp);
+        }
+    }
+
+    private void clearPartition(int partition) {
+        eventBuffers.removeAll(partition);
+        bufferedBytes[partition] = 0;
+        bufferedOldestTimestamps[partition] = Long.MAX_VALUE;
+        if (coalescedRows != null) {
+            coalescedRows.remove(partition);
+            scheduledEvents.removeAll(partition);
+        }
+    }
+
+    private void scheduleBufferedBatches() {
+        for (int partition : Lists.newArrayList(eventBuffers.keySet())) {
+            schedulePartition(partition);
         }
     }
 
-    private void scheduleEventBatch(int partition, final List<SepEvent> events) {
-        Future<?> future = executors.get(partition).submit(new Runnable() {
+    private void scheduleEventBatch(final int partition, final List<SepEvent> events, List<SepEvent> originalEvents,
+            final long batchBytes, final long oldestTimestamp) {
+        if (watermark != null) {
+            watermark.beginPartitionBatch(partition, oldestTimestamp);
+        }
+        final long submitTime = System.nanoTime();
+        Runnable task = new Runnable() {
             @Override
             public void run() {
                 try {
-                    long before = System.currentTimeMillis();
+                    long before = System.nanoTime();
+                    sepMetrics.reportQueueWait(TimeUnit.NANOSECONDS.toMillis(before - submitTime));
                     log.debug("Delivering message to listener");
                     eventListener.processEvents(events);
-                    sepMetrics.reportFilteredSepOperation(System.currentTimeMillis() - before);
+                    long duration = System.nanoTime() - before;
+                    sepMetrics.reportFilteredSepOperation(TimeUnit.NANOSECONDS.toMillis(duration));
+                    if (batchSizer != null) {
+                        batchSizer.reportBatch(partition, events.size(), batchBytes, duration);
+                    }
                 } catch (RuntimeException e) {
                     log.error("Error while processing event", e);
                     throw e;
+                } finally {
+                    releaseBatch(partition, events, batchBytes, oldestTimestamp);
                 }
             }
-        });
+        };
+        Future<?> future;
+        try {
+            future = executors.get(partition).submit(task);
+            sepMetrics.reportSubmitBlocked(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - submitTime));
+        } catch (RuntimeException e) {
+            releaseBatch(partition, events, batchBytes, oldestTimestamp);
+            throw e;
+        }
         futures.add(future);
+        batchEvents.add(originalEvents);
+    }
+
+    private void releaseBatch(int partition, List<SepEvent> events, long batchBytes, long oldestTimestamp) {
+        if (watermark != null) {
+            watermark.endPartitionBatch(partition, oldestTimestamp);
+        }
+        if (memoryBudget != null) {
+            memoryBudget.release(batchBytes);
+        }
+        if (partitioner != null) {
+            for (SepEvent event : events) {
+                partitioner.release(event.getTable(), event.getRow());
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bytes taken by the cells of an event, as they would be serialized.
+     */
+    static long getCellBytes(SepEvent event) {
+        long bytes = 0;
+        for (Cell cell : event.getKeyValues()) {
+            bytes += KeyValueUtil.length(cell);
+        }
+        return bytes;
     }
 
     /**
@@ -111,15 +371,81 @@ public class SepEventExecutor {
      * Returns all {@code Future}s for all events that have been scheduled since the last time this method was called.
      */
     public List<Future<?>> flush() {
-        for (int partition : eventBuffers.keySet()) {
-            List<SepEvent> buffer = (List<SepEvent>)eventBuffers.get(partition);
-            if (!buffer.isEmpty()) {
-                scheduleEventBatch(partition, Lists.newArrayList(buffer));
-            }
-        }
-        eventBuffers.clear();
+        scheduleBufferedBatches();
         List<Future<?>> flushedFutures = Lists.newArrayList(futures);
         return flushedFutures;
     }
 
+    /**
+     * Drops the buffered events that haven't been started up for execution, giving back their memory budget
+     * reservations and their rows in the partitioner. Should be called when scheduling fails halfway, e.g. because
+     * the thread was interrupted while waiting for the memory budget, as the buffered events would otherwise hold on
+     * to these forever. Batches that have already been started up are not affected.
+     */
+    public void discardBuffered() {
+        for (int partition = 0; partition < numThreads; partition++) {
+            List<SepEvent> events = Lists.newArrayList(eventBuffers.get(partition));
+            long batchBytes = bufferedBytes[partition];
+            clearPartition(partition);
+            if (memoryBudget != null && batchBytes > 0) {
+                memoryBudget.release(batchBytes);
+            }
+            if (partitioner != null) {
+                for (SepEvent event : events) {
+                    partitioner.release(event.getTable(), event.getRow());
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the events of each batch that has been started up for execution, in the same order as the
+     * {@code Future}s returned by {@link #flush()}. These are the events as they were scheduled, i.e. when events
+     * were coalesced, the batch holds all of the events that were merged together.
+     */
+    public List<List<SepEvent>> getBatchEvents() {
+        return Lists.newArrayList(batchEvents);
+    }
+
+    /**
+     * Identifies a row within a table, for coalescing events and for keeping track of rows in flight.
+     */
+    static final class RowKey {
+        private final byte[] table;
+        private final byte[] row;
+        private final int hashCode;
+
+        RowKey(byte[] table, byte[] row) {
+            this.table = table;
+            this.row = row;
+            this.hashCode = 31 * Arrays.hashCode(table) + Arrays.hashCode(row);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof RowKey)) {
+                return false;
+            }
+            RowKey other = (RowKey)obj;
+            return Arrays.equals(row, other.row) && Arrays.equals(table, other.table);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    /**
+     * Position of the buffered event of a row, and the cells merged into it so far.
+     */
+    private static final class CoalescedRow {
+        private final int position;
+        private List<Cell> cells;
+
+        CoalescedRow(int position) {
+            this.position = position;
+        }
+    }
+
 }
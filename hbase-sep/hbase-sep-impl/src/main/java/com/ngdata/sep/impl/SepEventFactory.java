@@ -0,0 +1,186 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.sep.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.ngdata.sep.BatchPayloadExtractor;
+import com.ngdata.sep.BatchPayloadExtractor.TablePayloadExtractor;
+import com.ngdata.sep.CellFilter;
+import com.ngdata.sep.PayloadExtractor;
+import com.ngdata.sep.SepEvent;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellScanner;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Row;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Turns the mutations that are received through replication into {@link SepEvent}s.
+ * <p>
+ * {@code Put}s and {@code Delete}s only ever hold cells for their own row (this is enforced when cells are added to
+ * them), so they are turned into a single event without any intermediate grouping: the event refers to the row key
+ * array of the mutation and to the table name array of the batch, and holds the original {@code Cell}s rather
+ * than {@code KeyValue} copies of them. Other types of mutations go through a slower path that groups cells per
+ * row.
+ * <p>
+ * Because the cells are views on the buffers of the replication request, the events are only valid for the duration
+ * of the {@code replicateBatch} call they were created in.
+ * <p>
+ * An optional {@link CellFilter} drops the put cells that the event listener has no use for, before they are
+ * queued. Payloads are still extracted from all cells, and the timestamps of dropped cells still count towards the
+ * returned maximum timestamp, as these cells have been handled as well.
+ * <p>
+ * Payload extraction goes through a {@link BatchPayloadExtractor}, of which the table is resolved once per batch.
+ * A plain {@link PayloadExtractor} is adapted to it, see {@link PayloadExtractorAdapter}.
+ */
+final class SepEventFactory {
+
+    private final Log log = LogFactory.getLog(getClass());
+    private final BatchPayloadExtractor payloadExtractor;
+    private final CellFilter cellFilter;
+
+    /**
+     * @param payloadExtractor extracts payloads to include in SepEvents, can be null
+     */
+    SepEventFactory(PayloadExtractor payloadExtractor) {
+        this(payloadExtractor, null);
+    }
+
+    /**
+     * @param payloadExtractor extracts payloads to include in SepEvents, can be null
+     * @param cellFilter       drops irrelevant put cells from the SepEvents, can be null
+     */
+    SepEventFactory(PayloadExtractor payloadExtractor, CellFilter cellFilter) {
+        this.payloadExtractor = PayloadExtractorAdapter.adapt(payloadExtractor);
+        this.cellFilter = cellFilter;
+    }
+
+    /**
+     * Create the events for a batch of replicated mutations of a single table.
+     *
+     * @param actions the mutations as received by {@code replicateBatch}
+     * @param tableName table to which all mutations apply
+     * @param events list to which the created events are added
+     * @return the highest cell timestamp in the batch, or -1 if the batch contained no cells
+     */
+    long createEvents(List<? extends Row> actions, TableName tableName, List<SepEvent> events) throws IOException {
+        // A single table name array is shared by all events of the batch
+        byte[] table = tableName.getName();
+        // The payload extraction is resolved once for all cells of the batch
+        TablePayloadExtractor tablePayloadExtractor =
+                payloadExtractor != null ? payloadExtractor.forTable(table) : null;
+        long maxTimestamp = -1;
+        for (Row row : actions) {
+            if (!(row instanceof Mutation)) {
+                throw new RuntimeException("Unreachable code for row class: " + row.getClass().getName());
+            }
+            Mutation mutation = (Mutation) row;
+            if (mutation instanceof Put || mutation instanceof Delete) {
+                maxTimestamp = Math.max(maxTimestamp,
+                        createSingleRowEvent(mutation, table, tablePayloadExtractor, events));
+            } else {
+                maxTimestamp = Math.max(maxTimestamp,
+                        createMultiRowEvents(mutation, table, tablePayloadExtractor, events));
+            }
+        }
+        return maxTimestamp;
+    }
+
+    private long createSingleRowEvent(Mutation mutation, byte[] table, TablePayloadExtractor tablePayloadExtractor,
+            List<SepEvent> events) throws IOException {
+        long maxTimestamp = -1;
+        List<Cell> cells = new ArrayList<Cell>(mutation.size());
+        byte[] payload = null;
+        CellScanner cellScanner = mutation.cellScanner();
+        while (cellScanner.advance()) {
+            Cell cell = cellScanner.current();
+            maxTimestamp = Math.max(maxTimestamp, cell.getTimestamp());
+            if (tablePayloadExtractor != null) {
+                payload = extractPayload(tablePayloadExtractor, cell, payload);
+            }
+            if (isRelevant(table, cell)) {
+                cells.add(cell);
+            }
+        }
+        if (!cells.isEmpty()) {
+            events.add(new SepEvent(table, mutation.getRow(), cells, payload));
+        }
+        return maxTimestamp;
+    }
+
+    private long createMultiRowEvents(Mutation mutation, byte[] table, TablePayloadExtractor tablePayloadExtractor,
+            List<SepEvent> events) throws IOException {
+        long maxTimestamp = -1;
+        Multimap<ByteBuffer, Cell> cellsPerRowKey = ArrayListMultimap.create();
+        Map<ByteBuffer, byte[]> payloadPerRowKey = Maps.newHashMap();
+
+        CellScanner cellScanner = mutation.cellScanner();
+        while (cellScanner.advance()) {
+            Cell cell = cellScanner.current();
+            maxTimestamp = Math.max(maxTimestamp, cell.getTimestamp());
+            ByteBuffer rowKey = ByteBuffer.wrap(cell.getRowArray(), cell.getRowOffset(), cell.getRowLength());
+            if (tablePayloadExtractor != null) {
+                byte[] payload = extractPayload(tablePayloadExtractor, cell, payloadPerRowKey.get(rowKey));
+                if (payload != null) {
+                    payloadPerRowKey.put(rowKey, payload);
+                }
+            }
+            if (isRelevant(table, cell)) {
+                cellsPerRowKey.put(rowKey, cell);
+            }
+        }
+        for (ByteBuffer rowKey : cellsPerRowKey.keySet()) {
+            List<Cell> cells = (List<Cell>) cellsPerRowKey.get(rowKey);
+            events.add(new SepEvent(table, CellUtil.cloneRow(cells.get(0)), cells, payloadPerRowKey.get(rowKey)));
+        }
+        return maxTimestamp;
+    }
+
+    private boolean isRelevant(byte[] table, Cell cell) {
+        return cellFilter == null || CellUtil.isDelete(cell) || cellFilter.isRelevant(table, cell);
+    }
+
+    /**
+     * Returns the payload for a row, which is the first payload found in its cells.
+     */
+    private byte[] extractPayload(TablePayloadExtractor tablePayloadExtractor, Cell cell, byte[] currentPayload) {
+        byte[] payload = tablePayloadExtractor.extractPayload(cell);
+        if (payload == null) {
+            return currentPayload;
+        }
+        if (currentPayload != null) {
+            log.error("Multiple payloads encountered for row "
+                    + Bytes.toStringBinary(cell.getRowArray(), cell.getRowOffset(), cell.getRowLength())
+                    + ", choosing " + Bytes.toStringBinary(currentPayload));
+            return currentPayload;
+        }
+        return payload;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.sep.impl;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Limits the number of cell bytes of SEP events that a {@link SepConsumer} holds on to, from the moment they are
+ * scheduled on a {@link SepEventExecutor} until the {@code EventListener} has processed them.
+ * <p>
+ * When the budget is exhausted, scheduling further events blocks until earlier events have been processed. As this
+ * happens within the replication call, it also slows down replication towards this consumer. A single event that is
+ * larger than the whole budget is let through when nothing else is buffered, so that it cannot block forever.
+ * <p>
+ * The budget only covers the events that are queued for, or being processed by, the listener. The replication batch
+ * that is being scheduled has been received, and turned into events, as a whole before its first event is reserved,
+ * so up to one replication batch per concurrent replication call comes on top of the budget. The size of these
+ * batches is limited on the sending side, by HBase's {@code replication.source.size.capacity}.
+ */
+public class SepMemoryBudget {
+
+    private final long limit;
+    private final SepMetrics sepMetrics;
+    private long bufferedBytes = 0;
+    private long peakBufferedBytes = 0;
+
+    /**
+     * @param limit maximum number of bytes to buffer
+     * @param sepMetrics metrics to which the buffered bytes are reported, can be null
+     */
+    public SepMemoryBudget(long limit, SepMetrics sepMetrics) {
+        Preconditions.checkArgument(limit > 0, "Memory budget must be > 0");
+        this.limit = limit;
+        this.sepMetrics = sepMetrics;
+    }
+
+    /**
+     * Reserve bytes for an event if this can be done without exceeding the budget.
+     *
+     * @return true if the bytes were reserved
+     */
+    public synchronized boolean tryAcquire(long bytes) {
+        if (!fits(bytes)) {
+            return false;
+        }
+        add(bytes);
+        return true;
+    }
+
+    /**
+     * Reserve bytes for an event, waiting until they fit within the budget.
+     */
+    public synchronized void acquire(long bytes) throws InterruptedException {
+        while (!fits(bytes)) {
+            wait();
+        }
+        add(bytes);
+    }
+
+    /**
+     * Give back bytes that were reserved by {@link #tryAcquire(long)} or {@link #acquire(long)}.
+     */
+    public synchronized void release(long bytes) {
+        add(-bytes);
+        notifyAll();
+    }
+
+    public synchronized long getBufferedBytes() {
+        return bufferedBytes;
+    }
+
+    public synchronized long getPeakBufferedBytes() {
+        return peakBufferedBytes;
+    }
+
+    private boolean fits(long bytes) {
+        return bufferedBytes == 0 || bufferedBytes + bytes <= limit;
+    }
+
+    private void add(long bytes) {
+        bufferedBytes += bytes;
+        peakBufferedBytes = Math.max(peakBufferedBytes, bufferedBytes);
+        if (sepMetrics != null) {
+            sepMetrics.reportBufferedBytes(bufferedBytes, peakBufferedBytes);
+        }
+    }
+}
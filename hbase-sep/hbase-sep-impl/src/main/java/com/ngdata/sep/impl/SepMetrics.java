@@ -15,7 +15,11 @@
  */
 package com.ngdata.sep.impl;
 
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
 import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
 import org.apache.hadoop.metrics2.MetricsInfo;
 import org.apache.hadoop.metrics2.MetricsSource;
 import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
@@ -33,12 +37,42 @@ public class SepMetrics implements MetricsSource {
     private final String sourceName;
     
     private long lastSepTimestamp;
+
+    private volatile int batchSize;
+
+    private volatile long bufferedBytes;
+
+    private volatile long peakBufferedBytes;
+
+    private volatile AtomicLongArray partitionLoads;
+
+    private final AtomicLong skippedReplayedEvents = new AtomicLong();
+
+    private volatile long spooledBytes;
+
+    private volatile long spoolDrainLag;
+
+    private volatile boolean spoolFailed;
+
+    private volatile EventTimeWatermark watermark;
+
+    private volatile int partitionCount;
+
+    private final AtomicLong busyTime = new AtomicLong();
     
     private final MutableHistogram histo = 
 //        new MutableHistogram(
         new MutableTimeHistogram(
         "sepProcessed", 
         "SEP operations that have been processed after making it through the filtering process");
+
+    private final MutableHistogram queueWaitHisto = new MutableTimeHistogram(
+        "sepQueueWait",
+        "Time between handing a batch of SEP events to its worker thread and it being processed, blocking included");
+
+    private final MutableHistogram submitBlockedHisto = new MutableTimeHistogram(
+        "sepSubmitBlocked",
+        "Time that handing a batch of SEP events to its worker thread was blocked because its queue was full");
     
     private static final String CONTEXT = "repository";
     
@@ -60,13 +94,95 @@ public class SepMetrics implements MetricsSource {
               new MyMetricsInfo(
                   "lastSepTimestamp", 
                   "Write timestamp of the most recent operation in HBase that has been handled by the SEP system"), 
-              lastSepTimestamp);      
+              lastSepTimestamp)
+          .addGauge(
+              new MyMetricsInfo(
+                  "batchSize",
+                  "Number of events per batch handed to the event listener, averaged over all threads"),
+              batchSize)
+          .addGauge(
+              new MyMetricsInfo(
+                  "bufferedBytes",
+                  "Cell bytes of SEP events that have been received but not yet processed by the event listener"),
+              bufferedBytes)
+          .addGauge(
+              new MyMetricsInfo(
+                  "peakBufferedBytes",
+                  "Highest number of cell bytes of SEP events that have been buffered at the same time"),
+              peakBufferedBytes)
+          .addCounter(
+              new MyMetricsInfo(
+                  "skippedReplayedEvents",
+                  "SEP events of retried replication batches that were skipped because they were already processed"),
+              skippedReplayedEvents.get())
+          .addGauge(
+              new MyMetricsInfo(
+                  "spooledBytes",
+                  "Bytes of replication batches in the local spool that have not yet been processed"),
+              spooledBytes)
+          .addGauge(
+              new MyMetricsInfo(
+                  "spoolDrainLag",
+                  "Milliseconds since the spooled batch that is being processed was appended to the spool"),
+              spoolDrainLag)
+          .addGauge(
+              new MyMetricsInfo(
+                  "spoolFailed",
+                  "1 if draining the local spool has stopped because it couldn't be read, batches are then refused"),
+              spoolFailed ? 1 : 0)
+          .addGauge(
+              new MyMetricsInfo(
+                  "partitionCount",
+                  "Number of partitions (worker threads) over which SEP events are processed"),
+              partitionCount);
+      addPartitionLoads(collector.addRecord(recordName).setContext(CONTEXT));
+      addWatermark(collector.addRecord(recordName).setContext(CONTEXT));
       
       histo.snapshot(
           collector.addRecord(recordName).setContext(CONTEXT), 
           all);
+      queueWaitHisto.snapshot(collector.addRecord(recordName).setContext(CONTEXT), all);
+      submitBlockedHisto.snapshot(collector.addRecord(recordName).setContext(CONTEXT), all);
     }
     
+    private void addPartitionLoads(MetricsRecordBuilder record) {
+        AtomicLongArray loads = partitionLoads;
+        if (loads == null) {
+            return;
+        }
+        long total = 0;
+        long max = 0;
+        for (int i = 0; i < loads.length(); i++) {
+            long load = loads.get(i);
+            total += load;
+            max = Math.max(max, load);
+            record.addGauge(new MyMetricsInfo("partitionLoad" + i,
+                    "Number of SEP events in flight on partition " + i), load);
+        }
+        double skew = total > 0 ? (double)max * loads.length() / total : 1.0;
+        record.addGauge(new MyMetricsInfo("partitionLoadSkew",
+                "Events in flight on the busiest partition relative to the average, 1 means evenly spread"), skew);
+    }
+
+    private void addWatermark(MetricsRecordBuilder record) {
+        EventTimeWatermark watermark = this.watermark;
+        if (watermark == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        record.addGauge(new MyMetricsInfo("eventTimeWatermark",
+                "Write timestamp before which all received SEP events have been processed"),
+                watermark.getWatermark());
+        record.addGauge(new MyMetricsInfo("eventTimeLag",
+                "Milliseconds between now and the write timestamp of the oldest SEP event in flight, or of the most"
+                        + " recent SEP event processed if idle, -1 if nothing was processed yet"),
+                watermark.getStaleness(now));
+        // A single gauge rather than one per partition, as there can be many (virtual) partitions
+        record.addGauge(new MyMetricsInfo("maxPartitionEventTimeLag",
+                "Highest event-time lag of the SEP events in flight on a single partition"),
+                watermark.getMaxPartitionLag(now));
+    }
+
     public void shutdown() {      
         //DefaultMetricsSystem.instance().unregisterSource(sourceName);
         DefaultMetricsSystem.instance().shutdown();
@@ -80,6 +196,43 @@ public class SepMetrics implements MetricsSource {
      */
     public void reportFilteredSepOperation(long duration) {
         histo.add(duration);
+        busyTime.addAndGet(duration);
+    }
+
+    /**
+     * Returns the total number of milliseconds that the worker threads have spent handling SEP operations, see
+     * {@link #reportFilteredSepOperation(long)}.
+     */
+    public long getBusyTime() {
+        return busyTime.get();
+    }
+
+    /**
+     * Report the number of partitions (worker threads) over which SEP events are processed, it changes when the
+     * consumer is resized by a {@link SepAutoscaler}.
+     */
+    public void reportPartitionCount(int partitionCount) {
+        this.partitionCount = partitionCount;
+    }
+
+    /**
+     * Report how long a batch of SEP events waited in the queue of its worker thread before it was processed. This
+     * includes the time that handing off the batch was blocked, see {@link #reportSubmitBlocked(long)}.
+     *
+     * @param duration The number of milliseconds between handing the batch to the worker thread and processing it
+     */
+    public void reportQueueWait(long duration) {
+        queueWaitHisto.add(duration);
+    }
+
+    /**
+     * Report how long handing a batch of SEP events to its worker thread was blocked, e.g. by the
+     * {@link com.ngdata.sep.util.concurrent.WaitPolicy} of a full queue.
+     *
+     * @param duration The number of milliseconds that handing off the batch took
+     */
+    public void reportSubmitBlocked(long duration) {
+        submitBlockedHisto.add(duration);
     }
 
     /**
@@ -87,6 +240,7 @@ public class SepMetrics implements MetricsSource {
      * operations are delivered in the same order as they are originally written in HBase (which
      * will always be the case except for when a region split or move takes place), this metric will always
      * hold the write timestamp of the most recent operation in HBase that has been handled by the SEP system.
+     * See {@link EventTimeWatermark} for a measure of freshness that does take out-of-order processing into account.
      * 
      * @param timestamp The write timestamp of the last SEP operation
      */
@@ -94,6 +248,65 @@ public class SepMetrics implements MetricsSource {
         this.lastSepTimestamp = writeTimestamp;      
     }
 
+    /**
+     * Report the number of events that are currently put in a single batch for the event listener.
+     *
+     * @param batchSize The batch size, averaged over all threads
+     */
+    public void reportBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Report the number of cell bytes of SEP events that are currently buffered, see {@link SepMemoryBudget}.
+     *
+     * @param bufferedBytes The number of bytes currently buffered
+     * @param peakBufferedBytes The highest number of bytes buffered so far
+     */
+    public void reportBufferedBytes(long bufferedBytes, long peakBufferedBytes) {
+        this.bufferedBytes = bufferedBytes;
+        this.peakBufferedBytes = peakBufferedBytes;
+    }
+
+    /**
+     * Report that events of a retried replication batch were skipped because they had already been processed, see
+     * {@link PartialReplayTracker}.
+     *
+     * @param count The number of skipped events
+     */
+    public void reportSkippedReplayedEvents(int count) {
+        skippedReplayedEvents.addAndGet(count);
+    }
+
+    /**
+     * Report the state of the local spool, see {@link SepSpool}.
+     *
+     * @param spooledBytes The number of bytes in the spool that have not yet been processed
+     * @param drainLag How long ago (in milliseconds) the batch that is being processed was appended to the spool
+     * @param failed True if draining the spool has stopped because of an error
+     */
+    public void reportSpool(long spooledBytes, long drainLag, boolean failed) {
+        this.spooledBytes = spooledBytes;
+        this.spoolDrainLag = drainLag;
+        this.spoolFailed = failed;
+    }
+
+    /**
+     * Expose the event-time watermark and lag, see {@link EventTimeWatermark}.
+     */
+    public void registerWatermark(EventTimeWatermark watermark) {
+        this.watermark = watermark;
+    }
+
+    /**
+     * Expose the number of events in flight per partition, see {@link SkewAwarePartitioner}.
+     *
+     * @param partitionLoads The number of events in flight, indexed by partition
+     */
+    public void registerPartitionLoads(AtomicLongArray partitionLoads) {
+        this.partitionLoads = partitionLoads;
+    }
+
     
     private static final class MyMetricsInfo implements MetricsInfo {
       
@@ -17,9 +17,12 @@ package com.ngdata.sep.impl;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import com.ngdata.sep.util.zookeeper.ZkUtil;
@@ -30,6 +33,7 @@ import com.ngdata.sep.SepModel;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.ReplicationPeerNotFoundException;
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.Admin;
 import org.apache.hadoop.hbase.client.ConnectionFactory;
@@ -80,6 +84,54 @@ public class SepModelImpl implements SepModel {
 
     @Override
     public boolean addSubscriptionSilent(String name, String... tableNames) throws InterruptedException, KeeperException, IOException {
+        Map<TableName, List<String>> tablesToReplicate = null;
+        if (tableNames.length > 0) {
+            /*
+             * CDH-62730: Performance Enhancement: It is much more efficient to filter away events
+             * from irrelevant tables already on the hbase source cluster, i.e. as early as possible.
+             * This can drastically reduce the traffic across the wire from source hbase cluster to
+             * hbase-indexer. Without this patch each indexer receives all updates from all hbase
+             * tables, regardless of whether these tables are actually indexed or not.
+             * 
+             * Consider the case where many HBase tables are indexed by many indexers to many distinct
+             * Solr collections, for example one HBase table into one distinct Solr collection, for
+             * each of N=100 indexers definitions. Before this patch each update to ANY HBase table
+             * caused an event to be sent across the wire to EACH OF the N indexers. After this patch
+             * each update to an HBase table causes an event to be sent across the wire to *one* of
+             * the N indexers, the one indexer that's actually interested in updates for this
+             * particular HBase table.
+             * 
+             * Regex table names can be resolved to the matching tables by the caller, see
+             * addSubscription(String, Map).
+             */
+            tablesToReplicate = new HashMap();
+            for (String tableName : tableNames) {
+                List<String> columnFamilies = new ArrayList(); // this means replicate all colFamilies
+                tablesToReplicate.put(TableName.valueOf(tableName), columnFamilies);
+            }
+        }
+        return addReplicationPeer(name, tablesToReplicate);
+    }
+
+    @Override
+    public void addSubscription(String name, Map<String, List<String>> tableColumnFamilies)
+            throws InterruptedException, KeeperException, IOException {
+        if (!addSubscriptionSilent(name, tableColumnFamilies)) {
+            throw new IllegalStateException("There is already a subscription for name '" + name + "'.");
+        }
+    }
+
+    @Override
+    public boolean addSubscriptionSilent(String name, Map<String, List<String>> tableColumnFamilies)
+            throws InterruptedException, KeeperException, IOException {
+        return addReplicationPeer(name, toTableCFsMap(tableColumnFamilies));
+    }
+
+    /**
+     * @param tablesToReplicate the column families to replicate per table, or null to replicate all tables
+     */
+    private boolean addReplicationPeer(String name, Map<TableName, List<String>> tablesToReplicate)
+            throws InterruptedException, KeeperException, IOException {
         Admin admin = ConnectionFactory.createConnection(hbaseConf).getAdmin();
         try {
             String internalName = toInternalSubscriptionName(name);
@@ -99,32 +151,7 @@ public class SepModelImpl implements SepModel {
             try {
                 ReplicationPeerConfig peerConfig = new ReplicationPeerConfig()
                     .setClusterKey(zkQuorumString + ":" + zkClientPort + ":" + basePath);
-                if (tableNames.length > 0) {
-                    /*
-                     * CDH-62730: Performance Enhancement: It is much more efficient to filter away events
-                     * from irrelevant tables already on the hbase source cluster, i.e. as early as possible.
-                     * This can drastically reduce the traffic across the wire from source hbase cluster to
-                     * hbase-indexer. Without this patch each indexer receives all updates from all hbase
-                     * tables, regardless of whether these tables are actually indexed or not.
-                     * 
-                     * Consider the case where many HBase tables are indexed by many indexers to many distinct
-                     * Solr collections, for example one HBase table into one distinct Solr collection, for
-                     * each of N=100 indexers definitions. Before this patch each update to ANY HBase table
-                     * caused an event to be sent across the wire to EACH OF the N indexers. After this patch
-                     * each update to an HBase table causes an event to be sent across the wire to *one* of
-                     * the N indexers, the one indexer that's actually interested in updates for this
-                     * particular HBase table.
-                     * 
-                     * Unfortunately, for the time being we can only do this performance improvement if the
-                     * table name is not a regex, i.e. if the table name in the hbase indexer definition xml
-                     * file does not start with "regex:", for example "regex:user.*". If it is a regex then
-                     * performance remains unchanged.
-                     */
-                    Map<TableName, List<String>> tablesToReplicate = new HashMap();
-                    for (String tableName : tableNames) {
-                        List<String> columnFamilies = new ArrayList(); // this means replicate all colFamilies
-                        tablesToReplicate.put(TableName.valueOf(tableName), columnFamilies);
-                    }
+                if (tablesToReplicate != null) {
                     peerConfig.setReplicateAllUserTables(false);
                     peerConfig.setTableCFsMap(tablesToReplicate);
                 }
@@ -153,6 +180,74 @@ public class SepModelImpl implements SepModel {
         }
     }
 
+    @Override
+    public boolean updateSubscription(String name, Map<String, List<String>> tableColumnFamilies) throws IOException {
+        Admin admin = ConnectionFactory.createConnection(hbaseConf).getAdmin();
+        try {
+            String internalName = toInternalSubscriptionName(name);
+            Map<TableName, List<String>> tablesToReplicate = toTableCFsMap(tableColumnFamilies);
+            ReplicationPeerConfig peerConfig;
+            try {
+                peerConfig = admin.getReplicationPeerConfig(internalName);
+            } catch (ReplicationPeerNotFoundException e) {
+                throw new IllegalStateException("No subscription named '" + name + "'.");
+            }
+            if (tablesToReplicate == null) {
+                if (peerConfig.replicateAllUserTables()) {
+                    return false;
+                }
+                peerConfig.setReplicateAllUserTables(true);
+                peerConfig.setTableCFsMap(null);
+                admin.updateReplicationPeerConfig(internalName, peerConfig);
+                log.info("Updated subscription " + name + " to all tables");
+                return true;
+            }
+            if (!peerConfig.replicateAllUserTables()
+                    && normalize(peerConfig.getTableCFsMap()).equals(normalize(tablesToReplicate))) {
+                return false;
+            }
+            peerConfig.setReplicateAllUserTables(false);
+            peerConfig.setTableCFsMap(tablesToReplicate);
+            admin.updateReplicationPeerConfig(internalName, peerConfig);
+            log.info("Updated subscription " + name + " to tables and column families " + tablesToReplicate);
+            return true;
+        } finally {
+            Closer.close(admin.getConnection());
+            Closer.close(admin);
+        }
+    }
+
+    /**
+     * Returns null, meaning all tables, if the given map is null.
+     */
+    private static Map<TableName, List<String>> toTableCFsMap(Map<String, List<String>> tableColumnFamilies) {
+        if (tableColumnFamilies == null) {
+            return null;
+        }
+        Map<TableName, List<String>> tablesToReplicate = new HashMap<TableName, List<String>>();
+        for (Map.Entry<String, List<String>> entry : tableColumnFamilies.entrySet()) {
+            List<String> columnFamilies = entry.getValue() == null
+                    ? new ArrayList<String>() : new ArrayList<String>(entry.getValue());
+            tablesToReplicate.put(TableName.valueOf(entry.getKey()), columnFamilies);
+        }
+        return tablesToReplicate;
+    }
+
+    /**
+     * Makes table-CFs maps comparable: the order of the column families doesn't matter, and HBase can return null
+     * instead of an empty list for "all column families".
+     */
+    private static Map<TableName, Set<String>> normalize(Map<TableName, ? extends Collection<String>> tableCFs) {
+        Map<TableName, Set<String>> normalized = new HashMap<TableName, Set<String>>();
+        if (tableCFs != null) {
+            for (Map.Entry<TableName, ? extends Collection<String>> entry : tableCFs.entrySet()) {
+                normalized.put(entry.getKey(), entry.getValue() == null
+                        ? new HashSet<String>() : new HashSet<String>(entry.getValue()));
+            }
+        }
+        return normalized;
+    }
+
     @Override
     public void removeSubscription(String name) throws IOException {
         if (!removeSubscriptionSilent(name)) {
@@ -0,0 +1,658 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.sep.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.ngdata.sep.SepEvent;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.TableName;
+
+/**
+ * Durable local log of replication batches, which decouples acknowledging batches to HBase from processing them.
+ * <p>
+ * The receiving side {@link #append appends} the events of a batch to the log, and can acknowledge the batch as soon
+ * as this returns, as the batch has then been forced to disk. A single drain thread, started with
+ * {@link #start(Handler)}, reads the batches back in the order in which they were appended and passes them to a
+ * {@link Handler} at its own pace. A batch that fails is retried until it succeeds, later batches wait for it. After
+ * each batch, the position of the drain thread is checkpointed, so that after a restart, draining resumes with the
+ * first batch that wasn't processed yet. Batches that were processed just before a crash can be processed again.
+ * <p>
+ * The log consists of segment files of a fixed size, which are filled with zeros when they are created so that their
+ * disk blocks are allocated up front: running out of disk space then fails the creation of a segment (and thus the
+ * append) rather than a later write. A new segment is started when a batch doesn't fit in the current one, and
+ * segments are deleted once all of their batches have been processed. Each record in a segment consists of a header
+ * (length of the body, CRC32 of the body, time at which it was appended), followed by the body. A length of 0 marks
+ * the end of a segment. A record that was only partially written because of a crash is detected by its checksum, and
+ * is overwritten by the next append.
+ * <p>
+ * Appends fail, so that HBase keeps the batch and retries it later, when the spool holds more than the maximum number
+ * of bytes that haven't been processed yet, and once the drain thread has stopped because a record couldn't be read
+ * back. In the latter case the spool needs to be repaired by hand, and won't accept batches until it is reopened.
+ * <p>
+ * The number of bytes in the log that still need to be processed, how long ago the batch that was processed last
+ * was appended, and whether draining has stopped, are reported to the {@link SepMetrics}.
+ */
+public class SepSpool {
+
+    /**
+     * Processes the batches that are drained from a {@link SepSpool}.
+     */
+    public interface Handler {
+        /**
+         * Process the events of a batch.
+         *
+         * @param tableName table from which the events originate
+         * @param events the events of the batch
+         * @param timestamp the write timestamp of the most recent event of the batch, as passed to
+         *                  {@link SepSpool#append}
+         * @throws Exception if the batch couldn't be processed, it will then be retried
+         */
+        void process(TableName tableName, List<SepEvent> events, long timestamp) throws Exception;
+    }
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    /** Length of the body, CRC32 of the body, and the time at which the record was appended. */
+    private static final int HEADER_SIZE = 4 + 4 + 8;
+    /** Size of the buffer of zeros with which new segments are filled. */
+    private static final int PREALLOCATE_CHUNK_SIZE = 64 * 1024;
+    private static final long MIN_RETRY_DELAY = 100;
+    private static final long MAX_RETRY_DELAY = 30000;
+    private static final long CLOSE_TIMEOUT = 30000;
+
+    private final Log log = LogFactory.getLog(getClass());
+    private final File directory;
+    private final long segmentSize;
+    private final long maxSpooledBytes;
+    private final SepMetrics sepMetrics;
+
+    // Writing state, guarded by this
+    private long writeSegment;
+    private FileChannel writeChannel;
+    private long writeSize;
+    private int writePosition;
+    private long spooledBytes;
+    private boolean closed = false;
+    private Exception failure;
+
+    // Reading state, only accessed by the drain thread (and when opening and closing)
+    private long readSegment;
+    private FileChannel readChannel;
+    private int readPosition;
+    private volatile long drainLag;
+
+    private Thread drainThread;
+
+    /**
+     * Opens the spool in the given directory, creating it if necessary. Batches that are still in the log from a
+     * previous run will be drained first.
+     *
+     * @param segmentSize size of the segment files, batches that are larger than this get a segment of their own
+     * @param maxSpooledBytes maximum number of unprocessed bytes in the log, beyond which appends fail, or 0 for no
+     *                        limit. A batch is always accepted when the log is empty, even if it is larger.
+     * @param sepMetrics metrics to which the spooled bytes and drain lag are reported, can be null
+     */
+    public SepSpool(File directory, long segmentSize, long maxSpooledBytes, SepMetrics sepMetrics)
+            throws IOException {
+        Preconditions.checkArgument(segmentSize > HEADER_SIZE && segmentSize <= Integer.MAX_VALUE,
+                "Invalid segment size: " + segmentSize);
+        Preconditions.checkArgument(maxSpooledBytes >= 0, "Invalid maximum spooled bytes: " + maxSpooledBytes);
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSpooledBytes = maxSpooledBytes;
+        this.sepMetrics = sepMetrics;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create spool directory " + directory);
+        }
+        try {
+            recover();
+        } catch (IOException e) {
+            closeChannel(readChannel);
+            closeChannel(writeChannel);
+            throw e;
+        }
+    }
+
+    private void recover() throws IOException {
+        List<Long> segments = listSegments();
+        long[] checkpoint = readCheckpoint();
+        if (segments.isEmpty()) {
+            long segment = checkpoint != null ? checkpoint[0] : 0;
+            writeChannel = createSegment(segment, segmentSize);
+            writeSize = segmentSize;
+            writeSegment = segment;
+            readSegment = segment;
+            readChannel = openSegment(segment, false);
+            readPosition = 0;
+            return;
+        }
+
+        if (checkpoint != null && segments.contains(checkpoint[0])) {
+            readSegment = checkpoint[0];
+            readPosition = (int)checkpoint[1];
+        } else {
+            // No checkpoint yet, or the drain thread just moved on to the next segment when it was stopped
+            readSegment = segments.get(0);
+            for (long segment : segments) {
+                if (checkpoint == null || segment > checkpoint[0]) {
+                    readSegment = segment;
+                    break;
+                }
+            }
+            readPosition = 0;
+        }
+        for (long segment : segments) {
+            if (segment < readSegment) {
+                deleteSegment(segment);
+            } else if (segment > readSegment) {
+                FileChannel channel = openSegment(segment, false);
+                try {
+                    spooledBytes += findEnd(channel, 0);
+                } finally {
+                    channel.close();
+                }
+            }
+        }
+        readChannel = openSegment(readSegment, false);
+        spooledBytes += findEnd(readChannel, readPosition) - readPosition;
+
+        writeSegment = segments.get(segments.size() - 1);
+        writeChannel = openSegment(writeSegment, true);
+        writeSize = writeChannel.size();
+        writePosition = findEnd(writeChannel, 0);
+        reportMetrics();
+        if (spooledBytes > 0) {
+            log.info("Spool in " + directory + " holds " + spooledBytes + " bytes of unprocessed batches");
+        }
+    }
+
+    /**
+     * Appends the events of a replication batch to the log, and forces them to disk.
+     *
+     * @param timestamp the write timestamp of the most recent event, it is passed back to the {@link Handler}
+     * @throws IOException if the batch couldn't be written, if the spool is full, or if draining has stopped
+     */
+    public void append(TableName tableName, List<SepEvent> events, long timestamp) throws IOException {
+        byte[] body = serialize(tableName, events, timestamp);
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+        int recordSize = HEADER_SIZE + body.length;
+        ByteBuffer record = ByteBuffer.allocate(recordSize);
+        record.putInt(body.length);
+        record.putInt((int)crc.getValue());
+        record.putLong(0);
+        record.put(body);
+
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("Spool in " + directory + " is closed");
+            }
+            if (failure != null) {
+                throw new IOException("Draining the spool in " + directory + " has stopped", failure);
+            }
+            if (maxSpooledBytes > 0 && spooledBytes > 0 && spooledBytes + recordSize > maxSpooledBytes) {
+                throw new IOException("Spool in " + directory + " is full, it holds " + spooledBytes
+                        + " bytes of unprocessed batches");
+            }
+            if (writePosition + recordSize > writeSize) {
+                rollSegment(recordSize);
+            }
+            record.putLong(8, System.currentTimeMillis());
+            record.flip();
+            writeFully(writeChannel, record, writePosition);
+            // The size of the segment doesn't change, so its metadata doesn't need to be forced
+            writeChannel.force(false);
+            writePosition += recordSize;
+            spooledBytes += recordSize;
+            reportMetrics();
+            notifyAll();
+        }
+    }
+
+    private void rollSegment(int recordSize) throws IOException {
+        long segment = writeSegment + 1;
+        long size = Math.max(segmentSize, recordSize + 4);
+        FileChannel channel = createSegment(segment, size);
+        if (writePosition + 4 <= writeSize) {
+            // Mark the end of the segment, there can be a partially written record after the last one
+            writeFully(writeChannel, ByteBuffer.allocate(4), writePosition);
+            writeChannel.force(false);
+        }
+        closeChannel(writeChannel);
+        writeChannel = channel;
+        writeSize = size;
+        writePosition = 0;
+        writeSegment = segment;
+    }
+
+    /**
+     * Start draining the log into the given handler, on a separate thread.
+     */
+    public synchronized void start(final Handler handler) {
+        Preconditions.checkState(drainThread == null, "Spool is already being drained");
+        drainThread = new Thread("SepSpool-drain-" + directory.getName()) {
+            @Override
+            public void run() {
+                drain(handler);
+            }
+        };
+        drainThread.setDaemon(true);
+        drainThread.start();
+    }
+
+    /**
+     * Stops the drain thread, waiting until the batch that it is processing is done, and closes the log. Batches
+     * that haven't been drained yet will be drained when the spool is opened again. If the batch isn't done in
+     * time, the drain thread is interrupted, in which case the batch will be processed again after a restart.
+     */
+    public void close() throws InterruptedException {
+        Thread thread;
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+            thread = drainThread;
+            closeChannel(writeChannel);
+        }
+        if (thread != null) {
+            thread.join(CLOSE_TIMEOUT);
+            if (thread.isAlive()) {
+                thread.interrupt();
+                thread.join();
+            }
+        }
+        closeChannel(readChannel);
+    }
+
+    /**
+     * Returns the number of bytes in the log that haven't been processed yet.
+     */
+    public synchronized long getSpooledBytes() {
+        return spooledBytes;
+    }
+
+    /**
+     * Returns how long ago (in milliseconds) the batch that is being processed, or that was processed last, was
+     * appended, or 0 if all batches have been processed.
+     */
+    public long getDrainLag() {
+        return drainLag;
+    }
+
+    /**
+     * Returns true if the drain thread has stopped because the log couldn't be read, appends fail from then on.
+     */
+    public synchronized boolean isFailed() {
+        return failure != null;
+    }
+
+    private void drain(Handler handler) {
+        try {
+            ByteBuffer record;
+            while ((record = nextRecord()) != null) {
+                int bodyLength = record.getInt(0);
+                long appendTime = record.getLong(8);
+                drainLag = System.currentTimeMillis() - appendTime;
+                processWithRetry(handler, record);
+                commit(HEADER_SIZE + bodyLength, appendTime);
+            }
+        } catch (InterruptedException e) {
+            // Stopped
+        } catch (ClosedByInterruptException e) {
+            // Stopped while reading the log
+        } catch (Exception e) {
+            log.error("Error reading spool in " + directory + ", draining has stopped and no more batches will be"
+                    + " accepted", e);
+            synchronized (this) {
+                failure = e;
+                reportMetrics();
+            }
+        }
+    }
+
+    /**
+     * Returns the next record (header and body), waiting until there is one. Returns null if the spool was closed.
+     */
+    private ByteBuffer nextRecord() throws IOException, InterruptedException {
+        while (true) {
+            boolean segmentComplete;
+            synchronized (this) {
+                while (!closed && readSegment == writeSegment && readPosition >= writePosition) {
+                    wait();
+                }
+                if (closed) {
+                    return null;
+                }
+                segmentComplete = readSegment < writeSegment;
+            }
+            int length = readLength(readChannel, readPosition);
+            if (length == 0) {
+                if (!segmentComplete) {
+                    throw new IOException("Unexpected end of spool segment " + readSegment);
+                }
+                // All batches of this segment have been processed, move on to the next one
+                long previousSegment = readSegment;
+                closeChannel(readChannel);
+                readSegment++;
+                readChannel = openSegment(readSegment, false);
+                readPosition = 0;
+                writeCheckpoint();
+                deleteSegment(previousSegment);
+                continue;
+            }
+            ByteBuffer record = readRecord(readChannel, readPosition);
+            if (record == null) {
+                throw new IOException("Corrupt record in spool segment " + readSegment + " at " + readPosition);
+            }
+            return record;
+        }
+    }
+
+    private void processWithRetry(Handler handler, ByteBuffer record) throws InterruptedException, IOException {
+        long retryDelay = MIN_RETRY_DELAY;
+        while (true) {
+            ByteBuffer body = record.duplicate();
+            body.position(HEADER_SIZE);
+            byte[] tableName = readBytes(body);
+            long timestamp = body.getLong();
+            List<SepEvent> events = deserializeEvents(body, tableName);
+            try {
+                handler.process(TableName.valueOf(tableName), events, timestamp);
+                return;
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                log.warn("Error processing spooled batch, retrying in " + retryDelay + " ms", e);
+            }
+            synchronized (this) {
+                if (!closed) {
+                    wait(retryDelay);
+                }
+                if (closed) {
+                    throw new InterruptedException();
+                }
+            }
+            retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY);
+        }
+    }
+
+    private void commit(int recordSize, long appendTime) throws IOException {
+        readPosition += recordSize;
+        writeCheckpoint();
+        synchronized (this) {
+            spooledBytes -= recordSize;
+            drainLag = spooledBytes > 0 ? System.currentTimeMillis() - appendTime : 0;
+            reportMetrics();
+        }
+    }
+
+    private void reportMetrics() {
+        if (sepMetrics != null) {
+            sepMetrics.reportSpool(spooledBytes, drainLag, failure != null);
+        }
+    }
+
+    static byte[] serialize(TableName tableName, List<SepEvent> events, long timestamp) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeBytes(out, tableName.getName());
+        out.writeLong(timestamp);
+        out.writeInt(events.size());
+        for (SepEvent event : events) {
+            writeBytes(out, event.getTable());
+            writeBytes(out, event.getRow());
+            writeBytes(out, event.getPayload());
+            out.writeInt(event.getKeyValues().size());
+            for (Cell cell : event.getKeyValues()) {
+                KeyValue keyValue = KeyValueUtil.ensureKeyValue(cell);
+                out.writeInt(keyValue.getLength());
+                out.write(keyValue.getBuffer(), keyValue.getOffset(), keyValue.getLength());
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static List<SepEvent> deserializeEvents(ByteBuffer body, byte[] tableName) {
+        int eventCount = body.getInt();
+        List<SepEvent> events = Lists.newArrayListWithCapacity(eventCount);
+        for (int i = 0; i < eventCount; i++) {
+            byte[] table = readBytes(body);
+            byte[] row = readBytes(body);
+            byte[] payload = readBytes(body);
+            int cellCount = body.getInt();
+            List<Cell> cells = Lists.newArrayListWithCapacity(cellCount);
+            for (int j = 0; j < cellCount; j++) {
+                byte[] keyValue = readBytes(body);
+                cells.add(new KeyValue(keyValue, 0, keyValue.length));
+            }
+            events.add(new SepEvent(table, row, cells, payload));
+        }
+        return events;
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Returns the position after the last valid record in a segment, starting from the given position.
+     */
+    private static int findEnd(FileChannel channel, int position) throws IOException {
+        ByteBuffer record;
+        while ((record = readRecord(channel, position)) != null) {
+            position += record.limit();
+        }
+        return position;
+    }
+
+    /**
+     * Returns the body length of the record at the given position, or 0 at the end of the segment.
+     */
+    private static int readLength(FileChannel channel, int position) throws IOException {
+        if (position + 4 > channel.size()) {
+            return 0;
+        }
+        ByteBuffer length = ByteBuffer.allocate(4);
+        readFully(channel, length, position);
+        return length.getInt(0);
+    }
+
+    /**
+     * Reads the record (header and body) at the given position, returns null if there is no valid record there.
+     */
+    private static ByteBuffer readRecord(FileChannel channel, int position) throws IOException {
+        int length = readLength(channel, position);
+        if (length <= 0 || (long)position + HEADER_SIZE + length > channel.size()) {
+            return null;
+        }
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + length);
+        readFully(channel, record, position);
+        record.flip();
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), HEADER_SIZE, length);
+        return (int)crc.getValue() == record.getInt(4) ? record : null;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of spool segment");
+            }
+            position += read;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private List<Long> listSegments() {
+        List<Long> segments = Lists.newArrayList();
+        String[] names = directory.list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    segments.add(Long.parseLong(
+                            name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                }
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private File getSegmentFile(long segment) {
+        return new File(directory, String.format("%s%020d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Creates a segment of the given size, filled with zeros, and opens it for writing.
+     */
+    private FileChannel createSegment(long segment, long size) throws IOException {
+        File file = getSegmentFile(segment);
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        boolean created = false;
+        try {
+            // Writing the zeros (rather than setting the length) makes sure the disk blocks are allocated
+            ByteBuffer zeros = ByteBuffer.allocate((int)Math.min(size, PREALLOCATE_CHUNK_SIZE));
+            long position = 0;
+            while (position < size) {
+                zeros.clear();
+                zeros.limit((int)Math.min(zeros.capacity(), size - position));
+                writeFully(channel, zeros, position);
+                position += zeros.limit();
+            }
+            channel.force(true);
+            created = true;
+        } finally {
+            if (!created) {
+                closeChannel(channel);
+                if (!file.delete()) {
+                    log.warn("Could not delete incomplete spool segment " + file);
+                }
+            }
+        }
+        syncDirectory();
+        return channel;
+    }
+
+    private FileChannel openSegment(long segment, boolean write) throws IOException {
+        File file = getSegmentFile(segment);
+        return write
+                ? FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    }
+
+    private void closeChannel(FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Error closing spool segment in " + directory, e);
+            }
+        }
+    }
+
+    private void deleteSegment(long segment) {
+        File file = getSegmentFile(segment);
+        if (!file.delete()) {
+            log.warn("Could not delete processed spool segment " + file);
+        }
+    }
+
+    private long[] readCheckpoint() throws IOException {
+        File file = new File(directory, CHECKPOINT_FILE);
+        if (!file.exists()) {
+            return null;
+        }
+        ByteBuffer checkpoint = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        return new long[] { checkpoint.getLong(), checkpoint.getInt() };
+    }
+
+    private void writeCheckpoint() throws IOException {
+        File tmpFile = new File(directory, CHECKPOINT_FILE + ".tmp");
+        ByteBuffer checkpoint = ByteBuffer.allocate(8 + 4);
+        checkpoint.putLong(readSegment);
+        checkpoint.putInt(readPosition);
+        checkpoint.flip();
+        FileChannel channel = FileChannel.open(tmpFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            while (checkpoint.hasRemaining()) {
+                channel.write(checkpoint);
+            }
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+        Files.move(tmpFile.toPath(), new File(directory, CHECKPOINT_FILE).toPath(),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void syncDirectory() {
+        try {
+            FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ);
+            try {
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+        } catch (IOException e) {
+            // Not supported on all platforms
+            log.debug("Could not sync spool directory " + directory, e);
+        }
+    }
+}
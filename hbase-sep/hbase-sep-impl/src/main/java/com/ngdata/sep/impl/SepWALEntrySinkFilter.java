@@ -43,9 +43,6 @@ public final class SepWALEntrySinkFilter implements WALEntrySinkFilter {
     @Override 
     // Called from ReplicationSink.replicateEntries()
     public boolean filter(TableName table, long writeTime) {
-        if (!params.getTableNamePredicate().apply(table)) {
-            return true;
-        }
-        return writeTime < params.getSubscriptionTimestamp();
+        return params.isFiltered(table, writeTime);
     }
 }
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.sep.impl;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Chooses the partition (thread) of a {@link SepEventExecutor} on which each event is processed, taking the load of
+ * the partitions and hot rows into account, rather than only the hash of the row key.
+ * <p>
+ * All events of a row are processed on the same partition for as long as any event of that row is in flight, i.e.
+ * has been scheduled but not yet processed. This preserves the per-row ordering, also across replication batches
+ * that are processed concurrently. Only a row without events in flight is placed again:
+ * <ul>
+ * <li>rows that are hot are placed on the least loaded partition</li>
+ * <li>other rows are placed on the least loaded of two partitions that are chosen based on the hash of the row
+ * key, so that rows whose hash collides with that of a hot row can move away from its partition</li>
+ * </ul>
+ * A row is considered hot when its share of the recently scheduled events, as estimated by a count-min sketch, is
+ * at least the configured ratio of what a single partition is expected to handle. The counts in the sketch are
+ * halved at regular intervals, so that rows that are no longer updated stop being considered hot.
+ * <p>
+ * The load of a partition is its number of events in flight. Instances are shared by all
+ * {@link SepEventExecutor}s of a {@link SepConsumer}, and are thread-safe.
+ */
+public class SkewAwarePartitioner {
+
+    private static final int SKETCH_DEPTH = 4;
+    private static final int SKETCH_WIDTH = 4096;
+    /** Number of events after which the counts in the sketch are halved. */
+    private static final long DECAY_INTERVAL = 100000;
+    /** Minimum estimated count for a row to be considered hot, to avoid noise when few events have been seen. */
+    private static final int MIN_HOT_COUNT = 64;
+
+    private final int numPartitions;
+    private final double hotRatio;
+    private final AtomicLongArray partitionLoads;
+    private final int[][] sketch = new int[SKETCH_DEPTH][SKETCH_WIDTH];
+    private long sketchTotal = 0;
+    private final Map<SepEventExecutor.RowKey, Placement> placements = Maps.newHashMap();
+    private final HashFunction hashFunction = Hashing.murmur3_128();
+
+    /**
+     * @param numPartitions number of partitions over which events are spread
+     * @param hotRatio share of the events that a single partition is expected to handle, above which a row is
+     *                 considered hot
+     * @param sepMetrics metrics to which the partition loads are exposed, can be null
+     */
+    public SkewAwarePartitioner(int numPartitions, double hotRatio, SepMetrics sepMetrics) {
+        Preconditions.checkArgument(numPartitions > 0, "Number of partitions must be > 0");
+        Preconditions.checkArgument(hotRatio > 0, "Hot ratio must be > 0");
+        this.numPartitions = numPartitions;
+        this.hotRatio = hotRatio;
+        this.partitionLoads = new AtomicLongArray(numPartitions);
+        if (sepMetrics != null) {
+            sepMetrics.registerPartitionLoads(partitionLoads);
+        }
+    }
+
+    /**
+     * Choose the partition for an event of the given row, and account the event as in flight on it. Every call
+     * should be followed by a call to {@link #release(byte[], byte[])} once the event has been processed.
+     */
+    public synchronized int acquire(byte[] table, byte[] row) {
+        long hash = hashFunction.hashBytes(row).asLong();
+        int estimate = addToSketch(hash);
+
+        SepEventExecutor.RowKey rowKey = new SepEventExecutor.RowKey(table, row);
+        Placement placement = placements.get(rowKey);
+        if (placement == null) {
+            int partition;
+            if (isHot(estimate)) {
+                partition = getLeastLoadedPartition();
+            } else {
+                int first = ((int)hash & Integer.MAX_VALUE) % numPartitions;
+                int second = ((int)(hash >>> 32) & Integer.MAX_VALUE) % numPartitions;
+                partition = partitionLoads.get(second) < partitionLoads.get(first) ? second : first;
+            }
+            placement = new Placement(partition);
+            placements.put(rowKey, placement);
+        }
+        placement.inFlight++;
+        partitionLoads.incrementAndGet(placement.partition);
+        return placement.partition;
+    }
+
+    /**
+     * Account that an event of the given row, for which {@link #acquire(byte[], byte[])} was called, is no longer in
+     * flight.
+     */
+    public synchronized void release(byte[] table, byte[] row) {
+        SepEventExecutor.RowKey rowKey = new SepEventExecutor.RowKey(table, row);
+        Placement placement = placements.get(rowKey);
+        if (placement == null) {
+            throw new IllegalStateException("No events in flight for row");
+        }
+        partitionLoads.decrementAndGet(placement.partition);
+        if (--placement.inFlight == 0) {
+            placements.remove(rowKey);
+        }
+    }
+
+    /**
+     * Returns the number of events in flight on a partition.
+     */
+    public long getPartitionLoad(int partition) {
+        return partitionLoads.get(partition);
+    }
+
+    /**
+     * Returns whether a row is currently considered hot.
+     */
+    public synchronized boolean isHot(byte[] row) {
+        return isHot(estimate(hashFunction.hashBytes(row).asLong()));
+    }
+
+    private boolean isHot(int estimate) {
+        return estimate >= MIN_HOT_COUNT && (double)estimate * numPartitions >= hotRatio * sketchTotal;
+    }
+
+    private int getLeastLoadedPartition() {
+        int leastLoaded = 0;
+        for (int i = 1; i < numPartitions; i++) {
+            if (partitionLoads.get(i) < partitionLoads.get(leastLoaded)) {
+                leastLoaded = i;
+            }
+        }
+        return leastLoaded;
+    }
+
+    /**
+     * Count an occurrence of a row in the sketch (with conservative update), and return its new estimated count.
+     */
+    private int addToSketch(long hash) {
+        int estimate = estimate(hash) + 1;
+        int hash1 = (int)hash;
+        int hash2 = (int)(hash >>> 32);
+        for (int i = 0; i < SKETCH_DEPTH; i++) {
+            int[] counts = sketch[i];
+            int idx = ((hash1 + i * hash2) & Integer.MAX_VALUE) % SKETCH_WIDTH;
+            if (counts[idx] < estimate) {
+                counts[idx] = estimate;
+            }
+        }
+        if (++sketchTotal >= DECAY_INTERVAL) {
+            decay();
+        }
+        return estimate;
+    }
+
+    private int estimate(long hash) {
+        int hash1 = (int)hash;
+        int hash2 = (int)(hash >>> 32);
+        int estimate = Integer.MAX_VALUE;
+        for (int i = 0; i < SKETCH_DEPTH; i++) {
+            int idx = ((hash1 + i * hash2) & Integer.MAX_VALUE) % SKETCH_WIDTH;
+            estimate = Math.min(estimate, sketch[i][idx]);
+        }
+        return estimate;
+    }
+
+    private void decay() {
+        for (int[] counts : sketch) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] >>>= 1;
+            }
+        }
+        sketchTotal >>>= 1;
+    }
+
+    /**
+     * Partition of a row with events in flight, and the number of those events.
+     */
+    private static final class Placement {
+        private final int partition;
+        private int inFlight;
+
+        Placement(int partition) {
+            this.partition = partition;
+        }
+    }
+}
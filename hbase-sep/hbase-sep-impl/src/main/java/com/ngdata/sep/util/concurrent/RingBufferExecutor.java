@@ -0,0 +1,266 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.sep.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Single-threaded executor that hands tasks to its worker thread through a pre-allocated ring buffer instead of
+ * a lock-based {@code BlockingQueue}.
+ * <p>
+ * Submitting threads claim a slot with a single CAS on the ring's tail sequence, so concurrent producers never
+ * contend on a lock, and the worker thread only parks when the ring is empty. Tasks are executed in the order in
+ * which their slots were claimed. When the ring is full, submitters wait (spinning and then parking) until the worker
+ * frees a slot and wakes them up, which gives the same back-pressure as a bounded queue combined with
+ * {@link WaitPolicy}.
+ */
+public class RingBufferExecutor extends AbstractExecutorService {
+
+    private static final int SPIN_TRIES = 100;
+
+    private final Log log = LogFactory.getLog(getClass());
+    private final int mask;
+    private final AtomicReferenceArray<Runnable> slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicInteger activeProducers = new AtomicInteger();
+    /** Producers that are parked until a slot is freed, the worker wakes up one for every slot it frees. */
+    private final ConcurrentLinkedQueue<Thread> waitingProducers = new ConcurrentLinkedQueue<Thread>();
+    private final Thread worker;
+    private final CountDownLatch terminated = new CountDownLatch(1);
+    /** Sequence of the next slot to be executed, only written by the worker thread. */
+    private volatile long head;
+    private volatile boolean workerParked = false;
+    private volatile boolean shutdown = false;
+    private volatile boolean shutdownNow = false;
+
+    /**
+     * @param capacity minimum number of tasks that can be queued, rounded up to the next power of two
+     * @param threadFactory creates the single worker thread
+     */
+    public RingBufferExecutor(int capacity, ThreadFactory threadFactory) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be > 0, got " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.mask = size - 1;
+        this.slots = new AtomicReferenceArray<Runnable>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.worker = threadFactory.newThread(new Worker());
+        this.worker.start();
+    }
+
+    /**
+     * Returns the number of slots in the ring buffer.
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Returns the (approximate) number of tasks that are waiting to be executed.
+     */
+    public int getQueueSize() {
+        return (int)Math.max(0, tail.get() - head);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        // Registering as an active producer before checking the shutdown flag makes sure that the worker does not
+        // terminate while a task is being published
+        activeProducers.incrementAndGet();
+        try {
+            publish(task);
+        } finally {
+            activeProducers.decrementAndGet();
+        }
+    }
+
+    private void publish(Runnable task) {
+        int waits = 0;
+        while (true) {
+            if (shutdown) {
+                throw new RejectedExecutionException("Executor has been shut down");
+            }
+            long pos = tail.get();
+            int index = (int)(pos & mask);
+            long available = sequences.get(index) - pos;
+            if (available == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    slots.set(index, task);
+                    sequences.set(index, pos + 1);
+                    if (workerParked) {
+                        LockSupport.unpark(worker);
+                    }
+                    return;
+                }
+            } else if (available < 0) {
+                // Ring is full, wait until the worker frees up a slot
+                if (waits++ < SPIN_TRIES) {
+                    Thread.yield();
+                } else {
+                    awaitFreeSlot(index, pos);
+                }
+            }
+        }
+    }
+
+    /**
+     * Parks the calling producer until the worker frees a slot, or the executor is shut down.
+     */
+    private void awaitFreeSlot(int index, long pos) {
+        Thread current = Thread.currentThread();
+        waitingProducers.add(current);
+        // Re-check after registering, so that a slot freed (or a shutdown) just before cannot leave us parked
+        if (!shutdown && sequences.get(index) - pos < 0) {
+            LockSupport.park(this);
+        }
+        waitingProducers.remove(current);
+        if (Thread.interrupted()) {
+            current.interrupt();
+            throw new RejectedExecutionException(new InterruptedException());
+        }
+    }
+
+    /**
+     * Takes the next task off the ring, or returns null if the ring is empty. Only called by the worker thread.
+     */
+    private Runnable poll() {
+        int index = (int)(head & mask);
+        if (sequences.get(index) != head + 1) {
+            return null;
+        }
+        Runnable task = slots.get(index);
+        slots.set(index, null);
+        sequences.set(index, head + mask + 1);
+        head++;
+        Thread producer = waitingProducers.poll();
+        if (producer != null) {
+            LockSupport.unpark(producer);
+        }
+        return task;
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        LockSupport.unpark(worker);
+        wakeWaitingProducers();
+    }
+
+    private void wakeWaitingProducers() {
+        for (Thread producer : waitingProducers) {
+            LockSupport.unpark(producer);
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        shutdownNow = true;
+        worker.interrupt();
+        wakeWaitingProducers();
+        try {
+            terminated.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Runnable> remaining = new ArrayList<Runnable>();
+        Runnable task;
+        while ((task = poll()) != null) {
+            remaining.add(task);
+        }
+        return remaining;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return terminated.getCount() == 0;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+
+    private class Worker implements Runnable {
+        @Override
+        public void run() {
+            try {
+                while (!shutdownNow) {
+                    Runnable task = poll();
+                    if (task == null) {
+                        if (shutdown && activeProducers.get() == 0 && tail.get() == head) {
+                            return;
+                        }
+                        workerParked = true;
+                        // Re-check after announcing that we are about to park, so that a producer that published
+                        // just before it saw the flag cannot leave us sleeping on a non-empty ring
+                        task = poll();
+                        if (task == null) {
+                            if (!shutdown) {
+                                LockSupport.park(RingBufferExecutor.this);
+                            }
+                            workerParked = false;
+                            continue;
+                        }
+                        workerParked = false;
+                    }
+                    try {
+                        task.run();
+                    } catch (Throwable t) {
+                        log.error("Error executing task", t);
+                    }
+                    if (!shutdownNow) {
+                        // Don't let an interrupt left behind by a task turn park() into a busy loop
+                        Thread.interrupted();
+                    }
+                }
+            } finally {
+                terminated.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.sep.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Executor that runs its tasks one at a time, in submission order, on threads borrowed from another executor.
+ * <p>
+ * Many instances can share the same underlying executor, which makes it possible to have far more sequential
+ * partitions than threads, or to run each partition on short-lived virtual threads (see {@link VirtualThreads}).
+ * A thread is only borrowed while the executor has tasks queued. At most {@code capacity} tasks can be queued,
+ * further submitters wait until a queued task has been executed, which gives the same back-pressure as a bounded
+ * queue combined with {@link WaitPolicy}.
+ * <p>
+ * {@link #shutdownNow()} removes the queued tasks but does not interrupt the task that is running, if any.
+ */
+public class SequentialExecutor extends AbstractExecutorService {
+
+    private final Log log = LogFactory.getLog(getClass());
+    private final Executor executor;
+    private final Semaphore capacity;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private final AtomicInteger pendingTasks = new AtomicInteger();
+    private final Runnable drainer = new Drainer();
+    private final Object terminationLock = new Object();
+    private volatile boolean shutdown = false;
+
+    /**
+     * @param executor executor that provides the threads to run the tasks on
+     * @param capacity maximum number of tasks that can be queued
+     */
+    public SequentialExecutor(Executor executor, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be > 0, got " + capacity);
+        }
+        this.executor = executor;
+        this.capacity = new Semaphore(capacity);
+    }
+
+    /**
+     * Returns the number of tasks that are queued or running.
+     */
+    public int getPendingTaskCount() {
+        return pendingTasks.get();
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        if (shutdown) {
+            throw new RejectedExecutionException("Executor has been shut down");
+        }
+        try {
+            capacity.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for room in the queue", e);
+        }
+        pendingTasks.incrementAndGet();
+        tasks.add(task);
+        try {
+            scheduleDrainer();
+        } catch (RejectedExecutionException e) {
+            if (tasks.remove(task)) {
+                taskDone();
+            }
+            throw e;
+        }
+    }
+
+    private void scheduleDrainer() {
+        if (!tasks.isEmpty() && draining.compareAndSet(false, true)) {
+            try {
+                executor.execute(drainer);
+            } catch (RejectedExecutionException e) {
+                draining.set(false);
+                throw e;
+            }
+        }
+    }
+
+    private void taskDone() {
+        capacity.release();
+        if (pendingTasks.decrementAndGet() == 0 && shutdown) {
+            synchronized (terminationLock) {
+                terminationLock.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        if (pendingTasks.get() == 0) {
+            synchronized (terminationLock) {
+                terminationLock.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown();
+        List<Runnable> notExecuted = new ArrayList<Runnable>();
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            notExecuted.add(task);
+            taskDone();
+        }
+        return notExecuted;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown && pendingTasks.get() == 0;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (terminationLock) {
+            while (!isTerminated()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(terminationLock, remaining);
+            }
+            return true;
+        }
+    }
+
+    private class Drainer implements Runnable {
+        @Override
+        public void run() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    log.error("Error executing task", t);
+                } finally {
+                    // Don't let an interrupt of one task leak into the next one
+                    Thread.interrupted();
+                    taskDone();
+                }
+            }
+            draining.set(false);
+            // A task might have been queued after the last poll, but before draining was reset
+            scheduleDrainer();
+        }
+    }
+}
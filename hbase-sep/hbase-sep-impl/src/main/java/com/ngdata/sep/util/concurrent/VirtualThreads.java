@@ -0,0 +1,76 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.sep.util.concurrent;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads (JDK 21+) for code that is compiled for older Java versions.
+ */
+public final class VirtualThreads {
+
+    /**
+     * Whether an executor could actually be created, rather than whether the API exists: on JDK 19 and 20, virtual
+     * threads are a preview feature, which throws UnsupportedOperationException unless it is enabled.
+     */
+    private static final boolean SUPPORTED = probe();
+
+    private VirtualThreads() {
+    }
+
+    private static boolean probe() {
+        ExecutorService executor = createExecutor("probe-");
+        if (executor == null) {
+            return false;
+        }
+        executor.shutdown();
+        return true;
+    }
+
+    /**
+     * Returns true if the running JVM supports virtual threads, and they can be used.
+     */
+    public static boolean isSupported() {
+        return SUPPORTED;
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for each task, or returns null if the running JVM does
+     * not support virtual threads.
+     *
+     * @param namePrefix prefix for the names of the threads, which is followed by a sequence number
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor(String namePrefix) {
+        return SUPPORTED ? createExecutor(namePrefix) : null;
+    }
+
+    private static ExecutorService createExecutor(String namePrefix) {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            ThreadFactory threadFactory = (ThreadFactory)builderClass.getMethod("factory").invoke(builder);
+            Method newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService)newExecutor.invoke(null, threadFactory);
+        } catch (Exception e) {
+            // Not available (older JVM), or not enabled (preview feature), the caller falls back to platform threads
+            return null;
+        }
+    }
+}
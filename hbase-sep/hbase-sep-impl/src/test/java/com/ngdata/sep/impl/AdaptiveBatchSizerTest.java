@@ -0,0 +1,95 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.sep.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class AdaptiveBatchSizerTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testStartsAtMinimum() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(2, 10, 1000, 100, 1024 * 1024, null);
+        assertEquals(10, sizer.getBatchSize(0));
+        assertEquals(10, sizer.getBatchSize(1));
+    }
+
+    @Test
+    public void testGrowsAtMostTwofoldPerBatch() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(2, 10, 1000, 100, 1024 * 1024, null);
+
+        // 10 events in 1ms, so the target latency allows far more than 20 events
+        sizer.reportBatch(0, 10, 100, 1 * MILLIS);
+        assertEquals(20, sizer.getBatchSize(0));
+        sizer.reportBatch(0, 20, 200, 2 * MILLIS);
+        assertEquals(40, sizer.getBatchSize(0));
+
+        // Other partitions are not affected
+        assertEquals(10, sizer.getBatchSize(1));
+
+        for (int i = 0; i < 10; i++) {
+            sizer.reportBatch(0, 40, 400, 4 * MILLIS);
+        }
+        assertEquals(1000, sizer.getBatchSize(0));
+    }
+
+    @Test
+    public void testShrinksOnSlowBatches() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(1, 10, 1000, 100, 1024 * 1024, null);
+        for (int i = 0; i < 10; i++) {
+            sizer.reportBatch(0, 10, 100, 1 * MILLIS);
+        }
+        assertEquals(1000, sizer.getBatchSize(0));
+
+        // 5ms per event, so about 20 events fit in the target latency
+        for (int i = 0; i < 20; i++) {
+            sizer.reportBatch(0, 100, 1000, 500 * MILLIS);
+        }
+        assertEquals(20, sizer.getBatchSize(0));
+
+        // Very slow batches never go below the minimum
+        sizer.reportBatch(0, 10, 100, 10000 * MILLIS);
+        assertEquals(10, sizer.getBatchSize(0));
+    }
+
+    @Test
+    public void testLimitedByTargetBytes() {
+        // Processing is fast, but events are 10KB each, so 100KB allows only 10 of them
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(1, 1, 1000, 100, 100 * 1024, null);
+        for (int i = 0; i < 20; i++) {
+            sizer.reportBatch(0, 10, 10 * 10 * 1024, 1 * MILLIS);
+        }
+        assertEquals(10, sizer.getBatchSize(0));
+    }
+
+    @Test
+    public void testReportsBatchSizeMetric() {
+        SepMetrics sepMetrics = mock(SepMetrics.class);
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(2, 10, 1000, 100, 1024 * 1024, sepMetrics);
+        verify(sepMetrics).reportBatchSize(10);
+
+        sizer.reportBatch(0, 10, 100, 1 * MILLIS);
+        // Average of 20 and 10
+        verify(sepMetrics).reportBatchSize(15);
+    }
+}
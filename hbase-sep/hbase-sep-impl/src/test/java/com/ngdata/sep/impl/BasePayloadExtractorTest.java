@@ -18,6 +18,8 @@ package com.ngdata.sep.impl;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertNull;
 
+import com.ngdata.sep.BatchPayloadExtractor.TablePayloadExtractor;
+
 import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.junit.Before;
@@ -66,4 +68,30 @@ public class BasePayloadExtractorTest {
         assertNull(payload);
     }
 
+    @Test
+    public void testForTable() {
+        TablePayloadExtractor tableExtractor = extractor.forTable(TABLE_NAME);
+        assertArrayEquals(PAYLOAD_DATA,
+                tableExtractor.extractPayload(new KeyValue(ROW, COLUMN_FAMILY, COLUMN_QUALIFIER, PAYLOAD_DATA)));
+        assertNull(tableExtractor.extractPayload(new KeyValue(ROW, COLUMN_FAMILY, Bytes.toBytes("wrong qualifier"),
+                PAYLOAD_DATA)));
+        assertNull(extractor.forTable(Bytes.toBytes("wrong_table")));
+    }
+
+    @Test
+    public void testExtractPayload_MultipleQualifiers() {
+        byte[] qualifierA = Bytes.toBytes("a");
+        byte[] qualifierZ = Bytes.toBytes("z");
+        TablePayloadExtractor tableExtractor = new BasePayloadExtractor(TABLE_NAME, COLUMN_FAMILY, qualifierZ,
+                COLUMN_QUALIFIER, qualifierA).forTable(TABLE_NAME);
+
+        for (byte[] qualifier : new byte[][] { qualifierA, COLUMN_QUALIFIER, qualifierZ }) {
+            assertArrayEquals(PAYLOAD_DATA,
+                    tableExtractor.extractPayload(new KeyValue(ROW, COLUMN_FAMILY, qualifier, PAYLOAD_DATA)));
+        }
+        assertNull(tableExtractor.extractPayload(new KeyValue(ROW, COLUMN_FAMILY, Bytes.toBytes("b"), PAYLOAD_DATA)));
+        assertNull(tableExtractor.extractPayload(new KeyValue(ROW, Bytes.toBytes("wrong family"), qualifierA,
+                PAYLOAD_DATA)));
+    }
+
 }
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.sep.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import com.ngdata.sep.SepEvent;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EventTimeWatermarkTest {
+
+    private EventTimeWatermark watermark;
+
+    @Before
+    public void setUp() {
+        watermark = new EventTimeWatermark(2, null);
+    }
+
+    @Test
+    public void testOutOfOrderCompletion() {
+        watermark.beginBatch(100);
+        watermark.beginBatch(200);
+        // The newer batch completes first, the older one is still in flight
+        watermark.endBatch(200, 250);
+        assertEquals(100, watermark.getWatermark());
+        assertEquals(900, watermark.getLag(1000));
+
+        watermark.endBatch(100, 150);
+        assertEquals(250, watermark.getWatermark());
+        assertEquals(0, watermark.getLag(1000));
+    }
+
+    @Test
+    public void testFailedBatchDoesNotAdvanceWatermark() {
+        watermark.beginBatch(100);
+        watermark.endBatch(100, 0);
+        assertEquals(0, watermark.getWatermark());
+    }
+
+    @Test
+    public void testPartitionLag() {
+        watermark.beginBatch(100);
+        watermark.beginPartitionBatch(0, 100);
+        watermark.beginPartitionBatch(1, 300);
+        watermark.endPartitionBatch(0, 100);
+        watermark.endBatch(100, 300);
+
+        // The batch on partition 1 is still in flight
+        assertEquals(0, watermark.getPartitionLag(0, 1000));
+        assertEquals(700, watermark.getPartitionLag(1, 1000));
+        assertEquals(300, watermark.getWatermark());
+        assertEquals(700, watermark.getLag(1000));
+
+        assertEquals(700, watermark.getMaxPartitionLag(1000));
+
+        watermark.endPartitionBatch(1, 300);
+        assertEquals(0, watermark.getLag(1000));
+        assertEquals(0, watermark.getMaxPartitionLag(1000));
+    }
+
+    @Test
+    public void testStalenessWhenIdle() {
+        // Nothing processed yet
+        assertEquals(-1, watermark.getStaleness(1000));
+
+        watermark.beginBatch(100);
+        assertEquals(900, watermark.getStaleness(1000));
+        watermark.endBatch(100, 150);
+
+        // Idle: no lag in flight, but the time since the most recent event keeps growing
+        assertEquals(0, watermark.getLag(1000));
+        assertEquals(850, watermark.getStaleness(1000));
+        assertEquals(1850, watermark.getStaleness(2000));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testEndWithoutBegin() {
+        watermark.endPartitionBatch(0, 100);
+    }
+
+    @Test
+    public void testGetOldestTimestamp() {
+        byte[] row = Bytes.toBytes("row");
+        List<Cell> cells = Lists.<Cell>newArrayList(
+                new KeyValue(row, Bytes.toBytes("cf"), Bytes.toBytes("q1"), 20L, Bytes.toBytes("value")),
+                new KeyValue(row, Bytes.toBytes("cf"), Bytes.toBytes("q2"), 10L, Bytes.toBytes("value")));
+        List<SepEvent> events = Lists.newArrayList(new SepEvent(Bytes.toBytes("table"), row, cells, null));
+        assertEquals(10L, EventTimeWatermark.getOldestTimestamp(events));
+        assertEquals(Long.MAX_VALUE, EventTimeWatermark.getOldestTimestamp(Lists.<SepEvent>newArrayList()));
+    }
+
+    @Test
+    public void testSetNumPartitions() {
+        watermark.beginPartitionBatch(1, 100);
+        try {
+            watermark.setNumPartitions(1);
+            fail("Partitions can't be removed while batches are in flight");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        watermark.endPartitionBatch(1, 100);
+
+        watermark.setNumPartitions(3);
+        assertEquals(3, watermark.getNumPartitions());
+        watermark.beginPartitionBatch(2, 100);
+        assertEquals(900, watermark.getPartitionLag(2, 1000));
+        watermark.endPartitionBatch(2, 100);
+
+        watermark.setNumPartitions(1);
+        assertEquals(1, watermark.getNumPartitions());
+        assertEquals(0, watermark.getPartitionLag(2, 1000));
+    }
+}
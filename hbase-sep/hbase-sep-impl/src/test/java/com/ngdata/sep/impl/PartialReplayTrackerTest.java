@@ -0,0 +1,158 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.sep.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import com.google.common.collect.Lists;
+import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.Futures;
+import com.ngdata.sep.SepEvent;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+public class PartialReplayTrackerTest {
+
+    private static final TableName TABLE = TableName.valueOf("table");
+
+    private SepEvent createSepEvent(String row, String value) {
+        byte[] rowKey = Bytes.toBytes(row);
+        List<Cell> cells = Lists.<Cell>newArrayList(new KeyValue(rowKey, Bytes.toBytes("cf"), Bytes.toBytes("q"), 1L,
+                Bytes.toBytes(value)));
+        return new SepEvent(TABLE.getName(), rowKey, cells, null);
+    }
+
+    @Test
+    public void testFingerprint_SameEvents() {
+        List<SepEvent> events = Lists.newArrayList(createSepEvent("a", "v1"), createSepEvent("b", "v1"));
+        List<SepEvent> retriedEvents = Lists.newArrayList(createSepEvent("a", "v1"), createSepEvent("b", "v1"));
+        assertEquals(PartialReplayTracker.fingerprint(TABLE, events),
+                PartialReplayTracker.fingerprint(TABLE, retriedEvents));
+    }
+
+    @Test
+    public void testFingerprint_DifferentEvents() {
+        List<SepEvent> events = Lists.newArrayList(createSepEvent("a", "v1"), createSepEvent("b", "v1"));
+        HashCode fingerprint = PartialReplayTracker.fingerprint(TABLE, events);
+        assertFalse(fingerprint.equals(PartialReplayTracker.fingerprint(TABLE,
+                Lists.newArrayList(createSepEvent("a", "v1"), createSepEvent("b", "v2")))));
+        assertFalse(fingerprint.equals(PartialReplayTracker.fingerprint(TABLE,
+                Lists.newArrayList(createSepEvent("b", "v1"), createSepEvent("a", "v1")))));
+        assertFalse(fingerprint.equals(PartialReplayTracker.fingerprint(TableName.valueOf("other"), events)));
+    }
+
+    @Test
+    public void testAddProcessedEvents() {
+        SepEvent a = createSepEvent("a", "v");
+        SepEvent b = createSepEvent("b", "v");
+        SepEvent c = createSepEvent("c", "v");
+        List<SepEvent> events = Lists.newArrayList(a, b, c);
+        List<Future<?>> futures = Lists.<Future<?>>newArrayList(
+                Futures.immediateFuture(null), Futures.immediateFailedFuture(new RuntimeException("failed")));
+        List<List<SepEvent>> batchEvents = Lists.newArrayList();
+        batchEvents.add(Lists.newArrayList(a, c));
+        batchEvents.add(Lists.newArrayList(b));
+
+        BitSet processedEvents = new BitSet();
+        PartialReplayTracker.addProcessedEvents(events, futures, batchEvents, processedEvents);
+
+        assertTrue(processedEvents.get(0));
+        assertFalse(processedEvents.get(1));
+        assertTrue(processedEvents.get(2));
+    }
+
+    @Test
+    public void testAddProcessedEvents_LaterEventOfFailedRowNotProcessed() {
+        SepEvent a1 = createSepEvent("a", "v1");
+        SepEvent b = createSepEvent("b", "v");
+        SepEvent a2 = createSepEvent("a", "v2");
+        List<SepEvent> events = Lists.newArrayList(a1, b, a2);
+        List<Future<?>> futures = Lists.<Future<?>>newArrayList(
+                Futures.immediateFailedFuture(new RuntimeException("failed")), Futures.immediateFuture(null));
+        List<List<SepEvent>> batchEvents = Lists.newArrayList();
+        batchEvents.add(Lists.newArrayList(a1));
+        batchEvents.add(Lists.newArrayList(b, a2));
+
+        BitSet processedEvents = new BitSet();
+        PartialReplayTracker.addProcessedEvents(events, futures, batchEvents, processedEvents);
+
+        // Skipping the newer event of row a on retry would leave the older one applied last
+        assertFalse(processedEvents.get(0));
+        assertTrue(processedEvents.get(1));
+        assertFalse(processedEvents.get(2));
+    }
+
+    @Test
+    public void testAddProcessedEvents_KeepsEarlierAttempt() {
+        SepEvent a1 = createSepEvent("a", "v1");
+        SepEvent a2 = createSepEvent("a", "v2");
+        List<SepEvent> events = Lists.newArrayList(a1, a2);
+        List<Future<?>> futures = Lists.<Future<?>>newArrayList(Futures.immediateFuture(null));
+        List<List<SepEvent>> batchEvents = Lists.newArrayList();
+        batchEvents.add(Lists.newArrayList(a2));
+
+        // The first event was processed when the batch failed before, and wasn't scheduled again
+        BitSet processedEvents = new BitSet();
+        processedEvents.set(0);
+        PartialReplayTracker.addProcessedEvents(events, futures, batchEvents, processedEvents);
+
+        assertTrue(processedEvents.get(0));
+        assertTrue(processedEvents.get(1));
+    }
+
+    @Test
+    public void testTakeProcessedEvents() {
+        PartialReplayTracker tracker = new PartialReplayTracker(2);
+        assertFalse(tracker.hasFailedBatches());
+
+        HashCode fingerprint = PartialReplayTracker.fingerprint(TABLE,
+                Lists.newArrayList(createSepEvent("a", "v")));
+        BitSet processedEvents = new BitSet();
+        processedEvents.set(0);
+        tracker.recordFailure(fingerprint, processedEvents);
+
+        assertTrue(tracker.hasFailedBatches());
+        assertEquals(processedEvents, tracker.takeProcessedEvents(fingerprint));
+        // A failed batch is only matched once
+        assertNull(tracker.takeProcessedEvents(fingerprint));
+        assertFalse(tracker.hasFailedBatches());
+    }
+
+    @Test
+    public void testOldestFailedBatchIsForgotten() {
+        PartialReplayTracker tracker = new PartialReplayTracker(2);
+        HashCode first = PartialReplayTracker.fingerprint(TABLE, Lists.newArrayList(createSepEvent("a", "v")));
+        HashCode second = PartialReplayTracker.fingerprint(TABLE, Lists.newArrayList(createSepEvent("b", "v")));
+        HashCode third = PartialReplayTracker.fingerprint(TABLE, Lists.newArrayList(createSepEvent("c", "v")));
+        tracker.recordFailure(first, new BitSet());
+        tracker.recordFailure(second, new BitSet());
+        tracker.recordFailure(third, new BitSet());
+
+        assertNull(tracker.takeProcessedEvents(first));
+        assertEquals(new BitSet(), tracker.takeProcessedEvents(second));
+        assertEquals(new BitSet(), tracker.takeProcessedEvents(third));
+    }
+}
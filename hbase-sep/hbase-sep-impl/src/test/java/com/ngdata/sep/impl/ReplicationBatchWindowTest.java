@@ -0,0 +1,125 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.sep.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReplicationBatchWindowTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Processes a batch the way replicateBatch does: opens the window, processes until {@code done} is counted down,
+     * and releases the window, after which the batch would be acknowledged.
+     */
+    private Future<Void> replicateBatchAsync(final ReplicationBatchWindow window, final CountDownLatch processing,
+            final CountDownLatch done) {
+        return executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                window.open();
+                try {
+                    processing.countDown();
+                    done.await();
+                } finally {
+                    window.release();
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void testBatchesOverlap() throws Exception {
+        ReplicationBatchWindow window = new ReplicationBatchWindow(2);
+        CountDownLatch processing = new CountDownLatch(2);
+        CountDownLatch firstDone = new CountDownLatch(1);
+        CountDownLatch secondDone = new CountDownLatch(1);
+
+        Future<Void> first = replicateBatchAsync(window, processing, firstDone);
+        Future<Void> second = replicateBatchAsync(window, processing, secondDone);
+
+        // Both batches are being processed at the same time
+        assertTrue(processing.await(10, TimeUnit.SECONDS));
+        assertEquals(2, window.getInFlightCount());
+
+        // A batch that is done is acknowledged right away, also when a batch that arrived earlier is still busy
+        secondDone.countDown();
+        second.get(10, TimeUnit.SECONDS);
+        assertFalse(first.isDone());
+        assertEquals(1, window.getInFlightCount());
+
+        firstDone.countDown();
+        first.get(10, TimeUnit.SECONDS);
+        assertEquals(0, window.getInFlightCount());
+    }
+
+    @Test
+    public void testOpenBlocksWhenWindowIsFull() throws Exception {
+        final ReplicationBatchWindow window = new ReplicationBatchWindow(1);
+        window.open();
+
+        Future<Void> secondOpened = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                window.open();
+                return null;
+            }
+        });
+        Thread.sleep(100);
+        assertFalse(secondOpened.isDone());
+
+        window.release();
+        secondOpened.get(10, TimeUnit.SECONDS);
+        window.release();
+        assertEquals(0, window.getInFlightCount());
+    }
+
+    @Test
+    public void testReleaseWithoutOpen() {
+        ReplicationBatchWindow window = new ReplicationBatchWindow(1);
+        try {
+            window.release();
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+}
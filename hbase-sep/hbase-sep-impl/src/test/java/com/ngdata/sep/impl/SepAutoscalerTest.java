@@ -0,0 +1,65 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.sep.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class SepAutoscalerTest {
+
+    private SepAutoscaler autoscaler;
+
+    @Before
+    public void setUp() {
+        // min 2, max 10 partitions, target lag of 1 minute
+        autoscaler = new SepAutoscaler(null, 2, 10, 60000, 1000, null);
+    }
+
+    @Test
+    public void testGrowsWhenLaggingAndBusy() {
+        assertEquals(5, autoscaler.computePartitionCount(4, 120000, 0, 0.9));
+        assertEquals(10, autoscaler.computePartitionCount(8, 120000, 0, 0.9));
+    }
+
+    @Test
+    public void testGrowsWhenLaggingAndQueueing() {
+        assertEquals(5, autoscaler.computePartitionCount(4, 120000, 20, 0.5));
+    }
+
+    @Test
+    public void testDoesNotGrowWhenNotBusy() {
+        // Lagging, but the partitions are waiting for something else than CPU, more of them won't help
+        assertEquals(4, autoscaler.computePartitionCount(4, 120000, 0, 0.5));
+        // Busy, but not lagging
+        assertEquals(4, autoscaler.computePartitionCount(4, 1000, 20, 0.9));
+    }
+
+    @Test
+    public void testShrinksWhenIdle() {
+        assertEquals(3, autoscaler.computePartitionCount(4, 1000, 0, 0.1));
+        assertEquals(2, autoscaler.computePartitionCount(2, 0, 0, 0));
+        // Still something queued
+        assertEquals(4, autoscaler.computePartitionCount(4, 1000, 1, 0.1));
+    }
+
+    @Test
+    public void testStaysWithinBounds() {
+        assertEquals(10, autoscaler.computePartitionCount(12, 30000, 0, 0.5));
+        assertEquals(2, autoscaler.computePartitionCount(1, 30000, 0, 0.5));
+    }
+}
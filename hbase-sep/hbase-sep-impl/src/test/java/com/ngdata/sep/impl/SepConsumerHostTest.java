@@ -0,0 +1,203 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.sep.impl;
+
+import com.google.common.collect.Lists;
+import com.ngdata.sep.EventListener;
+import com.ngdata.sep.util.zookeeper.ZooKeeperItf;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Row;
+import org.apache.hadoop.hbase.regionserver.HRegionServer;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SepConsumerHostTest {
+
+    private static final long SUBSCRIPTION_TIMESTAMP = 100000;
+    private static final TableName TABLE1 = TableName.valueOf("table1");
+    private static final TableName TABLE2 = TableName.valueOf("table2");
+
+    private ExecutorService executor;
+    private SepConsumerHost host;
+
+    @BeforeClass
+    public static void setUpBeforeClass() {
+        // Every consumer registers its metrics source
+        DefaultMetricsSystem.setMiniClusterMode(true);
+    }
+
+    @Before
+    public void setUp() {
+        HRegionServer regionServer = mock(HRegionServer.class);
+        when(regionServer.getServerName()).thenReturn(ServerName.valueOf("localhost", 60020, 1L));
+        executor = Executors.newSingleThreadExecutor();
+        host = new SepConsumerHost(mock(ZooKeeperItf.class), HBaseConfiguration.create(), regionServer,
+                Lists.newArrayList(executor));
+    }
+
+    @After
+    public void tearDown() {
+        host.stop();
+    }
+
+    private SepConsumer createConsumer(String subscriptionId, String... tableNames) throws IOException {
+        return host.createConsumer(subscriptionId, SUBSCRIPTION_TIMESTAMP, mock(EventListener.class), null, null,
+                tableNames);
+    }
+
+    private void assertNotRouted(TableName table) {
+        assertFalse(host.isFiltered(table, 0));
+        try {
+            host.replicateBatch(Collections.<Row>emptyList(), new Object[0], table);
+            fail("expected an IOException");
+        } catch (IOException e) {
+            // expected, the batch will be retried on another consumer
+        }
+    }
+
+    @Test
+    public void testCanHost() throws Exception {
+        createConsumer("sub1", "table1", "table2");
+
+        assertFalse(host.canHost("table2"));
+        assertFalse(host.canHost("table3", "table1"));
+        assertTrue(host.canHost("table3"));
+        // Subscriptions that are not limited to tables can't be routed
+        assertFalse(host.canHost());
+    }
+
+    @Test
+    public void testCreateConsumer_OverlappingTable() throws Exception {
+        createConsumer("sub1", "table1");
+
+        try {
+            createConsumer("sub2", "table2", "table1");
+            fail("expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        // Nothing was reserved for the rejected subscription
+        assertTrue(host.canHost("table2"));
+        assertEquals(1, host.getConsumerCount());
+    }
+
+    @Test
+    public void testTryCreateConsumer() throws Exception {
+        createConsumer("sub1", "table1");
+
+        assertNull(host.tryCreateConsumer("sub2", SUBSCRIPTION_TIMESTAMP, mock(EventListener.class), null, null,
+                "table2", "table1"));
+        assertTrue(host.canHost("table2"));
+        assertNotNull(host.tryCreateConsumer("sub3", SUBSCRIPTION_TIMESTAMP, mock(EventListener.class), null, null,
+                "table2"));
+        assertEquals(2, host.getConsumerCount());
+    }
+
+    @Test
+    public void testCreateConsumer_NoTables() throws Exception {
+        try {
+            createConsumer("sub1");
+            fail("expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(0, host.getConsumerCount());
+    }
+
+    @Test
+    public void testRouting() throws Exception {
+        host.start();
+        SepConsumer consumer1 = createConsumer("sub1", "table1");
+        createConsumer("sub2", "table2");
+
+        // Tables are only routed once their consumer is started
+        assertNotRouted(TABLE1);
+
+        consumer1.start();
+        assertTrue(host.isFiltered(TABLE1, SUBSCRIPTION_TIMESTAMP - 1));
+        assertFalse(host.isFiltered(TABLE1, SUBSCRIPTION_TIMESTAMP));
+        assertNotRouted(TABLE2);
+        assertNotRouted(TableName.valueOf("table3"));
+
+        consumer1.stop();
+    }
+
+    @Test
+    public void testRouting_HostNotStarted() throws Exception {
+        SepConsumer consumer = createConsumer("sub1", "table1");
+
+        try {
+            consumer.start();
+            fail("expected an IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        consumer.stop();
+    }
+
+    @Test
+    public void testRelease_OnConsumerStop() throws Exception {
+        host.start();
+        SepConsumer consumer = createConsumer("sub1", "table1", "table2");
+        consumer.start();
+
+        consumer.stop();
+
+        assertNotRouted(TABLE1);
+        assertNotRouted(TABLE2);
+        assertTrue(host.canHost("table1", "table2"));
+        assertEquals(0, host.getConsumerCount());
+        // The worker threads belong to the host, so they keep running for the other consumers
+        assertFalse(executor.isShutdown());
+    }
+
+    @Test
+    public void testRelease_ConsumerNeverStarted() throws Exception {
+        SepConsumer consumer = createConsumer("sub1", "table1");
+
+        consumer.stop();
+
+        assertTrue(host.canHost("table1"));
+        assertEquals(0, host.getConsumerCount());
+    }
+
+    @Test
+    public void testStop_ShutsDownExecutors() {
+        host.stop();
+
+        assertTrue(executor.isShutdown());
+    }
+}
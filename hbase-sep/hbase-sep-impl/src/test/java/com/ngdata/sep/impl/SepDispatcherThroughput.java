@@ -0,0 +1,151 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.sep.impl;
+
+import static org.mockito.Mockito.mock;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.ngdata.sep.EventListener;
+import com.ngdata.sep.SepEvent;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Compares the throughput of the {@link SepConsumer.DispatcherType}s by pushing events from several concurrent
+ * "replicateBatch" threads through a {@link SepEventExecutor}, the way concurrent replication RPCs do.
+ * <p>
+ * The worker threads are created by {@link SepConsumer#createExecutors}, with the default queue and ring buffer
+ * sizes, so every dispatcher is measured as a consumer would use it. The dispatchers take turns within each round,
+ * so that they are affected alike by whatever else runs on the machine. The first rounds only warm up the JVM, the
+ * median and the range over the remaining rounds are reported.
+ * <p>
+ * This is not a unit test, run it manually with:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.ngdata.sep.impl.SepDispatcherThroughput
+ * </pre>
+ * The number of producer and worker threads can be changed with {@code -Dproducers=} and {@code -Dworkers=}, the
+ * listener work per event (in iterations of a busy loop) with {@code -DworkPerEvent=}.
+ */
+public class SepDispatcherThroughput {
+
+    private static final int PRODUCER_THREADS = Integer.getInteger("producers", 8);
+    private static final int WORKER_THREADS = Integer.getInteger("workers", 10);
+    private static final int WORK_PER_EVENT = Integer.getInteger("workPerEvent", 0);
+    private static final int BATCHES_PER_PRODUCER = 2000;
+    private static final int EVENTS_PER_BATCH = 500;
+    private static final int SEP_BATCH_SIZE = 10;
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int MEASURED_ROUNDS = 5;
+
+    /** Keeps the work of the listener from being optimized away. */
+    private static volatile long sink;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println(String.format("Java %s on %d cpus: %d producers, %d workers, %d work per event",
+                System.getProperty("java.version"), Runtime.getRuntime().availableProcessors(), PRODUCER_THREADS,
+                WORKER_THREADS, WORK_PER_EVENT));
+
+        Map<SepConsumer.DispatcherType, List<Double>> results = Maps.newEnumMap(SepConsumer.DispatcherType.class);
+        for (SepConsumer.DispatcherType type : SepConsumer.DispatcherType.values()) {
+            results.put(type, Lists.<Double>newArrayList());
+        }
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            for (SepConsumer.DispatcherType type : SepConsumer.DispatcherType.values()) {
+                double eventsPerSecond = run(type);
+                if (round >= WARMUP_ROUNDS) {
+                    results.get(type).add(eventsPerSecond);
+                }
+            }
+        }
+
+        for (Map.Entry<SepConsumer.DispatcherType, List<Double>> entry : results.entrySet()) {
+            List<Double> rates = entry.getValue();
+            Collections.sort(rates);
+            System.out.println(String.format("%-10s median %,.0f events/s (%,.0f - %,.0f)", entry.getKey(),
+                    rates.get(rates.size() / 2), rates.get(0), rates.get(rates.size() - 1)));
+        }
+    }
+
+    private static double run(SepConsumer.DispatcherType type) throws Exception {
+        Configuration conf = new Configuration(false);
+        conf.set(SepConsumer.DISPATCHER_CONF_KEY, type.name());
+        final List<ExecutorService> executors = SepConsumer.createExecutors(conf, "benchmark", WORKER_THREADS);
+        final SepMetrics sepMetrics = mock(SepMetrics.class);
+        final EventListener listener = new EventListener() {
+            @Override
+            public void processEvents(List<SepEvent> events) {
+                long work = 0;
+                for (int i = 0; i < events.size() * WORK_PER_EVENT; i++) {
+                    work += i ^ work;
+                }
+                sink = work;
+            }
+        };
+        final SepEvent[] events = new SepEvent[EVENTS_PER_BATCH];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = new SepEvent(Bytes.toBytes("table"), Bytes.toBytes("row" + i), Collections.<Cell>emptyList(),
+                    null);
+        }
+
+        List<Thread> producers = Lists.newArrayList();
+        long start = System.nanoTime();
+        for (int p = 0; p < PRODUCER_THREADS; p++) {
+            Thread producer = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int b = 0; b < BATCHES_PER_PRODUCER; b++) {
+                            SepEventExecutor eventExecutor = new SepEventExecutor(listener, executors, SEP_BATCH_SIZE,
+                                    sepMetrics);
+                            for (SepEvent event : events) {
+                                eventExecutor.scheduleSepEvent(event);
+                            }
+                            for (Future<?> future : eventExecutor.flush()) {
+                                future.get();
+                            }
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+            producers.add(producer);
+            producer.start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        long elapsedNanos = System.nanoTime() - start;
+
+        for (ExecutorService executor : executors) {
+            executor.shutdown();
+        }
+
+        long totalEvents = (long)PRODUCER_THREADS * BATCHES_PER_PRODUCER * EVENTS_PER_BATCH;
+        System.out.println(String.format("%-10s %,d events in %,d ms", type, totalEvents,
+                TimeUnit.NANOSECONDS.toMillis(elapsedNanos)));
+        return totalEvents * 1e9 / elapsedNanos;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.sep.impl;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.ngdata.sep.SepEvent;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellScanner;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Row;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Measures the number of bytes allocated per {@link SepEvent} when turning replicated mutations into events, for
+ * the original per-cell grouping approach and for {@link SepEventFactory}, on tables with increasingly wide rows.
+ * <p>
+ * This is not a unit test, run it manually with:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.ngdata.sep.impl.SepEventAllocationBenchmark
+ * </pre>
+ */
+public class SepEventAllocationBenchmark {
+
+    private static final TableName TABLE_NAME = TableName.valueOf("benchmark_table");
+    private static final byte[] FAMILY = Bytes.toBytes("f");
+    private static final int ROWS_PER_BATCH = 100;
+    private static final int ITERATIONS = 2000;
+
+    public static void main(String[] args) throws Exception {
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        for (int cellsPerRow : new int[] { 1, 10, 50, 200 }) {
+            List<Row> batch = createBatch(cellsPerRow);
+            SepEventFactory factory = new SepEventFactory(null);
+
+            // warm up both code paths
+            for (int i = 0; i < ITERATIONS; i++) {
+                createEventsPerCell(batch, TABLE_NAME);
+                factory.createEvents(batch, TABLE_NAME, Lists.<SepEvent>newArrayListWithCapacity(batch.size()));
+            }
+
+            long threadId = Thread.currentThread().getId();
+            long before = threadMXBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < ITERATIONS; i++) {
+                createEventsPerCell(batch, TABLE_NAME);
+            }
+            long perCellBytes = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+
+            before = threadMXBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < ITERATIONS; i++) {
+                factory.createEvents(batch, TABLE_NAME, Lists.<SepEvent>newArrayListWithCapacity(batch.size()));
+            }
+            long factoryBytes = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+
+            long events = (long)ITERATIONS * ROWS_PER_BATCH;
+            System.out.println(String.format("%4d cells/row: per-cell grouping %,8d bytes/event, "
+                    + "SepEventFactory %,8d bytes/event", cellsPerRow, perCellBytes / events, factoryBytes / events));
+        }
+    }
+
+    private static List<Row> createBatch(int cellsPerRow) throws Exception {
+        List<Row> batch = Lists.newArrayList();
+        for (int r = 0; r < ROWS_PER_BATCH; r++) {
+            byte[] row = Bytes.toBytes("row-" + r);
+            Put put = new Put(row);
+            for (int c = 0; c < cellsPerRow; c++) {
+                put.addColumn(FAMILY, Bytes.toBytes("q" + c), Bytes.toBytes("value-" + c));
+            }
+            batch.add(put);
+        }
+        return batch;
+    }
+
+    /**
+     * The way events were created before {@link SepEventFactory} existed, kept here as a reference point.
+     */
+    private static List<SepEvent> createEventsPerCell(List<? extends Row> actions, TableName tableName)
+            throws Exception {
+        List<SepEvent> events = Lists.newArrayList();
+        for (Row row : actions) {
+            Mutation mutation = (Mutation) row;
+            Multimap<ByteBuffer, Cell> keyValuesPerRowKey = ArrayListMultimap.create();
+            Map<ByteBuffer, byte[]> payloadPerRowKey = Maps.newHashMap();
+            CellScanner cells = mutation.cellScanner();
+            while (cells.advance()) {
+                Cell cell = cells.current();
+                ByteBuffer rowKey = ByteBuffer.wrap(cell.getRowArray(), cell.getRowOffset(), cell.getRowLength());
+                keyValuesPerRowKey.put(rowKey, KeyValueUtil.ensureKeyValue(cell));
+            }
+            for (ByteBuffer rowKeyBuffer : keyValuesPerRowKey.keySet()) {
+                List<Cell> keyValues = (List<Cell>) keyValuesPerRowKey.get(rowKeyBuffer);
+                events.add(new SepEvent(tableName.toBytes(), CellUtil.cloneRow(keyValues.get(0)), keyValues,
+                        payloadPerRowKey.get(rowKeyBuffer)));
+            }
+        }
+        return events;
+    }
+}
@@ -18,7 +18,11 @@ package com.ngdata.sep.impl;
 import com.google.common.collect.Lists;
 import com.ngdata.sep.EventListener;
 import com.ngdata.sep.SepEvent;
+import com.ngdata.sep.util.concurrent.RingBufferExecutor;
 import com.ngdata.sep.util.concurrent.WaitPolicy;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.util.Bytes;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -26,6 +30,8 @@ import org.junit.Test;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -142,6 +148,239 @@ public class SepEventExecutorTest {
 
     }
 
+    @Test
+    public void testScheduleSepEvent_RingBufferDispatcherKeepsRowOrder() throws Exception {
+        List<ExecutorService> ringBufferExecutors = Lists.newArrayList();
+        for (int i = 0; i < 3; i++) {
+            ringBufferExecutors.add(new RingBufferExecutor(4, Executors.defaultThreadFactory()));
+        }
+        try {
+            RecordingEventListener eventListener = new RecordingEventListener();
+            SepEventExecutor executor = new SepEventExecutor(eventListener, ringBufferExecutors, 1, sepMetrics);
+            List<SepEvent> scheduled = Lists.newArrayList();
+            for (int i = 0; i < 100; i++) {
+                SepEvent event = createSepEvent(i % 5);
+                scheduled.add(event);
+                executor.scheduleSepEvent(event);
+            }
+            for (Future<?> future : executor.flush()) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+
+            assertEquals(100, eventListener.receivedEvents.size());
+            for (int row = 0; row < 5; row++) {
+                List<SepEvent> expected = Lists.newArrayList();
+                List<SepEvent> received = Lists.newArrayList();
+                for (int i = 0; i < 100; i++) {
+                    if (i % 5 == row) {
+                        expected.add(scheduled.get(i));
+                    }
+                    if (scheduled.indexOf(eventListener.receivedEvents.get(i)) % 5 == row) {
+                        received.add(eventListener.receivedEvents.get(i));
+                    }
+                }
+                assertEquals(expected, received);
+            }
+        } finally {
+            for (ExecutorService ringBufferExecutor : ringBufferExecutors) {
+                ringBufferExecutor.shutdownNow();
+            }
+        }
+    }
+
+    private SepEvent createSepEvent(String row, String qualifier) {
+        byte[] rowKey = Bytes.toBytes(row);
+        List<Cell> cells = Lists.<Cell>newArrayList(new KeyValue(rowKey, Bytes.toBytes("cf"), Bytes.toBytes(qualifier),
+                Bytes.toBytes("value")));
+        return new SepEvent(Bytes.toBytes("table"), rowKey, cells, null);
+    }
+
+    @Test
+    public void testScheduleSepEvent_CoalesceRows() throws Exception {
+        RecordingEventListener eventListener = new RecordingEventListener();
+        SepEventExecutor executor = new SepEventExecutor(eventListener, getExecutors(2), 100, sepMetrics, true);
+        SepEvent a1 = createSepEvent("a", "q1");
+        SepEvent b1 = createSepEvent("b", "q1");
+        SepEvent a2 = createSepEvent("a", "q2");
+        SepEvent a3 = createSepEvent("a", "q3");
+        for (SepEvent event : Lists.newArrayList(a1, b1, a2, a3)) {
+            executor.scheduleSepEvent(event);
+        }
+        for (Future<?> future : executor.flush()) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+
+        assertEquals(2, eventListener.receivedEvents.size());
+        SepEvent coalescedEvent = null;
+        for (SepEvent event : eventListener.receivedEvents) {
+            if (Bytes.equals(Bytes.toBytes("a"), event.getRow())) {
+                coalescedEvent = event;
+            } else {
+                assertEquals(b1, event);
+            }
+        }
+        List<Cell> expectedCells = Lists.newArrayList(a1.getKeyValues().get(0), a2.getKeyValues().get(0),
+                a3.getKeyValues().get(0));
+        assertEquals(expectedCells, coalescedEvent.getKeyValues());
+        // The events that were merged are left untouched
+        assertEquals(1, a1.getKeyValues().size());
+    }
+
+    @Test
+    public void testGetBatchEvents_CoalesceRows() throws Exception {
+        RecordingEventListener eventListener = new RecordingEventListener();
+        SepEventExecutor executor = new SepEventExecutor(eventListener, getExecutors(1), 100, sepMetrics, true);
+        SepEvent a1 = createSepEvent("a", "q1");
+        SepEvent b1 = createSepEvent("b", "q1");
+        SepEvent a2 = createSepEvent("a", "q2");
+        for (SepEvent event : Lists.newArrayList(a1, b1, a2)) {
+            executor.scheduleSepEvent(event);
+        }
+        List<Future<?>> futures = executor.flush();
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+
+        assertEquals(2, eventListener.receivedEvents.size());
+        // The batch events are the events as they were scheduled, not the merged ones
+        List<List<SepEvent>> batchEvents = executor.getBatchEvents();
+        assertEquals(futures.size(), batchEvents.size());
+        assertEquals(Lists.newArrayList(a1, b1, a2), batchEvents.get(0));
+    }
+
+    @Test
+    public void testScheduleSepEvent_CoalesceRowsWithinBatchOnly() throws Exception {
+        RecordingEventListener eventListener = new RecordingEventListener();
+        SepEventExecutor executor = new SepEventExecutor(eventListener, getExecutors(1), 2, sepMetrics, true);
+        executor.scheduleSepEvent(createSepEvent("a", "q1"));
+        executor.scheduleSepEvent(createSepEvent("a", "q2"));
+        executor.scheduleSepEvent(createSepEvent("b", "q1"));
+        // The first batch (a, b) has been handed off, so this starts a new event for row a
+        executor.scheduleSepEvent(createSepEvent("a", "q3"));
+        for (Future<?> future : executor.flush()) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+
+        assertEquals(3, eventListener.receivedEvents.size());
+        assertEquals(2, eventListener.receivedEvents.get(0).getKeyValues().size());
+        assertEquals(1, eventListener.receivedEvents.get(2).getKeyValues().size());
+    }
+
+    @Test
+    public void testScheduleSepEvent_MaxBatchBytes() throws Exception {
+        RecordingBatchesEventListener eventListener = new RecordingBatchesEventListener();
+        SepEventExecutor executor = new SepEventExecutor(eventListener, getExecutors(1), 100, sepMetrics);
+        long eventBytes = SepEventExecutor.getCellBytes(createSepEvent("row0", "q"));
+        executor.setMaxBatchBytes(2 * eventBytes);
+        for (int i = 0; i < 5; i++) {
+            executor.scheduleSepEvent(createSepEvent("row" + i, "q"));
+        }
+        for (Future<?> future : executor.flush()) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+
+        assertEquals(Lists.newArrayList(2, 2, 1), eventListener.batchSizes);
+    }
+
+    @Test
+    public void testScheduleSepEvent_MemoryBudget() throws Exception {
+        RecordingBatchesEventListener eventListener = new RecordingBatchesEventListener();
+        SepEventExecutor executor = new SepEventExecutor(eventListener, getExecutors(2), 100, sepMetrics);
+        long eventBytes = SepEventExecutor.getCellBytes(createSepEvent("a", "q1"));
+        SepMemoryBudget memoryBudget = new SepMemoryBudget(3 * eventBytes, null);
+        executor.setMemoryBudget(memoryBudget);
+
+        // Only 3 events fit in the budget, so buffered events have to be handed off early to schedule 10 events
+        for (int i = 0; i < 10; i++) {
+            executor.scheduleSepEvent(createSepEvent("r" + i, "q"));
+            assertTrue(memoryBudget.getBufferedBytes() <= 3 * eventBytes);
+        }
+        for (Future<?> future : executor.flush()) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+
+        int received = 0;
+        for (int batchSize : eventListener.batchSizes) {
+            received += batchSize;
+        }
+        assertEquals(10, received);
+        assertEquals(0, memoryBudget.getBufferedBytes());
+        assertEquals(3 * eventBytes, memoryBudget.getPeakBufferedBytes());
+    }
+
+    @Test
+    public void testScheduleSepEvent_SkewAwarePartitioner() throws Exception {
+        RecordingEventListener eventListener = new RecordingEventListener();
+        SepEventExecutor executor = new SepEventExecutor(eventListener, getExecutors(3), 4, sepMetrics, true);
+        SkewAwarePartitioner partitioner = new SkewAwarePartitioner(3, 0.5, null);
+        executor.setPartitioner(partitioner);
+        List<SepEvent> scheduled = Lists.newArrayList();
+        for (int i = 0; i < 100; i++) {
+            // Row r0 is much hotter than the others
+            SepEvent event = createSepEvent(i % 2 == 0 ? "r0" : "r" + (i % 7), "q" + i);
+            scheduled.add(event);
+            executor.scheduleSepEvent(event);
+        }
+        for (Future<?> future : executor.flush()) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+
+        // Events of the same row are received in order, even though some of them were coalesced
+        for (int row = 0; row < 7; row++) {
+            byte[] rowKey = Bytes.toBytes("r" + row);
+            List<Cell> expected = Lists.newArrayList();
+            for (SepEvent event : scheduled) {
+                if (Bytes.equals(rowKey, event.getRow())) {
+                    expected.addAll(event.getKeyValues());
+                }
+            }
+            List<Cell> received = Lists.newArrayList();
+            for (SepEvent event : eventListener.receivedEvents) {
+                if (Bytes.equals(rowKey, event.getRow())) {
+                    received.addAll(event.getKeyValues());
+                }
+            }
+            assertEquals(expected, received);
+        }
+        for (int partition = 0; partition < 3; partition++) {
+            assertEquals(0, partitioner.getPartitionLoad(partition));
+        }
+    }
+
+    @Test
+    public void testDiscardBuffered() throws Exception {
+        RecordingEventListener eventListener = new RecordingEventListener();
+        SepEventExecutor executor = new SepEventExecutor(eventListener, getExecutors(3), 100, sepMetrics);
+        SepMemoryBudget memoryBudget = new SepMemoryBudget(1024 * 1024, null);
+        executor.setMemoryBudget(memoryBudget);
+        SkewAwarePartitioner partitioner = new SkewAwarePartitioner(3, 0.5, null);
+        executor.setPartitioner(partitioner);
+        for (int i = 0; i < 10; i++) {
+            executor.scheduleSepEvent(createSepEvent("r" + i, "q"));
+        }
+        assertTrue(memoryBudget.getBufferedBytes() > 0);
+
+        executor.discardBuffered();
+
+        assertEquals(0, memoryBudget.getBufferedBytes());
+        for (int partition = 0; partition < 3; partition++) {
+            assertEquals(0, partitioner.getPartitionLoad(partition));
+        }
+        assertTrue(executor.flush().isEmpty());
+        assertTrue(eventListener.receivedEvents.isEmpty());
+    }
+
+    static class RecordingBatchesEventListener implements EventListener {
+
+        List<Integer> batchSizes = Collections.synchronizedList(Lists.<Integer>newArrayList());
+
+        @Override
+        public void processEvents(List<SepEvent> events) {
+            batchSizes.add(events.size());
+        }
+
+    }
+
     static class RecordingEventListener implements EventListener {
 
         List<SepEvent> receivedEvents = Lists.newArrayList();
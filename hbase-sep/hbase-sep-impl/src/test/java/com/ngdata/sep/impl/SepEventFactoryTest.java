@@ -0,0 +1,158 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.sep.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import com.ngdata.sep.CellFilter;
+import com.ngdata.sep.PayloadExtractor;
+import com.ngdata.sep.SepEvent;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+public class SepEventFactoryTest {
+
+    private static final TableName TABLE_NAME = TableName.valueOf("test_table");
+    private static final byte[] DATA_COLFAM = Bytes.toBytes("data");
+    private static final byte[] PAYLOAD_QUALIFIER = Bytes.toBytes("pl");
+
+    @Test
+    public void testCreateEvents_OneEventPerMutation() throws Exception {
+        byte[] rowA = Bytes.toBytes("A");
+        byte[] rowB = Bytes.toBytes("B");
+        Cell cellA1 = new KeyValue(rowA, DATA_COLFAM, Bytes.toBytes("q1"), 10L, Bytes.toBytes("v1"));
+        Cell cellA2 = new KeyValue(rowA, DATA_COLFAM, Bytes.toBytes("q2"), 20L, Bytes.toBytes("v2"));
+        Cell cellB = new KeyValue(rowB, DATA_COLFAM, Bytes.toBytes("q1"), 15L, Bytes.toBytes("v3"));
+        Put putA = new Put(rowA).add(cellA1).add(cellA2);
+        Put putB = new Put(rowB).add(cellB);
+
+        List<SepEvent> events = Lists.newArrayList();
+        long maxTimestamp = new SepEventFactory(null).createEvents(Lists.newArrayList(putA, putB), TABLE_NAME,
+                events);
+
+        assertEquals(20L, maxTimestamp);
+        assertEquals(2, events.size());
+        assertSame(putA.getRow(), events.get(0).getRow());
+        assertEquals(Lists.newArrayList(cellA1, cellA2), events.get(0).getKeyValues());
+        assertSame(cellA1, events.get(0).getKeyValues().get(0));
+        assertSame(putB.getRow(), events.get(1).getRow());
+        assertEquals(Lists.newArrayList(cellB), events.get(1).getKeyValues());
+        // All events of a batch share the same table name array
+        assertArrayEquals(TABLE_NAME.getName(), events.get(0).getTable());
+        assertSame(events.get(0).getTable(), events.get(1).getTable());
+        assertNull(events.get(0).getPayload());
+    }
+
+    @Test
+    public void testCreateEvents_Delete() throws Exception {
+        byte[] row = Bytes.toBytes("row");
+        Delete delete = new Delete(row).addFamily(DATA_COLFAM, 30L);
+
+        List<SepEvent> events = Lists.newArrayList();
+        new SepEventFactory(null).createEvents(Lists.newArrayList(delete), TABLE_NAME, events);
+
+        assertEquals(1, events.size());
+        assertArrayEquals(row, events.get(0).getRow());
+        assertEquals(1, events.get(0).getKeyValues().size());
+        assertEquals(30L, events.get(0).getKeyValues().get(0).getTimestamp());
+    }
+
+    @Test
+    public void testCreateEvents_FirstPayloadWins() throws Exception {
+        byte[] row = Bytes.toBytes("row");
+        Put put = new Put(row)
+                .add(new KeyValue(row, DATA_COLFAM, PAYLOAD_QUALIFIER, 1L, Bytes.toBytes("A")))
+                .add(new KeyValue(row, DATA_COLFAM, PAYLOAD_QUALIFIER, 2L, Bytes.toBytes("B")));
+        SepEventFactory factory = new SepEventFactory(new BasePayloadExtractor(TABLE_NAME.getName(), DATA_COLFAM,
+                PAYLOAD_QUALIFIER));
+
+        List<SepEvent> events = Lists.newArrayList();
+        factory.createEvents(Lists.newArrayList(put), TABLE_NAME, events);
+
+        assertEquals(1, events.size());
+        assertArrayEquals(Bytes.toBytes("A"), events.get(0).getPayload());
+        assertEquals(2, events.get(0).getKeyValues().size());
+    }
+
+    @Test
+    public void testCreateEvents_CellFilter() throws Exception {
+        final byte[] relevantQualifier = Bytes.toBytes("relevant");
+        CellFilter cellFilter = new CellFilter() {
+            @Override
+            public boolean isRelevant(byte[] tableName, Cell cell) {
+                return CellUtil.matchingQualifier(cell, relevantQualifier);
+            }
+        };
+        byte[] rowA = Bytes.toBytes("A");
+        byte[] rowB = Bytes.toBytes("B");
+        byte[] rowC = Bytes.toBytes("C");
+        Cell relevantCell = new KeyValue(rowA, DATA_COLFAM, relevantQualifier, 10L, Bytes.toBytes("v1"));
+        Put putA = new Put(rowA)
+                .add(relevantCell)
+                .add(new KeyValue(rowA, DATA_COLFAM, Bytes.toBytes("other"), 20L, Bytes.toBytes("v2")));
+        Put putB = new Put(rowB).add(new KeyValue(rowB, DATA_COLFAM, Bytes.toBytes("other"), 40L, Bytes.toBytes("v3")));
+        Delete deleteC = new Delete(rowC).addColumns(DATA_COLFAM, Bytes.toBytes("other"), 30L);
+
+        List<SepEvent> events = Lists.newArrayList();
+        long maxTimestamp = new SepEventFactory(null, cellFilter).createEvents(
+                Lists.newArrayList(putA, putB, deleteC), TABLE_NAME, events);
+
+        // Dropped cells still count as handled
+        assertEquals(40L, maxTimestamp);
+        // The event for row B has no relevant cells left, the delete marker for row C is always kept
+        assertEquals(2, events.size());
+        assertArrayEquals(rowA, events.get(0).getRow());
+        assertEquals(Lists.newArrayList(relevantCell), events.get(0).getKeyValues());
+        assertArrayEquals(rowC, events.get(1).getRow());
+        assertEquals(1, events.get(1).getKeyValues().size());
+    }
+
+    @Test
+    public void testCreateEvents_LegacyPayloadExtractor() throws Exception {
+        final List<byte[]> tableNames = Lists.newArrayList();
+        PayloadExtractor payloadExtractor = new PayloadExtractor() {
+            @Override
+            public byte[] extractPayload(byte[] tableName, KeyValue keyValue) {
+                tableNames.add(tableName);
+                return CellUtil.matchingQualifier(keyValue, PAYLOAD_QUALIFIER) ? CellUtil.cloneValue(keyValue) : null;
+            }
+        };
+        byte[] row = Bytes.toBytes("row");
+        Put put = new Put(row)
+                .add(new KeyValue(row, DATA_COLFAM, Bytes.toBytes("q"), 1L, Bytes.toBytes("v")))
+                .add(new KeyValue(row, DATA_COLFAM, PAYLOAD_QUALIFIER, 1L, Bytes.toBytes("payload")));
+
+        List<SepEvent> events = Lists.newArrayList();
+        new SepEventFactory(payloadExtractor).createEvents(Lists.newArrayList(put), TABLE_NAME, events);
+
+        assertEquals(1, events.size());
+        assertArrayEquals(Bytes.toBytes("payload"), events.get(0).getPayload());
+        assertEquals(2, tableNames.size());
+        assertArrayEquals(TABLE_NAME.getName(), tableNames.get(0));
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.sep.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class SepMemoryBudgetTest {
+
+    @Test
+    public void testTryAcquire() {
+        SepMemoryBudget budget = new SepMemoryBudget(100, null);
+        assertTrue(budget.tryAcquire(60));
+        assertTrue(budget.tryAcquire(40));
+        assertFalse(budget.tryAcquire(1));
+        budget.release(40);
+        assertTrue(budget.tryAcquire(1));
+        assertEquals(61, budget.getBufferedBytes());
+        assertEquals(100, budget.getPeakBufferedBytes());
+    }
+
+    @Test
+    public void testOversizedEventFitsInEmptyBudget() {
+        SepMemoryBudget budget = new SepMemoryBudget(100, null);
+        assertTrue(budget.tryAcquire(500));
+        assertFalse(budget.tryAcquire(1));
+        budget.release(500);
+        assertEquals(0, budget.getBufferedBytes());
+    }
+
+    @Test
+    public void testAcquireBlocksUntilReleased() throws Exception {
+        final SepMemoryBudget budget = new SepMemoryBudget(100, null);
+        budget.tryAcquire(80);
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    budget.acquire(50);
+                    acquired.countDown();
+                } catch (InterruptedException e) {
+                    // test will fail
+                }
+            }
+        };
+        thread.start();
+
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+        budget.release(80);
+        assertTrue(acquired.await(10, TimeUnit.SECONDS));
+        assertEquals(50, budget.getBufferedBytes());
+    }
+
+    @Test
+    public void testReportsMetrics() {
+        SepMetrics sepMetrics = mock(SepMetrics.class);
+        SepMemoryBudget budget = new SepMemoryBudget(100, sepMetrics);
+        budget.tryAcquire(30);
+        budget.release(10);
+        verify(sepMetrics).reportBufferedBytes(30, 30);
+        verify(sepMetrics).reportBufferedBytes(20, 30);
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.sep.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.Lists;
+import com.ngdata.sep.SepEvent;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SepSpoolTest {
+
+    private static final TableName TABLE = TableName.valueOf("table");
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File directory;
+    private SepSpool spool;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = tempFolder.newFolder("spool");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (spool != null) {
+            spool.close();
+        }
+    }
+
+    private List<SepEvent> createEvents(String... rows) {
+        List<SepEvent> events = Lists.newArrayList();
+        for (String row : rows) {
+            byte[] rowKey = Bytes.toBytes(row);
+            List<Cell> cells = Lists.<Cell>newArrayList(new KeyValue(rowKey, Bytes.toBytes("cf"), Bytes.toBytes("q"),
+                    1L, Bytes.toBytes("value")));
+            events.add(new SepEvent(TABLE.getName(), rowKey, cells, row.equals("a") ? Bytes.toBytes("payload") : null));
+        }
+        return events;
+    }
+
+    @Test
+    public void testAppendAndDrain() throws Exception {
+        spool = new SepSpool(directory, 1024 * 1024, 0, null);
+        RecordingHandler handler = new RecordingHandler();
+        spool.start(handler);
+
+        List<SepEvent> events = createEvents("a", "b");
+        spool.append(TABLE, events, 42L);
+
+        List<SepEvent> drainedEvents = handler.batches.poll(10, TimeUnit.SECONDS);
+        assertEquals(2, drainedEvents.size());
+        for (int i = 0; i < events.size(); i++) {
+            assertArrayEquals(events.get(i).getRow(), drainedEvents.get(i).getRow());
+            assertArrayEquals(events.get(i).getPayload(), drainedEvents.get(i).getPayload());
+            assertEquals(events.get(i).getKeyValues(), drainedEvents.get(i).getKeyValues());
+        }
+        assertEquals(42L, handler.lastTimestamp);
+        waitForSpooledBytes(0);
+    }
+
+    @Test
+    public void testResumesFromCheckpoint() throws Exception {
+        spool = new SepSpool(directory, 1024 * 1024, 0, null);
+        RecordingHandler handler = new RecordingHandler();
+        spool.start(handler);
+        spool.append(TABLE, createEvents("a"), 1L);
+        assertEquals(1, handler.batches.poll(10, TimeUnit.SECONDS).size());
+        waitForSpooledBytes(0);
+        spool.close();
+
+        // Appended while not being drained
+        spool = new SepSpool(directory, 1024 * 1024, 0, null);
+        spool.append(TABLE, createEvents("b", "c"), 2L);
+        spool.close();
+
+        spool = new SepSpool(directory, 1024 * 1024, 0, null);
+        assertTrue(spool.getSpooledBytes() > 0);
+        handler = new RecordingHandler();
+        spool.start(handler);
+        List<SepEvent> drainedEvents = handler.batches.poll(10, TimeUnit.SECONDS);
+        assertEquals(2, drainedEvents.size());
+        assertArrayEquals(Bytes.toBytes("b"), drainedEvents.get(0).getRow());
+        waitForSpooledBytes(0);
+        assertNull(handler.batches.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testSegmentsAreReclaimed() throws Exception {
+        spool = new SepSpool(directory, 256, 0, null);
+        for (int i = 0; i < 20; i++) {
+            spool.append(TABLE, createEvents("row" + i), i);
+        }
+        assertTrue(countSegments() > 1);
+
+        RecordingHandler handler = new RecordingHandler();
+        spool.start(handler);
+        for (int i = 0; i < 20; i++) {
+            List<SepEvent> drainedEvents = handler.batches.poll(10, TimeUnit.SECONDS);
+            assertArrayEquals(Bytes.toBytes("row" + i), drainedEvents.get(0).getRow());
+        }
+        waitForSpooledBytes(0);
+        assertEquals(1, countSegments());
+    }
+
+    @Test
+    public void testFailedBatchIsRetried() throws Exception {
+        spool = new SepSpool(directory, 1024 * 1024, 0, null);
+        final AtomicInteger attempts = new AtomicInteger();
+        RecordingHandler handler = new RecordingHandler() {
+            @Override
+            public void process(TableName tableName, List<SepEvent> events, long timestamp) throws Exception {
+                if (attempts.incrementAndGet() == 1) {
+                    throw new IOException("Solr is down");
+                }
+                super.process(tableName, events, timestamp);
+            }
+        };
+        spool.start(handler);
+        spool.append(TABLE, createEvents("a"), 1L);
+        spool.append(TABLE, createEvents("b"), 2L);
+
+        assertArrayEquals(Bytes.toBytes("a"), handler.batches.poll(10, TimeUnit.SECONDS).get(0).getRow());
+        assertArrayEquals(Bytes.toBytes("b"), handler.batches.poll(10, TimeUnit.SECONDS).get(0).getRow());
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    public void testPartiallyWrittenRecordIsIgnored() throws Exception {
+        spool = new SepSpool(directory, 1024 * 1024, 0, null);
+        spool.append(TABLE, createEvents("a"), 1L);
+        long spooledBytes = spool.getSpooledBytes();
+        spool.close();
+
+        // Simulate a crash halfway through writing a second record
+        File segment = directory.listFiles()[0];
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        try {
+            file.seek(spooledBytes);
+            file.writeInt(100);
+            file.writeInt(12345);
+        } finally {
+            file.close();
+        }
+
+        spool = new SepSpool(directory, 1024 * 1024, 0, null);
+        assertEquals(spooledBytes, spool.getSpooledBytes());
+        spool.append(TABLE, createEvents("b"), 2L);
+        RecordingHandler handler = new RecordingHandler();
+        spool.start(handler);
+        assertArrayEquals(Bytes.toBytes("a"), handler.batches.poll(10, TimeUnit.SECONDS).get(0).getRow());
+        assertArrayEquals(Bytes.toBytes("b"), handler.batches.poll(10, TimeUnit.SECONDS).get(0).getRow());
+    }
+
+    @Test
+    public void testAppendFailsWhenFull() throws Exception {
+        spool = new SepSpool(directory, 1024 * 1024, 100, null);
+        // A batch is always accepted when the spool is empty, even if it is larger than the maximum
+        spool.append(TABLE, createEvents("a", "b", "c"), 1L);
+        assertTrue(spool.getSpooledBytes() > 100);
+
+        try {
+            spool.append(TABLE, createEvents("d"), 2L);
+            fail("expected an IOException");
+        } catch (IOException e) {
+            // expected, HBase retries the batch later
+        }
+
+        RecordingHandler handler = new RecordingHandler();
+        spool.start(handler);
+        assertEquals(3, handler.batches.poll(10, TimeUnit.SECONDS).size());
+        waitForSpooledBytes(0);
+        spool.append(TABLE, createEvents("d"), 2L);
+        assertArrayEquals(Bytes.toBytes("d"), handler.batches.poll(10, TimeUnit.SECONDS).get(0).getRow());
+    }
+
+    @Test
+    public void testAppendFailsWhenDrainingStopped() throws Exception {
+        spool = new SepSpool(directory, 1024 * 1024, 0, null);
+        spool.append(TABLE, createEvents("a"), 1L);
+        spool.append(TABLE, createEvents("b"), 2L);
+
+        // Corrupt the body of the first record
+        File segment = directory.listFiles()[0];
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        try {
+            file.seek(20);
+            file.writeInt(12345);
+        } finally {
+            file.close();
+        }
+
+        RecordingHandler handler = new RecordingHandler();
+        spool.start(handler);
+        for (int retry = 0; retry < 100 && !spool.isFailed(); retry++) {
+            Thread.sleep(50);
+        }
+        assertTrue(spool.isFailed());
+        assertNull(handler.batches.poll(100, TimeUnit.MILLISECONDS));
+
+        try {
+            spool.append(TABLE, createEvents("c"), 3L);
+            fail("expected an IOException");
+        } catch (IOException e) {
+            // expected, the batch must not be acknowledged
+        }
+    }
+
+    private int countSegments() {
+        int count = 0;
+        for (String name : directory.list()) {
+            if (name.startsWith("segment-")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void waitForSpooledBytes(long expected) throws InterruptedException {
+        for (int retry = 0; retry < 100 && spool.getSpooledBytes() != expected; retry++) {
+            Thread.sleep(50);
+        }
+        assertEquals(expected, spool.getSpooledBytes());
+    }
+
+    static class RecordingHandler implements SepSpool.Handler {
+
+        BlockingQueue<List<SepEvent>> batches = new LinkedBlockingQueue<List<SepEvent>>();
+        volatile long lastTimestamp;
+
+        @Override
+        public void process(TableName tableName, List<SepEvent> events, long timestamp) throws Exception {
+            lastTimestamp = timestamp;
+            batches.add(events);
+        }
+    }
+}
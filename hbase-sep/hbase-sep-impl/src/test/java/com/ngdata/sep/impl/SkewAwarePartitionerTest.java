@@ -0,0 +1,124 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.sep.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SkewAwarePartitionerTest {
+
+    private static final byte[] TABLE = Bytes.toBytes("table");
+    private static final byte[] HOT_ROW = Bytes.toBytes("hot");
+
+    private SkewAwarePartitioner partitioner;
+
+    @Before
+    public void setUp() {
+        partitioner = new SkewAwarePartitioner(4, 0.5, null);
+    }
+
+    @Test
+    public void testRowStaysOnPartitionWhileInFlight() {
+        byte[] row = Bytes.toBytes("row");
+        int partition = partitioner.acquire(TABLE, row);
+        // Put load on all partitions, including the one of the row
+        for (int i = 0; i < 100; i++) {
+            partitioner.acquire(TABLE, Bytes.toBytes("other" + i));
+        }
+        assertEquals(partition, partitioner.acquire(TABLE, row));
+        partitioner.release(TABLE, row);
+        assertEquals(partition, partitioner.acquire(TABLE, row));
+    }
+
+    @Test
+    public void testSameRowInOtherTableIsPlacedIndependently() {
+        byte[] row = Bytes.toBytes("row");
+        partitioner.acquire(TABLE, row);
+        partitioner.release(TABLE, row);
+        // Releasing the row of one table doesn't affect the row of another table
+        partitioner.acquire(Bytes.toBytes("otherTable"), row);
+        partitioner.release(Bytes.toBytes("otherTable"), row);
+        assertLoads(0, 0, 0, 0);
+    }
+
+    @Test
+    public void testPartitionLoads() {
+        for (int i = 0; i < 1000; i++) {
+            partitioner.acquire(TABLE, Bytes.toBytes("row" + i));
+        }
+        long total = 0;
+        long max = 0;
+        for (int partition = 0; partition < 4; partition++) {
+            total += partitioner.getPartitionLoad(partition);
+            max = Math.max(max, partitioner.getPartitionLoad(partition));
+        }
+        assertEquals(1000, total);
+        // Each row is placed on the least loaded of two partitions, which spreads the rows evenly
+        assertTrue("Max load " + max, max < 1.1 * 250);
+
+        for (int i = 0; i < 1000; i++) {
+            partitioner.release(TABLE, Bytes.toBytes("row" + i));
+        }
+        assertLoads(0, 0, 0, 0);
+    }
+
+    @Test
+    public void testHotRowDetection() {
+        for (int i = 0; i < 1000; i++) {
+            partitioner.acquire(TABLE, HOT_ROW);
+            partitioner.release(TABLE, HOT_ROW);
+            byte[] coldRow = Bytes.toBytes("cold" + i);
+            partitioner.acquire(TABLE, coldRow);
+            partitioner.release(TABLE, coldRow);
+        }
+        assertTrue(partitioner.isHot(HOT_ROW));
+        assertFalse(partitioner.isHot(Bytes.toBytes("cold5")));
+    }
+
+    @Test
+    public void testHotRowIsPlacedOnLeastLoadedPartition() {
+        for (int i = 0; i < 1000; i++) {
+            partitioner.acquire(TABLE, HOT_ROW);
+            partitioner.release(TABLE, HOT_ROW);
+        }
+        for (int i = 0; i < 10; i++) {
+            partitioner.acquire(TABLE, Bytes.toBytes("row" + i));
+        }
+        int leastLoaded = 0;
+        for (int partition = 1; partition < 4; partition++) {
+            if (partitioner.getPartitionLoad(partition) < partitioner.getPartitionLoad(leastLoaded)) {
+                leastLoaded = partition;
+            }
+        }
+        assertEquals(leastLoaded, partitioner.acquire(TABLE, HOT_ROW));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReleaseWithoutAcquire() {
+        partitioner.release(TABLE, Bytes.toBytes("row"));
+    }
+
+    private void assertLoads(long... loads) {
+        for (int partition = 0; partition < loads.length; partition++) {
+            assertEquals(loads[partition], partitioner.getPartitionLoad(partition));
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.sep.util.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RingBufferExecutorTest {
+
+    private RingBufferExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = new RingBufferExecutor(4, Executors.defaultThreadFactory());
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testCapacityRoundedToPowerOfTwo() {
+        assertEquals(4, executor.getCapacity());
+        RingBufferExecutor other = new RingBufferExecutor(100, Executors.defaultThreadFactory());
+        try {
+            assertEquals(128, other.getCapacity());
+        } finally {
+            other.shutdown();
+        }
+    }
+
+    @Test
+    public void testTasksExecutedInSubmissionOrder() throws Exception {
+        final List<Integer> executed = Lists.newArrayList();
+        List<Future<?>> futures = Lists.newArrayList();
+        // Submit many more tasks than there are slots, so that submission has to wait for the worker
+        for (int i = 0; i < 1000; i++) {
+            final int value = i;
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    executed.add(value);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+
+        assertEquals(1000, executed.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Integer.valueOf(i), executed.get(i));
+        }
+    }
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        final int numProducers = 4;
+        final int tasksPerProducer = 5000;
+        final AtomicInteger counter = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(numProducers * tasksPerProducer);
+        List<Thread> producers = Lists.newArrayList();
+        for (int p = 0; p < numProducers; p++) {
+            Thread producer = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < tasksPerProducer; i++) {
+                        executor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                counter.incrementAndGet();
+                                done.countDown();
+                            }
+                        });
+                    }
+                }
+            };
+            producers.add(producer);
+            producer.start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(numProducers * tasksPerProducer, counter.get());
+    }
+
+    @Test
+    public void testShutdownRunsQueuedTasks() throws Exception {
+        final AtomicInteger counter = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    counter.incrementAndGet();
+                }
+            });
+        }
+        executor.shutdown();
+
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(3, counter.get());
+    }
+
+    @Test
+    public void testShutdownWakesWaitingProducer() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        // One task to block the worker, and enough tasks to fill up the ring behind it
+        for (int i = 0; i < 5; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        blocked.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+        final AtomicInteger rejected = new AtomicInteger();
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    rejected.incrementAndGet();
+                }
+            }
+        };
+        producer.start();
+        while (producer.getState() != Thread.State.WAITING) {
+            Thread.sleep(10);
+        }
+
+        executor.shutdown();
+        producer.join(10000);
+
+        assertEquals(1, rejected.get());
+        blocked.countDown();
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testExecuteAfterShutdown() {
+        executor.shutdown();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+    }
+
+}
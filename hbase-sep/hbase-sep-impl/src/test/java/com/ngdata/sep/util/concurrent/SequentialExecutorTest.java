@@ -0,0 +1,170 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.sep.util.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SequentialExecutorTest {
+
+    private ExecutorService threads;
+
+    @Before
+    public void setUp() {
+        threads = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        threads.shutdownNow();
+    }
+
+    @Test
+    public void testManyPartitionsOnFewThreadsKeepOrder() throws Exception {
+        int numPartitions = 20;
+        List<SequentialExecutor> partitions = Lists.newArrayList();
+        final List<List<Integer>> executed = Lists.newArrayList();
+        for (int i = 0; i < numPartitions; i++) {
+            partitions.add(new SequentialExecutor(threads, 4));
+            executed.add(Lists.<Integer>newArrayList());
+        }
+
+        final AtomicInteger concurrentTasks = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        List<Future<?>> futures = Lists.newArrayList();
+        for (int i = 0; i < 2000; i++) {
+            final int value = i;
+            final int partition = i % numPartitions;
+            futures.add(partitions.get(partition).submit(new Runnable() {
+                @Override
+                public void run() {
+                    List<Integer> partitionExecuted = executed.get(partition);
+                    // Tasks of the same partition never overlap, so this doesn't need synchronization
+                    partitionExecuted.add(value);
+                    if (concurrentTasks.incrementAndGet() > 2) {
+                        overlaps.incrementAndGet();
+                    }
+                    concurrentTasks.decrementAndGet();
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+
+        assertEquals(0, overlaps.get());
+        for (int partition = 0; partition < numPartitions; partition++) {
+            List<Integer> partitionExecuted = executed.get(partition);
+            assertEquals(100, partitionExecuted.size());
+            for (int i = 0; i < 100; i++) {
+                assertEquals(Integer.valueOf(i * numPartitions + partition), partitionExecuted.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testSubmitBlocksWhenQueueIsFull() throws Exception {
+        final SequentialExecutor executor = new SequentialExecutor(threads, 1);
+        final CountDownLatch release = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        final CountDownLatch submitted = new CountDownLatch(1);
+        Thread submitter = new Thread() {
+            @Override
+            public void run() {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                    }
+                });
+                submitted.countDown();
+            }
+        };
+        submitter.start();
+        assertFalse(submitted.await(200, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        assertTrue(submitted.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(0, executor.getPendingTaskCount());
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testRejectAfterShutdown() {
+        SequentialExecutor executor = new SequentialExecutor(threads, 1);
+        executor.shutdown();
+        assertTrue(executor.isTerminated());
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+    }
+
+    @Test
+    public void testVirtualThreads() throws Exception {
+        ExecutorService virtualThreads = VirtualThreads.newVirtualThreadPerTaskExecutor("test-");
+        if (!VirtualThreads.isSupported()) {
+            assertNull(virtualThreads);
+            return;
+        }
+        try {
+            SequentialExecutor executor = new SequentialExecutor(virtualThreads, 10);
+            final AtomicInteger counter = new AtomicInteger();
+            List<Future<?>> futures = Lists.newArrayList();
+            for (int i = 0; i < 100; i++) {
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        counter.incrementAndGet();
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+            assertEquals(100, counter.get());
+        } finally {
+            virtualThreads.shutdown();
+        }
+    }
+}
@@ -22,12 +22,15 @@ import javax.management.remote.JMXConnectorFactory;
 import javax.management.remote.JMXServiceURL;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+/**
+ * Keeps JMX connections open, per host and port. Can be used from multiple threads.
+ */
 public class JmxConnections {
-    private Map<String, JMXConnector> connections = new HashMap<String, JMXConnector>();
+    private ConcurrentMap<String, JMXConnector> connections = new ConcurrentHashMap<String, JMXConnector>();
 
     public JMXConnector getConnector(String serverName, int port) throws IOException {
         String hostport = serverName + ":" + port;
@@ -36,11 +39,26 @@ public class JmxConnections {
             JMXServiceURL url = new JMXServiceURL("service:jmx:rmi://" + hostport + "/jndi/rmi://" + hostport + "/jmxrmi");
             connector = JMXConnectorFactory.connect(url);
             connector.connect();
-            connections.put(hostport, connector);
+            JMXConnector existing = connections.putIfAbsent(hostport, connector);
+            if (existing != null) {
+                // another thread connected to the same server in the meantime
+                Closer.close(connector);
+                connector = existing;
+            }
         }
         return connector;
     }
 
+    /**
+     * Closes the connection to a server, e.g. after it failed, so that a new one is made the next time.
+     */
+    public void invalidate(String serverName, int port) {
+        JMXConnector connector = connections.remove(serverName + ":" + port);
+        if (connector != null) {
+            Closer.close(connector);
+        }
+    }
+
     public void close() {
         List<JMXConnector> list = new ArrayList<JMXConnector>(connections.values());
         connections.clear();
@@ -0,0 +1,523 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.sep.tools.monitoring;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.ngdata.sep.tools.monitoring.ReplicationStatus.HLogInfo;
+import com.ngdata.sep.tools.monitoring.ReplicationStatus.Status;
+import com.ngdata.sep.util.zookeeper.ZooKeeperItf;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.data.Stat;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Continuously monitors how far the replication queues are behind, per peer.
+ *
+ * <p>Unlike {@link ReplicationStatusRetriever#collectStatusFromZooKeepeer()}, which reads the complete replication
+ * state one ZooKeeper node and HDFS file after the other, the monitor keeps the state it read before and sets
+ * watches on the ZooKeeper nodes. A {@link #refresh()} only reads the nodes again that changed since the previous
+ * one, and the sizes of hlogs that are no longer the most recent one of their queue are cached. The regionservers
+ * are handled in parallel, for ZooKeeper and HDFS as well as for JMX.
+ *
+ * <p>For every peer, the bytes behind, summed over all of its queues (recovered queues included), are tracked
+ * over the refreshes, from which the drain rate and the time to catch up are derived, see {@link PeerLag}. These
+ * are exported as metrics, see {@link ReplicationMonitorMetrics}.
+ */
+public class ReplicationMonitor implements Closeable {
+    /** Weight of the most recent refresh in the smoothed drain rate. */
+    static final double DRAIN_RATE_SMOOTHING = 0.3;
+
+    private final Log log = LogFactory.getLog(getClass());
+    private final ZooKeeperItf zk;
+    private final ReplicationStatusRetriever retriever;
+    private final ExecutorService executor;
+    private final JmxConnections jmxConnections;
+    private final ReplicationMonitorMetrics metrics;
+
+    /** Paths of the ZooKeeper nodes of which a watch fired since they were last read. */
+    private final Set<String> changedPaths = Sets.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    /** Set when watches might have been lost, after which everything is read again. */
+    private volatile boolean resync = true;
+    private final Watcher watcher = new Watcher() {
+        @Override
+        public void process(WatchedEvent event) {
+            if (event.getType() == Event.EventType.None) {
+                if (event.getState() == Event.KeeperState.Expired) {
+                    resync = true;
+                }
+            } else if (event.getPath() != null) {
+                changedPaths.add(event.getPath());
+            }
+        }
+    };
+
+    // The state as of the previous refresh
+    private List<String> servers;
+    private Map<String, ServerState> serverStates = Collections.emptyMap();
+    private Map<String, Long> hlogSizes = Collections.emptyMap();
+    private volatile ReplicationStatus replicationStatus;
+    private volatile Map<String, PeerLag> lagByPeer = Collections.emptyMap();
+    private volatile long lastRefreshDuration;
+
+    /**
+     * @param threads number of regionservers that are handled in parallel
+     * @param enableJmx whether to retrieve information from the regionservers through JMX, see
+     *                  {@link ReplicationStatusRetriever#addStatusFromJmx(ReplicationStatus)}
+     */
+    public ReplicationMonitor(ZooKeeperItf zk, ReplicationStatusRetriever retriever, int threads, boolean enableJmx) {
+        this.zk = zk;
+        this.retriever = retriever;
+        this.executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("replication-monitor-%d").setDaemon(true).build());
+        this.jmxConnections = enableJmx ? new JmxConnections() : null;
+        this.metrics = new ReplicationMonitorMetrics(this);
+    }
+
+    /**
+     * Brings the replication status and the lag of the peers up to date.
+     */
+    public synchronized void refresh() throws Exception {
+        long startedAt = System.currentTimeMillis();
+
+        // Drain the changes before reading, a change while reading marks the node for the next refresh
+        boolean fullRead = resync;
+        resync = false;
+        Set<String> changed = Sets.newHashSet(changedPaths);
+        changedPaths.removeAll(changed);
+        if (fullRead) {
+            log.debug("Reading all replication queues from ZooKeeper");
+        }
+
+        try {
+            readReplicationStatus(changed, fullRead);
+        } catch (Exception e) {
+            // The changes that were drained might not have been read
+            resync = true;
+            throw e;
+        }
+        this.lagByPeer = computeLag(replicationStatus, lagByPeer, System.currentTimeMillis());
+        this.lastRefreshDuration = System.currentTimeMillis() - startedAt;
+    }
+
+    private void readReplicationStatus(Set<String> changed, boolean fullRead) throws Exception {
+        String regionServerPath = retriever.getRegionServerPath();
+        if (fullRead || servers == null || changed.contains(regionServerPath)) {
+            servers = readRegionServers(regionServerPath);
+        }
+
+        final Map<String, Long> newHLogSizes = new ConcurrentHashMap<String, Long>();
+        List<Callable<ServerState>> tasks = Lists.newArrayList();
+        for (String server : servers) {
+            tasks.add(new ServerRefresh(server, regionServerPath, serverStates.get(server), changed, fullRead,
+                    newHLogSizes));
+        }
+        Map<String, ServerState> newServerStates = Maps.newHashMap();
+        List<Future<ServerState>> futures = executor.invokeAll(tasks);
+        for (int i = 0; i < futures.size(); i++) {
+            ServerState serverState = getResult(futures.get(i));
+            if (serverState != null) {
+                newServerStates.put(servers.get(i), serverState);
+            }
+        }
+        serverStates = newServerStates;
+        hlogSizes = newHLogSizes;
+
+        Map<String, Map<String, Status>> statusByPeerAndServer = Maps.newHashMap();
+        for (Map.Entry<String, ServerState> serverEntry : serverStates.entrySet()) {
+            for (Map.Entry<String, Status> queueEntry : serverEntry.getValue().statusByQueue.entrySet()) {
+                Map<String, Status> statusByServer = statusByPeerAndServer.get(queueEntry.getKey());
+                if (statusByServer == null) {
+                    statusByServer = new TreeMap<String, Status>();
+                    statusByPeerAndServer.put(queueEntry.getKey(), statusByServer);
+                }
+                statusByServer.put(serverEntry.getKey(), queueEntry.getValue());
+            }
+        }
+        ReplicationStatus replicationStatus = new ReplicationStatus(statusByPeerAndServer);
+
+        if (jmxConnections != null) {
+            try {
+                retriever.addStatusFromJmx(replicationStatus, jmxConnections, executor);
+            } catch (Exception e) {
+                log.warn("Error retrieving replication status through JMX", e);
+            }
+        }
+
+        this.replicationStatus = replicationStatus;
+    }
+
+    private List<String> readRegionServers(String regionServerPath) throws KeeperException, InterruptedException {
+        // Consider missing replication path in ZK as no replication peer is configured, watch for its creation
+        if (zk.exists(regionServerPath, watcher) == null) {
+            return Collections.emptyList();
+        }
+        try {
+            return zk.getChildren(regionServerPath, watcher);
+        } catch (KeeperException.NoNodeException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    private static <T> T getResult(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwables.propagateIfInstanceOf(e.getCause(), Exception.class);
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * Aggregates the queues per peer, and updates the lag of each peer with it.
+     */
+    static Map<String, PeerLag> computeLag(ReplicationStatus replicationStatus, Map<String, PeerLag> previousLag,
+            long now) {
+        Map<String, long[]> totalsByPeer = new TreeMap<String, long[]>();
+        for (String queueId : replicationStatus.getPeersAndRecoveredQueues()) {
+            String peerId = ReplicationStatus.getPeerId(queueId);
+            long[] totals = totalsByPeer.get(peerId);
+            if (totals == null) {
+                // bytes behind, number of queues, number of hlogs
+                totals = new long[3];
+                totalsByPeer.put(peerId, totals);
+            }
+            for (String server : replicationStatus.getServers(queueId)) {
+                Status status = replicationStatus.getStatus(queueId, server);
+                long bytesBehind = status.getBytesBehind();
+                totals[0] = bytesBehind == -1 || totals[0] == -1 ? -1 : totals[0] + bytesBehind;
+                totals[1]++;
+                totals[2] += status.getHLogCount();
+            }
+        }
+
+        ImmutableMap.Builder<String, PeerLag> lagByPeer = ImmutableMap.builder();
+        for (Map.Entry<String, long[]> entry : totalsByPeer.entrySet()) {
+            long[] totals = entry.getValue();
+            PeerLag lag = previousLag.get(entry.getKey());
+            if (lag == null) {
+                lag = new PeerLag(entry.getKey());
+            }
+            lagByPeer.put(entry.getKey(), lag.update(totals[0], (int)totals[1], (int)totals[2], now));
+        }
+        return lagByPeer.build();
+    }
+
+    /**
+     * Returns the replication status as of the last refresh, or null if there was none yet.
+     */
+    public ReplicationStatus getReplicationStatus() {
+        return replicationStatus;
+    }
+
+    /**
+     * Returns the lag as of the last refresh, by peer id.
+     */
+    public Map<String, PeerLag> getLagByPeer() {
+        return lagByPeer;
+    }
+
+    /**
+     * Returns the number of milliseconds the last refresh took.
+     */
+    public long getLastRefreshDuration() {
+        return lastRefreshDuration;
+    }
+
+    @Override
+    public void close() throws IOException {
+        metrics.shutdown();
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (jmxConnections != null) {
+            jmxConnections.close();
+        }
+    }
+
+    /**
+     * Refreshes the queues of one regionserver, reusing what did not change since the previous refresh.
+     */
+    private class ServerRefresh implements Callable<ServerState> {
+        private final String server;
+        private final String serverPath;
+        private final ServerState previous;
+        private final Set<String> changed;
+        private final boolean fullRead;
+        private final Map<String, Long> newHLogSizes;
+
+        ServerRefresh(String server, String regionServerPath, ServerState previous, Set<String> changed,
+                boolean fullRead, Map<String, Long> newHLogSizes) {
+            this.server = server;
+            this.serverPath = regionServerPath + "/" + server;
+            this.previous = previous;
+            this.changed = changed;
+            this.fullRead = fullRead;
+            this.newHLogSizes = newHLogSizes;
+        }
+
+        private boolean mustRead(String path) {
+            return previous == null || fullRead || changed.contains(path);
+        }
+
+        @Override
+        public ServerState call() throws Exception {
+            List<String> queueIds;
+            if (mustRead(serverPath)) {
+                try {
+                    queueIds = zk.getChildren(serverPath, watcher);
+                } catch (KeeperException.NoNodeException e) {
+                    // server was removed since we read the list of servers
+                    return null;
+                }
+            } else {
+                queueIds = previous.queueIds;
+            }
+
+            Map<String, QueueState> queues = Maps.newHashMap();
+            Map<String, Status> statusByQueue = Maps.newHashMap();
+            for (String queueId : queueIds) {
+                QueueState queue = readQueue(serverPath + "/" + queueId,
+                        previous != null ? previous.queues.get(queueId) : null);
+                if (queue != null) {
+                    queues.put(queueId, queue);
+                    statusByQueue.put(queueId, toStatus(queue));
+                }
+            }
+            return new ServerState(queueIds, queues, statusByQueue);
+        }
+
+        private QueueState readQueue(String queuePath, QueueState previousQueue) throws Exception {
+            List<String> hlogs;
+            if (previousQueue == null || mustRead(queuePath)) {
+                // The hlogs are not correctly sorted when we get them from ZK
+                SortedSet<String> sortedHLogs = new TreeSet<String>(Collections.reverseOrder());
+                try {
+                    sortedHLogs.addAll(zk.getChildren(queuePath, watcher));
+                } catch (KeeperException.NoNodeException e) {
+                    // queue was removed since we read the queues of the server
+                    return null;
+                }
+                hlogs = Lists.newArrayList(sortedHLogs);
+            } else {
+                hlogs = previousQueue.hlogs;
+            }
+
+            Map<String, Long> positions = Maps.newHashMap();
+            for (String hlog : hlogs) {
+                String hlogPath = queuePath + "/" + hlog;
+                Long position = previousQueue != null ? previousQueue.positions.get(hlog) : null;
+                if (position == null || mustRead(hlogPath)) {
+                    try {
+                        byte[] data = zk.getData(hlogPath, watcher, new Stat());
+                        // Determine position in hlog, if already started on the hlog
+                        position = -1L;
+                        if (data != null && data.length > 0) {
+                            position = retriever.parseHLogPositionFrom(retriever.removeMetaData(data));
+                        }
+                    } catch (KeeperException.NoNodeException e) {
+                        // fine, hlog was processed since we read the queue, the queue's watch has fired
+                        continue;
+                    }
+                }
+                positions.put(hlog, position);
+            }
+            return new QueueState(hlogs, positions);
+        }
+
+        private Status toStatus(QueueState queue) throws IOException {
+            Status status = new Status();
+            for (int i = 0; i < queue.hlogs.size(); i++) {
+                String hlog = queue.hlogs.get(i);
+                Long position = queue.positions.get(hlog);
+                if (position == null) {
+                    continue;
+                }
+                HLogInfo hlogInfo = new HLogInfo(hlog);
+                hlogInfo.position = position;
+                hlogInfo.size = getHLogSize(hlog, i == 0);
+                status.hlogs.add(hlogInfo);
+            }
+            return status;
+        }
+
+        /**
+         * Returns the size of an hlog, which is only read from HDFS if the hlog might still be written.
+         */
+        private long getHLogSize(String hlog, boolean mostRecent) throws IOException {
+            if (mostRecent) {
+                return retriever.getLogFileSize(server, hlog);
+            }
+            Long size = newHLogSizes.get(hlog);
+            if (size == null) {
+                size = hlogSizes.get(hlog);
+            }
+            if (size == null) {
+                size = retriever.getLogFileSize(server, hlog);
+            }
+            if (size != -1) {
+                newHLogSizes.put(hlog, size);
+            }
+            return size;
+        }
+    }
+
+    /**
+     * The replication queues of one regionserver, as read during a refresh.
+     */
+    private static class ServerState {
+        final List<String> queueIds;
+        final Map<String, QueueState> queues;
+        final Map<String, Status> statusByQueue;
+
+        ServerState(List<String> queueIds, Map<String, QueueState> queues, Map<String, Status> statusByQueue) {
+            this.queueIds = queueIds;
+            this.queues = queues;
+            this.statusByQueue = statusByQueue;
+        }
+    }
+
+    /**
+     * The hlogs of one replication queue, as read during a refresh.
+     */
+    private static class QueueState {
+        /** Most recent hlog first. */
+        final List<String> hlogs;
+        final Map<String, Long> positions;
+
+        QueueState(List<String> hlogs, Map<String, Long> positions) {
+            this.hlogs = hlogs;
+            this.positions = positions;
+        }
+    }
+
+    /**
+     * How far the queues of one peer are behind, as of a refresh. Instances are immutable.
+     */
+    public static class PeerLag {
+        private final String peerId;
+        private final long bytesBehind;
+        private final int queueCount;
+        private final int hlogCount;
+        private final double drainRate;
+        private final long timestamp;
+
+        PeerLag(String peerId) {
+            this(peerId, -1, 0, 0, Double.NaN, 0);
+        }
+
+        private PeerLag(String peerId, long bytesBehind, int queueCount, int hlogCount, double drainRate,
+                long timestamp) {
+            this.peerId = peerId;
+            this.bytesBehind = bytesBehind;
+            this.queueCount = queueCount;
+            this.hlogCount = hlogCount;
+            this.drainRate = drainRate;
+            this.timestamp = timestamp;
+        }
+
+        /**
+         * Returns the lag after a new refresh. The drain rate is smoothed over the refreshes, and is only updated if
+         * the bytes behind are known both now and as of the previous refresh.
+         */
+        PeerLag update(long bytesBehind, int queueCount, int hlogCount, long now) {
+            double drainRate = this.drainRate;
+            if (bytesBehind != -1 && this.bytesBehind != -1 && now > timestamp) {
+                double rate = (this.bytesBehind - bytesBehind) * 1000d / (now - timestamp);
+                drainRate = Double.isNaN(drainRate)
+                        ? rate : DRAIN_RATE_SMOOTHING * rate + (1 - DRAIN_RATE_SMOOTHING) * drainRate;
+            }
+            return new PeerLag(peerId, bytesBehind, queueCount, hlogCount, drainRate, now);
+        }
+
+        public String getPeerId() {
+            return peerId;
+        }
+
+        /**
+         * Returns the number of bytes the queues of the peer still need to ship, or -1 if unknown. See
+         * {@link Status#getBytesBehind()}.
+         */
+        public long getBytesBehind() {
+            return bytesBehind;
+        }
+
+        /**
+         * Returns the number of queues of the peer, over all regionservers, recovered queues included.
+         */
+        public int getQueueCount() {
+            return queueCount;
+        }
+
+        /**
+         * Returns the number of hlogs queued for the peer, the current hlog of each queue included.
+         */
+        public int getHLogCount() {
+            return hlogCount;
+        }
+
+        /**
+         * Returns the rate, in bytes per second, at which the bytes behind decrease. This is the rate at which
+         * edits are shipped minus the rate at which they are written, so it is negative when the peer falls further
+         * behind. Returns NaN until it has been measured over two refreshes.
+         */
+        public double getDrainRate() {
+            return drainRate;
+        }
+
+        /**
+         * Returns the estimated number of milliseconds until the peer has caught up, assuming the current drain
+         * rate. Returns 0 if the peer is not behind, and -1 if it is not catching up or this is not known.
+         */
+        public long getEta() {
+            if (bytesBehind == 0) {
+                return 0;
+            }
+            if (bytesBehind == -1 || Double.isNaN(drainRate) || drainRate <= 0) {
+                return -1;
+            }
+            return (long)(bytesBehind * 1000d / drainRate);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.sep.tools.monitoring;
+
+import com.google.common.collect.ImmutableList;
+import com.ngdata.sep.util.io.Closer;
+import com.ngdata.sep.util.zookeeper.ZkUtil;
+import com.ngdata.sep.util.zookeeper.ZooKeeperItf;
+import joptsimple.OptionException;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.PropertyConfigurator;
+import org.joda.time.DateTime;
+
+import java.io.PrintStream;
+
+/**
+ * Tool that keeps monitoring how far HBase replication is behind, per peer, until it is stopped. Besides being
+ * printed, the lag is exported as metrics (the "ReplicationMonitor" metrics prefix), see
+ * {@link ReplicationMonitorMetrics}.
+ */
+public class ReplicationMonitorCli {
+
+    public static void main(String[] args) throws Exception {
+        new ReplicationMonitorCli().run(args);
+    }
+
+    public void run(String[] args) throws Exception {
+        LogManager.resetConfiguration();
+        PropertyConfigurator.configure(getClass().getResource("log4j.properties"));
+
+        OptionParser parser =  new OptionParser();
+        OptionSpec enableJmxOption = parser.accepts("enable-jmx",
+                "use JMX to retrieve info from HBase regionservers (port " + ReplicationStatusRetriever.HBASE_JMX_PORT + ")");
+        OptionSpec<String> zkOption = parser
+                .acceptsAll(ImmutableList.of("z"), "ZooKeeper connection string, defaults to localhost")
+                .withRequiredArg().ofType(String.class)
+                .defaultsTo("localhost");
+        OptionSpec<Integer> intervalOption = parser
+                .acceptsAll(ImmutableList.of("interval"), "Seconds between refreshes of the replication status")
+                .withRequiredArg().ofType(Integer.class)
+                .defaultsTo(10);
+        OptionSpec<Integer> threadsOption = parser
+                .acceptsAll(ImmutableList.of("threads"), "Number of regionservers that are queried in parallel")
+                .withRequiredArg().ofType(Integer.class)
+                .defaultsTo(20);
+
+        OptionSpec<Integer> hbaseMasterPortOption = parser
+                .acceptsAll(ImmutableList.of("hbase-master-port"), "HBase Master web ui port number")
+                .withRequiredArg().ofType(Integer.class)
+                .defaultsTo(16010); // HBASE-10123 and OPSAPS-19200
+        OptionSpec<Void> useSSL = parser
+            .acceptsAll(ImmutableList.of("use-ssl"), "Use SSL/TLS while communicating with HBase Master web ui");
+
+        OptionSpec<String> zookeeperZNodeParentOption = parser
+            .acceptsAll(ImmutableList.of("zookeeper.znode.parent"), "HBase param zookeeper.znode.parent, defaults to /hbase")
+            .withRequiredArg().ofType(String.class);
+
+        OptionSet options = null;
+        try {
+            options = parser.parse(args);
+        } catch (OptionException e) {
+            System.out.println("Error parsing command line options:");
+            System.out.println(e.getMessage());
+            parser.printHelpOn(System.out);
+            System.exit(1);
+        }
+
+        int interval = options.valueOf(intervalOption);
+        int threads = options.valueOf(threadsOption);
+        if (interval < 1 || threads < 1) {
+            System.out.println("The interval and the number of threads should be at least 1");
+            System.exit(1);
+        }
+
+        String zkConnectString = options.valueOf(zkOption);
+
+        System.out.println("Connecting to Zookeeper " + zkConnectString + "...");
+        ZooKeeperItf zk = ZkUtil.connect(zkConnectString, 30000);
+
+        ReplicationStatusRetriever retriever = new ReplicationStatusRetriever(zk, options.valueOf(hbaseMasterPortOption), options.has(useSSL), options.valueOf(zookeeperZNodeParentOption));
+
+        DefaultMetricsSystem.initialize("ReplicationMonitor");
+        ReplicationMonitor monitor = new ReplicationMonitor(zk, retriever, threads, options.has(enableJmxOption));
+        try {
+            while (true) {
+                refreshAndPrint(monitor, System.out, System.err);
+                Thread.sleep(interval * 1000L);
+            }
+        } finally {
+            Closer.close(monitor);
+            DefaultMetricsSystem.shutdown();
+            Closer.close(zk);
+        }
+    }
+
+    /**
+     * Refreshes the monitor and prints the lag. A failed refresh is only reported, as the monitor then reads the
+     * complete replication status the next time.
+     */
+    static void refreshAndPrint(ReplicationMonitor monitor, PrintStream out, PrintStream err)
+            throws InterruptedException {
+        try {
+            monitor.refresh();
+            out.println();
+            out.println(new DateTime() + ", refreshed in " + monitor.getLastRefreshDuration() + " ms");
+            ReplicationStatusReport.printLagReport(monitor.getLagByPeer(), out);
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            err.println("Error refreshing the replication status, will read it completely the next time");
+            e.printStackTrace(err);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.sep.tools.monitoring;
+
+import com.ngdata.sep.tools.monitoring.ReplicationMonitor.PeerLag;
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
+import org.apache.hadoop.metrics2.lib.Interns;
+
+/**
+ * Exports the lag of the replication peers, as measured by a {@link ReplicationMonitor}.
+ *
+ * <p>The metrics of a peer are named after it, like the replication source metrics of HBase, e.g.
+ * {@code peer.Indexer_myindexer.bytesBehind}.
+ */
+public class ReplicationMonitorMetrics implements MetricsSource {
+    private static final String SOURCE_NAME = "SEP.ReplicationMonitor";
+    private static final String RECORD_NAME = "ReplicationMonitor";
+    private static final String CONTEXT = "repository";
+
+    private final ReplicationMonitor monitor;
+
+    public ReplicationMonitorMetrics(ReplicationMonitor monitor) {
+        this.monitor = monitor;
+        DefaultMetricsSystem.instance().register(SOURCE_NAME, "HBase replication lag per peer", this);
+    }
+
+    @Override
+    public void getMetrics(MetricsCollector collector, boolean all) {
+        MetricsRecordBuilder record = collector.addRecord(RECORD_NAME).setContext(CONTEXT);
+        record.addGauge(Interns.info("refreshTime", "Milliseconds the last refresh of the replication status took"),
+                monitor.getLastRefreshDuration());
+        for (PeerLag lag : monitor.getLagByPeer().values()) {
+            String prefix = "peer." + lag.getPeerId() + ".";
+            record.addGauge(Interns.info(prefix + "bytesBehind",
+                    "Bytes of hlogs that still need to be shipped to the peer, -1 if unknown"),
+                    lag.getBytesBehind());
+            record.addGauge(Interns.info(prefix + "drainRate",
+                    "Bytes per second at which the bytes behind decrease, negative when falling behind"),
+                    Double.isNaN(lag.getDrainRate()) ? 0 : lag.getDrainRate());
+            record.addGauge(Interns.info(prefix + "etaSeconds",
+                    "Estimated seconds until the peer has caught up, -1 if it is not catching up"),
+                    lag.getEta() == -1 ? -1 : lag.getEta() / 1000);
+            record.addGauge(Interns.info(prefix + "queueCount",
+                    "Replication queues of the peer over all regionservers, recovered queues included"),
+                    lag.getQueueCount());
+            record.addGauge(Interns.info(prefix + "hlogCount",
+                    "Hlogs queued for the peer over all regionservers, including the ones being shipped"),
+                    lag.getHLogCount());
+        }
+    }
+
+    public void shutdown() {
+        DefaultMetricsSystem.instance().unregisterSource(SOURCE_NAME);
+    }
+}
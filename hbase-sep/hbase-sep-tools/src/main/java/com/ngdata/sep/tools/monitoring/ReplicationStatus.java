@@ -68,6 +68,15 @@ public class ReplicationStatus {
         return statusByServer.get(server);
     }
 
+    /**
+     * Returns the id of the peer to which a queue ships, which for recovered queues is the part of the queue id
+     * before the names of the servers it was recovered from.
+     */
+    public static String getPeerId(String queueId) {
+        int dashPos = queueId.indexOf('-');
+        return dashPos == -1 ? queueId : queueId.substring(0, dashPos);
+    }
+
     public static Predicate<String> RECOVERED_QUEUE_PREDICATE = new Predicate<String>() {
         @Override
         public boolean apply(@Nullable String peerId) {
@@ -115,6 +124,27 @@ public class ReplicationStatus {
             return totalSize;
         }
 
+        /**
+         * Returns the number of bytes that still need to be shipped: the hlogs queued after the current one, and the
+         * remainder of the current hlog. Returns -1 if the size of one of these hlogs is unknown. As the size of an
+         * hlog that is being written only includes its completed blocks, this is an underestimate.
+         */
+        long getBytesBehind() {
+            long bytesBehind = 0;
+            for (HLogInfo hlog : hlogs) {
+                if (hlog.size == -1) {
+                    return -1;
+                }
+                if (hlog.position != -1) {
+                    // we arrived at the current hlog
+                    bytesBehind += Math.max(0, hlog.size - hlog.position);
+                    break;
+                }
+                bytesBehind += hlog.size;
+            }
+            return bytesBehind;
+        }
+
         float getProgressOnCurrentHLog() {
             for (HLogInfo hlog : hlogs) {
                 if (hlog.position != -1) {
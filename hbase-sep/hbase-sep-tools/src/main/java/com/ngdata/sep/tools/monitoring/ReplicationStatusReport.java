@@ -15,12 +15,15 @@
  */
 package com.ngdata.sep.tools.monitoring;
 
+import com.ngdata.sep.tools.monitoring.ReplicationMonitor.PeerLag;
+
 import java.io.PrintStream;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Generate a text report of the replication status.
@@ -77,6 +80,24 @@ public class ReplicationStatusReport {
         out.println();
     }
 
+    /**
+     * Prints how far each peer is behind, as measured by a {@link ReplicationMonitor}.
+     */
+    public static void printLagReport(Map<String, PeerLag> lagByPeer, PrintStream out) {
+        if (lagByPeer.isEmpty()) {
+            out.println("There are no peer clusters.");
+            return;
+        }
+
+        String columnFormat = "  | %1$-40.40s | %2$-10.10s | %3$-10.10s | %4$-15.15s | %5$-15.15s | %6$-18.18s |\n";
+        out.format(columnFormat, "Peer", "Queues", "HLogs", "Bytes behind", "Drain rate", "Time to catch up");
+        for (String peerId : sort(lagByPeer.keySet())) {
+            PeerLag lag = lagByPeer.get(peerId);
+            out.format(columnFormat, peerId, String.valueOf(lag.getQueueCount()), String.valueOf(lag.getHLogCount()),
+                    formatAsMB(lag.getBytesBehind()), formatRate(lag.getDrainRate()), formatEta(lag));
+        }
+    }
+
     private static List<String> sort(Collection<String> items) {
         List<String> things = new ArrayList<String>(items);
         Collections.sort(things);
@@ -92,6 +113,25 @@ public class ReplicationStatusReport {
         }
     }
 
+    private static String formatRate(double bytesPerSecond) {
+        if (Double.isNaN(bytesPerSecond)) {
+            return "unknown";
+        } else {
+            DecimalFormat format = new DecimalFormat("#.## MB/s");
+            return format.format(bytesPerSecond / 1000d / 1000d);
+        }
+    }
+
+    private static String formatEta(PeerLag lag) {
+        if (lag.getEta() != -1) {
+            return formatDuration(lag.getEta());
+        } else if (lag.getBytesBehind() == -1 || Double.isNaN(lag.getDrainRate())) {
+            return "unknown";
+        } else {
+            return "not catching up";
+        }
+    }
+
     private static String formatProgress(float progress) {
         if (Float.isNaN(progress)) {
             return "unknown";
@@ -15,7 +15,11 @@
  */
 package com.ngdata.sep.tools.monitoring;
 
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.TreeMultimap;
 import com.ngdata.sep.tools.monitoring.ReplicationStatus.HLogInfo;
 import com.ngdata.sep.tools.monitoring.ReplicationStatus.Status;
 import com.ngdata.sep.util.zookeeper.ZooKeeperItf;
@@ -55,12 +59,18 @@ import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Collects replication status information.
  *
  * <p>Usage: first call {@link #collectStatusFromZooKeepeer()}, then optionally call
  * {@link #addStatusFromJmx(ReplicationStatus)} for more information.
+ *
+ * <p>To keep following the status, use a {@link ReplicationMonitor}, which only reads what changed.
  */
 public class ReplicationStatusRetriever {
     private final ZooKeeperItf zk;
@@ -126,7 +136,7 @@ public class ReplicationStatusRetriever {
       }
     }
 
-    private long parseHLogPositionFrom(byte[] data) {
+    long parseHLogPositionFrom(byte[] data) {
       try {
         return ZKUtil.parseWALPositionFrom(data);
       } catch (DeserializationException e) {
@@ -154,7 +164,7 @@ public class ReplicationStatusRetriever {
     public ReplicationStatus collectStatusFromZooKeepeer() throws Exception {
         Map<String, Map<String, Status>> statusByPeerAndServer = Maps.newHashMap();
 
-        String regionServerPath = zookeeperZNodeParent + "/replication/rs";
+        String regionServerPath = getRegionServerPath();
 
         // Consider missing replication path in ZK as no replication peer is configured
         if (zk.exists(regionServerPath, false) == null) {
@@ -225,43 +235,100 @@ public class ReplicationStatusRetriever {
         return new ReplicationStatus(statusByPeerAndServer);
     }
     
+    /**
+     * Returns the ZooKeeper node below which the replication queues are kept, per regionserver.
+     */
+    String getRegionServerPath() {
+        return zookeeperZNodeParent + "/replication/rs";
+    }
+
     public void addStatusFromJmx(ReplicationStatus replicationStatus) throws Exception {
         JmxConnections jmxConnections = new JmxConnections();
+        try {
+            addStatusFromJmx(replicationStatus, jmxConnections, null);
+        } finally {
+            jmxConnections.close();
+        }
+    }
 
+    /**
+     * Adds the information from JMX, querying the regionservers in parallel.
+     *
+     * @param jmxConnections connections to reuse, the connection to a server is invalidated when it fails
+     * @param executor executor on which the regionservers are queried, null to query them one after the other
+     */
+    public void addStatusFromJmx(final ReplicationStatus replicationStatus, final JmxConnections jmxConnections,
+            ExecutorService executor) throws Exception {
+        // Group the queues per server, so that every server is queried by a single task
+        final SetMultimap<String, String> peerIdsByServer = TreeMultimap.create();
         for (String peerId : replicationStatus.getPeersAndRecoveredQueues()) {
             for (String server : replicationStatus.getServers(peerId)) {
-                Status status = replicationStatus.getStatus(peerId, server);
-                String hostName = ServerName.parseHostname(server);
+                peerIdsByServer.put(server, peerId);
+            }
+        }
 
-                MBeanServerConnection connection = jmxConnections.getConnector(hostName, HBASE_JMX_PORT).getMBeanServerConnection();
-                ObjectName replSourceBean = new ObjectName("Hadoop:service=HBase,name=RegionServer,sub=Replication");
-                String peerIdStr = URLEncoder.encode(peerId, "UTF8");
+        List<Callable<Void>> tasks = Lists.newArrayList();
+        for (final String server : peerIdsByServer.keySet()) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    String hostName = ServerName.parseHostname(server);
+                    try {
+                        for (String peerId : peerIdsByServer.get(server)) {
+                            addStatusFromJmx(replicationStatus.getStatus(peerId, server), peerId,
+                                    jmxConnections.getConnector(hostName, HBASE_JMX_PORT).getMBeanServerConnection());
+                        }
+                    } catch (IOException e) {
+                        jmxConnections.invalidate(hostName, HBASE_JMX_PORT);
+                        throw e;
+                    }
+                    return null;
+                }
+            });
+        }
 
-                // Fetch metrics such as Source.Indexer_MyNRTIndexer.ageOfLastShippedOp_max
+        if (executor == null) {
+            for (Callable<Void> task : tasks) {
+                task.call();
+            }
+        } else {
+            List<Future<Void>> futures = executor.invokeAll(tasks);
+            for (Future<Void> future : futures) {
                 try {
-                    status.ageOfLastShippedOp = (Long)connection.getAttribute(replSourceBean, "Source." + peerIdStr + ".ageOfLastShippedOp_max");
-                } catch (AttributeNotFoundException e) {
-                    // could be the case if the queue disappeared since we read info from ZK
-                } catch (InstanceNotFoundException e) {
-                    // could be the case if the queue disappeared since we read info from ZK
-                }
-                
-                // Fetch metrics such as source.Indexer_MyNRTIndexer.shippedOps etc
-                MBeanInfo info = connection.getMBeanInfo(replSourceBean);
-                for (MBeanAttributeInfo attrInfo : info.getAttributes()) {
-                    String longName = attrInfo.getName();
-                    String prefix1 = "Source." + peerIdStr + ".";
-                    String prefix2 = "source." + peerIdStr + ".";    
-                    if (longName.startsWith(prefix1) || longName.startsWith(prefix2)) {
-                        Object attr = connection.getAttribute(replSourceBean, longName);
-                        String shortName = longName.substring(prefix1.length(), longName.length());
-                        status.jmxAttributes.put(shortName, attr);
-                    }
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwables.propagateIfInstanceOf(e.getCause(), Exception.class);
+                    throw Throwables.propagate(e.getCause());
                 }
             }
         }
+    }
+
+    private void addStatusFromJmx(Status status, String peerId, MBeanServerConnection connection) throws Exception {
+        ObjectName replSourceBean = new ObjectName("Hadoop:service=HBase,name=RegionServer,sub=Replication");
+        String peerIdStr = URLEncoder.encode(peerId, "UTF8");
 
-        jmxConnections.close();
+        // Fetch metrics such as Source.Indexer_MyNRTIndexer.ageOfLastShippedOp_max
+        try {
+            status.ageOfLastShippedOp = (Long)connection.getAttribute(replSourceBean, "Source." + peerIdStr + ".ageOfLastShippedOp_max");
+        } catch (AttributeNotFoundException e) {
+            // could be the case if the queue disappeared since we read info from ZK
+        } catch (InstanceNotFoundException e) {
+            // could be the case if the queue disappeared since we read info from ZK
+        }
+
+        // Fetch metrics such as source.Indexer_MyNRTIndexer.shippedOps etc
+        MBeanInfo info = connection.getMBeanInfo(replSourceBean);
+        for (MBeanAttributeInfo attrInfo : info.getAttributes()) {
+            String longName = attrInfo.getName();
+            String prefix1 = "Source." + peerIdStr + ".";
+            String prefix2 = "source." + peerIdStr + ".";
+            if (longName.startsWith(prefix1) || longName.startsWith(prefix2)) {
+                Object attr = connection.getAttribute(replSourceBean, longName);
+                String shortName = longName.substring(prefix1.length(), longName.length());
+                status.jmxAttributes.put(shortName, attr);
+            }
+        }
     }
 
     /**
@@ -269,7 +336,7 @@ public class ReplicationStatusRetriever {
      * @param serverName the 'unique-over-restarts' name, i.e. hostname with start code suffix
      * @param hlogName name of HLog
      */
-    private long getLogFileSize(String serverName, String hlogName) throws IOException {
+    long getLogFileSize(String serverName, String hlogName) throws IOException {
         Path hbaseLogDir = new Path(hbaseRootDir, getWALDirectoryName(serverName));
         Path path = new Path(hbaseLogDir, hlogName);
         try {
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.sep.tools.monitoring;
+
+import com.google.common.collect.ImmutableMap;
+import com.ngdata.sep.tools.monitoring.ReplicationMonitor.PeerLag;
+import org.apache.zookeeper.KeeperException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ReplicationMonitorCliTest {
+
+    private ReplicationMonitor monitor;
+    private ByteArrayOutputStream out;
+    private ByteArrayOutputStream err;
+
+    @Before
+    public void setUp() {
+        monitor = mock(ReplicationMonitor.class);
+        out = new ByteArrayOutputStream();
+        err = new ByteArrayOutputStream();
+    }
+
+    private void refreshAndPrint() throws InterruptedException {
+        ReplicationMonitorCli.refreshAndPrint(monitor, new PrintStream(out, true), new PrintStream(err, true));
+    }
+
+    @Test
+    public void testRefreshAndPrint() throws Exception {
+        PeerLag catchingUp = new PeerLag("peer1").update(3000, 1, 1, 0).update(2000, 1, 1, 1000);
+        PeerLag fallingBehind = new PeerLag("peer2").update(1000, 1, 1, 0).update(2000, 1, 1, 1000);
+        when(monitor.getLagByPeer()).thenReturn(ImmutableMap.of("peer1", catchingUp, "peer2", fallingBehind));
+        when(monitor.getLastRefreshDuration()).thenReturn(50L);
+
+        refreshAndPrint();
+
+        String report = out.toString();
+        assertTrue(report.contains("refreshed in 50 ms"));
+        assertTrue(report.contains("0d 00:00:02.000"));
+        assertTrue(report.contains("not catching up"));
+        assertEquals("", err.toString());
+    }
+
+    @Test
+    public void testRefreshAndPrint_LagNotMeasuredYet() throws Exception {
+        when(monitor.getLagByPeer()).thenReturn(ImmutableMap.of("peer1", new PeerLag("peer1").update(-1, 1, 1, 0)));
+
+        refreshAndPrint();
+
+        assertTrue(out.toString().contains("unknown"));
+        assertFalse(out.toString().contains("not catching up"));
+    }
+
+    @Test
+    public void testRefreshAndPrint_NoPeers() throws Exception {
+        when(monitor.getLagByPeer()).thenReturn(ImmutableMap.<String, PeerLag>of());
+
+        refreshAndPrint();
+
+        assertTrue(out.toString().contains("There are no peer clusters."));
+    }
+
+    @Test
+    public void testRefreshAndPrint_FailedRefreshReported() throws Exception {
+        doThrow(new KeeperException.ConnectionLossException()).when(monitor).refresh();
+
+        // The tool keeps running, the monitor reads everything again on the next refresh
+        refreshAndPrint();
+
+        assertTrue(err.toString().contains("Error refreshing the replication status"));
+        assertTrue(err.toString().contains("ConnectionLoss"));
+        assertEquals("", out.toString());
+    }
+
+    @Test
+    public void testRefreshAndPrint_Interrupted() throws Exception {
+        doThrow(new InterruptedException()).when(monitor).refresh();
+
+        try {
+            refreshAndPrint();
+            fail("expected an InterruptedException");
+        } catch (InterruptedException e) {
+            // expected
+        }
+        assertEquals("", err.toString());
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.sep.tools.monitoring;
+
+import com.google.common.collect.ImmutableMap;
+import com.ngdata.sep.tools.monitoring.ReplicationMonitor.PeerLag;
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsInfo;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.ArgumentMatcher;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.argThat;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ReplicationMonitorMetricsTest {
+
+    private ReplicationMonitor monitor;
+    private ReplicationMonitorMetrics metrics;
+    private MetricsCollector collector;
+    private MetricsRecordBuilder record;
+
+    @BeforeClass
+    public static void setUpBeforeClass() {
+        DefaultMetricsSystem.setMiniClusterMode(true);
+    }
+
+    @Before
+    public void setUp() {
+        monitor = mock(ReplicationMonitor.class);
+        metrics = new ReplicationMonitorMetrics(monitor);
+        collector = mock(MetricsCollector.class);
+        record = mock(MetricsRecordBuilder.class);
+        when(collector.addRecord(anyString())).thenReturn(record);
+        when(record.setContext(anyString())).thenReturn(record);
+    }
+
+    @After
+    public void tearDown() {
+        metrics.shutdown();
+    }
+
+    private static MetricsInfo named(final String name) {
+        return argThat(new ArgumentMatcher<MetricsInfo>() {
+            @Override
+            public boolean matches(Object argument) {
+                return argument instanceof MetricsInfo && ((MetricsInfo)argument).name().equals(name);
+            }
+        });
+    }
+
+    @Test
+    public void testGetMetrics() {
+        PeerLag lag = new PeerLag("peer1").update(3000, 2, 3, 0).update(2000, 2, 3, 1000);
+        when(monitor.getLagByPeer()).thenReturn(ImmutableMap.of("peer1", lag));
+        when(monitor.getLastRefreshDuration()).thenReturn(50L);
+
+        metrics.getMetrics(collector, true);
+
+        verify(record).addGauge(named("refreshTime"), eq(50L));
+        verify(record).addGauge(named("peer.peer1.bytesBehind"), eq(2000L));
+        verify(record).addGauge(named("peer.peer1.drainRate"), eq(1000d));
+        verify(record).addGauge(named("peer.peer1.etaSeconds"), eq(2L));
+        verify(record).addGauge(named("peer.peer1.queueCount"), eq(2));
+        verify(record).addGauge(named("peer.peer1.hlogCount"), eq(3));
+    }
+
+    @Test
+    public void testGetMetrics_LagNotMeasuredYet() {
+        when(monitor.getLagByPeer()).thenReturn(ImmutableMap.of("peer1", new PeerLag("peer1").update(-1, 1, 1, 0)));
+
+        metrics.getMetrics(collector, true);
+
+        verify(record).addGauge(named("peer.peer1.bytesBehind"), eq(-1L));
+        verify(record).addGauge(named("peer.peer1.drainRate"), eq(0d));
+        verify(record).addGauge(named("peer.peer1.etaSeconds"), eq(-1L));
+    }
+
+    @Test
+    public void testGetMetrics_NotCatchingUp() {
+        PeerLag lag = new PeerLag("peer1").update(1000, 1, 1, 0).update(2000, 1, 1, 1000);
+        when(monitor.getLagByPeer()).thenReturn(ImmutableMap.of("peer1", lag));
+
+        metrics.getMetrics(collector, true);
+
+        verify(record).addGauge(named("peer.peer1.drainRate"), eq(-1000d));
+        verify(record).addGauge(named("peer.peer1.etaSeconds"), eq(-1L));
+    }
+
+    @Test
+    public void testGetMetrics_CaughtUp() {
+        when(monitor.getLagByPeer()).thenReturn(ImmutableMap.of("peer1", new PeerLag("peer1").update(0, 1, 1, 0)));
+
+        metrics.getMetrics(collector, true);
+
+        verify(record).addGauge(named("peer.peer1.bytesBehind"), eq(0L));
+        verify(record).addGauge(named("peer.peer1.etaSeconds"), eq(0L));
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright 2013 NGDATA nv
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ngdata.sep.tools.monitoring;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.ngdata.sep.tools.monitoring.ReplicationMonitor.PeerLag;
+import com.ngdata.sep.tools.monitoring.ReplicationStatus.HLogInfo;
+import com.ngdata.sep.tools.monitoring.ReplicationStatus.Status;
+import com.ngdata.sep.util.zookeeper.ZooKeeperItf;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.Watcher.Event.EventType;
+import org.apache.zookeeper.Watcher.Event.KeeperState;
+import org.apache.zookeeper.data.Stat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ReplicationMonitorTest {
+
+    private static final String RS_PATH = "/hbase/replication/rs";
+    private static final String SERVER_PATH = RS_PATH + "/server1";
+    private static final String QUEUE_PATH = SERVER_PATH + "/peer1";
+    private static final String HLOG_PATH = QUEUE_PATH + "/hlog1";
+    private static final double DELTA = 0.0001;
+
+    private ZooKeeperItf zk;
+    private ReplicationStatusRetriever retriever;
+    private ReplicationMonitor monitor;
+
+    @BeforeClass
+    public static void setUpBeforeClass() {
+        DefaultMetricsSystem.setMiniClusterMode(true);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        // A single regionserver with a single queue for peer1, of which 100 bytes of a 1000 byte hlog are shipped
+        zk = mock(ZooKeeperItf.class);
+        when(zk.exists(eq(RS_PATH), any(Watcher.class))).thenReturn(new Stat());
+        when(zk.getChildren(eq(RS_PATH), any(Watcher.class))).thenReturn(Lists.newArrayList("server1"));
+        when(zk.getChildren(eq(SERVER_PATH), any(Watcher.class))).thenReturn(Lists.newArrayList("peer1"));
+        when(zk.getChildren(eq(QUEUE_PATH), any(Watcher.class))).thenReturn(Lists.newArrayList("hlog1"));
+        when(zk.getData(eq(HLOG_PATH), any(Watcher.class), any(Stat.class))).thenReturn("100".getBytes());
+
+        retriever = mock(ReplicationStatusRetriever.class);
+        when(retriever.getRegionServerPath()).thenReturn(RS_PATH);
+        when(retriever.removeMetaData(any(byte[].class))).thenAnswer(new Answer<byte[]>() {
+            @Override
+            public byte[] answer(InvocationOnMock invocation) {
+                return (byte[])invocation.getArguments()[0];
+            }
+        });
+        when(retriever.parseHLogPositionFrom(any(byte[].class))).thenAnswer(new Answer<Long>() {
+            @Override
+            public Long answer(InvocationOnMock invocation) {
+                return Long.parseLong(new String((byte[])invocation.getArguments()[0]));
+            }
+        });
+        when(retriever.getLogFileSize(anyString(), anyString())).thenReturn(1000L);
+
+        monitor = new ReplicationMonitor(zk, retriever, 1, false);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        monitor.close();
+    }
+
+    private Watcher getWatcher() throws Exception {
+        ArgumentCaptor<Watcher> watcher = ArgumentCaptor.forClass(Watcher.class);
+        verify(zk).exists(eq(RS_PATH), watcher.capture());
+        return watcher.getValue();
+    }
+
+    private static Status status(long... sizesAndPositions) {
+        Status status = new Status();
+        for (int i = 0; i < sizesAndPositions.length; i += 2) {
+            HLogInfo hlog = new HLogInfo("hlog" + i);
+            hlog.size = sizesAndPositions[i];
+            hlog.position = sizesAndPositions[i + 1];
+            status.hlogs.add(hlog);
+        }
+        return status;
+    }
+
+    @Test
+    public void testRefresh() throws Exception {
+        monitor.refresh();
+
+        PeerLag lag = monitor.getLagByPeer().get("peer1");
+        assertEquals(900, lag.getBytesBehind());
+        assertEquals(1, lag.getQueueCount());
+        assertEquals(1, lag.getHLogCount());
+        assertTrue(Double.isNaN(lag.getDrainRate()));
+    }
+
+    @Test
+    public void testRefresh_OnlyChangedNodesRead() throws Exception {
+        monitor.refresh();
+        monitor.refresh();
+        verify(zk, times(1)).getData(eq(HLOG_PATH), any(Watcher.class), any(Stat.class));
+
+        doReturn("400".getBytes()).when(zk).getData(eq(HLOG_PATH), any(Watcher.class), any(Stat.class));
+        getWatcher().process(new WatchedEvent(EventType.NodeDataChanged, KeeperState.SyncConnected, HLOG_PATH));
+        monitor.refresh();
+
+        assertEquals(600, monitor.getLagByPeer().get("peer1").getBytesBehind());
+        verify(zk, times(2)).getData(eq(HLOG_PATH), any(Watcher.class), any(Stat.class));
+        verify(zk, times(1)).getChildren(eq(RS_PATH), any(Watcher.class));
+        verify(zk, times(1)).getChildren(eq(QUEUE_PATH), any(Watcher.class));
+    }
+
+    @Test
+    public void testRefresh_ResyncAfterFailure() throws Exception {
+        monitor.refresh();
+        Watcher watcher = getWatcher();
+
+        doThrow(new KeeperException.ConnectionLossException())
+                .when(zk).getData(eq(HLOG_PATH), any(Watcher.class), any(Stat.class));
+        watcher.process(new WatchedEvent(EventType.NodeDataChanged, KeeperState.SyncConnected, HLOG_PATH));
+        try {
+            monitor.refresh();
+            fail("expected a ConnectionLossException");
+        } catch (KeeperException.ConnectionLossException e) {
+            // expected
+        }
+
+        // The change that was drained by the failed refresh isn't lost, everything is read again
+        doReturn("400".getBytes()).when(zk).getData(eq(HLOG_PATH), any(Watcher.class), any(Stat.class));
+        monitor.refresh();
+
+        assertEquals(600, monitor.getLagByPeer().get("peer1").getBytesBehind());
+        verify(zk, times(2)).getChildren(eq(RS_PATH), any(Watcher.class));
+        verify(zk, times(2)).getChildren(eq(QUEUE_PATH), any(Watcher.class));
+    }
+
+    @Test
+    public void testRefresh_ResyncAfterSessionExpiry() throws Exception {
+        monitor.refresh();
+
+        getWatcher().process(new WatchedEvent(EventType.None, KeeperState.Expired, null));
+        monitor.refresh();
+
+        verify(zk, times(2)).getChildren(eq(RS_PATH), any(Watcher.class));
+        verify(zk, times(2)).getData(eq(HLOG_PATH), any(Watcher.class), any(Stat.class));
+    }
+
+    @Test
+    public void testRefresh_NoReplication() throws Exception {
+        when(zk.exists(eq(RS_PATH), any(Watcher.class))).thenReturn(null);
+
+        monitor.refresh();
+
+        assertTrue(monitor.getLagByPeer().isEmpty());
+    }
+
+    @Test
+    public void testComputeLag_QueuesAggregatedPerPeer() {
+        Map<String, Map<String, Status>> statusByQueueAndServer = Maps.newHashMap();
+        statusByQueueAndServer.put("peer1", ImmutableMap.of("server1", status(1000, 100), "server2", status(500, 0)));
+        // A queue recovered from a dead regionserver, with a newer hlog queued after the current one
+        statusByQueueAndServer.put("peer1-server3", ImmutableMap.of("server1", status(2000, -1, 1000, 200)));
+        statusByQueueAndServer.put("peer2", ImmutableMap.of("server1", status(1000, 1000)));
+
+        Map<String, PeerLag> lagByPeer = ReplicationMonitor.computeLag(
+                new ReplicationStatus(statusByQueueAndServer), Collections.<String, PeerLag>emptyMap(), 0);
+
+        assertEquals(2, lagByPeer.size());
+        PeerLag lag = lagByPeer.get("peer1");
+        assertEquals(900 + 500 + 2000 + 800, lag.getBytesBehind());
+        assertEquals(3, lag.getQueueCount());
+        assertEquals(4, lag.getHLogCount());
+        assertEquals(0, lagByPeer.get("peer2").getBytesBehind());
+    }
+
+    @Test
+    public void testComputeLag_UnknownSize() {
+        Map<String, Map<String, Status>> statusByQueueAndServer = Maps.newHashMap();
+        statusByQueueAndServer.put("peer1", ImmutableMap.of("server1", status(1000, 100), "server2", status(-1, 0)));
+
+        Map<String, PeerLag> lagByPeer = ReplicationMonitor.computeLag(
+                new ReplicationStatus(statusByQueueAndServer), Collections.<String, PeerLag>emptyMap(), 0);
+
+        assertEquals(-1, lagByPeer.get("peer1").getBytesBehind());
+    }
+
+    @Test
+    public void testComputeLag_UpdatesPreviousLag() {
+        Map<String, Map<String, Status>> statusByQueueAndServer = Maps.newHashMap();
+        statusByQueueAndServer.put("peer1", ImmutableMap.of("server1", status(1000, 500)));
+        Map<String, PeerLag> previousLag = ImmutableMap.of("peer1", new PeerLag("peer1").update(1000, 1, 1, 0));
+
+        Map<String, PeerLag> lagByPeer = ReplicationMonitor.computeLag(
+                new ReplicationStatus(statusByQueueAndServer), previousLag, 1000);
+
+        assertEquals(500, lagByPeer.get("peer1").getDrainRate(), DELTA);
+    }
+
+    @Test
+    public void testDrainRate() {
+        PeerLag lag = new PeerLag("peer1").update(1000, 1, 1, 0);
+        assertTrue(Double.isNaN(lag.getDrainRate()));
+
+        lag = lag.update(500, 1, 1, 1000);
+        assertEquals(500, lag.getDrainRate(), DELTA);
+    }
+
+    @Test
+    public void testDrainRate_Smoothed() {
+        PeerLag lag = new PeerLag("peer1").update(1000, 1, 1, 0).update(500, 1, 1, 1000);
+
+        // Nothing was shipped during the last refresh
+        lag = lag.update(500, 1, 1, 2000);
+        assertEquals((1 - ReplicationMonitor.DRAIN_RATE_SMOOTHING) * 500, lag.getDrainRate(), DELTA);
+
+        // Falling behind
+        lag = lag.update(1500, 1, 1, 3000);
+        double expected = ReplicationMonitor.DRAIN_RATE_SMOOTHING * -1000
+                + (1 - ReplicationMonitor.DRAIN_RATE_SMOOTHING) * (1 - ReplicationMonitor.DRAIN_RATE_SMOOTHING) * 500;
+        assertEquals(expected, lag.getDrainRate(), DELTA);
+    }
+
+    @Test
+    public void testDrainRate_NotMeasuredAcrossUnknownBytesBehind() {
+        PeerLag lag = new PeerLag("peer1").update(1000, 1, 1, 0).update(500, 1, 1, 1000);
+
+        lag = lag.update(-1, 1, 1, 2000);
+        assertEquals(500, lag.getDrainRate(), DELTA);
+
+        lag = lag.update(0, 1, 1, 3000);
+        assertEquals(500, lag.getDrainRate(), DELTA);
+    }
+
+    @Test
+    public void testDrainRate_NotMeasuredWithoutTimePassing() {
+        PeerLag lag = new PeerLag("peer1").update(1000, 1, 1, 1000).update(500, 1, 1, 1000);
+
+        assertTrue(Double.isNaN(lag.getDrainRate()));
+    }
+
+    @Test
+    public void testEta() {
+        PeerLag lag = new PeerLag("peer1").update(1000, 1, 1, 0).update(500, 1, 1, 1000);
+
+        assertEquals(1000, lag.getEta());
+    }
+
+    @Test
+    public void testEta_NotBehind() {
+        // Even without a drain rate
+        assertEquals(0, new PeerLag("peer1").update(0, 1, 1, 0).getEta());
+    }
+
+    @Test
+    public void testEta_UnknownBytesBehind() {
+        PeerLag lag = new PeerLag("peer1").update(1000, 1, 1, 0).update(500, 1, 1, 1000);
+
+        assertEquals(-1, lag.update(-1, 1, 1, 2000).getEta());
+        assertEquals(-1, new PeerLag("peer1").getEta());
+    }
+
+    @Test
+    public void testEta_UnknownDrainRate() {
+        assertEquals(-1, new PeerLag("peer1").update(1000, 1, 1, 0).getEta());
+    }
+
+    @Test
+    public void testEta_NotCatchingUp() {
+        PeerLag fallingBehind = new PeerLag("peer1").update(500, 1, 1, 0).update(1000, 1, 1, 1000);
+        assertEquals(-500, fallingBehind.getDrainRate(), DELTA);
+        assertEquals(-1, fallingBehind.getEta());
+
+        PeerLag stuck = new PeerLag("peer1").update(1000, 1, 1, 0).update(1000, 1, 1, 1000);
+        assertEquals(0, stuck.getDrainRate(), DELTA);
+        assertEquals(-1, stuck.getEta());
+    }
+}